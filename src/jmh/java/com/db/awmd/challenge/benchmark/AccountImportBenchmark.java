@@ -0,0 +1,65 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportResult;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.AccountImport;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+
+/**
+ * Bulk import of accounts in chunks into an empty repository, renewed before every import.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AccountImportBenchmark {
+
+	@Param({ "in-memory", "atomic", "off-heap" })
+	public String repository;
+
+	@Param({ "1000000" })
+	public int accounts;
+
+	@Param({ "10000" })
+	public int chunkSize;
+
+	private AccountsService accountsService;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		AccountsRepository accountsRepository = Repositories.create(repository, accounts);
+		accountsService = new AccountsService(accountsRepository,
+				new LockingTransferEngine(accountsRepository, new AccountLocks(1024)));
+	}
+
+	@Benchmark
+	public ImportResult importAccounts() {
+		AccountImport accountImport = new AccountImport(accountsService, chunkSize, 1000);
+		for (int i = 1; i <= accounts; i++) {
+			accountImport.add(i, new Account("A" + i, BigDecimal.TEN));
+		}
+		return accountImport.finish();
+	}
+}
@@ -0,0 +1,69 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks account numbers either uniformly or following a Zipf distribution, where a few hot accounts take most of the
+ * traffic.
+ *
+ */
+final class AccountSelector {
+
+	/**
+	 * Skew of the Zipf distribution, the YCSB default.
+	 */
+	static final double ZIPF_EXPONENT = 0.99;
+
+	private final int count;
+
+	/**
+	 * Cumulative probability of each account number, null for the uniform distribution.
+	 */
+	private final double[] cumulative;
+
+	private AccountSelector(int count, double[] cumulative) {
+		this.count = count;
+		this.cumulative = cumulative;
+	}
+
+	static AccountSelector create(String distribution, int count) {
+		switch (distribution) {
+		case "uniform":
+			return new AccountSelector(count, null);
+		case "zipf":
+			double[] cumulative = new double[count];
+			double sum = 0;
+			for (int i = 0; i < count; i++) {
+				sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+				cumulative[i] = sum;
+			}
+			for (int i = 0; i < count; i++) {
+				cumulative[i] /= sum;
+			}
+			return new AccountSelector(count, cumulative);
+		default:
+			throw new IllegalArgumentException("Unknown distribution " + distribution);
+		}
+	}
+
+	int next() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (cumulative == null) {
+			return random.nextInt(count);
+		}
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(index >= 0 ? index : -index - 1, count - 1);
+	}
+
+	/**
+	 * This method picks an account number other than the given one.
+	 *
+	 * @param excluded
+	 * @return
+	 */
+	int nextOther(int excluded) {
+		int next = next();
+		return next != excluded ? next : (next + 1) % count;
+	}
+}
@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Single-account operations of the repositories, without the transfer locks around them.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountsRepositoryBenchmark {
+
+	private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+	@Param({ "in-memory", "atomic", "off-heap" })
+	public String repository;
+
+	@Param({ "1000", "1000000" })
+	public int accounts;
+
+	@Param({ "uniform", "zipf" })
+	public String distribution;
+
+	private AccountsRepository accountsRepository;
+
+	private String[] accountIds;
+
+	private AccountSelector selector;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsRepository = Repositories.create(repository, accounts);
+		accountIds = Repositories.populate(accountsRepository, accounts);
+		selector = AccountSelector.create(distribution, accounts);
+	}
+
+	/**
+	 * Empty repository of the benchmarked kind, renewed every iteration so the created accounts don't pile up.
+	 */
+	@State(Scope.Benchmark)
+	public static class NewAccounts {
+
+		private AccountsRepository accountsRepository;
+
+		private final AtomicInteger next = new AtomicInteger();
+
+		@Setup(Level.Iteration)
+		public void setUp(AccountsRepositoryBenchmark benchmark) {
+			accountsRepository = Repositories.create(benchmark.repository, benchmark.accounts);
+			next.set(0);
+		}
+	}
+
+	@Benchmark
+	public void createAccount(NewAccounts newAccounts) {
+		newAccounts.accountsRepository
+				.createAccount(new Account("NEW" + newAccounts.next.getAndIncrement(), Repositories.INITIAL_BALANCE));
+	}
+
+	@Benchmark
+	public Account getAccount() {
+		return accountsRepository.getAccount(accountIds[selector.next()]);
+	}
+
+	@Benchmark
+	public void debitAndCreditAccount() throws InSufficientBalanceException {
+		Account account = accountsRepository.getAccount(accountIds[selector.next()]);
+		accountsRepository.debitAccount(account, AMOUNT);
+		accountsRepository.creditAccount(account, AMOUNT);
+	}
+}
@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AuditLog;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.StripedAccounts;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+/**
+ * Transfers of 0.01 between random accounts with and without the audit log, to show what recording every transfer
+ * costs the transferring threads. The audit files are written to a temporary directory deleted afterwards.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditLogBenchmark {
+
+	private static final int ACCOUNTS = 10000;
+
+	private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+	@Param({ "off", "on" })
+	public String audit;
+
+	private AccountsService accountsService;
+
+	private AuditLog auditLog;
+
+	private Path directory;
+
+	private String[] accountIds;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("audit-benchmark");
+		auditLog = "on".equals(audit) ? new AuditLog(directory, 65536, 64 << 20) : null;
+		AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+		TransferMetrics transferMetrics = new TransferMetrics();
+		BalanceVersions balanceVersions = new BalanceVersions();
+		accountsService = new AccountsService(accountsRepository, new LockingTransferEngine(accountsRepository,
+				new AccountLocks(1024), transferMetrics, new TransferLedger(), balanceVersions), transferMetrics,
+				balanceVersions, new StripedAccounts(), Optional.ofNullable(auditLog));
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], new BigDecimal(1000000)));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		if (auditLog != null) {
+			auditLog.close();
+		}
+		Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+	}
+
+	@Benchmark
+	public TransferStatus transfer() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int from = random.nextInt(ACCOUNTS);
+		int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+		return accountsService.tryTransferAmount(accountIds[from], accountIds[to], AMOUNT);
+	}
+}
@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching {@code -Dbenchmarks} once per thread count of {@code -Dthreads}, writing the JSON
+ * results of each run to the {@code -Dresults} directory. The profilers of {@code -Dprofilers}, e.g. {@code gc}, are
+ * added to every run.
+ *
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = System.getProperty("benchmarks", ".*");
+		String profilers = System.getProperty("profilers", "");
+		File results = new File(System.getProperty("results", "build/reports/jmh"));
+		if (!results.isDirectory() && !results.mkdirs()) {
+			throw new IllegalStateException("Can't create " + results);
+		}
+		for (String threads : System.getProperty("threads", "1").split(",")) {
+			int count = Integer.parseInt(threads.trim());
+			ChainedOptionsBuilder options = new OptionsBuilder()
+					.include(include)
+					.threads(count)
+					.resultFormat(ResultFormatType.JSON)
+					.result(new File(results, "results-" + count + "-threads.json").getPath());
+			for (String profiler : profilers.split(",")) {
+				if (!profiler.trim().isEmpty()) {
+					options.addProfiler(profiler.trim());
+				}
+			}
+			new Runner(options.build()).run();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ClusterTopology;
+
+/**
+ * Transfers over HTTP between accounts spread over a cluster of 1, 2 or 4 nodes, each request sent to a random node
+ * which forwards it to the node owning the source account if needed. With several nodes most transfers go between two
+ * nodes and are executed in two phases.
+ *
+ * The nodes all run in this JVM on localhost, sharing its processors, so the results show the cost of the routing and
+ * of the calls between nodes rather than the scaling of nodes on separate machines. The thread count is set by the
+ * runner.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterBenchmark {
+
+	private static final int ACCOUNTS = 1000;
+
+	private static final BigDecimal BALANCE = new BigDecimal(1000000000);
+
+	@Param({ "1", "2", "4" })
+	public int nodes;
+
+	private ConfigurableApplicationContext[] contexts;
+
+	private String[] urls;
+
+	private String[] accountIds;
+
+	private final RestTemplate restTemplate = new RestTemplate();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		urls = new String[nodes];
+		for (int i = 0; i < nodes; i++) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				urls[i] = "http://localhost:" + socket.getLocalPort();
+			}
+		}
+		String cluster = String.join(",", urls);
+		contexts = new ConfigurableApplicationContext[nodes];
+		for (int i = 0; i < nodes; i++) {
+			contexts[i] = new SpringApplicationBuilder(DevChallengeApplication.class).run(
+					"--server.port=" + urls[i].substring(urls[i].lastIndexOf(':') + 1),
+					"--spring.jmx.enabled=false",
+					"--logging.level.root=WARN",
+					"--accounts.cluster.nodes=" + cluster,
+					"--accounts.cluster.node-index=" + i,
+					"--accounts.cluster.secret=benchmark",
+					"--accounts.admission.initial-limit=100000",
+					"--accounts.admission.max-limit=100000",
+					"--accounts.transfer.executor.max-pending=100000");
+		}
+
+		ClusterTopology topology = new ClusterTopology(cluster, 0, "benchmark");
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			AccountsService accountsService = contexts[topology.ownerOf(accountIds[i])].getBean(AccountsService.class);
+			accountsService.createAccount(new Account(accountIds[i], BALANCE));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		for (ConfigurableApplicationContext context : contexts) {
+			if (context != null) {
+				context.close();
+			}
+		}
+	}
+
+	@Benchmark
+	public HttpStatus transfer() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int from = random.nextInt(ACCOUNTS);
+		int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+		ResponseEntity<String> response = restTemplate.postForEntity(URI.create(urls[random.nextInt(nodes)]
+				+ "/v1/accounts/transfer/" + accountIds[from] + "/" + accountIds[to] + "/1"), null, String.class);
+		return response.getStatusCode();
+	}
+}
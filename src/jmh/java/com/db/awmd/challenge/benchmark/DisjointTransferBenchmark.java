@@ -0,0 +1,103 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.TransferEngine;
+
+/**
+ * Transfers where every thread moves money between its own pair of accounts, so no two threads touch the same account.
+ * Comparing the results of {@code -Pthreads=1,2,4,...} gives the speedup of each engine on disjoint transfers, which
+ * should stay close to the thread count up to the number of cores for the locking engine and stay flat for the
+ * former global Semaphore.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DisjointTransferBenchmark {
+
+	private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+	@Param({ "semaphore", "locking", "sharded" })
+	public String engine;
+
+	private AccountsService accountsService;
+
+	private ShardedTransferEngine shardedEngine;
+
+	private String[] accountIds;
+
+	private final AtomicInteger pairs = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp(BenchmarkParams params) {
+		AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+		accountIds = Repositories.populate(accountsRepository, params.getThreads() * 2);
+		TransferEngine transferEngine;
+		if ("sharded".equals(engine)) {
+			shardedEngine = new ShardedTransferEngine(accountsRepository, 0, 4096);
+			transferEngine = shardedEngine;
+		} else if ("semaphore".equals(engine)) {
+			transferEngine = new SemaphoreTransferEngine(accountsRepository);
+		} else {
+			transferEngine = new LockingTransferEngine(accountsRepository, new AccountLocks(1024));
+		}
+		accountsService = new AccountsService(accountsRepository, transferEngine);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		if (shardedEngine != null) {
+			shardedEngine.shutdown();
+		}
+	}
+
+	/**
+	 * The pair of accounts of a benchmark thread.
+	 */
+	@State(Scope.Thread)
+	public static class Pair {
+
+		private String fromId;
+
+		private String toId;
+
+		@Setup(Level.Trial)
+		public void setUp(DisjointTransferBenchmark benchmark) {
+			int pair = benchmark.pairs.getAndIncrement();
+			fromId = benchmark.accountIds[pair * 2];
+			toId = benchmark.accountIds[pair * 2 + 1];
+		}
+	}
+
+	@Benchmark
+	public void transferAmount(Pair pair) throws Exception {
+		accountsService.transferAmount(pair.fromId, pair.toId, AMOUNT);
+	}
+}
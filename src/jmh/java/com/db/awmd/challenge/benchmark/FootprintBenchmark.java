@@ -0,0 +1,93 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Full collection pause with the accounts of a repository loaded, reported together with the heap and the direct
+ * memory the repository takes per account. Run with a heap large enough for the accounts, e.g.
+ * {@code -Pbenchmarks=Footprint} and {@code -Xmx4g} for 10000000 accounts.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FootprintBenchmark {
+
+	@Param({ "in-memory", "atomic", "off-heap" })
+	public String repository;
+
+	@Param({ "1000000" })
+	public int accounts;
+
+	private AccountsRepository accountsRepository;
+
+	private long heapBytes;
+
+	private long directBytes;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		long heap = usedHeap();
+		long direct = usedDirect();
+		accountsRepository = Repositories.create(repository, accounts);
+		Repositories.populate(accountsRepository, accounts);
+		heapBytes = usedHeap() - heap;
+		directBytes = usedDirect() - direct;
+	}
+
+	/**
+	 * Bytes taken per account, reported next to the collection pause. JMH resets the counters every iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+
+		public long heapBytesPerAccount;
+
+		public long directBytesPerAccount;
+	}
+
+	@Benchmark
+	public AccountsRepository fullCollection(Footprint footprint) {
+		System.gc();
+		footprint.heapBytesPerAccount = heapBytes / accounts;
+		footprint.directBytesPerAccount = directBytes / accounts;
+		return accountsRepository;
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long usedDirect() {
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if ("direct".equals(pool.getName())) {
+				return pool.getMemoryUsed();
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.JournalingAccountsRepository;
+import com.db.awmd.challenge.repository.TransferJournal;
+
+/**
+ * Startup of a journaled repository holding accounts which each made a transfer, by replaying the whole journal or by
+ * loading a snapshot. The journal is written to a temporary directory deleted afterwards.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JournalStartupBenchmark {
+
+	@Param({ "replay", "snapshot" })
+	public String startup;
+
+	@Param({ "100000" })
+	public int accounts;
+
+	private Path directory;
+
+	private TransferJournal journal;
+
+	private JournalingAccountsRepository accountsRepository;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("journal-benchmark");
+		open();
+		for (int i = 0; i < accounts; i++) {
+			accountsRepository.createAccount(new Account("A" + i, new BigDecimal(1000)));
+		}
+		for (int i = 0; i < accounts; i++) {
+			accountsRepository.transfer(accountsRepository.getAccount("A" + i),
+					accountsRepository.getAccount("A" + (i + 1) % accounts), BigDecimal.ONE);
+		}
+		accountsRepository.sync();
+		if ("snapshot".equals(startup)) {
+			accountsRepository.snapshot();
+		}
+		close();
+	}
+
+	@TearDown(Level.Invocation)
+	public void close() throws IOException {
+		accountsRepository.close();
+		journal.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+	}
+
+	@Benchmark
+	public JournalingAccountsRepository open() throws IOException {
+		journal = new TransferJournal(directory, 4096);
+		accountsRepository = new JournalingAccountsRepository(new AccountsRepositoryInMemory(), journal);
+		return accountsRepository;
+	}
+}
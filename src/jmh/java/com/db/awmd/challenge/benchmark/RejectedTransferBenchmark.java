@@ -0,0 +1,81 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.exception.NoSuchAccountException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.web.TransferResponses;
+
+/**
+ * Transfers rejected for an insufficient balance or a missing account, mapped to their response the way the controller
+ * used to, through the exceptions, and the way it does now, through the transfer status and the cached responses. Run
+ * with {@code -Pprofilers=gc} to get the bytes allocated per rejected transfer, {@code gc.alloc.rate.norm}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RejectedTransferBenchmark {
+
+	@Param({ "insufficient-balance", "no-such-account" })
+	public String rejection;
+
+	private AccountsService accountsService;
+
+	private String accountFromId;
+
+	private String accountToId;
+
+	private BigDecimal amount;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+		accountsService = new AccountsService(accountsRepository,
+				new LockingTransferEngine(accountsRepository, new AccountLocks(1024)));
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal(1000)));
+		accountFromId = "A001";
+		accountToId = "no-such-account".equals(rejection) ? "A003" : "A002";
+		amount = "no-such-account".equals(rejection) ? BigDecimal.ONE : new BigDecimal(5000);
+	}
+
+	@Benchmark
+	public ResponseEntity<Object> exceptions() {
+		try {
+			accountsService.transferAmount(accountFromId, accountToId, amount);
+			return new ResponseEntity<>(HttpStatus.OK);
+		} catch (NoSuchAccountException | InSufficientBalanceException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	@Benchmark
+	public ResponseEntity<Object> statusCodes() {
+		return TransferResponses.response(accountsService.tryTransferAmount(accountFromId, accountToId, amount), false);
+	}
+}
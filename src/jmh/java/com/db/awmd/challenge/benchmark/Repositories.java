@@ -0,0 +1,53 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryAtomic;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+
+/**
+ * Creates the repositories selected by the {@code accounts.repository} values, outside Spring.
+ *
+ */
+final class Repositories {
+
+	/**
+	 * Balance of every populated account, large enough that no benchmark runs out of it.
+	 */
+	static final BigDecimal INITIAL_BALANCE = new BigDecimal(1000000000);
+
+	private Repositories() {
+	}
+
+	static AccountsRepository create(String repository, int expectedAccounts) {
+		switch (repository) {
+		case "in-memory":
+			return new AccountsRepositoryInMemory();
+		case "atomic":
+			return new AccountsRepositoryAtomic();
+		case "off-heap":
+			return new AccountsRepositoryOffHeap(64, expectedAccounts);
+		default:
+			throw new IllegalArgumentException("Unknown repository " + repository);
+		}
+	}
+
+	/**
+	 * This method creates the given number of accounts.
+	 *
+	 * @param accountsRepository
+	 * @param count
+	 * @return the account ids, indexed by account number
+	 */
+	static String[] populate(AccountsRepository accountsRepository, int count) {
+		String[] accountIds = new String[count];
+		for (int i = 0; i < count; i++) {
+			accountIds[i] = "ACC" + i;
+			accountsRepository.createAccount(new Account(accountIds[i], INITIAL_BALANCE));
+		}
+		return accountIds;
+	}
+}
@@ -0,0 +1,80 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.TransferBatch;
+import com.db.awmd.challenge.service.TransferEngine;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+/**
+ * The former design, where a global Semaphore let only one transfer run at a time. It does the same ledger, version
+ * and metrics work as the other engines, so the comparison only measures how transfers are serialized.
+ *
+ */
+class SemaphoreTransferEngine implements TransferEngine {
+
+	private final Semaphore lock = new Semaphore(1);
+
+	private final AccountsRepository accountsRepository;
+
+	private final TransferMetrics transferMetrics = new TransferMetrics();
+
+	private final TransferLedger transferLedger = new TransferLedger();
+
+	private final BalanceVersions balanceVersions = new BalanceVersions();
+
+	SemaphoreTransferEngine(AccountsRepository accountsRepository) {
+		this.accountsRepository = accountsRepository;
+	}
+
+	@Override
+	public TransferStatus tryTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+		boolean completed = executeExclusively(null, () -> {
+			if (!accountsRepository.tryTransfer(fromAccount, toAccount, amount)) {
+				return false;
+			}
+			transferLedger.recordTransfer(fromAccount.getAccountId(), toAccount.getAccountId(),
+					MinorUnits.toMinorUnits(amount));
+			balanceVersions.commit(fromAccount, toAccount);
+			return true;
+		});
+		if (!completed) {
+			return TransferStatus.INSUFFICIENT_BALANCE;
+		}
+		accountsRepository.sync();
+		return TransferStatus.COMPLETED;
+	}
+
+	@Override
+	public void transferBatch(TransferBatch batch) {
+		executeExclusively(batch.getAccountIds(), () -> {
+			batch.execute(accountsRepository);
+			batch.record(transferLedger);
+			batch.commit(balanceVersions);
+			return batch;
+		});
+		accountsRepository.sync();
+	}
+
+	@Override
+	public <T> T executeExclusively(Collection<String> accountIds, Supplier<T> change) {
+		long requestedAt = System.nanoTime();
+		lock.acquireUninterruptibly();
+		long acquiredAt = System.nanoTime();
+		try {
+			return change.get();
+		} finally {
+			lock.release();
+			transferMetrics.lockTimed(acquiredAt - requestedAt, System.nanoTime() - acquiredAt);
+		}
+	}
+}
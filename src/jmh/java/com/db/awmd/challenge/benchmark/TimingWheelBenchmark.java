@@ -0,0 +1,72 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.db.awmd.challenge.service.TimingWheel;
+
+/**
+ * Timers added to and cancelled from a wheel already holding many pending timers, and a timer added then expired by
+ * advancing the wheel one tick, which should take the same time whatever the number of pending timers. The wheel isn't
+ * thread-safe, so every benchmark thread has its own.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimingWheelBenchmark {
+
+	private static final long HORIZON = 100000;
+
+	/**
+	 * Tick the pending timers are due around, which the benchmark never reaches, so they're never cascaded.
+	 */
+	private static final long PENDING_DUE = 1L << 31;
+
+	@Param({ "1000", "2000000" })
+	public int pending;
+
+	private TimingWheel<Long> wheel;
+
+	private long tick;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		wheel = new TimingWheel<>(0);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < pending; i++) {
+			long due = PENDING_DUE + random.nextLong(HORIZON);
+			wheel.add(due, due);
+		}
+	}
+
+	@Benchmark
+	public boolean addAndCancel() {
+		long due = tick + 1 + ThreadLocalRandom.current().nextLong(HORIZON);
+		return wheel.cancel(wheel.add(due, due));
+	}
+
+	@Benchmark
+	public void addAndExpire(Blackhole blackhole) {
+		tick++;
+		wheel.add(tick, tick);
+		wheel.advance(tick, blackhole::consume);
+	}
+}
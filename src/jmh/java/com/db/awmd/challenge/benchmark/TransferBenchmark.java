@@ -0,0 +1,93 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.TransferEngine;
+
+/**
+ * Full transfers through {@link AccountsService}, for every combination of repository, transfer engine, number of
+ * accounts and distribution of the accounts picked. The thread count is set by the runner. The {@code semaphore}
+ * engine is the former design, which ran one transfer at a time, as the baseline of the other engines.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+	private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+	@Param({ "in-memory", "atomic", "off-heap" })
+	public String repository;
+
+	@Param({ "semaphore", "locking", "sharded" })
+	public String engine;
+
+	@Param({ "1000", "1000000" })
+	public int accounts;
+
+	@Param({ "uniform", "zipf" })
+	public String distribution;
+
+	private AccountsService accountsService;
+
+	private ShardedTransferEngine shardedEngine;
+
+	private String[] accountIds;
+
+	private AccountSelector selector;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AccountsRepository accountsRepository = Repositories.create(repository, accounts);
+		accountIds = Repositories.populate(accountsRepository, accounts);
+		selector = AccountSelector.create(distribution, accounts);
+		TransferEngine transferEngine;
+		if ("sharded".equals(engine)) {
+			shardedEngine = new ShardedTransferEngine(accountsRepository, 0, 4096);
+			transferEngine = shardedEngine;
+		} else if ("semaphore".equals(engine)) {
+			transferEngine = new SemaphoreTransferEngine(accountsRepository);
+		} else {
+			transferEngine = new LockingTransferEngine(accountsRepository, new AccountLocks(1024));
+		}
+		accountsService = new AccountsService(accountsRepository, transferEngine);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		if (shardedEngine != null) {
+			shardedEngine.shutdown();
+		}
+	}
+
+	@Benchmark
+	public void transferAmount() throws Exception {
+		int from = selector.next();
+		int to = selector.nextOther(from);
+		accountsService.transferAmount(accountIds[from], accountIds[to], AMOUNT);
+	}
+}
@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.service.TransferLedger;
+
+/**
+ * Pages of 100 entries read from the start and from the end of a long account history, which should take the same
+ * time wherever they are read.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferLedgerBenchmark {
+
+	private static final int PAGE = 100;
+
+	@Param({ "start", "end" })
+	public String page;
+
+	@Param({ "3000000" })
+	public int entries;
+
+	private TransferLedger transferLedger;
+
+	private long offset;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		transferLedger = new TransferLedger();
+		for (int i = 1; i <= entries; i++) {
+			transferLedger.record("A001", i, "A002", i);
+		}
+		offset = "end".equals(page) ? entries - PAGE : 0;
+	}
+
+	@Benchmark
+	public List<LedgerEntry> read() {
+		return transferLedger.read("A001", offset, PAGE);
+	}
+}
@@ -0,0 +1,133 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.RestTemplate;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.BinaryTransferClient;
+import com.db.awmd.challenge.web.BinaryTransferServer;
+
+/**
+ * Transfers of 1.00 between random accounts of a node running in this JVM, sent either to the REST API, one request
+ * per transfer over HTTP, or over the binary protocol, waiting for each response or pipelining
+ * {@value #PIPELINE} transfers at a time. The binary connection is shared by every benchmark thread, the thread count
+ * being set by the runner.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferProtocolBenchmark {
+
+	private static final int ACCOUNTS = 1000;
+
+	private static final int PIPELINE = 64;
+
+	private static final BigDecimal BALANCE = new BigDecimal(1000000000);
+
+	private ConfigurableApplicationContext context;
+
+	private String url;
+
+	private String[] accountIds;
+
+	private final RestTemplate restTemplate = new RestTemplate();
+
+	private BinaryTransferClient binaryClient;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		url = "http://localhost:" + port;
+		context = new SpringApplicationBuilder(DevChallengeApplication.class).run(
+				"--server.port=" + port,
+				"--spring.jmx.enabled=false",
+				"--logging.level.root=WARN",
+				"--accounts.binary.enabled=true",
+				"--accounts.binary.port=0",
+				"--accounts.admission.initial-limit=100000",
+				"--accounts.admission.max-limit=100000",
+				"--accounts.transfer.executor.max-pending=100000");
+
+		AccountsService accountsService = context.getBean(AccountsService.class);
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], BALANCE));
+		}
+		binaryClient = new BinaryTransferClient("localhost", context.getBean(BinaryTransferServer.class).getPort());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		binaryClient.close();
+		context.close();
+	}
+
+	@Benchmark
+	public HttpStatus rest() {
+		int from = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+		return restTemplate.postForEntity(URI.create(url + "/v1/accounts/transfer/" + accountIds[from] + "/"
+				+ accountIds[other(from)] + "/1"), null, String.class).getStatusCode();
+	}
+
+	@Benchmark
+	public Byte binary() throws Exception {
+		int from = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+		CompletableFuture<Byte> response = binaryClient.transfer(accountIds[from], accountIds[other(from)], 100);
+		binaryClient.flush();
+		return response.get();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIPELINE)
+	public void binaryPipelined(Blackhole blackhole) throws Exception {
+		List<CompletableFuture<Byte>> responses = new ArrayList<>(PIPELINE);
+		for (int i = 0; i < PIPELINE; i++) {
+			int from = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+			responses.add(binaryClient.transfer(accountIds[from], accountIds[other(from)], 100));
+		}
+		binaryClient.flush();
+		for (CompletableFuture<Byte> response : responses) {
+			blackhole.consume(response.get());
+		}
+	}
+
+	private static int other(int from) {
+		return (from + 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+	}
+}
@@ -0,0 +1,72 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Account whose balance is kept as fixed-point {@link MinorUnits} in an atomic field. Debits and credits are single
+ * compare-and-set loops, so they neither allocate nor need an external lock. The balance is still exposed as a
+ * {@link BigDecimal} to the JSON API.
+ *
+ */
+public class AtomicAccount extends Account {
+
+  private final AtomicLong balanceUnits;
+
+  public AtomicAccount(String accountId, BigDecimal balance) {
+    super(accountId, null);
+    this.balanceUnits = new AtomicLong(MinorUnits.toMinorUnits(balance));
+  }
+
+  @Override
+  public BigDecimal getBalance() {
+    return MinorUnits.toBigDecimal(balanceUnits.get());
+  }
+
+  @Override
+  public void setBalance(BigDecimal balance) {
+    balanceUnits.set(MinorUnits.toMinorUnits(balance));
+  }
+
+  @JsonIgnore
+  public long getBalanceUnits() {
+    return balanceUnits.get();
+  }
+
+  /**
+   * Debits the amount if the balance is greater than it.
+   *
+   * @param units amount in minor units
+   * @return false if the balance isn't sufficient, in which case nothing is changed
+   */
+  public boolean tryDebit(long units) {
+    for (;;) {
+      long current = balanceUnits.get();
+      if (current <= units) {
+        return false;
+      }
+      if (balanceUnits.compareAndSet(current, current - units)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Credits the amount.
+   *
+   * @param units amount in minor units
+   * @return the balance after the credit
+   * @throws ArithmeticException if the balance would overflow
+   */
+  public long credit(long units) {
+    for (;;) {
+      long current = balanceUnits.get();
+      long updated = Math.addExact(current, units);
+      if (balanceUnits.compareAndSet(current, updated)) {
+        return updated;
+      }
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+/**
+ * Event of the audit log, as decoded from the audit files. The counterparty is the destination account of a transfer,
+ * null for the other events, and the status is null for the events which can't be rejected.
+ *
+ */
+@Data
+public class AuditEvent {
+
+  private final long sequence;
+
+  private final long timestamp;
+
+  private final AuditEventType type;
+
+  private final TransferStatus status;
+
+  private final String accountId;
+
+  private final String counterpartyId;
+
+  private final BigDecimal amount;
+}
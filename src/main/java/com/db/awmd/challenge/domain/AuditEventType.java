@@ -0,0 +1,33 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Kind of change recorded in the audit log. Only ever appended to, the audit files storing the position of the type.
+ *
+ */
+public enum AuditEventType {
+
+  /**
+   * Account created with its initial balance.
+   */
+  ACCOUNT_CREATED,
+
+  /**
+   * Transfer between two accounts of this node, executed or rejected.
+   */
+  TRANSFER,
+
+  /**
+   * Local side of a transfer with an account of another node of the cluster.
+   */
+  REMOTE_TRANSFER,
+
+  /**
+   * Debit of an account outside of a transfer.
+   */
+  DEBIT,
+
+  /**
+   * Credit of an account outside of a transfer.
+   */
+  CREDIT
+}
@@ -0,0 +1,43 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+/**
+ * Transfer between accounts owned by two nodes of the cluster, as exchanged by the nodes. The id is made of the index
+ * of the node coordinating the transfer, a random id of the run of that node and a sequence number.
+ *
+ */
+@Data
+@JsonInclude(Include.NON_NULL)
+public class ClusterTransfer {
+
+  private final String id;
+
+  private final String accountFromId;
+
+  private final String accountToId;
+
+  private final BigDecimal amount;
+
+  private final ClusterTransferState state;
+
+  @JsonCreator
+  public ClusterTransfer(@JsonProperty("id") String id,
+    @JsonProperty("accountFromId") String accountFromId,
+    @JsonProperty("accountToId") String accountToId,
+    @JsonProperty("amount") BigDecimal amount,
+    @JsonProperty("state") ClusterTransferState state) {
+    this.id = id;
+    this.accountFromId = accountFromId;
+    this.accountToId = accountToId;
+    this.amount = amount;
+    this.state = state;
+  }
+}
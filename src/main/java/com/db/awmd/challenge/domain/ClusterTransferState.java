@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * State of a transfer between accounts owned by two nodes of the cluster, on the node coordinating it, which owns the
+ * source account, or on the node taking part in it, which owns the destination account.
+ *
+ */
+public enum ClusterTransferState {
+
+  /**
+   * The source account is debited, the destination node wasn't asked to prepare the credit yet or didn't answer.
+   */
+  RESERVED,
+
+  /**
+   * The destination node is ready to credit the destination account once told to commit.
+   */
+  PREPARED,
+
+  COMMITTED,
+
+  /**
+   * Nothing is credited, and the debit of the source account was given back.
+   */
+  ABORTED
+}
@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import lombok.Data;
+
+/**
+ * Line of a bulk import which didn't create an account. The line is counted from 1, and the account id is only known
+ * if the line could be parsed.
+ *
+ */
+@Data
+@JsonInclude(Include.NON_NULL)
+public class ImportReject {
+
+  private final long line;
+
+  private final String accountId;
+
+  private final String message;
+}
@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Outcome of a bulk import. Only the first rejected lines are listed, so the result stays small whatever the size of
+ * the import; the count covers all of them.
+ *
+ */
+@Data
+public class ImportResult {
+
+  private long imported;
+
+  private long rejected;
+
+  private final List<ImportReject> rejects = new ArrayList<>();
+}
@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+/**
+ * Outcome of one reconciliation of the balances against the expected total, all read at the same version. The
+ * difference is the total of the balances plus the amount in transit minus the expected total, zero unless money was
+ * created or lost.
+ *
+ */
+@Data
+public class LedgerCheck {
+
+  private final long version;
+
+  private final long accounts;
+
+  private final BigDecimal total;
+
+  private final BigDecimal inTransit;
+
+  private final BigDecimal expected;
+
+  private final BigDecimal difference;
+
+  private final long checkedAt;
+
+  private final long durationMillis;
+
+  public boolean isBalanced() {
+    return difference.signum() == 0;
+  }
+}
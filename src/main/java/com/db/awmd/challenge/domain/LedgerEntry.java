@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+/**
+ * Entry of the transfer history of an account. The position is the index of the entry in the history, 0 being the
+ * oldest, and the amount is negative for a debit.
+ *
+ */
+@Data
+public class LedgerEntry {
+
+  private final long position;
+
+  private final long transferId;
+
+  private final long timestamp;
+
+  private final String counterpartyId;
+
+  private final BigDecimal amount;
+}
@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between {@link BigDecimal} amounts and fixed-point {@code long} minor units, e.g. cents.
+ *
+ */
+public final class MinorUnits {
+
+  /**
+   * Number of decimal places kept by a minor-unit amount.
+   */
+  public static final int SCALE = 2;
+
+  private static final BigDecimal MAX = BigDecimal.valueOf(Long.MAX_VALUE, SCALE);
+
+  private MinorUnits() {
+  }
+
+  /**
+   * Converts the amount into minor units.
+   *
+   * @param amount
+   * @return
+   * @throws ArithmeticException if the amount has more than {@link #SCALE} decimal places or doesn't fit in a long
+   */
+  public static long toMinorUnits(BigDecimal amount) {
+    return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+  }
+
+  public static BigDecimal toBigDecimal(long minorUnits) {
+    return BigDecimal.valueOf(minorUnits, SCALE);
+  }
+
+  /**
+   * Checks that the amount can be converted into minor units without losing precision.
+   *
+   * @param amount
+   * @return
+   */
+  public static boolean isRepresentable(BigDecimal amount) {
+    if (amount.scale() > SCALE && amount.stripTrailingZeros().scale() > SCALE) {
+      return false;
+    }
+    return amount.abs().compareTo(MAX) <= 0;
+  }
+}
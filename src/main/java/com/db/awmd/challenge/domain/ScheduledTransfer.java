@@ -0,0 +1,55 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+/**
+ * Transfer booked to execute at a future time, in milliseconds since the epoch. A standing order repeats every
+ * interval once executed, a one-off transfer has an interval of 0. The id and the status of the last execution are
+ * assigned by the service.
+ *
+ */
+@Data
+@JsonInclude(Include.NON_NULL)
+public class ScheduledTransfer {
+
+  private final Long id;
+
+  private final String accountFromId;
+
+  private final String accountToId;
+
+  private final BigDecimal amount;
+
+  private final long executeAt;
+
+  private final long intervalMillis;
+
+  private final TransferStatus lastStatus;
+
+  @JsonCreator
+  public ScheduledTransfer(@JsonProperty("accountFromId") String accountFromId,
+    @JsonProperty("accountToId") String accountToId,
+    @JsonProperty("amount") BigDecimal amount,
+    @JsonProperty("executeAt") long executeAt,
+    @JsonProperty("intervalMillis") long intervalMillis) {
+    this(null, accountFromId, accountToId, amount, executeAt, intervalMillis, null);
+  }
+
+  public ScheduledTransfer(Long id, String accountFromId, String accountToId, BigDecimal amount, long executeAt,
+    long intervalMillis, TransferStatus lastStatus) {
+    this.id = id;
+    this.accountFromId = accountFromId;
+    this.accountToId = accountToId;
+    this.amount = amount;
+    this.executeAt = executeAt;
+    this.intervalMillis = intervalMillis;
+    this.lastStatus = lastStatus;
+  }
+}
@@ -0,0 +1,59 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Hot account whose balance is spread over several stripe accounts of the data store, so that concurrent credits land
+ * on different stripes instead of contending on one account. The balance of the account is the sum of its stripes.
+ *
+ * Each thread works on one stripe, selected by {@link #select(Account)}. The stripes are only gathered into one when a
+ * debit is larger than the balance of the stripe of the thread.
+ *
+ */
+public class StripedAccount extends Account {
+
+  private final Account[] stripes;
+
+  public StripedAccount(String accountId, Account[] stripes) {
+    super(accountId, null);
+    this.stripes = stripes;
+  }
+
+  /**
+   * Sums the balances of the stripes. The sum is only consistent while the caller has exclusive access to all of them.
+   */
+  @Override
+  public BigDecimal getBalance() {
+    BigDecimal balance = BigDecimal.ZERO;
+    for (Account stripe : stripes) {
+      balance = balance.add(stripe.getBalance());
+    }
+    return balance;
+  }
+
+  @Override
+  public void setBalance(BigDecimal balance) {
+    throw new UnsupportedOperationException("Balance of striped account " + getAccountId() + " can't be set!");
+  }
+
+  @JsonIgnore
+  public Account[] getStripes() {
+    return stripes;
+  }
+
+  /**
+   * Returns the account the current thread works on: its stripe if the account is striped, else the account itself.
+   *
+   * @param account
+   * @return
+   */
+  public static Account select(Account account) {
+    if (account instanceof StripedAccount) {
+      Account[] stripes = ((StripedAccount) account).stripes;
+      return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+    return account;
+  }
+}
@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+/**
+ * Leg of a multi-leg transfer: the amount is debited from the account if it's negative, and credited to it otherwise.
+ *
+ */
+@Data
+public class TransferLeg {
+
+  private final String accountId;
+
+  private final BigDecimal amount;
+
+  @JsonCreator
+  public TransferLeg(@JsonProperty("accountId") String accountId,
+    @JsonProperty("amount") BigDecimal amount) {
+    this.accountId = accountId;
+    this.amount = amount;
+  }
+}
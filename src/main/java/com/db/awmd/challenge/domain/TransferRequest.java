@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+@Data
+public class TransferRequest {
+
+  private final String accountFromId;
+
+  private final String accountToId;
+
+  private final BigDecimal amount;
+
+  @JsonCreator
+  public TransferRequest(@JsonProperty("accountFromId") String accountFromId,
+    @JsonProperty("accountToId") String accountToId,
+    @JsonProperty("amount") BigDecimal amount) {
+    this.accountFromId = accountFromId;
+    this.accountToId = accountToId;
+    this.amount = amount;
+  }
+}
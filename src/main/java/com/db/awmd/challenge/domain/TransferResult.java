@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import lombok.Data;
+
+/**
+ * Result of one transfer of a batch. The index is the position of the transfer in the submitted batch.
+ *
+ */
+@Data
+@JsonInclude(Include.NON_NULL)
+public class TransferResult {
+
+  private final int index;
+
+  private final TransferStatus status;
+
+  private final String message;
+}
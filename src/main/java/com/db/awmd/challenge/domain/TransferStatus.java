@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Outcome of a single transfer.
+ *
+ */
+public enum TransferStatus {
+
+  COMPLETED,
+
+  INVALID_AMOUNT,
+
+  NO_SUCH_ACCOUNT,
+
+  INSUFFICIENT_BALANCE,
+
+  /**
+   * Valid on its own, but not executed because another transfer of the same atomic batch was rejected.
+   */
+  ABORTED
+}
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * This exception is thrown when another node of the cluster can't be reached or doesn't answer in time.
+ *
+ */
+public class ClusterUnavailableException extends RuntimeException {
+
+  public ClusterUnavailableException(String message) {
+    super(message);
+  }
+
+  public ClusterUnavailableException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
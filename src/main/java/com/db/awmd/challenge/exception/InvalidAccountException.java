@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class InvalidAccountException extends RuntimeException {
+
+  public InvalidAccountException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class VersionUnavailableException extends RuntimeException {
+
+  public VersionUnavailableException(String message) {
+    super(message);
+  }
+}
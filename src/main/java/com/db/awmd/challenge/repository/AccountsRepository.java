@@ -1,18 +1,40 @@
 package com.db.awmd.challenge.repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
 
 public interface AccountsRepository {
 
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  /**
+   * This method checks that the data store can hold the account before it's created, so that an account it can't hold
+   * is rejected before anything is changed. Repositories which hold any account accept it.
+   * 
+   * @param account
+   * @throws InvalidAccountException if the id or the balance of the account can't be stored
+   */
+  default void validate(Account account) throws InvalidAccountException {
+  }
+
   Account getAccount(String accountId);
 
   void clearAccounts();
+
+  /**
+   * This method passes every account of the data store to the given action. Accounts created or changed while the
+   * iteration runs may or may not be seen.
+   * 
+   * @param action
+   */
+  void forEachAccount(Consumer<Account> action);
   
   /**
    * This method debits the given amount from the specified source account. It updates the data store
@@ -24,6 +46,24 @@ public interface AccountsRepository {
    */
   void debitAccount(Account account, BigDecimal amount) throws InSufficientBalanceException;
   
+  /**
+   * This method debits the given amount from the specified account if its balance covers it, like
+   * {@link #debitAccount(Account, BigDecimal)} but reporting an insufficient balance without throwing, so a rejected
+   * debit doesn't allocate.
+   * 
+   * @param account
+   * @param amount
+   * @return false if the balance doesn't cover the amount, nothing being changed
+   */
+  default boolean tryDebit(Account account, BigDecimal amount) {
+    try {
+      debitAccount(account, amount);
+      return true;
+    } catch (InSufficientBalanceException e) {
+      return false;
+    }
+  }
+  
   /**
    * This method credits the the specified account with the given amount and updates the data store.
    * 
@@ -32,4 +72,82 @@ public interface AccountsRepository {
    */
   void creditAccount(Account account, BigDecimal amount) ;
   
+  /**
+   * This method debits the source account and credits the destination account as a single change of the data store.
+   * The caller must hold exclusive access to both the accounts.
+   * 
+   * @param fromAccount
+   * @param toAccount
+   * @param amount
+   * @throws InSufficientBalanceException
+   */
+  default void transfer(Account fromAccount, Account toAccount, BigDecimal amount) throws InSufficientBalanceException {
+    if (!tryTransfer(fromAccount, toAccount, amount)) {
+      throw new InSufficientBalanceException("Account: " + fromAccount.getAccountId()
+          + " does not have sufficient balance to perform this transaction!");
+    }
+  }
+  
+  /**
+   * This method transfers like {@link #transfer(Account, Account, BigDecimal)}, reporting an insufficient balance of
+   * the source account without throwing.
+   * 
+   * @param fromAccount
+   * @param toAccount
+   * @param amount
+   * @return false if the balance of the source account doesn't cover the amount, nothing being changed
+   */
+  default boolean tryTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+    if (!tryDebit(fromAccount, amount)) {
+      return false;
+    }
+    creditAccount(toAccount, amount);
+    return true;
+  }
+  
+  /**
+   * This method applies the net change of several accounts as a single change of the data store. Negative changes are
+   * debited first, then positive changes are credited. The caller must hold exclusive access to all the accounts.
+   * 
+   * @param changes net change keyed by account id
+   * @throws InSufficientBalanceException
+   */
+  default void applyChanges(Map<String, BigDecimal> changes) throws InSufficientBalanceException {
+    for (Map.Entry<String, BigDecimal> change : changes.entrySet()) {
+      if (change.getValue().signum() < 0) {
+        debitAccount(getAccount(change.getKey()), change.getValue().negate());
+      }
+    }
+    for (Map.Entry<String, BigDecimal> change : changes.entrySet()) {
+      if (change.getValue().signum() > 0) {
+        creditAccount(getAccount(change.getKey()), change.getValue());
+      }
+    }
+  }
+  
+  /**
+   * This method moves the whole balance of the source accounts to the target account as a single change of the data
+   * store, e.g. to gather the stripes of a striped account. A debit can't empty an account, so the sources are credited
+   * with their negated balance instead. The caller must hold exclusive access to all the accounts.
+   * 
+   * @param target
+   * @param sources
+   */
+  default void gather(Account target, Collection<Account> sources) {
+    for (Account source : sources) {
+      BigDecimal balance = source.getBalance();
+      if (balance.signum() != 0) {
+        creditAccount(source, balance.negate());
+        creditAccount(target, balance);
+      }
+    }
+  }
+  
+  /**
+   * This method blocks until every change made to the data store so far is durable. Repositories which don't persist
+   * anything return at once.
+   */
+  default void sync() {
+  }
+  
 }
@@ -0,0 +1,93 @@
+package com.db.awmd.challenge.repository;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AtomicAccount;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+
+/**
+ * Repository which stores every account as an {@link AtomicAccount}. Debits and credits are lock-free compare-and-set
+ * loops on {@code long} minor units instead of a read-modify-write of a {@link BigDecimal}.
+ * 
+ * Enabled with {@code accounts.repository=atomic}. The accounts passed to {@link #createAccount(Account)} are copied,
+ * so the balance must be read back through {@link #getAccount(String)}.
+ *
+ */
+@Repository
+@ConditionalOnProperty(prefix = "accounts", name = "repository", havingValue = "atomic")
+public class AccountsRepositoryAtomic implements AccountsRepository {
+
+	private final Map<String, AtomicAccount> accounts = new ConcurrentHashMap<>();
+
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		AtomicAccount atomicAccount = account instanceof AtomicAccount ? (AtomicAccount) account
+				: new AtomicAccount(account.getAccountId(), account.getBalance());
+		Account previousAccount = accounts.putIfAbsent(account.getAccountId(), atomicAccount);
+		if (previousAccount != null) {
+			throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+		}
+	}
+
+	@Override
+	public void validate(Account account) throws InvalidAccountException {
+		if (!MinorUnits.isRepresentable(account.getBalance())) {
+			throw new InvalidAccountException("Balance " + account.getBalance() + " of account " + account.getAccountId()
+					+ " can't be stored in minor units!");
+		}
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		return accounts.get(accountId);
+	}
+
+	@Override
+	public void clearAccounts() {
+		accounts.clear();
+	}
+
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		accounts.values().forEach(action);
+	}
+
+	@Override
+	public void debitAccount(Account account, BigDecimal amount) throws InSufficientBalanceException {
+		if (!tryDebit(account, amount)) {
+			throw new InSufficientBalanceException("Account: " + account.getAccountId()
+					+ " does not have sufficient balance to perform this transaction!");
+		}
+	}
+
+	@Override
+	public boolean tryDebit(Account account, BigDecimal amount) {
+		return resolve(account).tryDebit(MinorUnits.toMinorUnits(amount));
+	}
+
+	@Override
+	public void creditAccount(Account account, BigDecimal amount) {
+		resolve(account).credit(MinorUnits.toMinorUnits(amount));
+	}
+
+	private AtomicAccount resolve(Account account) {
+		if (account instanceof AtomicAccount) {
+			return (AtomicAccount) account;
+		}
+		AtomicAccount stored = accounts.get(account.getAccountId());
+		if (stored == null) {
+			throw new IllegalArgumentException("Account " + account.getAccountId() + " is not stored in this repository!");
+		}
+		return stored;
+	}
+}
@@ -3,7 +3,9 @@ package com.db.awmd.challenge.repository;
 import java.math.BigDecimal;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import com.db.awmd.challenge.domain.Account;
@@ -11,6 +13,7 @@ import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InSufficientBalanceException;
 
 @Repository
+@ConditionalOnProperty(prefix = "accounts", name = "repository", havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
 	private final Map<String, Account> accounts = new ConcurrentHashMap<>();
@@ -33,17 +36,27 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
 		accounts.clear();
 	}
 
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		accounts.values().forEach(action);
+	}
+
 	@Override
 	public void debitAccount(Account account, BigDecimal amount)
 			throws InSufficientBalanceException {		
-		
-		// Check if it has sufficient balance to perform the transaction
-		  if(account.getBalance().compareTo(amount) > 0){
-			  account.setBalance(account.getBalance().subtract(amount)); 
-		  }else{
-			  throw new InSufficientBalanceException("Account: "+account.getAccountId() + " does not have sufficient balance to perform this transaction!");
-		  }
+		if (!tryDebit(account, amount)) {
+			throw new InSufficientBalanceException("Account: "+account.getAccountId() + " does not have sufficient balance to perform this transaction!");
+		}
+	}
 
+	@Override
+	public boolean tryDebit(Account account, BigDecimal amount) {
+		// Check if it has sufficient balance to perform the transaction
+		if (account.getBalance().compareTo(amount) <= 0) {
+			return false;
+		}
+		account.setBalance(account.getBalance().subtract(amount));
+		return true;
 	}
 
 	@Override
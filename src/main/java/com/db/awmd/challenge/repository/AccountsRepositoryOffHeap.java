@@ -0,0 +1,445 @@
+package com.db.awmd.challenge.repository;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+
+/**
+ * Repository which keeps the accounts outside the Java heap, in open-addressing hash tables held in direct
+ * {@link ByteBuffer}s. Every account takes one fixed-width slot holding its id, of at most {@link #MAX_KEY_LENGTH}
+ * UTF-8 bytes, and its balance in {@link MinorUnits}, so the heap and the garbage collector no longer grow with the
+ * number of accounts.
+ *
+ * The tables are split into segments guarded by their own {@link StampedLock}. Balance reads are optimistic and take no
+ * lock at all unless they race with a change of the same segment. {@link Account} objects are only created at the API
+ * boundary, by {@link #getAccount(String)} and {@link #forEachAccount(Consumer)}: they are views which read and write
+ * the table, and hold nothing but the account id.
+ *
+ * Enabled with {@code accounts.repository=off-heap}. The direct memory used is capped by
+ * {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size.
+ *
+ */
+@Repository
+@ConditionalOnProperty(prefix = "accounts", name = "repository", havingValue = "off-heap")
+public class AccountsRepositoryOffHeap implements AccountsRepository {
+
+	/**
+	 * Largest account id, in UTF-8 bytes, which fits in a slot.
+	 */
+	public static final int MAX_KEY_LENGTH = 32;
+
+	/*
+	 * Slot layout: key length (0 for an empty slot), padding, hash, key, balance in minor units.
+	 */
+	private static final int KEY_LENGTH_OFFSET = 0;
+
+	private static final int HASH_OFFSET = 4;
+
+	private static final int KEY_OFFSET = 8;
+
+	private static final int BALANCE_OFFSET = KEY_OFFSET + MAX_KEY_LENGTH;
+
+	private static final int SLOT_SIZE = BALANCE_OFFSET + 8;
+
+	/**
+	 * Largest table of a segment which still fits in a single buffer.
+	 */
+	private static final int MAX_SLOTS = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+
+	private static final int MIN_SLOTS = 16;
+
+	/**
+	 * The segment is selected by the top 8 bits of the hash.
+	 */
+	private static final int MAX_SEGMENTS = 256;
+
+	private static final long NO_ACCOUNT = Long.MIN_VALUE;
+
+	private final Segment[] segments;
+
+	private final int segmentMask;
+
+	private final int initialSlots;
+
+	public AccountsRepositoryOffHeap() {
+		this(64, 1 << 20);
+	}
+
+	@Autowired
+	public AccountsRepositoryOffHeap(@Value("${accounts.off-heap.segments:64}") int segmentCount,
+			@Value("${accounts.off-heap.expected-accounts:1048576}") long expectedAccounts) {
+		if (segmentCount <= 0 || segmentCount > MAX_SEGMENTS || expectedAccounts < 0) {
+			throw new IllegalArgumentException("Number of segments must be between 1 and " + MAX_SEGMENTS
+					+ " and expected accounts not negative!");
+		}
+		int size = 1;
+		while (size < segmentCount) {
+			size <<= 1;
+		}
+		// Size the tables so the expected accounts stay under the 75% load factor
+		long slots = MIN_SLOTS;
+		while (slots < MAX_SLOTS && slots * 3 / 4 * size < expectedAccounts) {
+			slots <<= 1;
+		}
+		this.initialSlots = (int) slots;
+		this.segments = new Segment[size];
+		for (int i = 0; i < size; i++) {
+			segments[i] = new Segment(initialSlots);
+		}
+		this.segmentMask = size - 1;
+	}
+
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		String accountId = account.getAccountId();
+		byte[] key = encode(accountId);
+		long units = MinorUnits.toMinorUnits(account.getBalance());
+		int hash = hash(accountId);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.writeLock();
+		try {
+			int offset = find(segment.table, hash, key);
+			if (offset >= 0) {
+				throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+			}
+			if (segment.size + 1 > slotCount(segment.table) / 4 * 3) {
+				segment.table = grow(segment.table);
+				offset = find(segment.table, hash, key);
+			}
+			ByteBuffer table = segment.table;
+			int slot = -1 - offset;
+			table.putInt(slot + HASH_OFFSET, hash);
+			for (int i = 0; i < key.length; i++) {
+				table.put(slot + KEY_OFFSET + i, key[i]);
+			}
+			table.putLong(slot + BALANCE_OFFSET, units);
+			// The key length marks the slot as used, so it is written last
+			table.put(slot + KEY_LENGTH_OFFSET, (byte) key.length);
+			segment.size++;
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void validate(Account account) throws InvalidAccountException {
+		if (encodeIfFits(account.getAccountId()) == null) {
+			throw new InvalidAccountException("Account id " + account.getAccountId() + " must have between 1 and "
+					+ MAX_KEY_LENGTH + " bytes!");
+		}
+		if (!MinorUnits.isRepresentable(account.getBalance())) {
+			throw new InvalidAccountException("Balance " + account.getBalance() + " of account " + account.getAccountId()
+					+ " can't be stored in minor units!");
+		}
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		byte[] key = encodeIfFits(accountId);
+		if (key == null || readBalance(accountId, key) == NO_ACCOUNT) {
+			return null;
+		}
+		return new OffHeapAccount(this, accountId);
+	}
+
+	@Override
+	public void clearAccounts() {
+		for (Segment segment : segments) {
+			long stamp = segment.lock.writeLock();
+			try {
+				segment.table = ByteBuffer.allocateDirect(initialSlots * SLOT_SIZE);
+				segment.size = 0;
+			} finally {
+				segment.lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		List<String> accountIds = new ArrayList<>();
+		for (Segment segment : segments) {
+			// Collect the ids first so the action never runs while the segment is locked
+			long stamp = segment.lock.readLock();
+			try {
+				ByteBuffer table = segment.table;
+				byte[] key = new byte[MAX_KEY_LENGTH];
+				for (int slot = 0; slot < table.capacity(); slot += SLOT_SIZE) {
+					int length = table.get(slot + KEY_LENGTH_OFFSET);
+					if (length != 0) {
+						for (int i = 0; i < length; i++) {
+							key[i] = table.get(slot + KEY_OFFSET + i);
+						}
+						accountIds.add(new String(key, 0, length, StandardCharsets.UTF_8));
+					}
+				}
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+			for (String accountId : accountIds) {
+				action.accept(new OffHeapAccount(this, accountId));
+			}
+			accountIds.clear();
+		}
+	}
+
+	@Override
+	public void debitAccount(Account account, BigDecimal amount) throws InSufficientBalanceException {
+		if (!tryDebit(account, amount)) {
+			throw new InSufficientBalanceException("Account: " + account.getAccountId()
+					+ " does not have sufficient balance to perform this transaction!");
+		}
+	}
+
+	@Override
+	public boolean tryDebit(Account account, BigDecimal amount) {
+		long units = MinorUnits.toMinorUnits(amount);
+		String accountId = account.getAccountId();
+		byte[] key = encode(accountId);
+		int hash = hash(accountId);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.writeLock();
+		try {
+			int offset = locate(segment.table, hash, key, accountId);
+			long balance = segment.table.getLong(offset + BALANCE_OFFSET);
+			if (balance <= units) {
+				return false;
+			}
+			segment.table.putLong(offset + BALANCE_OFFSET, balance - units);
+			return true;
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void creditAccount(Account account, BigDecimal amount) {
+		long units = MinorUnits.toMinorUnits(amount);
+		String accountId = account.getAccountId();
+		byte[] key = encode(accountId);
+		int hash = hash(accountId);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.writeLock();
+		try {
+			int offset = locate(segment.table, hash, key, accountId);
+			long balance = segment.table.getLong(offset + BALANCE_OFFSET);
+			segment.table.putLong(offset + BALANCE_OFFSET, Math.addExact(balance, units));
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * This method returns the number of stored accounts.
+	 *
+	 * @return
+	 */
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			long stamp = segment.lock.readLock();
+			try {
+				size += segment.size;
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * This method returns the number of bytes of direct memory taken by the tables.
+	 *
+	 * @return
+	 */
+	public long getOffHeapBytes() {
+		long bytes = 0;
+		for (Segment segment : segments) {
+			long stamp = segment.lock.readLock();
+			try {
+				bytes += segment.table.capacity();
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return bytes;
+	}
+
+	private long readBalance(String accountId, byte[] key) {
+		int hash = hash(accountId);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.tryOptimisticRead();
+		long balance = balance(segment.table, hash, key);
+		if (!segment.lock.validate(stamp)) {
+			stamp = segment.lock.readLock();
+			try {
+				balance = balance(segment.table, hash, key);
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+		return balance;
+	}
+
+	private void writeBalance(String accountId, long units) {
+		byte[] key = encode(accountId);
+		int hash = hash(accountId);
+		Segment segment = segmentFor(hash);
+		long stamp = segment.lock.writeLock();
+		try {
+			segment.table.putLong(locate(segment.table, hash, key, accountId) + BALANCE_OFFSET, units);
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	private Segment segmentFor(int hash) {
+		// The table index uses the low bits of the hash, the segment the high ones
+		return segments[(hash >>> 24) & segmentMask];
+	}
+
+	private static long balance(ByteBuffer table, int hash, byte[] key) {
+		int offset = find(table, hash, key);
+		return offset < 0 ? NO_ACCOUNT : table.getLong(offset + BALANCE_OFFSET);
+	}
+
+	private static int locate(ByteBuffer table, int hash, byte[] key, String accountId) {
+		int offset = find(table, hash, key);
+		if (offset < 0) {
+			throw new IllegalArgumentException("Account " + accountId + " is not stored in this repository!");
+		}
+		return offset;
+	}
+
+	/**
+	 * Looks the key up with linear probing. The probe is bounded by the table size so that it also ends when the table
+	 * is read without a lock while being changed.
+	 *
+	 * @return the offset of the slot holding the key, or {@code -1 - offset} of the empty slot where it belongs
+	 */
+	private static int find(ByteBuffer table, int hash, byte[] key) {
+		int mask = slotCount(table) - 1;
+		int index = hash & mask;
+		for (int probes = 0; probes <= mask; probes++) {
+			int offset = index * SLOT_SIZE;
+			int length = table.get(offset + KEY_LENGTH_OFFSET);
+			if (length == 0) {
+				return -1 - offset;
+			}
+			if (length == key.length && table.getInt(offset + HASH_OFFSET) == hash && keyEquals(table, offset, key)) {
+				return offset;
+			}
+			index = (index + 1) & mask;
+		}
+		return Integer.MIN_VALUE;
+	}
+
+	private static boolean keyEquals(ByteBuffer table, int offset, byte[] key) {
+		for (int i = 0; i < key.length; i++) {
+			if (table.get(offset + KEY_OFFSET + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer grow(ByteBuffer table) {
+		int slots = slotCount(table);
+		if (slots >= MAX_SLOTS) {
+			throw new IllegalStateException("Off-heap account table is full!");
+		}
+		ByteBuffer grown = ByteBuffer.allocateDirect(slots * 2 * SLOT_SIZE);
+		int mask = slots * 2 - 1;
+		for (int offset = 0; offset < table.capacity(); offset += SLOT_SIZE) {
+			if (table.get(offset + KEY_LENGTH_OFFSET) != 0) {
+				int index = table.getInt(offset + HASH_OFFSET) & mask;
+				while (grown.get(index * SLOT_SIZE + KEY_LENGTH_OFFSET) != 0) {
+					index = (index + 1) & mask;
+				}
+				for (int i = 0; i < SLOT_SIZE; i += 8) {
+					grown.putLong(index * SLOT_SIZE + i, table.getLong(offset + i));
+				}
+			}
+		}
+		return grown;
+	}
+
+	private static int slotCount(ByteBuffer table) {
+		return table.capacity() / SLOT_SIZE;
+	}
+
+	private static int hash(String accountId) {
+		// Fibonacci hashing spreads the String hash over all the bits
+		return accountId.hashCode() * 0x9E3779B9;
+	}
+
+	private static byte[] encode(String accountId) {
+		byte[] key = encodeIfFits(accountId);
+		if (key == null) {
+			throw new IllegalArgumentException("Account id " + accountId + " must have between 1 and " + MAX_KEY_LENGTH
+					+ " bytes!");
+		}
+		return key;
+	}
+
+	private static byte[] encodeIfFits(String accountId) {
+		if (accountId == null || accountId.isEmpty() || accountId.length() > MAX_KEY_LENGTH) {
+			return null;
+		}
+		byte[] key = accountId.getBytes(StandardCharsets.UTF_8);
+		return key.length > MAX_KEY_LENGTH ? null : key;
+	}
+
+	private static final class Segment {
+
+		private final StampedLock lock = new StampedLock();
+
+		private ByteBuffer table;
+
+		private int size;
+
+		Segment(int slots) {
+			this.table = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+		}
+	}
+
+	/**
+	 * Account materialized at the API boundary. The balance is read from and written to the table on every call, so the
+	 * view is always current; it is {@code null} once the account has been cleared from the repository.
+	 */
+	private static final class OffHeapAccount extends Account {
+
+		private final AccountsRepositoryOffHeap repository;
+
+		OffHeapAccount(AccountsRepositoryOffHeap repository, String accountId) {
+			super(accountId, null);
+			this.repository = repository;
+		}
+
+		@Override
+		public BigDecimal getBalance() {
+			long units = repository.readBalance(getAccountId(), encode(getAccountId()));
+			return units == NO_ACCOUNT ? null : MinorUnits.toBigDecimal(units);
+		}
+
+		@Override
+		public void setBalance(BigDecimal balance) {
+			repository.writeBalance(getAccountId(), MinorUnits.toMinorUnits(balance));
+		}
+	}
+}
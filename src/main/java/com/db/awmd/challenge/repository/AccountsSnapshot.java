@@ -0,0 +1,204 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.db.awmd.challenge.domain.Account;
+
+/**
+ * Compact memory-mapped snapshot of the complete account table, written and read through {@link MappedByteBuffer}
+ * windows.
+ *
+ * A snapshot is fuzzy: it is taken while transfers keep running, after the journal was rolled to a new segment. Since
+ * journal records hold the balances after each change, replaying the journal from that segment on top of the
+ * snapshot gives back the exact state.
+ *
+ * Layout: {@code int magic, int version, long first journal segment, long account count}, followed by one entry per
+ * account: {@code id length, id (UTF-8), short scale, byte unscaled length, unscaled value}. A snapshot is
+ * written to a temporary file, forced and then renamed, so only complete snapshots are ever loaded.
+ *
+ */
+public final class AccountsSnapshot {
+
+	private static final int MAGIC = 0x41434354;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 24;
+
+	private static final String PREFIX = "snapshot-";
+
+	private static final String SUFFIX = ".snap";
+
+	/**
+	 * Largest entry: id of at most 65535 bytes and an unscaled value of at most 255 bytes.
+	 */
+	private static final int MAX_ENTRY_SIZE = 4 + TransferJournal.MAX_ACCOUNT_ID_BYTES + 3 + 255;
+
+	private static final long WINDOW_SIZE = 64L << 20;
+
+	private AccountsSnapshot() {
+	}
+
+	/**
+	 * This method writes a snapshot of all the accounts of the source repository, and runs the given action once the
+	 * snapshot is durable but before it's published under its final name.
+	 *
+	 * @param directory
+	 * @param segment first journal segment which must be replayed on top of the snapshot
+	 * @param source
+	 * @param beforePublish e.g. makes durable the journal records of the changes the snapshot read
+	 * @return the snapshot file
+	 * @throws IOException
+	 */
+	public static Path write(Path directory, long segment, AccountsRepository source, Runnable beforePublish)
+			throws IOException {
+		Path file = path(directory, segment);
+		Path temporary = directory.resolve(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			Writer writer = new Writer(channel);
+			try {
+				source.forEachAccount(writer::put);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			long size = writer.finish();
+
+			MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putLong(segment).putLong(writer.count);
+			header.force();
+			channel.truncate(size);
+			channel.force(true);
+		}
+		beforePublish.run();
+		Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		return file;
+	}
+
+	/**
+	 * This method loads the given snapshot into the (empty) target repository.
+	 *
+	 * @param file
+	 * @param target
+	 * @return first journal segment which must be replayed on top of the snapshot
+	 * @throws IOException
+	 */
+	public static long load(Path file, AccountsRepository target) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			MappedByteBuffer window = channel.map(MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+			if (size < HEADER_SIZE || window.getInt() != MAGIC || window.getInt() != VERSION) {
+				throw new IOException("Snapshot " + file + " isn't valid!");
+			}
+			long segment = window.getLong();
+			long count = window.getLong();
+			long windowStart = 0;
+			for (long i = 0; i < count; i++) {
+				if (window.remaining() < MAX_ENTRY_SIZE && windowStart + window.limit() < size) {
+					windowStart += window.position();
+					window = channel.map(MapMode.READ_ONLY, windowStart, Math.min(size - windowStart, WINDOW_SIZE));
+				}
+				String accountId = TransferJournal.getString(window);
+				BigDecimal balance = TransferJournal.getDecimal(window);
+				target.createAccount(new Account(accountId, balance));
+			}
+			return segment;
+		}
+	}
+
+	/**
+	 * This method returns the most recent snapshot of the directory, or null if there is none.
+	 *
+	 * @param directory
+	 * @return
+	 * @throws IOException
+	 */
+	public static Path latest(Path directory) throws IOException {
+		Path latest = null;
+		long latestSegment = -1;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path path : stream) {
+				long segment = segmentOf(path);
+				if (segment > latestSegment) {
+					latest = path;
+					latestSegment = segment;
+				}
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * This method deletes the snapshots older than the given one.
+	 *
+	 * @param directory
+	 * @param kept
+	 * @throws IOException
+	 */
+	public static void deleteOlderThan(Path directory, Path kept) throws IOException {
+		long keptSegment = segmentOf(kept);
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path path : stream) {
+				if (segmentOf(path) < keptSegment) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	private static long segmentOf(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+
+	private static Path path(Path directory, long segment) {
+		return directory.resolve(String.format("%s%016d%s", PREFIX, segment, SUFFIX));
+	}
+
+	private static final class Writer {
+
+		private final FileChannel channel;
+
+		private MappedByteBuffer window;
+
+		private long windowStart;
+
+		private long count;
+
+		Writer(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.window = channel.map(MapMode.READ_WRITE, 0, WINDOW_SIZE);
+			this.window.position(HEADER_SIZE);
+		}
+
+		void put(Account account) {
+			try {
+				if (window.remaining() < MAX_ENTRY_SIZE) {
+					window.force();
+					windowStart += window.position();
+					window = channel.map(MapMode.READ_WRITE, windowStart, WINDOW_SIZE);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			TransferJournal.putString(window, account.getAccountId());
+			TransferJournal.putDecimal(window, account.getBalance());
+			count++;
+		}
+
+		long finish() {
+			window.force();
+			return windowStart + window.position();
+		}
+	}
+}
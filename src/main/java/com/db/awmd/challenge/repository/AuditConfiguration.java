@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Records every change of the accounts in an {@link AuditLog} when {@code accounts.audit.enabled=true}.
+ *
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "accounts.audit", name = "enabled", havingValue = "true")
+public class AuditConfiguration {
+
+	@Bean(destroyMethod = "close")
+	public AuditLog auditLog(@Value("${accounts.audit.directory:audit}") String directory,
+			@Value("${accounts.audit.ring-size:65536}") int ringSize,
+			@Value("${accounts.audit.max-file-bytes:67108864}") long maxFileBytes) throws IOException {
+		return new AuditLog(Paths.get(directory), ringSize, maxFileBytes);
+	}
+}
@@ -0,0 +1,351 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import com.db.awmd.challenge.domain.AuditEventType;
+import com.db.awmd.challenge.domain.TransferStatus;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Audit trail of every account creation, debit, credit and transfer, executed or rejected, written to rolling binary
+ * files off the critical path. {@link AuditLogReader} decodes the files.
+ *
+ * Recording an event claims the next slot of a ring buffer with a single atomic increment and stores the fields of the
+ * event in it, the account ids and the amount by reference, then publishes the slot. Nothing is formatted, allocated or
+ * locked. A single writer thread drains the published slots in order, encodes them and writes them in batches. The
+ * ring only blocks a recording thread when it's full, until the writer caught up: no event is ever dropped, and a
+ * writer failing to write stalls the changes rather than losing their trail.
+ *
+ * Record layout, framed like the {@link TransferJournal}: {@code int length, long sequence, long timestamp, byte type,
+ * byte status, account id, counterparty id, amount, int crc32}, the sequence numbering the events since the log was
+ * opened. A new file is started on every open and once a file
+ * reaches {@code accounts.audit.max-file-bytes}. The files are forced to disk when rolled and closed, the balances
+ * themselves being made durable by the journal.
+ *
+ */
+@Slf4j
+public class AuditLog implements Closeable {
+
+	static final String FILE_PREFIX = "audit-";
+
+	static final String FILE_SUFFIX = ".log";
+
+	static final byte NO_STATUS = -1;
+
+	/**
+	 * Records encoded before they are written at once.
+	 */
+	private static final int BATCH_BYTES = 1 << 16;
+
+	private static final long IDLE_NANOS = 1000000;
+
+	private static final long RETRY_NANOS = 100000000;
+
+	private final Path directory;
+
+	private final long maxFileBytes;
+
+	private final int mask;
+
+	private final long[] timestamps;
+
+	private final byte[] types;
+
+	private final byte[] statuses;
+
+	private final String[] accountIds;
+
+	private final String[] counterpartyIds;
+
+	private final BigDecimal[] amounts;
+
+	/**
+	 * Sequence of the event each slot holds once it's written, the slot being free again once it's consumed.
+	 */
+	private final AtomicLongArray published;
+
+	private final AtomicLong claimed = new AtomicLong();
+
+	/**
+	 * Events written to the files, whose slots can be reused. Only written by the writer thread.
+	 */
+	private volatile long consumed;
+
+	private final LongAdder fullWaits = new LongAdder();
+
+	private final CRC32 crc = new CRC32();
+
+	private final Thread writer;
+
+	private ByteBuffer buffer = ByteBuffer.allocate(2 * BATCH_BYTES);
+
+	private FileChannel channel;
+
+	private volatile long file;
+
+	private long fileBytes;
+
+	private volatile IOException failure;
+
+	private volatile boolean closed;
+
+	/**
+	 * @param directory
+	 * @param ringSize number of events the ring holds, rounded up to a power of two
+	 * @param maxFileBytes size beyond which a new file is started
+	 * @throws IOException
+	 */
+	public AuditLog(Path directory, int ringSize, long maxFileBytes) throws IOException {
+		this.directory = directory;
+		this.maxFileBytes = maxFileBytes;
+		int capacity = Integer.highestOneBit(Math.max(2, ringSize - 1)) << 1;
+		this.mask = capacity - 1;
+		this.timestamps = new long[capacity];
+		this.types = new byte[capacity];
+		this.statuses = new byte[capacity];
+		this.accountIds = new String[capacity];
+		this.counterpartyIds = new String[capacity];
+		this.amounts = new BigDecimal[capacity];
+		this.published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			published.set(i, -1);
+		}
+		Files.createDirectories(directory);
+		List<Long> files = files(directory);
+		this.file = files.isEmpty() ? 1 : files.get(files.size() - 1) + 1;
+		this.channel = openFile(file);
+		this.writer = new Thread(this::write, "audit-log-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * This method records an event. Events recorded once the log is closed are ignored.
+	 *
+	 * @param type
+	 * @param accountId
+	 * @param counterpartyId destination account of a transfer, null otherwise
+	 * @param amount
+	 * @param status outcome of a transfer, debit or credit, null otherwise
+	 */
+	public void record(AuditEventType type, String accountId, String counterpartyId, BigDecimal amount,
+			TransferStatus status) {
+		if (closed) {
+			return;
+		}
+		long sequence = claimed.getAndIncrement();
+		if (sequence - consumed > mask && !awaitSlot(sequence)) {
+			return;
+		}
+		int slot = (int) sequence & mask;
+		timestamps[slot] = System.currentTimeMillis();
+		types[slot] = (byte) type.ordinal();
+		statuses[slot] = status == null ? NO_STATUS : (byte) status.ordinal();
+		accountIds[slot] = accountId;
+		counterpartyIds[slot] = counterpartyId;
+		amounts[slot] = amount;
+		published.lazySet(slot, sequence);
+	}
+
+	/**
+	 * @return number of events recorded so far
+	 */
+	public long getRecorded() {
+		return claimed.get();
+	}
+
+	/**
+	 * @return number of events written to the files so far
+	 */
+	public long getWritten() {
+		return consumed;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * This method summarizes the log for reporting.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("recorded", claimed.get());
+		map.put("written", consumed);
+		map.put("ringSize", mask + 1);
+		map.put("fullWaits", fullWaits.sum());
+		map.put("file", file);
+		map.put("failing", failure != null);
+		return map;
+	}
+
+	/**
+	 * This method writes every event recorded so far, then closes the current file.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits for the writer to free the slot of the event.
+	 *
+	 * @return false if the log was closed meanwhile
+	 */
+	private boolean awaitSlot(long sequence) {
+		fullWaits.increment();
+		while (sequence - consumed > mask) {
+			if (closed && !writer.isAlive()) {
+				return false;
+			}
+			LockSupport.unpark(writer);
+			Thread.yield();
+		}
+		return true;
+	}
+
+	private void write() {
+		long next = 0;
+		while (true) {
+			int slot = (int) next & mask;
+			while (buffer.position() < BATCH_BYTES && published.get(slot) == next) {
+				encode(slot, next++);
+				slot = (int) next & mask;
+			}
+			if (buffer.position() > 0) {
+				if (flush()) {
+					consumed = next;
+				} else {
+					LockSupport.parkNanos(RETRY_NANOS);
+				}
+			} else if (closed && claimed.get() <= next) {
+				break;
+			} else {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+		try {
+			channel.force(false);
+			channel.close();
+		} catch (IOException e) {
+			log.error("Audit log couldn't be closed", e);
+		}
+	}
+
+	private void encode(int slot, long sequence) {
+		String accountId = accountIds[slot];
+		String counterpartyId = counterpartyIds[slot];
+		BigDecimal amount = amounts[slot];
+		int maxBytes = 34 + 3 * (accountId.length() + (counterpartyId == null ? 0 : counterpartyId.length()))
+				+ amount.unscaledValue().bitLength() / 8 + 4;
+		if (buffer.remaining() < maxBytes) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + maxBytes));
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+		int start = buffer.position();
+		buffer.putInt(0);
+		buffer.putLong(sequence);
+		buffer.putLong(timestamps[slot]);
+		buffer.put(types[slot]);
+		buffer.put(statuses[slot]);
+		TransferJournal.putString(buffer, accountId);
+		TransferJournal.putString(buffer, counterpartyId == null ? "" : counterpartyId);
+		TransferJournal.putDecimal(buffer, amount);
+		int end = buffer.position();
+		crc.reset();
+		crc.update(buffer.array(), start + 4, end - start - 4);
+		buffer.putInt((int) crc.getValue());
+		buffer.putInt(start, end - start - 4);
+
+		accountIds[slot] = null;
+		counterpartyIds[slot] = null;
+		amounts[slot] = null;
+	}
+
+	/**
+	 * Writes the encoded records, and starts a new file if the current one is full.
+	 *
+	 * @return false if they couldn't be written, the records left being retried
+	 */
+	private boolean flush() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				fileBytes += channel.write(buffer);
+			}
+			buffer.clear();
+			if (fileBytes >= maxFileBytes) {
+				channel.force(false);
+				channel.close();
+				channel = openFile(file + 1);
+				file++;
+				fileBytes = 0;
+			}
+			if (failure != null) {
+				log.info("Audit log is written again");
+				failure = null;
+			}
+			return true;
+		} catch (IOException e) {
+			if (failure == null) {
+				log.error("Audit log couldn't be written, the changes wait until it is", e);
+			}
+			failure = e;
+			buffer.compact();
+			return false;
+		}
+	}
+
+	private FileChannel openFile(long number) throws IOException {
+		return FileChannel.open(filePath(directory, number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	static Path filePath(Path directory, long number) {
+		return directory.resolve(String.format("%s%016d%s", FILE_PREFIX, number, FILE_SUFFIX));
+	}
+
+	/**
+	 * @return numbers of the audit files of the directory, in order
+	 */
+	static List<Long> files(Path directory) throws IOException {
+		List<Long> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				files.add(Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+}
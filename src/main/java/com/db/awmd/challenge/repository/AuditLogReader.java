@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.db.awmd.challenge.domain.AuditEvent;
+import com.db.awmd.challenge.domain.AuditEventType;
+import com.db.awmd.challenge.domain.TransferStatus;
+
+/**
+ * Decodes the files written by {@link AuditLog}. Run on its own, e.g. with {@code gradle readAudit -Pdirectory=audit},
+ * it prints the events of a directory one per line, tab-separated:
+ * {@code sequence, timestamp, type, status, account id, counterparty id, amount}.
+ *
+ */
+public final class AuditLogReader {
+
+	private static final AuditEventType[] TYPES = AuditEventType.values();
+
+	private static final TransferStatus[] STATUSES = TransferStatus.values();
+
+	private AuditLogReader() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Paths.get(args.length > 0 ? args[0] : "audit");
+		long events = read(directory, event -> System.out.println(format(event)));
+		System.err.println(events + " events read from " + directory.toAbsolutePath());
+	}
+
+	/**
+	 * This method passes the events of every file of the directory to the consumer, in the order they were recorded.
+	 * The records of a file are read up to the first incomplete or corrupt one, which a crash may leave at its end.
+	 *
+	 * @param directory
+	 * @param consumer
+	 * @return number of events read
+	 * @throws IOException
+	 */
+	public static long read(Path directory, Consumer<AuditEvent> consumer) throws IOException {
+		long events = 0;
+		CRC32 crc = new CRC32();
+		for (long number : AuditLog.files(directory)) {
+			ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(AuditLog.filePath(directory, number)));
+			while (file.remaining() >= 4) {
+				int start = file.position();
+				int length = file.getInt();
+				if (length <= 0 || file.remaining() < length + 4) {
+					break;
+				}
+				crc.reset();
+				crc.update(file.array(), start + 4, length);
+				if (file.getInt(start + 4 + length) != (int) crc.getValue()) {
+					break;
+				}
+				ByteBuffer record = (ByteBuffer) file.slice().limit(length);
+				consumer.accept(decode(record));
+				events++;
+				file.position(start + 4 + length + 4);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * This method formats an event as a line of text.
+	 *
+	 * @param event
+	 * @return
+	 */
+	public static String format(AuditEvent event) {
+		return event.getSequence() + "\t" + Instant.ofEpochMilli(event.getTimestamp()) + "\t" + event.getType() + "\t"
+				+ (event.getStatus() == null ? "-" : event.getStatus()) + "\t" + event.getAccountId() + "\t"
+				+ (event.getCounterpartyId() == null ? "-" : event.getCounterpartyId()) + "\t"
+				+ event.getAmount().toPlainString();
+	}
+
+	private static AuditEvent decode(ByteBuffer record) {
+		long sequence = record.getLong();
+		long timestamp = record.getLong();
+		AuditEventType type = TYPES[record.get()];
+		byte status = record.get();
+		String accountId = TransferJournal.getString(record);
+		String counterpartyId = TransferJournal.getString(record);
+		return new AuditEvent(sequence, timestamp, type, status == AuditLog.NO_STATUS ? null : STATUSES[status],
+				accountId, counterpartyId.isEmpty() ? null : counterpartyId, TransferJournal.getDecimal(record));
+	}
+}
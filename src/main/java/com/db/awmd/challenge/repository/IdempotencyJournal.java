@@ -0,0 +1,109 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.db.awmd.challenge.domain.TransferStatus;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Durable log of the outcomes of idempotent transfers, so retries are still recognized after a restart. The outcomes
+ * are appended to a {@link TransferJournal} of their own with group commit.
+ *
+ * Outcomes are only kept for a fixed time to live, so the log needs no snapshot: a new segment is started every time to
+ * live, and a segment is deleted once the one started after it is older than the time to live, as everything it holds
+ * has expired by then.
+ *
+ */
+@Slf4j
+public class IdempotencyJournal implements Closeable {
+
+	/**
+	 * Receives the outcomes found in the log.
+	 */
+	public interface Listener {
+
+		void replayed(String key, String fingerprint, TransferStatus status, String message, long createdAtMillis);
+	}
+
+	private static final TransferStatus[] STATUSES = TransferStatus.values();
+
+	private final TransferJournal journal;
+
+	private final ScheduledExecutorService expiryScheduler;
+
+	private long previousRoll;
+
+	public IdempotencyJournal(Path directory, int bufferSize, long timeToLiveMillis) throws IOException {
+		this.journal = new TransferJournal(directory, bufferSize);
+		this.expiryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "idempotency-journal-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		expiryScheduler.scheduleWithFixedDelay(() -> {
+			try {
+				expire();
+			} catch (IOException | RuntimeException e) {
+				log.error("Expiry of the idempotency journal failed", e);
+			}
+		}, timeToLiveMillis, timeToLiveMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * This method passes every outcome written before this log was opened to the listener, oldest first.
+	 *
+	 * @param listener
+	 * @return number of outcomes replayed
+	 * @throws IOException
+	 */
+	public long replay(Listener listener) throws IOException {
+		return journal.replay(0, record -> {
+			if (record.get() != TransferJournal.OUTCOME) {
+				throw new IllegalStateException("Unknown idempotency journal record type!");
+			}
+			long createdAtMillis = record.getLong();
+			TransferStatus status = STATUSES[record.get()];
+			String key = TransferJournal.getString(record);
+			String fingerprint = TransferJournal.getString(record);
+			String message = TransferJournal.getString(record);
+			listener.replayed(key, fingerprint, status, message.isEmpty() ? null : message, createdAtMillis);
+		});
+	}
+
+	/**
+	 * This method appends an outcome. It isn't durable until {@link #sync()} returns.
+	 */
+	public void append(String key, String fingerprint, TransferStatus status, String message, long createdAtMillis) {
+		journal.appendOutcome(key, fingerprint, status, message, createdAtMillis);
+	}
+
+	public void sync() {
+		journal.sync();
+	}
+
+	/**
+	 * This method starts a new segment and deletes the segments older than the one started by the previous call.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void expire() throws IOException {
+		long next = journal.roll();
+		if (previousRoll != 0) {
+			journal.deleteSegmentsBefore(previousRoll);
+		}
+		previousRoll = next;
+	}
+
+	@Override
+	public void close() throws IOException {
+		expiryScheduler.shutdownNow();
+		journal.close();
+	}
+}
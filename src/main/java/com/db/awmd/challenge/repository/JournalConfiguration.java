@@ -0,0 +1,46 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Wraps the configured repository into a {@link JournalingAccountsRepository} when
+ * {@code accounts.journal.enabled=true}, taking a snapshot every {@code accounts.snapshot.interval-millis} if set. The
+ * outcomes of idempotent transfers are journaled as well, in the {@code idempotency} sub-directory.
+ *
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "accounts.journal", name = "enabled", havingValue = "true")
+public class JournalConfiguration {
+
+	@Bean(destroyMethod = "close")
+	public TransferJournal transferJournal(@Value("${accounts.journal.directory:journal}") String directory,
+			@Value("${accounts.journal.buffer-size:1048576}") int bufferSize) throws IOException {
+		return new TransferJournal(Paths.get(directory), bufferSize);
+	}
+
+	@Bean(destroyMethod = "close")
+	@Primary
+	public JournalingAccountsRepository journalingAccountsRepository(AccountsRepository accountsRepository,
+			TransferJournal transferJournal,
+			@Value("${accounts.snapshot.interval-millis:0}") long snapshotIntervalMillis) throws IOException {
+		JournalingAccountsRepository repository = new JournalingAccountsRepository(accountsRepository, transferJournal);
+		if (snapshotIntervalMillis > 0) {
+			repository.scheduleSnapshots(snapshotIntervalMillis);
+		}
+		return repository;
+	}
+
+	@Bean(destroyMethod = "close")
+	public IdempotencyJournal idempotencyJournal(@Value("${accounts.journal.directory:journal}") String directory,
+			@Value("${accounts.journal.buffer-size:1048576}") int bufferSize,
+			@Value("${accounts.idempotency.time-to-live-millis:86400000}") long timeToLiveMillis) throws IOException {
+		return new IdempotencyJournal(Paths.get(directory, "idempotency"), bufferSize, timeToLiveMillis);
+	}
+}
@@ -0,0 +1,312 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decorator which makes the changes of another repository durable through a {@link TransferJournal}. On creation the
+ * latest {@link AccountsSnapshot} is loaded into the (empty) delegate and only the journal written after it is
+ * replayed, which restores every account as it was before the restart.
+ * 
+ * Every change is applied to the delegate, then appended to the journal. The callers hold the accounts they change
+ * exclusively, so the records of an account are appended in the order of its changes, and the journal only serializes
+ * the copy of each record: changes of distinct accounts are applied in parallel. A creation and a clear are applied
+ * and appended under the journal append lock, so no change of the account can be journaled before its creation. The
+ * changes aren't durable until {@link #sync()} returns, which the services call once they have released the account
+ * locks so that concurrent transfers share the same force to disk.
+ * 
+ * {@link #snapshot()} writes a new snapshot while transfers keep running and then deletes the journal segments it
+ * covers, so startup time no longer grows with the history of transfers. A snapshot may read a change whose record
+ * isn't durable yet, so before it's published it waits for the changes in progress during its scan to be appended and
+ * for the journal to be durable: a snapshot never holds a change which a crash could lose from the journal.
+ *
+ */
+@Slf4j
+public class JournalingAccountsRepository implements AccountsRepository, Closeable {
+
+	private final AccountsRepository delegate;
+
+	private final TransferJournal journal;
+
+	private ScheduledExecutorService snapshotScheduler;
+
+	/**
+	 * Change in progress of every thread which made one.
+	 */
+	private final Set<Change> changes = ConcurrentHashMap.newKeySet();
+
+	private final ThreadLocal<Change> threadChange = ThreadLocal.withInitial(() -> {
+		Change change = new Change();
+		changes.add(change);
+		return change;
+	});
+
+	/**
+	 * Number of the snapshots started so far plus one, which the changes are tagged with.
+	 */
+	private volatile long epoch = 1;
+
+	public JournalingAccountsRepository(AccountsRepository delegate, TransferJournal journal) throws IOException {
+		this.delegate = delegate;
+		this.journal = journal;
+		long start = System.nanoTime();
+		long fromSegment = 0;
+		Path snapshot = AccountsSnapshot.latest(journal.getDirectory());
+		if (snapshot != null) {
+			fromSegment = AccountsSnapshot.load(snapshot, delegate);
+			log.info("Loaded snapshot {} in {} ms", snapshot, (System.nanoTime() - start) / 1000000);
+		}
+		long records = journal.replay(delegate, fromSegment);
+		log.info("Replayed {} journal records in {} ms", records, (System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * This method writes a snapshot of all the accounts without stopping transfers, then deletes the journal segments
+	 * and the snapshots it makes obsolete.
+	 * 
+	 * @return the snapshot file
+	 * @throws IOException
+	 */
+	public synchronized Path snapshot() throws IOException {
+		long start = System.nanoTime();
+		long segment = journal.roll();
+		Path snapshot = AccountsSnapshot.write(journal.getDirectory(), segment, delegate, () -> {
+			awaitChanges();
+			journal.sync();
+		});
+		journal.deleteSegmentsBefore(segment);
+		AccountsSnapshot.deleteOlderThan(journal.getDirectory(), snapshot);
+		log.info("Wrote snapshot {} in {} ms", snapshot, (System.nanoTime() - start) / 1000000);
+		return snapshot;
+	}
+
+	/**
+	 * This method takes a snapshot periodically in the background.
+	 * 
+	 * @param intervalMillis
+	 */
+	public synchronized void scheduleSnapshots(long intervalMillis) {
+		if (snapshotScheduler == null) {
+			snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "accounts-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			snapshotScheduler.scheduleWithFixedDelay(() -> {
+				try {
+					snapshot();
+				} catch (IOException | RuntimeException e) {
+					log.error("Snapshot of the accounts failed", e);
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Waits for every change which may have been read by the scan of a snapshot to be appended to the journal. A change
+	 * started after the epoch moved is applied after the scan, so the snapshot can't have read it.
+	 */
+	private void awaitChanges() {
+		long scanned = epoch++;
+		for (Change change : changes) {
+			while (true) {
+				long started = change.epoch;
+				if (started == 0 || started > scanned) {
+					break;
+				}
+				LockSupport.parkNanos(100000);
+			}
+		}
+	}
+
+	private Change begin() {
+		Change change = threadChange.get();
+		change.epoch = epoch;
+		return change;
+	}
+
+	@Override
+	public void close() {
+		ScheduledExecutorService scheduler;
+		synchronized (this) {
+			scheduler = snapshotScheduler;
+			snapshotScheduler = null;
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		Change change = begin();
+		journal.lock();
+		try {
+			journal.ensureWritable();
+			delegate.createAccount(account);
+			journal.appendCreate(account.getAccountId(), account.getBalance());
+		} finally {
+			journal.unlock();
+			change.epoch = 0;
+		}
+	}
+
+	@Override
+	public void validate(Account account) throws InvalidAccountException {
+		if (account.getAccountId().getBytes(StandardCharsets.UTF_8).length > TransferJournal.MAX_ACCOUNT_ID_BYTES) {
+			throw new InvalidAccountException("Account id " + account.getAccountId() + " must have at most "
+					+ TransferJournal.MAX_ACCOUNT_ID_BYTES + " bytes!");
+		}
+		delegate.validate(account);
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		return delegate.getAccount(accountId);
+	}
+
+	@Override
+	public void clearAccounts() {
+		Change change = begin();
+		journal.lock();
+		try {
+			journal.ensureWritable();
+			delegate.clearAccounts();
+			journal.appendClear();
+		} finally {
+			journal.unlock();
+			change.epoch = 0;
+		}
+	}
+
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		delegate.forEachAccount(action);
+	}
+
+	@Override
+	public void debitAccount(Account account, BigDecimal amount) throws InSufficientBalanceException {
+		journal.ensureWritable();
+		Change change = begin();
+		try {
+			delegate.debitAccount(account, amount);
+			journal.appendBalances(account);
+		} finally {
+			change.epoch = 0;
+		}
+	}
+
+	@Override
+	public boolean tryDebit(Account account, BigDecimal amount) {
+		journal.ensureWritable();
+		Change change = begin();
+		try {
+			if (!delegate.tryDebit(account, amount)) {
+				return false;
+			}
+			journal.appendBalances(account);
+			return true;
+		} finally {
+			change.epoch = 0;
+		}
+	}
+
+	@Override
+	public void creditAccount(Account account, BigDecimal amount) {
+		journal.ensureWritable();
+		Change change = begin();
+		try {
+			delegate.creditAccount(account, amount);
+			journal.appendBalances(account);
+		} finally {
+			change.epoch = 0;
+		}
+	}
+
+	/**
+	 * Both legs of the transfer are journaled as a single record, so a crash can't leave only one of them. A transfer
+	 * whose legs are made by separate calls, e.g. the debit and the credit of a {@code ShardedTransferEngine} transfer
+	 * between two shards, is journaled as two records instead.
+	 */
+	@Override
+	public boolean tryTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+		journal.ensureWritable();
+		Change change = begin();
+		try {
+			if (!delegate.tryTransfer(fromAccount, toAccount, amount)) {
+				return false;
+			}
+			journal.appendBalances(fromAccount, toAccount);
+			return true;
+		} finally {
+			change.epoch = 0;
+		}
+	}
+
+	@Override
+	public void gather(Account target, Collection<Account> sources) {
+		journal.ensureWritable();
+		Change change = begin();
+		try {
+			delegate.gather(target, sources);
+			Account[] changed = sources.toArray(new Account[sources.size() + 1]);
+			changed[sources.size()] = target;
+			journal.appendBalances(changed);
+		} finally {
+			change.epoch = 0;
+		}
+	}
+
+	@Override
+	public void applyChanges(Map<String, BigDecimal> changes) throws InSufficientBalanceException {
+		journal.ensureWritable();
+		Change change = begin();
+		try {
+			delegate.applyChanges(changes);
+			Account[] changed = new Account[changes.size()];
+			int i = 0;
+			for (String accountId : changes.keySet()) {
+				changed[i++] = delegate.getAccount(accountId);
+			}
+			journal.appendBalances(changed);
+		} finally {
+			change.epoch = 0;
+		}
+	}
+
+	@Override
+	public void sync() {
+		journal.sync();
+	}
+
+	public TransferJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Epoch a thread's change in progress started in, 0 when it has none.
+	 */
+	private static final class Change {
+
+		private volatile long epoch;
+	}
+}
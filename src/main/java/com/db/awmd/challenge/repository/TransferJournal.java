@@ -0,0 +1,619 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only binary journal of account changes, written through a {@link FileChannel} with group commit.
+ *
+ * Every thread encodes its records into a buffer of its own, then appends them to a shared in-memory buffer under the
+ * append lock, which is only held to copy the record and number it. A single writer thread swaps that buffer out,
+ * writes it and forces it to disk, so every record appended while the previous force was running shares the next one.
+ * Callers wait for durability with {@link #sync()} after releasing their own locks.
+ *
+ * Every record carries the balances of the accounts after the change rather than the amounts moved, so replaying a
+ * record is idempotent. The journal is split into numbered segment files; a new segment is started on every open and
+ * on every {@link #roll()}, so segments covered by a snapshot can be deleted.
+ *
+ * The same format also journals the outcomes of idempotent transfers, see {@link IdempotencyJournal}.
+ *
+ * Record layout: {@code int length, byte type, payload, int crc32(type + payload)}, the length being at most
+ * {@link #MAX_RECORD_BYTES}. Replay of a segment stops at the first truncated or corrupted record, which can only be
+ * the tail written during a crash. The lengths of the strings and the number of accounts of a record are written as a
+ * {@code short} below {@code 32768}, and otherwise as an {@code int} with its sign bit set, so records written before
+ * larger lengths were supported are still read.
+ *
+ */
+@Slf4j
+public class TransferJournal implements Closeable {
+
+	static final byte CREATE = 1;
+
+	static final byte BALANCES = 2;
+
+	static final byte CLEAR = 3;
+
+	static final byte OUTCOME = 4;
+
+	/**
+	 * Largest record, e.g. the balances of a batch of 100000 transfers take a few MB. A longer length read on replay
+	 * can only be a torn or corrupted tail.
+	 */
+	static final int MAX_RECORD_BYTES = 1 << 26;
+
+	/**
+	 * Longest account id, in UTF-8 bytes, which bounds the size of an entry of an {@link AccountsSnapshot}.
+	 */
+	static final int MAX_ACCOUNT_ID_BYTES = 65535;
+
+	private static final String SEGMENT_PREFIX = "journal-";
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private final Path directory;
+
+	private final ReentrantLock appendLock = new ReentrantLock();
+
+	private final Condition notEmpty = appendLock.newCondition();
+
+	private final Object durableMonitor = new Object();
+
+	/**
+	 * Checksum of the records replayed, on the thread opening the journal.
+	 */
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Record each thread encodes before appending it.
+	 */
+	private final ThreadLocal<Record> records = ThreadLocal.withInitial(Record::new);
+
+	private final Thread writer;
+
+	private FileChannel channel;
+
+	private final long openedSegment;
+
+	private long segment;
+
+	private boolean rollPending;
+
+	private int rollAt;
+
+	private volatile long rolledSegment;
+
+	private ByteBuffer active;
+
+	private ByteBuffer flushing;
+
+	private volatile long appendedSequence;
+
+	private volatile long durableSequence;
+
+	private volatile long syncCount;
+
+	private volatile IOException failure;
+
+	private boolean closed;
+
+	public TransferJournal(Path directory, int bufferSize) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+		List<Long> segments = segments();
+		this.segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+		this.openedSegment = segment;
+		this.rolledSegment = segment;
+		this.channel = openSegment(segment);
+		this.active = ByteBuffer.allocate(bufferSize);
+		this.flushing = ByteBuffer.allocate(bufferSize);
+		this.writer = new Thread(this::write, "transfer-journal-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * This method replays the segments written before this journal was opened into the given repository, starting with
+	 * the given segment.
+	 *
+	 * @param target
+	 * @param fromSegment first segment to replay
+	 * @return number of records replayed
+	 * @throws IOException
+	 */
+	public long replay(AccountsRepository target, long fromSegment) throws IOException {
+		return replay(fromSegment, record -> apply(record, target));
+	}
+
+	/**
+	 * This method passes every valid record of the segments written before this journal was opened to the given
+	 * handler, starting with the given segment. The record buffer is positioned on the record type.
+	 *
+	 * @param fromSegment first segment to replay
+	 * @param handler
+	 * @return number of records replayed
+	 * @throws IOException
+	 */
+	long replay(long fromSegment, Consumer<ByteBuffer> handler) throws IOException {
+		long records = 0;
+		for (long existing : segments()) {
+			if (existing >= fromSegment && existing < openedSegment) {
+				records += replaySegment(segmentPath(existing), handler);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * The append lock is taken by every append. Holding it around a change of the data store and the append of its
+	 * record keeps any other record from being appended in between, which a creation needs. The records of the other
+	 * changes of an account are journaled in the order the changes were made as long as they are appended while the
+	 * account is held exclusively, as the transfer engines do.
+	 */
+	public void lock() {
+		appendLock.lock();
+	}
+
+	public void unlock() {
+		appendLock.unlock();
+	}
+
+	/**
+	 * This method fails fast when an earlier write failed, so no change is made to the data store which can't be
+	 * journaled.
+	 *
+	 * @throws UncheckedIOException if the journal couldn't be written
+	 */
+	public void ensureWritable() {
+		if (failure != null) {
+			throw new UncheckedIOException("Transfer journal couldn't be written!", failure);
+		}
+	}
+
+	public void appendCreate(String accountId, BigDecimal balance) {
+		Record record = begin(CREATE);
+		record.putString(accountId);
+		record.putDecimal(balance);
+		append(record);
+	}
+
+	public void appendBalances(Account... accounts) {
+		Record record = begin(BALANCES);
+		record.ensureCapacity(4);
+		putLength(record.buffer, accounts.length);
+		for (Account account : accounts) {
+			record.putString(account.getAccountId());
+			record.putDecimal(account.getBalance());
+		}
+		append(record);
+	}
+
+	public void appendClear() {
+		append(begin(CLEAR));
+	}
+
+	/**
+	 * This method appends the outcome of an idempotent transfer.
+	 *
+	 * @param key idempotency key
+	 * @param fingerprint identifies the transfer made with the key
+	 * @param status
+	 * @param message null if there is none
+	 * @param createdAtMillis
+	 */
+	public void appendOutcome(String key, String fingerprint, TransferStatus status, String message,
+			long createdAtMillis) {
+		Record record = begin(OUTCOME);
+		record.ensureCapacity(9);
+		record.buffer.putLong(createdAtMillis);
+		record.buffer.put((byte) status.ordinal());
+		record.putString(key);
+		record.putString(fingerprint);
+		record.putString(message == null ? "" : message);
+		append(record);
+	}
+
+	/**
+	 * This method starts a new segment. Every record appended before the call is written to the previous segments and
+	 * every record appended after it to the new one. It returns once the previous segment is durable and closed.
+	 *
+	 * @return number of the new segment
+	 */
+	public long roll() {
+		long next;
+		appendLock.lock();
+		try {
+			ensureWritable();
+			next = ++segment;
+			rollPending = true;
+			rollAt = active.position();
+			notEmpty.signal();
+		} finally {
+			appendLock.unlock();
+		}
+		synchronized (durableMonitor) {
+			boolean interrupted = false;
+			while (rolledSegment < next && failure == null) {
+				try {
+					durableMonitor.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		ensureWritable();
+		return next;
+	}
+
+	/**
+	 * This method deletes the segments older than the given one, once their content is covered by a snapshot.
+	 *
+	 * @param firstKept
+	 * @throws IOException
+	 */
+	public void deleteSegmentsBefore(long firstKept) throws IOException {
+		for (long existing : segments()) {
+			if (existing < firstKept) {
+				Files.deleteIfExists(segmentPath(existing));
+			}
+		}
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * This method blocks until every record appended so far is durable.
+	 *
+	 * @throws UncheckedIOException if the journal couldn't be written
+	 */
+	public void sync() {
+		awaitDurable(appendedSequence);
+	}
+
+	public long getAppendedSequence() {
+		return appendedSequence;
+	}
+
+	public long getDurableSequence() {
+		return durableSequence;
+	}
+
+	/**
+	 * @return number of forces to disk, each of them covering one group of records
+	 */
+	public long getSyncCount() {
+		return syncCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		appendLock.lock();
+		try {
+			closed = true;
+			notEmpty.signal();
+		} finally {
+			appendLock.unlock();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+
+	private void awaitDurable(long sequence) {
+		if (durableSequence < sequence) {
+			synchronized (durableMonitor) {
+				boolean interrupted = false;
+				while (durableSequence < sequence && failure == null) {
+					try {
+						durableMonitor.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		if (durableSequence < sequence) {
+			throw new UncheckedIOException("Transfer journal couldn't be written!", failure);
+		}
+	}
+
+	private void write() {
+		while (true) {
+			long target;
+			long roll = 0;
+			int split = 0;
+			appendLock.lock();
+			try {
+				while (active.position() == 0 && !rollPending && !closed) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (active.position() == 0 && !rollPending) {
+					return;
+				}
+				ByteBuffer written = active;
+				active = flushing;
+				flushing = written;
+				target = appendedSequence;
+				if (rollPending) {
+					roll = segment;
+					split = rollAt;
+					rollPending = false;
+				}
+			} finally {
+				appendLock.unlock();
+			}
+			try {
+				flushing.flip();
+				if (roll != 0) {
+					// Records appended before the roll end the current segment, the others start the new one
+					ByteBuffer head = flushing.duplicate();
+					head.limit(split);
+					writeFully(head);
+					channel.force(false);
+					channel.close();
+					channel = openSegment(roll);
+					flushing.position(split);
+				}
+				writeFully(flushing);
+				channel.force(false);
+				flushing.clear();
+				syncCount++;
+			} catch (IOException e) {
+				log.error("Transfer journal couldn't be written", e);
+				failure = e;
+			}
+			synchronized (durableMonitor) {
+				if (failure == null) {
+					durableSequence = target;
+					if (roll != 0) {
+						rolledSegment = roll;
+					}
+				}
+				durableMonitor.notifyAll();
+			}
+			if (failure != null) {
+				return;
+			}
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private Record begin(byte type) {
+		ensureWritable();
+		Record record = records.get();
+		record.buffer.clear();
+		record.ensureCapacity(5);
+		record.buffer.putInt(0);
+		record.buffer.put(type);
+		return record;
+	}
+
+	/**
+	 * Seals the record with its length and checksum, then copies it to the shared buffer under the append lock.
+	 */
+	private void append(Record record) {
+		ByteBuffer buffer = record.buffer;
+		int payloadEnd = buffer.position();
+		record.crc.reset();
+		record.crc.update(buffer.array(), 4, payloadEnd - 4);
+		if (payloadEnd - 4 > MAX_RECORD_BYTES) {
+			throw new IllegalArgumentException("Journal record of " + (payloadEnd - 4) + " bytes exceeds "
+					+ MAX_RECORD_BYTES + " bytes!");
+		}
+		buffer.putInt((int) record.crc.getValue());
+		buffer.putInt(0, payloadEnd - 4);
+		buffer.flip();
+		appendLock.lock();
+		try {
+			ensureWritable();
+			if (active.remaining() < buffer.remaining()) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(active.capacity() * 2, active.position() + buffer.remaining()));
+				active.flip();
+				grown.put(active);
+				active = grown;
+			}
+			active.put(buffer);
+			appendedSequence++;
+			notEmpty.signal();
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	private long replaySegment(Path path, Consumer<ByteBuffer> handler) throws IOException {
+		long records = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			while (true) {
+				byte[] record;
+				try {
+					int length = in.readInt();
+					if (length <= 0 || length > MAX_RECORD_BYTES) {
+						log.warn("Invalid record length {} at the end of {}, ignoring the rest of the segment", length, path);
+						break;
+					}
+					record = new byte[length];
+					in.readFully(record);
+					int checksum = in.readInt();
+					crc.reset();
+					crc.update(record);
+					if ((int) crc.getValue() != checksum) {
+						log.warn("Corrupted record at the end of {}, ignoring the rest of the segment", path);
+						break;
+					}
+				} catch (EOFException e) {
+					break;
+				}
+				handler.accept(ByteBuffer.wrap(record));
+				records++;
+			}
+		}
+		return records;
+	}
+
+	static void apply(ByteBuffer record, AccountsRepository target) {
+		switch (record.get()) {
+		case CREATE:
+			restore(target, getString(record), getDecimal(record));
+			break;
+		case BALANCES:
+			int count = getLength(record);
+			for (int i = 0; i < count; i++) {
+				restore(target, getString(record), getDecimal(record));
+			}
+			break;
+		case CLEAR:
+			target.clearAccounts();
+			break;
+		default:
+			throw new IllegalStateException("Unknown journal record type!");
+		}
+		if (record.hasRemaining()) {
+			throw new IllegalStateException("Journal record has " + record.remaining() + " bytes left over!");
+		}
+	}
+
+	static void restore(AccountsRepository target, String accountId, BigDecimal balance) {
+		Account account = target.getAccount(accountId);
+		if (account == null) {
+			target.createAccount(new Account(accountId, balance));
+		} else {
+			account.setBalance(balance);
+		}
+	}
+
+	static void putString(ByteBuffer buffer, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		putLength(buffer, bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Writes a length in 2 bytes below {@code 32768}, in 4 bytes otherwise.
+	 */
+	static void putLength(ByteBuffer buffer, int length) {
+		if (length < 0x8000) {
+			buffer.putShort((short) length);
+		} else {
+			buffer.putInt(length | 0x80000000);
+		}
+	}
+
+	static int getLength(ByteBuffer record) {
+		short high = record.getShort();
+		if (high >= 0) {
+			return high;
+		}
+		return (high & 0x7fff) << 16 | record.getShort() & 0xffff;
+	}
+
+	static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+		byte[] unscaled = value.unscaledValue().toByteArray();
+		if (unscaled.length > 255) {
+			throw new IllegalArgumentException("Balance " + value + " is too large to be journaled!");
+		}
+		buffer.putShort((short) value.scale());
+		buffer.put((byte) unscaled.length);
+		buffer.put(unscaled);
+	}
+
+	static String getString(ByteBuffer record) {
+		byte[] bytes = new byte[getLength(record)];
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static BigDecimal getDecimal(ByteBuffer record) {
+		int scale = record.getShort();
+		byte[] unscaled = new byte[record.get() & 0xff];
+		record.get(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+
+	private List<Long> segments() throws IOException {
+		List<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private Path segmentPath(long number) {
+		return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	private FileChannel openSegment(long number) throws IOException {
+		return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	private static final class Record {
+
+		private final CRC32 crc = new CRC32();
+
+		private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+		void putString(String value) {
+			ensureCapacity(4 + value.length() * 3);
+			TransferJournal.putString(buffer, value);
+		}
+
+		void putDecimal(BigDecimal value) {
+			ensureCapacity(3 + value.unscaledValue().bitLength() / 8 + 1);
+			TransferJournal.putDecimal(buffer, value);
+		}
+
+		void ensureCapacity(int bytes) {
+			// Leave room for the crc of the record as well
+			if (buffer.remaining() < bytes + 4) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes + 4));
+				buffer.flip();
+				grown.put(buffer);
+				buffer = grown;
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportReject;
+import com.db.awmd.challenge.domain.ImportResult;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+
+/**
+ * Bulk import of accounts fed one parsed line at a time. Every account is validated as it's added and the valid ones
+ * are created in chunks, so the import holds at most one chunk of accounts whatever its size, and a journaled
+ * repository syncs once per chunk instead of once per account.
+ *
+ */
+public class AccountImport {
+
+	private final AccountsService accountsService;
+
+	private final int chunkSize;
+
+	private final int maxRejects;
+
+	private final List<Account> chunk;
+
+	private final long[] chunkLines;
+
+	private final ImportResult result = new ImportResult();
+
+	/**
+	 * @param accountsService
+	 * @param chunkSize number of accounts created at once
+	 * @param maxRejects number of rejected lines listed in the result, the others are only counted
+	 */
+	public AccountImport(AccountsService accountsService, int chunkSize, int maxRejects) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive!");
+		}
+		this.accountsService = accountsService;
+		this.chunkSize = chunkSize;
+		this.maxRejects = maxRejects;
+		this.chunk = new ArrayList<>(chunkSize);
+		this.chunkLines = new long[chunkSize];
+	}
+
+	/**
+	 * This method validates the account of the given line and queues it for creation. An account the data store can't
+	 * hold, e.g. a balance below its minor unit, is rejected here rather than when its chunk is created.
+	 *
+	 * @param line
+	 * @param account
+	 */
+	public void add(long line, Account account) {
+		String accountId = account.getAccountId();
+		BigDecimal balance = account.getBalance();
+		if (accountId == null || accountId.isEmpty()) {
+			reject(line, null, "Account id can't be empty!");
+		} else if (balance == null) {
+			reject(line, accountId, "Initial balance is required!");
+		} else if (balance.signum() < 0) {
+			reject(line, accountId, "Initial balance must be positive.");
+		} else if (isStorable(line, account)) {
+			chunkLines[chunk.size()] = line;
+			chunk.add(account);
+			if (chunk.size() == chunkSize) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * This method records a line which couldn't be turned into an account.
+	 *
+	 * @param line
+	 * @param accountId id of the account if it could be read, else null
+	 * @param message
+	 */
+	public void reject(long line, String accountId, String message) {
+		result.setRejected(result.getRejected() + 1);
+		if (result.getRejects().size() < maxRejects) {
+			result.getRejects().add(new ImportReject(line, accountId, message));
+		}
+	}
+
+	/**
+	 * This method creates the accounts still queued.
+	 *
+	 * @return the outcome of the whole import
+	 */
+	public ImportResult finish() {
+		flush();
+		return result;
+	}
+
+	/**
+	 * Checks that the data store can hold the account, rejecting its line otherwise.
+	 */
+	private boolean isStorable(long line, Account account) {
+		try {
+			accountsService.getAccountsRepository().validate(account);
+			return true;
+		} catch (InvalidAccountException e) {
+			reject(line, account.getAccountId(), e.getMessage());
+			return false;
+		}
+	}
+
+	private void flush() {
+		if (chunk.isEmpty()) {
+			return;
+		}
+		int created = accountsService.createAccounts(chunk,
+				(e, index) -> reject(chunkLines[index], chunk.get(index).getAccountId(), e.getMessage()));
+		result.setImported(result.getImported() + created);
+		chunk.clear();
+	}
+}
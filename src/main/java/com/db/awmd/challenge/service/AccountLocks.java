@@ -0,0 +1,112 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Striped lock table keyed on account id. Each account id maps to one of a fixed number of stripes so only the
+ * accounts involved in a transfer are locked, instead of every transfer in the JVM.
+ *
+ * Locks are always acquired in ascending stripe order which makes the acquisition deadlock-free. When two accounts
+ * share a stripe, the stripe is locked only once.
+ *
+ */
+@Component
+public class AccountLocks {
+
+	private final ReentrantLock[] stripes;
+
+	private final int mask;
+
+	@Autowired
+	public AccountLocks(@Value("${accounts.lock.stripes:1024}") int stripeCount) {
+		if (stripeCount <= 0) {
+			throw new IllegalArgumentException("Number of lock stripes must be positive!");
+		}
+		// Round up to a power of two so the stripe can be selected with a mask
+		int size = 1;
+		while (size < stripeCount) {
+			size <<= 1;
+		}
+		this.stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * This method returns the stripe index guarding the given account id.
+	 *
+	 * @param accountId
+	 * @return
+	 */
+	public int stripeFor(String accountId) {
+		int h = accountId.hashCode();
+		// Spread the higher bits downwards as the mask only keeps the lower ones
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * This method locks both the given accounts in a deadlock-free order.
+	 *
+	 * @param firstAccountId
+	 * @param secondAccountId
+	 */
+	public void lock(String firstAccountId, String secondAccountId) {
+		int first = stripeFor(firstAccountId);
+		int second = stripeFor(secondAccountId);
+		if (first == second) {
+			stripes[first].lock();
+		} else if (first < second) {
+			stripes[first].lock();
+			stripes[second].lock();
+		} else {
+			stripes[second].lock();
+			stripes[first].lock();
+		}
+	}
+
+	/**
+	 * This method releases the locks taken by {@link #lock(String, String)} for the same accounts.
+	 *
+	 * @param firstAccountId
+	 * @param secondAccountId
+	 */
+	public void unlock(String firstAccountId, String secondAccountId) {
+		int first = stripeFor(firstAccountId);
+		int second = stripeFor(secondAccountId);
+		stripes[first].unlock();
+		if (first != second) {
+			stripes[second].unlock();
+		}
+	}
+
+	/**
+	 * This method locks all the given accounts in a deadlock-free order.
+	 *
+	 * @param accountIds
+	 * @return the locked stripes, to be passed to {@link #unlockAll(int[])}
+	 */
+	public int[] lockAll(Collection<String> accountIds) {
+		int[] locked = accountIds.stream().mapToInt(this::stripeFor).distinct().sorted().toArray();
+		for (int stripe : locked) {
+			stripes[stripe].lock();
+		}
+		return locked;
+	}
+
+	public void unlockAll(int[] locked) {
+		for (int i = locked.length - 1; i >= 0; i--) {
+			stripes[locked[i]].unlock();
+		}
+	}
+}
@@ -1,12 +1,32 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AuditEventType;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
 import com.db.awmd.challenge.exception.NoSuchAccountException;
+import com.db.awmd.challenge.exception.VersionUnavailableException;
 import com.db.awmd.challenge.exception.InSufficientBalanceException;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AuditLog;
 import lombok.Getter;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -17,21 +37,154 @@ public class AccountsService {
 	@Getter
 	private final AccountsRepository accountsRepository;
 
+	private final TransferEngine transferEngine;
+
+	@Getter
+	private final TransferMetrics transferMetrics;
+
+	@Getter
+	private final BalanceVersions balanceVersions;
+
+	private final StripedAccounts stripedAccounts;
+
+	/**
+	 * Null unless {@code accounts.audit.enabled=true}.
+	 */
+	private final AuditLog auditLog;
+
+	public AccountsService(AccountsRepository accountsRepository, TransferEngine transferEngine) {
+		this(accountsRepository, transferEngine, new TransferMetrics(), new BalanceVersions(), new StripedAccounts());
+	}
+
+	public AccountsService(AccountsRepository accountsRepository, TransferEngine transferEngine,
+			TransferMetrics transferMetrics, BalanceVersions balanceVersions, StripedAccounts stripedAccounts) {
+		this(accountsRepository, transferEngine, transferMetrics, balanceVersions, stripedAccounts, Optional.empty());
+	}
+
 	@Autowired
-	public AccountsService(AccountsRepository accountsRepository) {
+	public AccountsService(AccountsRepository accountsRepository, TransferEngine transferEngine,
+			TransferMetrics transferMetrics, BalanceVersions balanceVersions, StripedAccounts stripedAccounts,
+			Optional<AuditLog> auditLog) {
+		this.auditLog = auditLog.orElse(null);
 		this.accountsRepository = accountsRepository;
+		this.transferEngine = transferEngine;
+		this.transferMetrics = transferMetrics;
+		this.balanceVersions = balanceVersions;
+		this.stripedAccounts = stripedAccounts;
 	}
 
-	public void createAccount(Account account) {
-		this.accountsRepository.createAccount(account);
+	/**
+	 * This method creates the account. A striped account is created as its stripes, the first one holding the initial
+	 * balance.
+	 * 
+	 * @param account
+	 * @throws DuplicateAccountIdException if the account exists or its id is the one of a stripe
+	 * @throws InvalidAccountException if the data store can't hold its id or its balance
+	 */
+	public void createAccount(Account account) throws DuplicateAccountIdException, InvalidAccountException {
+		long startedAt = System.nanoTime();
+		insert(account);
+		this.accountsRepository.sync();
+		transferMetrics.createTimed(startedAt);
+	}
+
+	/**
+	 * This method creates a chunk of accounts, e.g. of a bulk import. Every account is created or rejected on its own,
+	 * and the chunk is made durable at once.
+	 * 
+	 * @param accounts
+	 * @param rejected called with the index in the chunk of every account which already exists, or which the data store
+	 *        failed to create, the other accounts of the chunk being created nonetheless
+	 * @return the number of accounts created
+	 */
+	public int createAccounts(List<Account> accounts, ObjIntConsumer<RuntimeException> rejected) {
+		long startedAt = System.nanoTime();
+		int created = 0;
+		for (int i = 0; i < accounts.size(); i++) {
+			try {
+				insert(accounts.get(i));
+				created++;
+			} catch (RuntimeException e) {
+				rejected.accept(e, i);
+			}
+		}
+		this.accountsRepository.sync();
+		transferMetrics.createTimed(startedAt);
+		return created;
+	}
+
+	private void insert(Account account) throws DuplicateAccountIdException, InvalidAccountException {
+		String accountId = account.getAccountId();
+		String owner = stripedAccounts.ownerOf(accountId);
+		if (!owner.equals(accountId)) {
+			throw new DuplicateAccountIdException("Account id " + accountId + " is reserved for the stripes of " + owner + "!");
+		}
+		if (stripedAccounts.isStriped(accountId)) {
+			for (Account stripe : stripedAccounts.create(account, accountsRepository)) {
+				this.balanceVersions.created(stripe);
+			}
+		} else {
+			this.accountsRepository.validate(account);
+			this.accountsRepository.createAccount(account);
+			this.balanceVersions.created(account);
+		}
+		audit(AuditEventType.ACCOUNT_CREATED, accountId, null, account.getBalance(), null);
 	}
 
 	public Account getAccount(String accountId) {
-		return this.accountsRepository.getAccount(accountId);
+		long startedAt = System.nanoTime();
+		Account account = find(accountId);
+		transferMetrics.getTimed(startedAt);
+		return account;
+	}
+
+	/**
+	 * This method returns the version the account was last created, debited or credited at, which changes with every
+	 * change of its balance.
+	 * 
+	 * @param accountId
+	 * @return the version, or -1 if the account doesn't exist or is striped, its stripes changing separately
+	 */
+	public long getVersion(String accountId) {
+		return stripedAccounts.isStriped(accountId) ? -1 : balanceVersions.getLatestVersion(accountId);
+	}
+
+	/**
+	 * This method passes the id and the balance of every account of the snapshot to the action, the stripes of the
+	 * striped accounts being summed into their account.
+	 * 
+	 * @param snapshot
+	 * @param action
+	 */
+	public void forEachAccount(BalanceVersions.Snapshot snapshot, BiConsumer<String, BigDecimal> action) {
+		Map<String, BigDecimal> striped = new HashMap<>();
+		snapshot.forEach((accountId, balance) -> {
+			String owner = stripedAccounts.ownerOf(accountId);
+			if (owner.equals(accountId)) {
+				action.accept(accountId, balance);
+			} else {
+				striped.merge(owner, balance, BigDecimal::add);
+			}
+		});
+		striped.forEach(action);
 	}
 
 	/**
-	 * This method debits the specified amount from the given account.
+	 * This method opens a consistent snapshot of all the balances, at the newest committed version or at the given one.
+	 * The snapshot must be closed once read.
+	 * 
+	 * @param version a committed version, or -1 for the newest one
+	 * @return
+	 * @throws VersionUnavailableException if the version isn't committed yet or was already reclaimed
+	 */
+	public BalanceVersions.Snapshot openSnapshot(long version) {
+		return balanceVersions.open(version);
+	}
+
+	/**
+	 * This method debits the specified amount from the given account. A striped account is debited on the stripe of the
+	 * current thread, into which its other stripes are gathered if it doesn't cover the amount. The account is changed
+	 * with exclusive access through the {@link TransferEngine}, so the debit can't race with its transfers.
 	 * 
 	 * @param account Account which is to be debited
 	 * @param amount Amount to be debited.
@@ -39,17 +192,61 @@ public class AccountsService {
 	 */
 	public void debitAccount(Account account, BigDecimal amount)
 			throws InSufficientBalanceException {
-		accountsRepository.debitAccount(account, amount);
+		Account target = StripedAccount.select(account);
+		boolean debited = transferEngine.executeExclusively(Collections.singleton(target.getAccountId()),
+				() -> debit(target, amount));
+		if (!debited && target != account) {
+			// The stripe of this thread doesn't cover the amount, gather the other stripes into it and try again
+			Account[] stripes = ((StripedAccount) account).getStripes();
+			List<Account> others = new ArrayList<>();
+			List<String> stripeIds = new ArrayList<>();
+			for (Account stripe : stripes) {
+				stripeIds.add(stripe.getAccountId());
+				if (stripe != target) {
+					others.add(stripe);
+				}
+			}
+			debited = transferEngine.executeExclusively(stripeIds, () -> {
+				accountsRepository.gather(target, others);
+				balanceVersions.commit(stripes);
+				return debit(target, amount);
+			});
+		}
+		if (!debited) {
+			audit(AuditEventType.DEBIT, account.getAccountId(), null, amount, TransferStatus.INSUFFICIENT_BALANCE);
+			throw new InSufficientBalanceException("Account: " + target.getAccountId()
+					+ " does not have sufficient balance to perform this transaction!");
+		}
+		accountsRepository.sync();
+		audit(AuditEventType.DEBIT, account.getAccountId(), null, amount, TransferStatus.COMPLETED);
+	}
+
+	/**
+	 * Debits the account, which the caller holds exclusively, and commits its balance if it covers the amount.
+	 */
+	private boolean debit(Account account, BigDecimal amount) {
+		if (!accountsRepository.tryDebit(account, amount)) {
+			return false;
+		}
+		balanceVersions.commitExternal(amount.negate(), account);
+		return true;
 	}
 
 	/**
-	 * This method credits the specified account by the given amount.
+	 * This method credits the specified account by the given amount, on the stripe of the current thread if the account
+	 * is striped. The account is changed with exclusive access through the {@link TransferEngine}, as for a debit.
 	 * 
 	 * @param account
 	 * @param amount
 	 */
 	public void creditAccount(Account account, BigDecimal amount)  {
-		accountsRepository.creditAccount(account, amount);
+		Account target = StripedAccount.select(account);
+		transferEngine.executeExclusively(Collections.singleton(target.getAccountId()), () -> {
+			accountsRepository.creditAccount(target, amount);
+			return balanceVersions.commitExternal(amount, target);
+		});
+		accountsRepository.sync();
+		audit(AuditEventType.CREDIT, account.getAccountId(), null, amount, TransferStatus.COMPLETED);
 	}
 	
 	/**
@@ -60,11 +257,238 @@ public class AccountsService {
 	 * @throws NoSuchAccountException
 	 */
 	public Account accountExists(String accountId) throws NoSuchAccountException{
-		Account account = accountsRepository.getAccount(accountId);
+		Account account = find(accountId);
 		// Check if such account exists
 		if(account == null){
 			throw new NoSuchAccountException("Account "+accountId + " couldn't be found!");
 		}
 		return account;
 	}
+
+	/**
+	 * This method transfers the amount from the source account to the destination account. The debit and the credit
+	 * happen all at once or none, as executed by the configured {@link TransferEngine}.
+	 * 
+	 * @param accountFromId Account which is to be debited
+	 * @param accountToId Account which is to be credited
+	 * @param amount Amount to be transferred
+	 * @throws NoSuchAccountException
+	 * @throws InSufficientBalanceException
+	 */
+	public void transferAmount(String accountFromId, String accountToId, BigDecimal amount)
+			throws NoSuchAccountException, InSufficientBalanceException {
+		TransferStatus status = tryTransferAmount(accountFromId, accountToId, amount);
+		if (status == TransferStatus.NO_SUCH_ACCOUNT) {
+			accountExists(accountFromId);
+			throw new NoSuchAccountException("Account "+accountToId + " couldn't be found!");
+		}
+		if (status == TransferStatus.INSUFFICIENT_BALANCE) {
+			throw new InSufficientBalanceException("Account: "+accountFromId + " does not have sufficient balance to perform this transaction!");
+		}
+	}
+
+	/**
+	 * This method transfers like {@link #transferAmount(String, String, BigDecimal)}, but reports the outcome with its
+	 * status instead of an exception. A rejected transfer allocates nothing, so it's the path to take where rejections
+	 * are frequent.
+	 * 
+	 * @param accountFromId Account which is to be debited
+	 * @param accountToId Account which is to be credited
+	 * @param amount Amount to be transferred
+	 * @return {@link TransferStatus#COMPLETED}, {@link TransferStatus#NO_SUCH_ACCOUNT} or
+	 *         {@link TransferStatus#INSUFFICIENT_BALANCE}
+	 */
+	public TransferStatus tryTransferAmount(String accountFromId, String accountToId, BigDecimal amount) {
+		long startedAt = transferMetrics.transferStarted();
+		TransferStatus status = null;
+		try {
+			Account fromAccount = find(accountFromId);
+			Account toAccount = find(accountToId);
+			if (fromAccount == null || toAccount == null) {
+				status = TransferStatus.NO_SUCH_ACCOUNT;
+			} else {
+				status = transferEngine.tryTransfer(fromAccount, toAccount, amount);
+			}
+			return status;
+		} finally {
+			transferMetrics.transferEnded(startedAt, status);
+			if (status != null) {
+				audit(AuditEventType.TRANSFER, accountFromId, accountToId, amount, status);
+			}
+		}
+	}
+
+	/**
+	 * This method executes a batch of transfers. The movements are netted per account and written in one pass, each
+	 * account being locked once for the whole batch. Every transfer is still accepted or rejected on its own.
+	 * 
+	 * @param transfers
+	 * @return the result of every transfer, in submission order
+	 */
+	public List<TransferResult> transferBatch(List<TransferRequest> transfers) {
+		long startedAt = transferMetrics.batchStarted();
+		try {
+			TransferBatch batch = new TransferBatch(transfers, this::find);
+			transferEngine.transferBatch(batch);
+			List<TransferResult> results = batch.getResults();
+			for (TransferResult result : results) {
+				transferMetrics.transferCounted(result.getStatus());
+				if (auditLog != null) {
+					TransferRequest transfer = transfers.get(result.getIndex());
+					auditLog.record(AuditEventType.TRANSFER, transfer.getAccountFromId(), transfer.getAccountToId(),
+							transfer.getAmount(), result.getStatus());
+				}
+			}
+			return results;
+		} finally {
+			transferMetrics.batchEnded(startedAt);
+		}
+	}
+
+	/**
+	 * This method executes the local side of a transfer with an account of another node of the cluster: the debit of
+	 * the source account if the destination account is the remote one, else the credit of the destination account. It
+	 * runs as a batch of one transfer, which locks the local account and gathers its stripes if it's striped.
+	 * 
+	 * @param accountFromId
+	 * @param accountToId
+	 * @param amount
+	 * @param remoteAccountId id of the account owned by the other node, either of the two
+	 * @return {@link TransferStatus#COMPLETED}, {@link TransferStatus#NO_SUCH_ACCOUNT} or
+	 *         {@link TransferStatus#INSUFFICIENT_BALANCE}
+	 */
+	public TransferStatus transferRemote(String accountFromId, String accountToId, BigDecimal amount,
+			String remoteAccountId) {
+		long startedAt = transferMetrics.transferStarted();
+		TransferStatus status = null;
+		try {
+			TransferBatch batch = new TransferBatch(
+					Collections.singletonList(new TransferRequest(accountFromId, accountToId, amount)), this::find, false,
+					remoteAccountId::equals);
+			transferEngine.transferBatch(batch);
+			status = batch.getResults().get(0).getStatus();
+			return status;
+		} finally {
+			transferMetrics.transferEnded(startedAt, status);
+			if (status != null) {
+				audit(AuditEventType.REMOTE_TRANSFER, accountFromId, accountToId, amount, status);
+			}
+		}
+	}
+
+	/**
+	 * This method executes a multi-leg transfer, e.g. from a payer to a payee and a fee account, all at once or not at
+	 * all. The legs of each account are netted, and the net debits are matched with the net credits into transfers
+	 * which are executed as one atomic batch: every account is locked once, and every debit is checked with the
+	 * sufficiency rule of {@link #debitAccount(Account, BigDecimal)} before any account is changed.
+	 * 
+	 * @param legs
+	 * @return the transfers between the accounts the legs were executed as
+	 * @throws IllegalArgumentException if the legs don't add up to zero
+	 * @throws NoSuchAccountException
+	 * @throws InSufficientBalanceException
+	 */
+	public List<TransferRequest> transferLegs(List<TransferLeg> legs)
+			throws NoSuchAccountException, InSufficientBalanceException {
+		long startedAt = transferMetrics.transferStarted();
+		TransferStatus status = null;
+		List<TransferRequest> transfers = null;
+		try {
+			try {
+				transfers = match(legs);
+			} catch (IllegalArgumentException e) {
+				status = TransferStatus.INVALID_AMOUNT;
+				throw e;
+			}
+			TransferBatch batch = new TransferBatch(transfers, this::find, true);
+			transferEngine.transferBatch(batch);
+			for (TransferResult result : batch.getResults()) {
+				if (result.getStatus() == TransferStatus.NO_SUCH_ACCOUNT) {
+					status = result.getStatus();
+					throw new NoSuchAccountException(result.getMessage());
+				}
+				if (result.getStatus() == TransferStatus.INSUFFICIENT_BALANCE) {
+					status = result.getStatus();
+					throw new InSufficientBalanceException(result.getMessage());
+				}
+			}
+			status = TransferStatus.COMPLETED;
+			return transfers;
+		} finally {
+			transferMetrics.transferEnded(startedAt, status);
+			// The transfers are all executed or all rejected, with the status of the first rejected one
+			if (auditLog != null && transfers != null && status != null) {
+				for (TransferRequest transfer : transfers) {
+					auditLog.record(AuditEventType.TRANSFER, transfer.getAccountFromId(), transfer.getAccountToId(),
+							transfer.getAmount(), status);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Nets the legs per account and matches the net debits with the net credits, in the order the accounts first
+	 * appear, into as few transfers as there are accounts minus one at most.
+	 */
+	private static List<TransferRequest> match(List<TransferLeg> legs) {
+		Map<String, BigDecimal> net = new LinkedHashMap<>();
+		for (TransferLeg leg : legs) {
+			if (leg.getAccountId() == null || leg.getAmount() == null || leg.getAmount().signum() == 0
+					|| !MinorUnits.isRepresentable(leg.getAmount())) {
+				throw new IllegalArgumentException("Every leg must have an account id and a non zero amount with at most "
+						+ MinorUnits.SCALE + " decimal places!");
+			}
+			net.merge(leg.getAccountId(), leg.getAmount(), BigDecimal::add);
+		}
+		List<String> debited = new ArrayList<>();
+		List<String> credited = new ArrayList<>();
+		BigDecimal total = BigDecimal.ZERO;
+		for (Map.Entry<String, BigDecimal> entry : net.entrySet()) {
+			total = total.add(entry.getValue());
+			if (entry.getValue().signum() < 0) {
+				debited.add(entry.getKey());
+			} else if (entry.getValue().signum() > 0) {
+				credited.add(entry.getKey());
+			}
+		}
+		if (total.signum() != 0) {
+			throw new IllegalArgumentException("Legs must add up to zero!");
+		}
+		if (debited.isEmpty()) {
+			throw new IllegalArgumentException("Legs must move an amount between accounts!");
+		}
+
+		List<TransferRequest> transfers = new ArrayList<>();
+		int d = 0;
+		int c = 0;
+		BigDecimal debit = net.get(debited.get(0)).negate();
+		BigDecimal credit = net.get(credited.get(0));
+		while (d < debited.size()) {
+			BigDecimal amount = debit.min(credit);
+			transfers.add(new TransferRequest(debited.get(d), credited.get(c), amount));
+			debit = debit.subtract(amount);
+			credit = credit.subtract(amount);
+			if (debit.signum() == 0 && ++d < debited.size()) {
+				debit = net.get(debited.get(d)).negate();
+			}
+			if (credit.signum() == 0 && ++c < credited.size()) {
+				credit = net.get(credited.get(c));
+			}
+		}
+		return transfers;
+	}
+
+	private Account find(String accountId) {
+		if (stripedAccounts.isStriped(accountId)) {
+			return stripedAccounts.get(accountId, accountsRepository);
+		}
+		return accountsRepository.getAccount(accountId);
+	}
+
+	private void audit(AuditEventType type, String accountId, String counterpartyId, BigDecimal amount,
+			TransferStatus status) {
+		if (auditLog != null) {
+			auditLog.record(type, accountId, counterpartyId, amount, status);
+		}
+	}
 }
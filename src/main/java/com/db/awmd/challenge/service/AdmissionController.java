@@ -0,0 +1,190 @@
+package com.db.awmd.challenge.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admission control in front of the transfer path. A transfer needs a {@link Permit} before it's handed over to the
+ * {@link TransferExecutor}, and at most {@link #getLimit()} transfers hold one, whether they're queued or running. A
+ * transfer which can't get a permit is rejected at once rather than queued.
+ *
+ * The limit adapts to the observed latency, from admission to completion: it's cut by
+ * {@code accounts.admission.backoff-ratio} whenever a transfer takes longer than
+ * {@code accounts.admission.target-latency-millis} or misses its deadline, and grows by one for every limit's worth of
+ * transfers completed in time while the permits are in use. So the limit settles at about as many transfers as can
+ * complete within the target latency.
+ *
+ * Every permit has a deadline of {@code accounts.admission.deadline-millis}. A transfer still queued at its deadline is
+ * dropped without being executed, as its client has likely given up on it.
+ *
+ */
+@Component
+public class AdmissionController {
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final long targetLatencyNanos;
+
+	private final long deadlineNanos;
+
+	private final double backoffRatio;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final LongAdder admitted = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * Bits of the fractional limit, updated with compare-and-set so that releasing a permit never blocks.
+	 */
+	private final AtomicLong limitBits = new AtomicLong();
+
+	public AdmissionController() {
+		this(256, 8, 4096, 100, 1000, 0.9);
+	}
+
+	@Autowired
+	public AdmissionController(@Value("${accounts.admission.initial-limit:256}") int initialLimit,
+			@Value("${accounts.admission.min-limit:8}") int minLimit,
+			@Value("${accounts.admission.max-limit:4096}") int maxLimit,
+			@Value("${accounts.admission.target-latency-millis:100}") long targetLatencyMillis,
+			@Value("${accounts.admission.deadline-millis:1000}") long deadlineMillis,
+			@Value("${accounts.admission.backoff-ratio:0.9}") double backoffRatio) {
+		if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Limits must be positive with min-limit <= initial-limit <= max-limit!");
+		}
+		if (backoffRatio <= 0 || backoffRatio >= 1) {
+			throw new IllegalArgumentException("Backoff ratio must be between 0 and 1!");
+		}
+		this.limitBits.set(Double.doubleToLongBits(initialLimit));
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+		this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+		this.backoffRatio = backoffRatio;
+	}
+
+	/**
+	 * This method admits a transfer if fewer than {@link #getLimit()} transfers are in flight.
+	 *
+	 * @return the permit of the transfer, which must be released once it completed, or null if it isn't admitted
+	 */
+	public Permit tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= getLimit()) {
+				rejected.increment();
+				return null;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				admitted.increment();
+				return new Permit(System.nanoTime());
+			}
+		}
+	}
+
+	public int getLimit() {
+		return (int) Double.longBitsToDouble(limitBits.get());
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * This method returns the current limit, the transfers in flight and the number of transfers admitted, rejected and
+	 * dropped after admission so far.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("limit", getLimit());
+		map.put("inFlight", getInFlight());
+		map.put("admitted", admitted.sum());
+		map.put("rejected", rejected.sum());
+		map.put("dropped", dropped.sum());
+		return map;
+	}
+
+	private void adapt(long latencyNanos, boolean overloaded, int inFlightBefore) {
+		boolean backoff = overloaded || latencyNanos > targetLatencyNanos;
+		while (true) {
+			long bits = limitBits.get();
+			double limit = Double.longBitsToDouble(bits);
+			double adapted;
+			if (backoff) {
+				adapted = Math.max(minLimit, limit * backoffRatio);
+			} else if (inFlightBefore * 2 >= limit) {
+				// Only grow while the permits are in use, an idle limit says nothing about the capacity
+				adapted = Math.min(maxLimit, limit + 1 / limit);
+			} else {
+				return;
+			}
+			if (adapted == limit || limitBits.compareAndSet(bits, Double.doubleToLongBits(adapted))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Right of one transfer to be queued and executed. It's released exactly once, further releases are ignored.
+	 */
+	public final class Permit {
+
+		private final long admittedAt;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Permit(long admittedAt) {
+			this.admittedAt = admittedAt;
+		}
+
+		/**
+		 * @return true if the transfer is past its deadline
+		 */
+		public boolean isExpired() {
+			return System.nanoTime() - admittedAt > deadlineNanos;
+		}
+
+		/**
+		 * This method releases the permit of a completed transfer, its latency adapting the limit.
+		 */
+		public void release() {
+			release(false);
+		}
+
+		/**
+		 * This method releases the permit of a transfer dropped without being executed because the transfer path is
+		 * overloaded, e.g. at its deadline or because the executor queue is full, which cuts the limit.
+		 */
+		public void drop() {
+			if (release(true)) {
+				dropped.increment();
+			}
+		}
+
+		private boolean release(boolean overloaded) {
+			if (!released.compareAndSet(false, true)) {
+				return false;
+			}
+			int before = inFlight.getAndDecrement();
+			adapt(System.nanoTime() - admittedAt, overloaded, before);
+			return true;
+		}
+	}
+}
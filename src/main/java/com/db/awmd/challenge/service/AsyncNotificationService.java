@@ -0,0 +1,281 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decorator which hands notifications over to a background dispatcher instead of delivering them on the request
+ * thread. Notifications are queued in a bounded queue and delivered in batches; notifications for the same account
+ * arriving within the coalescing window are merged into a single one. The description of a transfer is only built
+ * by the dispatcher. When the queue is full the configured {@link OverflowPolicy} applies, by default dropping the
+ * new notification; the dispatcher logs how many were dropped.
+ *
+ * Enabled unless {@code notifications.async.enabled=false}, in which case the {@link EmailNotificationService} is
+ * called directly.
+ *
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "notifications.async", name = "enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class AsyncNotificationService implements NotificationService {
+
+	/**
+	 * What to do with a notification when the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/** The new notification is dropped. */
+		DROP_NEWEST,
+		/** The oldest queued notification is dropped to make room for the new one. */
+		DROP_OLDEST,
+		/** The caller waits until there is room in the queue. */
+		BLOCK
+	}
+
+	private final NotificationService delegate;
+
+	private final BlockingQueue<Notification> queue;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final long coalesceWindowNanos;
+
+	private final int batchSize;
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder delivered = new LongAdder();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * Dropped count last logged, only read and written by the dispatcher.
+	 */
+	private long droppedLogged;
+
+	private final Thread dispatcher;
+
+	private volatile boolean running = true;
+
+	@Autowired
+	public AsyncNotificationService(@Qualifier("emailNotificationService") NotificationService delegate,
+			@Value("${notifications.async.queue-capacity:10000}") int queueCapacity,
+			@Value("${notifications.async.overflow-policy:DROP_NEWEST}") OverflowPolicy overflowPolicy,
+			@Value("${notifications.async.coalesce-window-millis:100}") long coalesceWindowMillis,
+			@Value("${notifications.async.batch-size:500}") int batchSize) {
+		this.delegate = delegate;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.overflowPolicy = overflowPolicy;
+		this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis);
+		this.batchSize = batchSize;
+		this.dispatcher = new Thread(this::dispatch, "notification-dispatcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, String transferDescription) {
+		enqueue(new Notification(account, transferDescription, false, null, null, System.nanoTime()));
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, boolean debited, BigDecimal amount, BigDecimal balance) {
+		enqueue(new Notification(account, null, debited, amount, balance, System.nanoTime()));
+	}
+
+	private void enqueue(Notification notification) {
+		switch (overflowPolicy) {
+		case BLOCK:
+			try {
+				queue.put(notification);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped.increment();
+			}
+			break;
+		case DROP_OLDEST:
+			while (!queue.offer(notification)) {
+				if (queue.poll() != null) {
+					dropped.increment();
+				}
+			}
+			break;
+		default:
+			if (!queue.offer(notification)) {
+				dropped.increment();
+			}
+		}
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public int getQueueCapacity() {
+		return queue.size() + queue.remainingCapacity();
+	}
+
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("overflowPolicy", overflowPolicy);
+		map.put("queueDepth", getQueueDepth());
+		map.put("queueCapacity", getQueueCapacity());
+		map.put("delivered", getDeliveredCount());
+		map.put("coalesced", getCoalescedCount());
+		map.put("dropped", getDroppedCount());
+		return map;
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		dispatcher.interrupt();
+		dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+		// Deliver whatever was still queued
+		List<Notification> batch = new ArrayList<>();
+		while (queue.drainTo(batch, batchSize) > 0) {
+			deliver(batch);
+			batch.clear();
+		}
+	}
+
+	private void dispatch() {
+		List<Notification> batch = new ArrayList<>(batchSize);
+		while (running) {
+			try {
+				Notification first = queue.poll(1, TimeUnit.SECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				// Keep collecting until the coalescing window of the first notification closes or the batch is full
+				long deadline = first.enqueuedAt + coalesceWindowNanos;
+				while (batch.size() < batchSize) {
+					if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+						continue;
+					}
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						break;
+					}
+					Notification next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			} catch (InterruptedException e) {
+				running = false;
+			}
+			deliver(batch);
+			batch.clear();
+			logDropped();
+		}
+	}
+
+	private void logDropped() {
+		long total = dropped.sum();
+		if (total > droppedLogged) {
+			log.warn("Dropped {} notifications on a full queue, {} in total", total - droppedLogged, total);
+			droppedLogged = total;
+		}
+	}
+
+	private void deliver(List<Notification> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		Map<String, List<Notification>> byAccount = new LinkedHashMap<>();
+		for (Notification notification : batch) {
+			byAccount.computeIfAbsent(notification.account.getAccountId(), id -> new ArrayList<>()).add(notification);
+		}
+		for (List<Notification> notifications : byAccount.values()) {
+			Notification last = notifications.get(notifications.size() - 1);
+			String description = last.describe();
+			if (notifications.size() > 1) {
+				StringBuilder builder = new StringBuilder();
+				for (Notification notification : notifications) {
+					if (builder.length() > 0) {
+						builder.append('\n');
+					}
+					builder.append(notification.describe());
+				}
+				description = builder.toString();
+				coalesced.add(notifications.size() - 1);
+			}
+			try {
+				delegate.notifyAboutTransfer(last.account, description);
+				delivered.add(notifications.size());
+			} catch (RuntimeException e) {
+				log.error("Notification to owner of " + last.account.getAccountId() + " failed", e);
+			}
+		}
+	}
+
+	private static final class Notification {
+
+		private final Account account;
+
+		/**
+		 * Description given by the caller, or null to describe the transfer from the fields below.
+		 */
+		private final String description;
+
+		private final boolean debited;
+
+		private final BigDecimal amount;
+
+		private final BigDecimal balance;
+
+		private final long enqueuedAt;
+
+		Notification(Account account, String description, boolean debited, BigDecimal amount, BigDecimal balance,
+				long enqueuedAt) {
+			this.account = account;
+			this.description = description;
+			this.debited = debited;
+			this.amount = amount;
+			this.balance = balance;
+			this.enqueuedAt = enqueuedAt;
+		}
+
+		String describe() {
+			if (description != null) {
+				return description;
+			}
+			return NotificationService.describeTransfer(account.getAccountId(), debited, amount, balance);
+		}
+	}
+}
@@ -0,0 +1,654 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.VersionUnavailableException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Multi-version view of the account balances, so readers get a consistent state of all the accounts without taking
+ * any account lock. Every change of the balances is committed as a new version: a transfer or a batch commits all the
+ * accounts it changed at once. A {@link Snapshot} reads the balances as of one committed version.
+ *
+ * Every account keeps a chain of its balances, newest first. A version is only visible once it and every version
+ * before it are installed, so a snapshot never sees a transfer without the transfers it depends on. The engines commit
+ * while they have exclusive access to the accounts, which keeps the chain of every account in version order. A commit
+ * waits, without spinning, while the version committed {@code 65536} versions before it isn't visible yet.
+ *
+ * The chains hold a copy of every balance on the heap, whichever repository stores the accounts. To keep it small, a
+ * balance with {@link MinorUnits#SCALE} decimal places, as the atomic and off-heap repositories return them, is kept as
+ * a {@code long} of minor units: a version then takes 40 bytes, where it took 88 with its {@link BigDecimal} and the
+ * chain holding it, the map entry and the account id coming on top. Other balances keep their {@link BigDecimal}, so a
+ * snapshot always reads the balance exactly as it was committed.
+ *
+ * The sharded engine debits and credits the two accounts of a cross-shard transfer on different shards, so the amount
+ * is committed as in transit between the two and a snapshot reports it separately.
+ *
+ * Every version also carries the expected total of the balances: the initial balances of the accounts plus what was
+ * credited and minus what was debited on its own or by a transfer with another node. Transfers between accounts of
+ * this node don't change it, so the balances of a snapshot plus its amount in transit must always add up to it, which
+ * {@link LedgerInvariantChecker} verifies.
+ *
+ * Versions older than the oldest open snapshot and than the last {@code accounts.versions.retained} versions are
+ * reclaimed: the next commit of an account after the oldest readable version moved drops the balances no snapshot can
+ * read anymore, and every move of the oldest readable version also trims the chains of a slice of the accounts, so
+ * the chains of idle accounts are trimmed too and the cost of reclaiming is spread over the commits.
+ *
+ * Numbering the commits makes every change of a balance go through one counter, so versioning is only on when
+ * {@code accounts.versions.enabled} is set. Otherwise nothing is numbered or copied: a snapshot reads the live
+ * balances of the repository without any consistency across accounts, only the amount in transit is tracked, no
+ * version can be read again, the expected total isn't known so the ledger can't be checked, and the response cache has
+ * no version to serve bodies by.
+ *
+ */
+@Component
+public class BalanceVersions {
+
+	private static final int RING_BITS = 16;
+
+	private static final int RING_SIZE = 1 << RING_BITS;
+
+	private static final int HORIZON_INTERVAL = 1024;
+
+	/**
+	 * Chains trimmed every time the oldest readable version moves.
+	 */
+	private static final int TRIM_BATCH = 4096;
+
+	private final boolean enabled;
+
+	private final long retainedVersions;
+
+	/**
+	 * Repository a snapshot reads the live balances of when versioning is off.
+	 */
+	private final AccountsRepository accountsRepository;
+
+	/**
+	 * Amount in transit, in minor units, when versioning is off.
+	 */
+	private final LongAdder liveInTransit = new LongAdder();
+
+	/**
+	 * Newest version of every account, heading the chain of its older ones.
+	 */
+	private final Map<String, Version> chains = new ConcurrentHashMap<>();
+
+	private final AtomicLong lastVersion = new AtomicLong();
+
+	/**
+	 * Versions installed but maybe not visible yet, indexed by version modulo the size of the ring.
+	 */
+	private final AtomicLongArray installed = new AtomicLongArray(RING_SIZE);
+
+	private final AtomicLongArray inTransitChanges = new AtomicLongArray(RING_SIZE);
+
+	private final AtomicReferenceArray<BigDecimal> expectedChanges = new AtomicReferenceArray<>(RING_SIZE);
+
+	private final AtomicReference<Committed> committed = new AtomicReference<>(
+			new Committed(0, new Totals(0, 0, BigDecimal.ZERO, null)));
+
+	private final ReentrantLock ringLock = new ReentrantLock();
+
+	private final Condition ringFree = ringLock.newCondition();
+
+	/**
+	 * Commits waiting for a slot of the ring, changed under the ring lock.
+	 */
+	private volatile int ringWaiters;
+
+	private final ReentrantLock snapshotLock = new ReentrantLock();
+
+	/**
+	 * Number of open snapshots per version, guarded by the snapshot lock.
+	 */
+	private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>();
+
+	/**
+	 * Oldest version which can still be read. It only moves forward, under the snapshot lock.
+	 */
+	private volatile long horizon;
+
+	/**
+	 * Position of the trimming of the chains, guarded by the snapshot lock.
+	 */
+	private Iterator<Map.Entry<String, Version>> trimCursor = Collections.emptyIterator();
+
+	/**
+	 * Horizon the last slice of the chains was trimmed at, guarded by the snapshot lock.
+	 */
+	private long trimmedAt;
+
+	public BalanceVersions() {
+		this(0);
+	}
+
+	public BalanceVersions(long retainedVersions) {
+		this.enabled = true;
+		this.retainedVersions = retainedVersions;
+		this.accountsRepository = null;
+	}
+
+	public BalanceVersions(AccountsRepository accountsRepository, long retainedVersions) {
+		this(accountsRepository, true, retainedVersions);
+	}
+
+	/**
+	 * Starts with the accounts already in the repository, e.g. restored from the journal, as version 0.
+	 */
+	@Autowired
+	public BalanceVersions(AccountsRepository accountsRepository,
+			@Value("${accounts.versions.enabled:false}") boolean enabled,
+			@Value("${accounts.versions.retained:1000}") long retainedVersions) {
+		this.enabled = enabled;
+		this.retainedVersions = retainedVersions;
+		this.accountsRepository = accountsRepository;
+		if (!enabled) {
+			return;
+		}
+		BigDecimal[] restored = { BigDecimal.ZERO };
+		accountsRepository.forEachAccount(account -> {
+			chains.put(account.getAccountId(), Version.of(0, account.getBalance(), null));
+			restored[0] = restored[0].add(account.getBalance());
+		});
+		committed.set(new Committed(0, new Totals(0, 0, restored[0], null)));
+	}
+
+	/**
+	 * This method commits the current balances of the given accounts as a new version. The caller must have exclusive
+	 * access to the accounts.
+	 *
+	 * @param accounts
+	 * @return the version committed, -1 if versioning is off
+	 */
+	public long commit(Account... accounts) {
+		return commit(0, accounts);
+	}
+
+	/**
+	 * This method commits the current balances of the given accounts together with a change of the amount in transit
+	 * between shards. The caller must have exclusive access to the accounts.
+	 *
+	 * @param inTransitChange change of the amount in transit, in minor units
+	 * @param accounts
+	 * @return the version committed, -1 if versioning is off
+	 */
+	public long commit(long inTransitChange, Account... accounts) {
+		return commit(inTransitChange, null, accounts);
+	}
+
+	/**
+	 * This method commits the current balances of the given accounts together with a change of the expected total,
+	 * e.g. for a credit, or for the local side of a transfer with another node. The caller must have exclusive access to
+	 * the accounts.
+	 *
+	 * @param expectedChange amount which entered the accounts, negative if it left them
+	 * @param accounts
+	 * @return the version committed, -1 if versioning is off
+	 */
+	public long commitExternal(BigDecimal expectedChange, Account... accounts) {
+		return commit(0, expectedChange.signum() == 0 ? null : expectedChange, accounts);
+	}
+
+	private long commit(long inTransitChange, BigDecimal expectedChange, Account... accounts) {
+		if (!enabled) {
+			if (inTransitChange != 0) {
+				liveInTransit.add(inTransitChange);
+			}
+			return -1;
+		}
+		long version = nextVersion();
+		long oldest = horizon;
+		for (Account account : accounts) {
+			install(account.getAccountId(), version, account.getBalance(), oldest);
+		}
+		publish(version, inTransitChange, expectedChange);
+		return version;
+	}
+
+	/**
+	 * This method commits a newly created account, its initial balance adding to the expected total. The account isn't
+	 * changed if it was already committed, e.g. by a transfer which raced with the creation.
+	 *
+	 * @param account
+	 * @return the version committed, -1 if versioning is off
+	 */
+	public long created(Account account) {
+		if (!enabled) {
+			return -1;
+		}
+		long version = nextVersion();
+		BigDecimal balance = account.getBalance();
+		chains.putIfAbsent(account.getAccountId(), Version.of(version, balance, null));
+		publish(version, 0, balance.signum() == 0 ? null : balance);
+		return version;
+	}
+
+	/**
+	 * This method returns the version the account was last changed at, which may not be visible to the snapshots yet.
+	 * Versions are never reused, so the account changed if and only if its version did.
+	 *
+	 * @param accountId
+	 * @return the version, or -1 if the account isn't committed
+	 */
+	public long getLatestVersion(String accountId) {
+		Version head = chains.get(accountId);
+		return head == null ? -1 : head.version;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * This method returns the newest version visible to the snapshots.
+	 *
+	 * @return
+	 */
+	public long getCommittedVersion() {
+		return committed.get().version;
+	}
+
+	/**
+	 * This method returns the oldest version a snapshot can still be opened at.
+	 *
+	 * @return
+	 */
+	public long getOldestVersion() {
+		return horizon;
+	}
+
+	/**
+	 * This method opens a snapshot at the newest committed version. The snapshot must be closed so the versions it
+	 * reads can be reclaimed.
+	 *
+	 * @return
+	 */
+	public Snapshot open() {
+		return open(-1);
+	}
+
+	/**
+	 * This method opens a snapshot at the given version. The snapshot must be closed so the versions it reads can be
+	 * reclaimed.
+	 *
+	 * @param version a committed version, or -1 for the newest one
+	 * @return a view of the live balances, at version -1, if versioning is off
+	 * @throws VersionUnavailableException if the version isn't committed yet or was already reclaimed, or if versioning
+	 *         is off and a version is given
+	 */
+	public Snapshot open(long version) {
+		if (!enabled) {
+			if (version >= 0) {
+				throw new VersionUnavailableException("Balance versions aren't enabled!");
+			}
+			return new Snapshot();
+		}
+		snapshotLock.lock();
+		try {
+			Committed current = committed.get();
+			long at = version < 0 ? current.version : version;
+			if (at > current.version) {
+				throw new VersionUnavailableException("Version " + at + " isn't committed yet!");
+			}
+			if (at < horizon) {
+				throw new VersionUnavailableException("Version " + at + " was reclaimed!");
+			}
+			openSnapshots.merge(at, 1, Integer::sum);
+			return new Snapshot(at, current.totals);
+		} finally {
+			snapshotLock.unlock();
+		}
+	}
+
+	/**
+	 * This method forgets every account, e.g. when the accounts are cleared, and expects a total of zero from then on.
+	 * Open snapshots must not be read anymore.
+	 */
+	public void clear() {
+		chains.clear();
+		while (true) {
+			Committed current = committed.get();
+			Totals totals = current.totals;
+			if (committed.compareAndSet(current, new Committed(current.version,
+					new Totals(current.version, totals.inTransit, BigDecimal.ZERO, totals)))) {
+				return;
+			}
+		}
+	}
+
+	private long nextVersion() {
+		long version = lastVersion.incrementAndGet();
+		// The slot of the version is free once the version using it before is visible
+		if (version - committed.get().version > RING_SIZE) {
+			awaitSlot(version);
+		}
+		return version;
+	}
+
+	/**
+	 * Waits until the version using the slot of the given one before is visible, woken up by the commit making it so.
+	 */
+	private void awaitSlot(long version) {
+		ringLock.lock();
+		try {
+			ringWaiters++;
+			while (version - committed.get().version > RING_SIZE) {
+				ringFree.awaitUninterruptibly();
+			}
+		} finally {
+			ringWaiters--;
+			ringLock.unlock();
+		}
+	}
+
+	/**
+	 * Installs the balance as the newest version of the account. The caller must have exclusive access to the account.
+	 */
+	private void install(String accountId, long version, BigDecimal balance, long horizon) {
+		Version head = chains.get(accountId);
+		Version newest = Version.of(version, balance, head);
+		newest.trimmedAt = head == null ? horizon : head.trimmedAt;
+		if (horizon != newest.trimmedAt) {
+			newest.trimmedAt = horizon;
+			trim(newest, horizon);
+		}
+		chains.put(accountId, newest);
+	}
+
+	/**
+	 * Marks the version installed and makes visible every installed version following the newest visible one, whichever
+	 * thread installed them.
+	 */
+	private void publish(long version, long inTransitChange, BigDecimal expectedChange) {
+		int slot = (int) (version & (RING_SIZE - 1));
+		inTransitChanges.set(slot, inTransitChange);
+		expectedChanges.set(slot, expectedChange);
+		installed.set(slot, version);
+		while (true) {
+			Committed current = committed.get();
+			long next = current.version + 1;
+			int nextSlot = (int) (next & (RING_SIZE - 1));
+			if (installed.get(nextSlot) != next) {
+				break;
+			}
+			long change = inTransitChanges.get(nextSlot);
+			BigDecimal expected = expectedChanges.get(nextSlot);
+			Totals totals = current.totals;
+			if (change != 0 || expected != null) {
+				totals = new Totals(next, totals.inTransit + change,
+						expected == null ? totals.expected : totals.expected.add(expected), totals);
+			}
+			committed.compareAndSet(current, new Committed(next, totals));
+		}
+		if (ringWaiters > 0) {
+			ringLock.lock();
+			try {
+				ringFree.signalAll();
+			} finally {
+				ringLock.unlock();
+			}
+		}
+		if ((version & (HORIZON_INTERVAL - 1)) == 0 && snapshotLock.tryLock()) {
+			try {
+				advanceHorizon();
+			} finally {
+				snapshotLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Must be called under the snapshot lock.
+	 */
+	private void advanceHorizon() {
+		Committed current = committed.get();
+		long oldest = Math.max(0, current.version - retainedVersions);
+		if (!openSnapshots.isEmpty()) {
+			oldest = Math.min(oldest, openSnapshots.firstKey());
+		}
+		if (oldest > horizon) {
+			horizon = oldest;
+			for (Totals totals = current.totals; totals != null; totals = totals.previous) {
+				if (totals.version <= oldest) {
+					totals.previous = null;
+					break;
+				}
+			}
+			if (oldest - trimmedAt >= HORIZON_INTERVAL) {
+				trimmedAt = oldest;
+				trimChains(oldest);
+			}
+		}
+	}
+
+	/**
+	 * Trims the chains of the next slice of the accounts, once the horizon moved by {@value #HORIZON_INTERVAL} versions,
+	 * so every chain is trimmed now and then even if its account is never committed again. Racing with the commit of an account is harmless: both only cut balances older than the
+	 * newest one at or before their horizon, which no snapshot can read.
+	 *
+	 * Must be called under the snapshot lock.
+	 */
+	private void trimChains(long oldest) {
+		if (!trimCursor.hasNext()) {
+			trimCursor = chains.entrySet().iterator();
+		}
+		for (int i = 0; i < TRIM_BATCH && trimCursor.hasNext(); i++) {
+			trim(trimCursor.next().getValue(), oldest);
+		}
+	}
+
+	private static void trim(Version newest, long horizon) {
+		// Only the newest balance at or before the horizon can still be read, drop the older ones
+		for (Version older = newest; older != null; older = older.previous) {
+			if (older.version <= horizon) {
+				older.previous = null;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Consistent view of all the balances as of one version. Reading it takes no lock and never blocks a transfer. If
+	 * versioning is off, view of the live balances instead, at version -1.
+	 */
+	public final class Snapshot implements AutoCloseable {
+
+		private final long version;
+
+		private final Totals totals;
+
+		private boolean closed;
+
+		Snapshot() {
+			this.version = -1;
+			this.totals = null;
+			this.closed = true;
+		}
+
+		Snapshot(long version, Totals newest) {
+			this.version = version;
+			Totals totals = newest;
+			while (totals.version > version) {
+				totals = totals.previous;
+			}
+			this.totals = totals;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @param accountId
+		 * @return the balance of the account, or null if it didn't exist at this version
+		 */
+		public BigDecimal getBalance(String accountId) {
+			if (totals == null) {
+				Account account = accountsRepository.getAccount(accountId);
+				return account == null ? null : account.getBalance();
+			}
+			return balanceAt(chains.get(accountId), version);
+		}
+
+		/**
+		 * This method passes the id and the balance of every account which existed at this version.
+		 *
+		 * @param action
+		 */
+		public void forEach(BiConsumer<String, BigDecimal> action) {
+			if (totals == null) {
+				accountsRepository.forEachAccount(account -> action.accept(account.getAccountId(), account.getBalance()));
+				return;
+			}
+			chains.forEach((accountId, head) -> {
+				BigDecimal balance = balanceAt(head, version);
+				if (balance != null) {
+					action.accept(accountId, balance);
+				}
+			});
+		}
+
+		/**
+		 * @return the amount debited but not credited yet by the cross-shard transfers at this version
+		 */
+		public BigDecimal getInTransit() {
+			return MinorUnits.toBigDecimal(totals == null ? liveInTransit.sum() : totals.inTransit);
+		}
+
+		/**
+		 * @return the total the balances and the amount in transit add up to at this version if no money was created or
+		 *         lost, null if versioning is off
+		 */
+		public BigDecimal getExpectedTotal() {
+			return totals == null ? null : totals.expected;
+		}
+
+		@Override
+		public void close() {
+			snapshotLock.lock();
+			try {
+				if (!closed) {
+					closed = true;
+					openSnapshots.computeIfPresent(version, (at, count) -> count == 1 ? null : count - 1);
+					advanceHorizon();
+				}
+			} finally {
+				snapshotLock.unlock();
+			}
+		}
+	}
+
+	private static final class Committed {
+
+		private final long version;
+
+		private final Totals totals;
+
+		Committed(long version, Totals totals) {
+			this.version = version;
+			this.totals = totals;
+		}
+	}
+
+	/**
+	 * Amount in transit, in minor units, and expected total from a version on, newest first.
+	 */
+	private static final class Totals {
+
+		private final long version;
+
+		private final long inTransit;
+
+		private final BigDecimal expected;
+
+		private Totals previous;
+
+		Totals(long version, long inTransit, BigDecimal expected, Totals previous) {
+			this.version = version;
+			this.inTransit = inTransit;
+			this.expected = expected;
+			this.previous = previous;
+		}
+	}
+
+	private static BigDecimal balanceAt(Version head, long version) {
+		for (Version candidate = head; candidate != null; candidate = candidate.previous) {
+			if (candidate.version <= version) {
+				return candidate.getBalance();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Balance of an account from a version on, in minor units.
+	 */
+	private static class Version {
+
+		private final long version;
+
+		private final long minorUnits;
+
+		private Version previous;
+
+		/**
+		 * Horizon the chain was last trimmed at, only accessed by the writer of the account.
+		 */
+		private long trimmedAt;
+
+		Version(long version, long minorUnits, Version previous) {
+			this.version = version;
+			this.minorUnits = minorUnits;
+			this.previous = previous;
+		}
+
+		static Version of(long version, BigDecimal balance, Version previous) {
+			if (balance.scale() == MinorUnits.SCALE && balance.precision() < 19) {
+				return new Version(version, balance.unscaledValue().longValue(), previous);
+			}
+			return new DecimalVersion(version, balance, previous);
+		}
+
+		BigDecimal getBalance() {
+			return MinorUnits.toBigDecimal(minorUnits);
+		}
+	}
+
+	/**
+	 * Balance which isn't kept in minor units without changing its scale.
+	 */
+	private static final class DecimalVersion extends Version {
+
+		private final BigDecimal balance;
+
+		DecimalVersion(long version, BigDecimal balance, Version previous) {
+			super(version, 0, previous);
+			this.balance = balance;
+		}
+
+		@Override
+		BigDecimal getBalance() {
+			return balance;
+		}
+	}
+}
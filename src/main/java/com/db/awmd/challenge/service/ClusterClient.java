@@ -0,0 +1,182 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import com.db.awmd.challenge.domain.ClusterTransfer;
+import com.db.awmd.challenge.domain.ClusterTransferState;
+import com.db.awmd.challenge.exception.ClusterUnavailableException;
+
+/**
+ * HTTP calls to the other nodes of the cluster, each bounded by {@code accounts.cluster.timeout-millis}. The calls of
+ * the two-phase transfers go to {@code /v1/cluster/transfers}, authenticated by the secret shared by the nodes.
+ *
+ */
+@Component
+public class ClusterClient {
+
+	/**
+	 * Header set on every call between nodes, so a forwarded request is never forwarded again.
+	 */
+	public static final String FORWARDED_HEADER = "X-Cluster-Forwarded";
+
+	/**
+	 * Header carrying the secret shared by the nodes, set on the calls of the two-phase transfers.
+	 */
+	public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+	private final ClusterTopology clusterTopology;
+
+	private final RestTemplate restTemplate;
+
+	@Autowired
+	public ClusterClient(ClusterTopology clusterTopology,
+			@Value("${accounts.cluster.timeout-millis:1000}") int timeoutMillis) {
+		this.clusterTopology = clusterTopology;
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(timeoutMillis);
+		requestFactory.setReadTimeout(timeoutMillis);
+		this.restTemplate = new RestTemplate(requestFactory);
+		// The status codes are interpreted by the callers
+		this.restTemplate.setErrorHandler(new ResponseErrorHandler() {
+
+			@Override
+			public boolean hasError(ClientHttpResponse response) throws IOException {
+				return false;
+			}
+
+			@Override
+			public void handleError(ClientHttpResponse response) {
+			}
+		});
+	}
+
+	/**
+	 * This method asks the node owning the destination account to prepare the credit of the transfer.
+	 *
+	 * @param node
+	 * @param transfer
+	 * @return true if the credit is prepared, false if the destination account doesn't exist
+	 * @throws ClusterUnavailableException if the node doesn't answer
+	 */
+	public boolean prepare(int node, ClusterTransfer transfer) {
+		ResponseEntity<byte[]> response = exchange(node, HttpMethod.POST,
+				"/v1/cluster/transfers/" + transfer.getId() + "/prepare", transfer);
+		return expect(node, response, HttpStatus.OK, HttpStatus.NOT_FOUND);
+	}
+
+	/**
+	 * This method tells the node owning the destination account to credit it.
+	 *
+	 * @param node
+	 * @param id
+	 * @return true if the credit is applied, false if the node doesn't know the transfer (anymore)
+	 * @throws ClusterUnavailableException if the node doesn't answer
+	 */
+	public boolean commit(int node, String id) {
+		ResponseEntity<byte[]> response = exchange(node, HttpMethod.POST, "/v1/cluster/transfers/" + id + "/commit", null);
+		return expect(node, response, HttpStatus.OK, HttpStatus.NOT_FOUND);
+	}
+
+	/**
+	 * This method tells the node owning the destination account to forget the prepared credit.
+	 *
+	 * @param node
+	 * @param id
+	 * @throws ClusterUnavailableException if the node doesn't answer
+	 */
+	public void abort(int node, String id) {
+		ResponseEntity<byte[]> response = exchange(node, HttpMethod.POST, "/v1/cluster/transfers/" + id + "/abort", null);
+		expect(node, response, HttpStatus.OK, null);
+	}
+
+	/**
+	 * This method asks the node coordinating the transfer for its outcome.
+	 *
+	 * @param node
+	 * @param id
+	 * @return the state of the transfer on the coordinating node
+	 * @throws ClusterUnavailableException if the node doesn't answer
+	 */
+	public ClusterTransferState getState(int node, String id) {
+		try {
+			ResponseEntity<ClusterTransfer> response = restTemplate.exchange(
+					URI.create(clusterTopology.getNode(node) + "/v1/cluster/transfers/" + id), HttpMethod.GET,
+					new HttpEntity<>(headers()), ClusterTransfer.class);
+			if (response.getStatusCode() != HttpStatus.OK) {
+				throw new ClusterUnavailableException("Node " + node + " answered " + response.getStatusCode() + "!");
+			}
+			return response.getBody().getState();
+		} catch (ResourceAccessException e) {
+			throw new ClusterUnavailableException("Node " + node + " couldn't be reached!", e);
+		}
+	}
+
+	/**
+	 * This method forwards a request to the node owning its account and returns the response as is.
+	 *
+	 * @param node
+	 * @param method
+	 * @param pathAndQuery
+	 * @param headers headers of the request, which gets the {@value #FORWARDED_HEADER} header
+	 * @param body
+	 * @return
+	 * @throws ClusterUnavailableException if the node doesn't answer
+	 */
+	public ResponseEntity<byte[]> forward(int node, HttpMethod method, String pathAndQuery, HttpHeaders headers,
+			byte[] body) {
+		headers.set(FORWARDED_HEADER, Integer.toString(clusterTopology.getNodeIndex()));
+		try {
+			return restTemplate.exchange(URI.create(clusterTopology.getNode(node) + pathAndQuery), method,
+					new HttpEntity<>(body, headers), byte[].class);
+		} catch (ResourceAccessException e) {
+			throw new ClusterUnavailableException("Node " + node + " couldn't be reached!", e);
+		}
+	}
+
+	private ResponseEntity<byte[]> exchange(int node, HttpMethod method, String path, Object body) {
+		try {
+			return restTemplate.exchange(URI.create(clusterTopology.getNode(node) + path), method,
+					new HttpEntity<>(body, headers()), byte[].class);
+		} catch (ResourceAccessException e) {
+			throw new ClusterUnavailableException("Node " + node + " couldn't be reached!", e);
+		}
+	}
+
+	/**
+	 * Returns true on the success status, false on the other expected one, and fails on any other.
+	 */
+	private static boolean expect(int node, ResponseEntity<byte[]> response, HttpStatus success, HttpStatus failure) {
+		if (response.getStatusCode() == success) {
+			return true;
+		}
+		if (response.getStatusCode() == failure) {
+			return false;
+		}
+		if (response.getStatusCode().is5xxServerError()) {
+			throw new ClusterUnavailableException("Node " + node + " answered " + response.getStatusCode() + "!");
+		}
+		throw new IllegalStateException("Node " + node + " answered " + response.getStatusCode() + "!");
+	}
+
+	private HttpHeaders headers() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(FORWARDED_HEADER, Integer.toString(clusterTopology.getNodeIndex()));
+		headers.set(SECRET_HEADER, clusterTopology.getSecret());
+		return headers;
+	}
+}
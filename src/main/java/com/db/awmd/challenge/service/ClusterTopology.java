@@ -0,0 +1,124 @@
+package com.db.awmd.challenge.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Nodes of the cluster, given by {@code accounts.cluster.nodes}, and the node each account belongs to. The hashes of
+ * the account ids are split into as many equal ranges as there are nodes, the n-th node owning the n-th range. With no
+ * or one node listed, this node owns every account. The nodes authenticate their calls to each other with the secret
+ * they share, {@code accounts.cluster.secret}.
+ *
+ */
+@Component
+public class ClusterTopology {
+
+	private final List<String> nodes;
+
+	private final int nodeIndex;
+
+	private final byte[] secret;
+
+	public ClusterTopology() {
+		this("", 0, "");
+	}
+
+	/**
+	 * @param nodes comma-separated base URLs of all the nodes, e.g. {@code http://host1:18080,http://host2:18080}
+	 * @param nodeIndex position of this node in the list
+	 * @param secret shared by all the nodes, required if there are several
+	 */
+	@Autowired
+	public ClusterTopology(@Value("${accounts.cluster.nodes:}") String nodes,
+			@Value("${accounts.cluster.node-index:0}") int nodeIndex,
+			@Value("${accounts.cluster.secret:}") String secret) {
+		List<String> urls = new ArrayList<>();
+		for (String node : nodes.split(",")) {
+			String url = node.trim();
+			if (!url.isEmpty()) {
+				urls.add(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+			}
+		}
+		if (!urls.isEmpty() && (nodeIndex < 0 || nodeIndex >= urls.size())) {
+			throw new IllegalArgumentException("Node index must be between 0 and " + (urls.size() - 1) + "!");
+		}
+		if (urls.size() > 1 && secret.isEmpty()) {
+			throw new IllegalArgumentException("A secret shared by the nodes is required with several nodes!");
+		}
+		this.nodes = Collections.unmodifiableList(urls);
+		this.nodeIndex = urls.isEmpty() ? 0 : nodeIndex;
+		this.secret = secret.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return true if the accounts are spread over several nodes
+	 */
+	public boolean isEnabled() {
+		return nodes.size() > 1;
+	}
+
+	public int getNodeIndex() {
+		return nodeIndex;
+	}
+
+	public int getNodeCount() {
+		return Math.max(1, nodes.size());
+	}
+
+	/**
+	 * @param node
+	 * @return the base URL of the node
+	 */
+	public String getNode(int node) {
+		return nodes.get(node);
+	}
+
+	/**
+	 * This method returns the index of the node owning the account.
+	 *
+	 * @param accountId
+	 * @return
+	 */
+	public int ownerOf(String accountId) {
+		int h = accountId.hashCode();
+		long hash = (h ^ (h >>> 16)) & 0xffffffffL;
+		return (int) ((hash * getNodeCount()) >>> 32);
+	}
+
+	public boolean isLocal(String accountId) {
+		return ownerOf(accountId) == nodeIndex;
+	}
+
+	public String getSecret() {
+		return new String(secret, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This method checks that a call comes from another node of the cluster: the cluster must be enabled, the caller
+	 * must know the shared secret and give the index of another node.
+	 *
+	 * @param secret secret sent by the caller, may be null
+	 * @param node index of the node sent by the caller
+	 * @return
+	 */
+	public boolean isPeer(String secret, int node) {
+		return isEnabled() && secret != null && node >= 0 && node < nodes.size() && node != nodeIndex
+				&& MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("nodeIndex", nodeIndex);
+		map.put("nodes", nodes);
+		return map;
+	}
+}
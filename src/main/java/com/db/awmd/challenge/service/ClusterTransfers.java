@@ -0,0 +1,413 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.ClusterTransfer;
+import com.db.awmd.challenge.domain.ClusterTransferState;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.ClusterUnavailableException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Transfers between accounts owned by two nodes of the cluster, executed with a two-phase reserve/commit protocol. The
+ * node owning the source account coordinates the transfer:
+ * <ol>
+ * <li>it reserves the amount by debiting the source account,</li>
+ * <li>it asks the node owning the destination account to prepare the credit, which only checks the account exists,</li>
+ * <li>once prepared it decides to commit and tells the other node to credit the destination account, otherwise it
+ * gives the amount back to the source account and tells the other node to forget the transfer.</li>
+ * </ol>
+ * Every call is bounded by {@code accounts.cluster.timeout-millis}. A transfer whose destination node doesn't answer
+ * the prepare is aborted. A node only prepares transfers from an account of the node coordinating them, and only
+ * takes the calls of the other nodes, see {@link ClusterTopology#isPeer(String, int)}.
+ *
+ * A recovery thread finishes what a lost call left over, every {@code accounts.cluster.recovery-interval-millis}: the
+ * coordinator repeats the commits and aborts its decided transfers couldn't deliver, and a node holding a credit still
+ * prepared after {@code accounts.cluster.prepare-timeout-millis} asks the coordinator for the outcome. A coordinator
+ * forgets a transfer once the other node acknowledged the outcome, so it answers an unknown transfer as aborted.
+ *
+ * The transfers in progress are only held in memory: a node restarting in the middle of a transfer can't recover it.
+ *
+ */
+@Component
+@Slf4j
+public class ClusterTransfers {
+
+	private final AccountsService accountsService;
+
+	private final ClusterTopology clusterTopology;
+
+	private final ClusterClient clusterClient;
+
+	private final long prepareTimeoutMillis;
+
+	private final long recoveryIntervalMillis;
+
+	/**
+	 * Threads of the transfers to another node, which wait on the calls to that node, so a slow node never holds up
+	 * the threads of the local transfers.
+	 */
+	private final TransferExecutor executor;
+
+	/**
+	 * Transfers coordinated by this node until the other node acknowledged their outcome.
+	 */
+	private final Map<String, Entry> coordinated = new ConcurrentHashMap<>();
+
+	/**
+	 * Transfers prepared on this node, kept once finished so repeated commits and aborts are acknowledged again.
+	 */
+	private final Map<String, Entry> prepared = new ConcurrentHashMap<>();
+
+	/**
+	 * Identifies this run of the node in the ids of its transfers, so that a restarted node numbering its transfers
+	 * from one again never reuses the id of a transfer the other nodes still remember.
+	 */
+	private final String epoch = UUID.randomUUID().toString();
+
+	private final AtomicLong lastId = new AtomicLong();
+
+	private Thread recovery;
+
+	private volatile boolean running;
+
+	@Autowired
+	public ClusterTransfers(AccountsService accountsService, ClusterTopology clusterTopology, ClusterClient clusterClient,
+			@Value("${accounts.cluster.prepare-timeout-millis:5000}") long prepareTimeoutMillis,
+			@Value("${accounts.cluster.recovery-interval-millis:1000}") long recoveryIntervalMillis,
+			@Value("${accounts.cluster.executor.threads:32}") int threads,
+			@Value("${accounts.cluster.executor.max-pending:1000}") int maxPending) {
+		this.accountsService = accountsService;
+		this.clusterTopology = clusterTopology;
+		this.clusterClient = clusterClient;
+		this.prepareTimeoutMillis = prepareTimeoutMillis;
+		this.recoveryIntervalMillis = recoveryIntervalMillis;
+		this.executor = new TransferExecutor("cluster-transfer", threads, maxPending);
+	}
+
+	/**
+	 * This method starts the recovery thread if the accounts are spread over several nodes.
+	 */
+	@PostConstruct
+	public void start() {
+		if (!clusterTopology.isEnabled()) {
+			return;
+		}
+		running = true;
+		recovery = new Thread(() -> {
+			while (running) {
+				try {
+					Thread.sleep(recoveryIntervalMillis);
+					recover(System.currentTimeMillis());
+				} catch (InterruptedException e) {
+					break;
+				} catch (RuntimeException e) {
+					log.error("Recovery of the cluster transfers failed", e);
+				}
+			}
+		}, "cluster-recovery");
+		recovery.setDaemon(true);
+		recovery.start();
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		if (recovery != null) {
+			recovery.interrupt();
+			recovery.join();
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * This method returns the executor the transfers to another node must be executed on, instead of the
+	 * {@link TransferExecutor} of the local transfers. It's bounded by {@code accounts.cluster.executor.threads} and
+	 * {@code accounts.cluster.executor.max-pending}.
+	 *
+	 * @return
+	 */
+	public TransferExecutor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @param accountId
+	 * @return true if the account is owned by another node
+	 */
+	public boolean isRemote(String accountId) {
+		return clusterTopology.isEnabled() && !clusterTopology.isLocal(accountId);
+	}
+
+	/**
+	 * This method coordinates a transfer from an account of this node to an account of another node.
+	 *
+	 * @param accountFromId
+	 * @param accountToId
+	 * @param amount
+	 * @return {@link TransferStatus#COMPLETED}, {@link TransferStatus#NO_SUCH_ACCOUNT} or
+	 *         {@link TransferStatus#INSUFFICIENT_BALANCE}
+	 * @throws ClusterUnavailableException if the other node didn't answer, the transfer being aborted
+	 */
+	public TransferStatus transfer(String accountFromId, String accountToId, BigDecimal amount) {
+		int node = clusterTopology.ownerOf(accountToId);
+		Entry entry = new Entry(new ClusterTransfer(clusterTopology.getNodeIndex() + "-" + epoch + "-" + lastId.incrementAndGet(),
+				accountFromId, accountToId, amount, null), ClusterTransferState.RESERVED, System.currentTimeMillis());
+		String id = entry.transfer.getId();
+		coordinated.put(id, entry);
+		TransferStatus reserved = accountsService.transferRemote(accountFromId, accountToId, amount, accountToId);
+		if (reserved != TransferStatus.COMPLETED) {
+			coordinated.remove(id);
+			return reserved;
+		}
+
+		boolean ready;
+		try {
+			ready = clusterClient.prepare(node, entry.transfer);
+		} catch (RuntimeException e) {
+			// The other node may have prepared without answering, it's told to abort or asks later
+			release(entry);
+			deliver(node, entry);
+			throw e instanceof ClusterUnavailableException ? (ClusterUnavailableException) e
+					: new ClusterUnavailableException("Transfer " + id + " couldn't be prepared!", e);
+		}
+		if (!ready) {
+			release(entry);
+			coordinated.remove(id);
+			return TransferStatus.NO_SUCH_ACCOUNT;
+		}
+		entry.setState(ClusterTransferState.COMMITTED);
+		deliver(node, entry);
+		return TransferStatus.COMPLETED;
+	}
+
+	/**
+	 * This method prepares the credit of a transfer to an account of this node, coordinated by the given node which
+	 * must own the source account. Preparing a transfer again has no effect.
+	 *
+	 * @param node index of the node coordinating the transfer
+	 * @param transfer
+	 * @return false if the destination account doesn't exist
+	 * @throws IllegalArgumentException if the transfer isn't one the node can coordinate to this node
+	 */
+	public boolean prepare(int node, ClusterTransfer transfer) {
+		BigDecimal amount = transfer.getAmount();
+		if (amount == null || amount.signum() <= 0 || !MinorUnits.isRepresentable(amount)) {
+			throw new IllegalArgumentException("Amount must be positive with at most " + MinorUnits.SCALE
+					+ " decimal places!");
+		}
+		if (transfer.getId() == null || coordinatorOf(transfer.getId()) != node) {
+			throw new IllegalArgumentException("Transfer " + transfer.getId() + " isn't coordinated by node " + node + "!");
+		}
+		if (transfer.getAccountFromId() == null || clusterTopology.ownerOf(transfer.getAccountFromId()) != node) {
+			throw new IllegalArgumentException("Account " + transfer.getAccountFromId() + " isn't owned by node " + node
+					+ "!");
+		}
+		if (transfer.getAccountToId() == null || !clusterTopology.isLocal(transfer.getAccountToId())) {
+			throw new IllegalArgumentException("Account " + transfer.getAccountToId() + " isn't owned by this node!");
+		}
+		if (accountsService.getAccount(transfer.getAccountToId()) == null) {
+			return false;
+		}
+		prepared.putIfAbsent(transfer.getId(),
+				new Entry(transfer, ClusterTransferState.PREPARED, System.currentTimeMillis()));
+		return true;
+	}
+
+	/**
+	 * This method credits the destination account of a prepared transfer, once whatever the number of commits.
+	 *
+	 * @param id
+	 * @return false if the transfer isn't known
+	 * @throws IllegalStateException if the transfer was aborted
+	 */
+	public boolean commit(String id) {
+		Entry entry = prepared.get(id);
+		if (entry == null) {
+			return false;
+		}
+		synchronized (entry) {
+			if (entry.state == ClusterTransferState.ABORTED) {
+				throw new IllegalStateException("Transfer " + id + " was aborted!");
+			}
+			if (entry.state == ClusterTransferState.PREPARED) {
+				ClusterTransfer transfer = entry.transfer;
+				TransferStatus status = accountsService.transferRemote(transfer.getAccountFromId(),
+						transfer.getAccountToId(), transfer.getAmount(), transfer.getAccountFromId());
+				if (status != TransferStatus.COMPLETED) {
+					// Only if the account was deleted since it was prepared
+					throw new IllegalStateException("Transfer " + id + " couldn't be credited: " + status);
+				}
+				entry.setState(ClusterTransferState.COMMITTED);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This method forgets a prepared transfer. Aborting an unknown transfer has no effect.
+	 *
+	 * @param id
+	 * @throws IllegalStateException if the transfer was committed
+	 */
+	public void abort(String id) {
+		Entry entry = prepared.get(id);
+		if (entry == null) {
+			return;
+		}
+		synchronized (entry) {
+			if (entry.state == ClusterTransferState.COMMITTED) {
+				throw new IllegalStateException("Transfer " + id + " was committed!");
+			}
+			entry.setState(ClusterTransferState.ABORTED);
+		}
+	}
+
+	/**
+	 * This method returns the index of the node coordinating a transfer, which its id starts with.
+	 *
+	 * @param id
+	 * @return the index of the node, or -1 if the id doesn't start with one
+	 */
+	public static int coordinatorOf(String id) {
+		int end = id.indexOf('-');
+		try {
+			return end > 0 ? Integer.parseInt(id.substring(0, end)) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * This method returns the outcome of a transfer coordinated by this node.
+	 *
+	 * @param id
+	 * @return the state of the transfer, aborted if it isn't known
+	 */
+	public ClusterTransferState getState(String id) {
+		Entry entry = coordinated.get(id);
+		return entry == null ? ClusterTransferState.ABORTED : entry.state;
+	}
+
+	/**
+	 * This method returns the number of transfers coordinated by this node whose outcome isn't acknowledged yet, of
+	 * transfers prepared on this node still waiting for their outcome, and the state of the executor of the transfers
+	 * to another node.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("coordinated", coordinated.size());
+		map.put("prepared", prepared.values().stream().filter(e -> e.state == ClusterTransferState.PREPARED).count());
+		map.put("executor", executor.toMap());
+		return map;
+	}
+
+	/**
+	 * This method finishes the transfers left over by lost calls, which the recovery thread does periodically.
+	 *
+	 * @param nowMillis
+	 */
+	public void recover(long nowMillis) {
+		for (Entry entry : coordinated.values()) {
+			if (entry.state == ClusterTransferState.COMMITTED || entry.state == ClusterTransferState.ABORTED) {
+				deliver(clusterTopology.ownerOf(entry.transfer.getAccountToId()), entry);
+			}
+		}
+		for (Entry entry : prepared.values()) {
+			if (entry.state != ClusterTransferState.PREPARED) {
+				if (nowMillis - entry.changedAtMillis > 10 * prepareTimeoutMillis) {
+					prepared.remove(entry.transfer.getId(), entry);
+				}
+			} else if (nowMillis - entry.changedAtMillis > prepareTimeoutMillis) {
+				resolve(entry);
+			}
+		}
+	}
+
+	/**
+	 * Asks the coordinator for the outcome of a transfer prepared for too long.
+	 */
+	private void resolve(Entry entry) {
+		String id = entry.transfer.getId();
+		int coordinator = coordinatorOf(id);
+		ClusterTransferState state;
+		try {
+			state = clusterClient.getState(coordinator, id);
+		} catch (ClusterUnavailableException e) {
+			log.warn("Outcome of transfer {} is unknown: {}", id, e.getMessage());
+			return;
+		}
+		if (state == ClusterTransferState.COMMITTED) {
+			commit(id);
+		} else if (state == ClusterTransferState.ABORTED) {
+			abort(id);
+		}
+		log.info("Recovered transfer {}: {}", id, state);
+	}
+
+	/**
+	 * Tells the outcome to the other node, and forgets the transfer once acknowledged.
+	 */
+	private void deliver(int node, Entry entry) {
+		String id = entry.transfer.getId();
+		try {
+			if (entry.state == ClusterTransferState.COMMITTED) {
+				if (!clusterClient.commit(node, id)) {
+					log.error("Node {} doesn't know the committed transfer {}", node, entry.transfer);
+				}
+			} else {
+				clusterClient.abort(node, id);
+			}
+			coordinated.remove(id, entry);
+		} catch (RuntimeException e) {
+			// Repeated by the recovery until acknowledged
+			log.warn("Outcome of transfer {} not delivered: {}", id, e.getMessage());
+		}
+	}
+
+	/**
+	 * Gives the reserved amount back to the source account.
+	 */
+	private void release(Entry entry) {
+		ClusterTransfer transfer = entry.transfer;
+		accountsService.transferRemote(transfer.getAccountToId(), transfer.getAccountFromId(), transfer.getAmount(),
+				transfer.getAccountToId());
+		entry.setState(ClusterTransferState.ABORTED);
+	}
+
+	private static final class Entry {
+
+		private final ClusterTransfer transfer;
+
+		private volatile ClusterTransferState state;
+
+		private volatile long changedAtMillis;
+
+		Entry(ClusterTransfer transfer, ClusterTransferState state, long changedAtMillis) {
+			this.transfer = transfer;
+			this.state = state;
+			this.changedAtMillis = changedAtMillis;
+		}
+
+		void setState(ClusterTransferState state) {
+			this.state = state;
+			this.changedAtMillis = System.currentTimeMillis();
+		}
+	}
+}
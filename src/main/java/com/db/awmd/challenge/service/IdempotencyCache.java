@@ -0,0 +1,258 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.repository.IdempotencyJournal;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers the outcome of the transfers made with an idempotency key, so a retry with the same key gets the original
+ * outcome instead of executing the transfer again. A retry arriving while the original transfer still runs waits for
+ * its outcome.
+ *
+ * Keys are looked up in a hash map and evicted in insertion order from a queue, so both cost the same whatever the
+ * number of keys. Keys expire after {@code accounts.idempotency.time-to-live-millis} and the oldest ones are evicted
+ * beyond {@code accounts.idempotency.max-entries}.
+ *
+ * When the journal is enabled, outcomes are also written to an {@link IdempotencyJournal} and restored on startup. An
+ * outcome is made durable after its transfer, so a crash between the two can still let a retry execute again.
+ *
+ */
+@Component
+@Slf4j
+public class IdempotencyCache implements IdempotencyJournal.Listener {
+
+	/**
+	 * Rough heap cost of an entry besides its strings: the entry, its map and queue nodes, its future and its result.
+	 */
+	private static final int ENTRY_OVERHEAD = 240;
+
+	private final long timeToLiveMillis;
+
+	private final int maxEntries;
+
+	private final IdempotencyJournal journal;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final AtomicLong estimatedBytes = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public IdempotencyCache(long timeToLiveMillis, int maxEntries) throws IOException {
+		this(timeToLiveMillis, maxEntries, Optional.empty());
+	}
+
+	@Autowired
+	public IdempotencyCache(@Value("${accounts.idempotency.time-to-live-millis:86400000}") long timeToLiveMillis,
+			@Value("${accounts.idempotency.max-entries:1000000}") int maxEntries, Optional<IdempotencyJournal> journal)
+			throws IOException {
+		this.timeToLiveMillis = timeToLiveMillis;
+		this.maxEntries = maxEntries;
+		this.journal = journal.orElse(null);
+		if (this.journal != null) {
+			long start = System.nanoTime();
+			long records = this.journal.replay(this);
+			evict(System.currentTimeMillis());
+			log.info("Restored {} of {} idempotency keys in {} ms", entries.size(), records,
+					(System.nanoTime() - start) / 1000000);
+		}
+	}
+
+	/**
+	 * This method executes the transfer unless a transfer was already made with the same key, in which case the outcome
+	 * of that transfer is returned.
+	 *
+	 * @param key idempotency key
+	 * @param fingerprint identifies the transfer, a key can't be reused for another transfer
+	 * @param transfer executes the transfer
+	 * @return
+	 * @throws IdempotencyKeyReusedException if the key was used for another transfer
+	 */
+	public Outcome execute(String key, String fingerprint, Supplier<TransferResult> transfer) {
+		long now = System.currentTimeMillis();
+		Entry entry = new Entry(key, fingerprint, now);
+		while (true) {
+			Entry existing = entries.putIfAbsent(key, entry);
+			if (existing == null) {
+				break;
+			}
+			if (now - existing.createdAtMillis < timeToLiveMillis) {
+				if (!existing.fingerprint.equals(fingerprint)) {
+					hits.increment();
+					throw new IdempotencyKeyReusedException("Idempotency key " + key + " was already used for another transfer!");
+				}
+				try {
+					TransferResult result = existing.result.join();
+					hits.increment();
+					return new Outcome(result, true);
+				} catch (CompletionException e) {
+					// The original transfer failed unexpectedly and its key was released, try again
+					continue;
+				}
+			}
+			if (entries.replace(key, existing, entry)) {
+				break;
+			}
+		}
+		misses.increment();
+		insertionOrder.add(entry);
+		queued.incrementAndGet();
+		estimatedBytes.addAndGet(entry.estimatedBytes());
+		evict(now);
+
+		TransferResult result;
+		try {
+			result = transfer.get();
+		} catch (RuntimeException e) {
+			entries.remove(key, entry);
+			entry.result.completeExceptionally(e);
+			throw e;
+		}
+		entry.result.complete(result);
+		if (journal != null) {
+			journal.append(key, fingerprint, result.getStatus(), result.getMessage(), entry.createdAtMillis);
+			journal.sync();
+		}
+		return new Outcome(result, false);
+	}
+
+	@Override
+	public void replayed(String key, String fingerprint, TransferStatus status, String message, long createdAtMillis) {
+		Entry entry = new Entry(key, fingerprint, createdAtMillis);
+		entry.result.complete(new TransferResult(0, status, message));
+		entries.put(key, entry);
+		insertionOrder.add(entry);
+		queued.incrementAndGet();
+		estimatedBytes.addAndGet(entry.estimatedBytes());
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * This method summarizes the cache for reporting.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		long hitCount = hits.sum();
+		long lookups = hitCount + misses.sum();
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("size", entries.size());
+		map.put("maxEntries", maxEntries);
+		map.put("hits", hitCount);
+		map.put("misses", misses.sum());
+		map.put("hitRate", lookups == 0 ? 0 : (double) hitCount / lookups);
+		map.put("evictions", evictions.sum());
+		map.put("estimatedBytes", estimatedBytes.get());
+		map.put("durable", journal != null);
+		return map;
+	}
+
+	/**
+	 * Entries are queued in creation order, which is also their expiry order, so only the head of the queue has to be
+	 * checked. Entries replaced in the map stay queued until they reach the head.
+	 */
+	private void evict(long now) {
+		Entry head;
+		while ((head = insertionOrder.peek()) != null
+				&& (now - head.createdAtMillis >= timeToLiveMillis || queued.get() > maxEntries)) {
+			if (insertionOrder.remove(head)) {
+				queued.decrementAndGet();
+				estimatedBytes.addAndGet(-head.estimatedBytes());
+				if (entries.remove(head.key, head)) {
+					evictions.increment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Outcome of {@link IdempotencyCache#execute(String, String, Supplier)}.
+	 */
+	public static final class Outcome {
+
+		private final TransferResult result;
+
+		private final boolean replayed;
+
+		Outcome(TransferResult result, boolean replayed) {
+			this.result = result;
+			this.replayed = replayed;
+		}
+
+		public TransferResult getResult() {
+			return result;
+		}
+
+		/**
+		 * @return true if the result is the one of an earlier transfer made with the same key
+		 */
+		public boolean isReplayed() {
+			return replayed;
+		}
+	}
+
+	private static final class Entry {
+
+		private final String key;
+
+		private final String fingerprint;
+
+		private final long createdAtMillis;
+
+		private final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+
+		Entry(String key, String fingerprint, long createdAtMillis) {
+			this.key = key;
+			this.fingerprint = fingerprint;
+			this.createdAtMillis = createdAtMillis;
+		}
+
+		long estimatedBytes() {
+			return ENTRY_OVERHEAD + 2L * (key.length() + fingerprint.length());
+		}
+	}
+}
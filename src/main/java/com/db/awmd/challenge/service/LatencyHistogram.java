@@ -0,0 +1,124 @@
+package com.db.awmd.challenge.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of durations in nanoseconds with log-linear buckets, as in HdrHistogram: values below
+ * {@value #SUB_BUCKETS} get a bucket each, and every power of two above is split in {@value #HALF_SUB_BUCKETS} linear
+ * sub-buckets, so any recorded value is reported within 1/{@value #HALF_SUB_BUCKETS} of its magnitude.
+ * The buckets are fixed up front and recording is a single atomic increment, so it never allocates.
+ *
+ * Percentiles are computed from the counts when read. Reading while values are recorded gives an approximate view.
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+	private static final int BUCKETS = bucketFor(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * This method records a duration. Negative durations, which a clock adjustment could produce, are recorded as 0.
+	 *
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucketFor(value));
+		count.increment();
+		sum.add(value);
+		if (value > max.get()) {
+			max.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long recorded = count.sum();
+		return recorded == 0 ? 0 : (double) sum.sum() / recorded;
+	}
+
+	/**
+	 * This method returns the value below which the given percentage of the recorded values fall.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return the lowest value of the bucket holding the percentile, or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(lowestValueOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * This method summarizes the histogram for reporting.
+	 *
+	 * @return count, mean, percentiles and max, in nanoseconds
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("count", getCount());
+		map.put("mean", Math.round(getMean()));
+		map.put("p50", getValueAtPercentile(50));
+		map.put("p90", getValueAtPercentile(90));
+		map.put("p99", getValueAtPercentile(99));
+		map.put("p999", getValueAtPercentile(99.9));
+		map.put("max", getMax());
+		return map;
+	}
+
+	/**
+	 * Values below {@value #SUB_BUCKETS} get a bucket of their own. Above, a value is shifted right until it fits in
+	 * the upper half of the sub-buckets, and the shift selects the range of buckets.
+	 */
+	private static int bucketFor(long value) {
+		int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	private static long lowestValueOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / HALF_SUB_BUCKETS - 1;
+		return (long) (bucket - shift * HALF_SUB_BUCKETS) << shift;
+	}
+}
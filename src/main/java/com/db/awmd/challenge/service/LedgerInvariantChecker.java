@@ -0,0 +1,174 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.LedgerCheck;
+import com.db.awmd.challenge.exception.VersionUnavailableException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Verifies that no money is ever created or lost: the balances of all the accounts plus the amount in transit must add
+ * up to the expected total, which only changes with the creations, the debits and credits on their own and the
+ * transfers with other nodes, see {@link BalanceVersions}. All three are read from one snapshot, so the check runs
+ * while the transfers go on and never sees a transfer half done.
+ *
+ * Every {@code accounts.invariant.interval-millis} a checker thread scans the balances, pausing after every
+ * {@value #CHUNK} accounts so that scanning takes at most {@code accounts.invariant.max-cpu-ratio} of its time. A
+ * discrepancy is logged as an error and counted, and the last one is kept for reporting. The expected total is only
+ * known when {@code accounts.versions.enabled} is set, so the ledger can't be checked otherwise.
+ *
+ */
+@Component
+@Slf4j
+public class LedgerInvariantChecker {
+
+	private static final int CHUNK = 4096;
+
+	private final AccountsService accountsService;
+
+	private final long intervalMillis;
+
+	private final double maxCpuRatio;
+
+	private final AtomicLong checks = new AtomicLong();
+
+	private final AtomicLong discrepancies = new AtomicLong();
+
+	private volatile LedgerCheck lastCheck;
+
+	private volatile LedgerCheck lastDiscrepancy;
+
+	private Thread checker;
+
+	private volatile boolean running;
+
+	@Autowired
+	public LedgerInvariantChecker(AccountsService accountsService,
+			@Value("${accounts.invariant.interval-millis:0}") long intervalMillis,
+			@Value("${accounts.invariant.max-cpu-ratio:0.05}") double maxCpuRatio) {
+		if (maxCpuRatio <= 0 || maxCpuRatio > 1) {
+			throw new IllegalArgumentException("CPU ratio must be above 0 and at most 1!");
+		}
+		this.accountsService = accountsService;
+		this.intervalMillis = intervalMillis;
+		this.maxCpuRatio = maxCpuRatio;
+	}
+
+	/**
+	 * This method starts the checker thread, unless the interval is 0 or the balance versions aren't enabled.
+	 */
+	@PostConstruct
+	public void start() {
+		if (intervalMillis <= 0) {
+			return;
+		}
+		if (!accountsService.getBalanceVersions().isEnabled()) {
+			log.warn("Ledger checks are disabled, they need accounts.versions.enabled");
+			return;
+		}
+		running = true;
+		checker = new Thread(() -> {
+			while (running) {
+				try {
+					Thread.sleep(intervalMillis);
+					check();
+				} catch (InterruptedException e) {
+					break;
+				} catch (RuntimeException e) {
+					log.error("Ledger check failed", e);
+				}
+			}
+		}, "ledger-invariant-checker");
+		checker.setDaemon(true);
+		checker.start();
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		if (checker != null) {
+			checker.interrupt();
+			checker.join();
+		}
+	}
+
+	/**
+	 * This method reconciles the balances of the newest committed version against its expected total.
+	 *
+	 * @return
+	 * @throws VersionUnavailableException if the balance versions aren't enabled
+	 */
+	public LedgerCheck check() {
+		if (!accountsService.getBalanceVersions().isEnabled()) {
+			throw new VersionUnavailableException("Ledger checks need balance versions to be enabled!");
+		}
+		long checkedAt = System.currentTimeMillis();
+		long startedAt = System.nanoTime();
+		try (BalanceVersions.Snapshot snapshot = accountsService.openSnapshot(-1)) {
+			BigDecimal[] total = { BigDecimal.ZERO };
+			long[] accounts = { 0 };
+			long[] chunkStartedAt = { startedAt };
+			accountsService.forEachAccount(snapshot, (accountId, balance) -> {
+				total[0] = total[0].add(balance);
+				if (++accounts[0] % CHUNK == 0) {
+					chunkStartedAt[0] = pause(chunkStartedAt[0]);
+				}
+			});
+			BigDecimal inTransit = snapshot.getInTransit();
+			BigDecimal expected = snapshot.getExpectedTotal();
+			LedgerCheck result = new LedgerCheck(snapshot.getVersion(), accounts[0], total[0], inTransit, expected,
+					total[0].add(inTransit).subtract(expected), checkedAt, (System.nanoTime() - startedAt) / 1000000);
+			checks.incrementAndGet();
+			lastCheck = result;
+			if (!result.isBalanced()) {
+				discrepancies.incrementAndGet();
+				lastDiscrepancy = result;
+				log.error("Ledger is off by {} at version {}: balances {} and in transit {} against {} expected",
+						result.getDifference(), result.getVersion(), result.getTotal(), inTransit, expected);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * This method summarizes the checks for reporting.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("intervalMillis", intervalMillis);
+		map.put("maxCpuRatio", maxCpuRatio);
+		map.put("checks", checks.get());
+		map.put("discrepancies", discrepancies.get());
+		map.put("lastCheck", lastCheck);
+		map.put("lastDiscrepancy", lastDiscrepancy);
+		return map;
+	}
+
+	/**
+	 * Pauses long enough for the chunk just scanned to be the allowed share of the time.
+	 *
+	 * @return when the next chunk starts
+	 */
+	private long pause(long chunkStartedAt) {
+		long busy = System.nanoTime() - chunkStartedAt;
+		long idle = (long) (busy * (1 / maxCpuRatio - 1));
+		if (idle > 0) {
+			LockSupport.parkNanos(idle);
+		}
+		return System.nanoTime();
+	}
+}
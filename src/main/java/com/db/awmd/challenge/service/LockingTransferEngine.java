@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Transfer engine which locks only the two accounts involved through the striped {@link AccountLocks}, so transfers
+ * between unrelated accounts run in parallel on the calling threads. This is the default mode. Completed transfers are
+ * appended to the {@link TransferLedger} and committed to the {@link BalanceVersions} before the locks are released.
+ *
+ */
+@Service
+@ConditionalOnProperty(prefix = "accounts.transfer", name = "mode", havingValue = "locking", matchIfMissing = true)
+public class LockingTransferEngine implements TransferEngine {
+
+	private final AccountsRepository accountsRepository;
+
+	private final AccountLocks accountLocks;
+
+	private final TransferMetrics transferMetrics;
+
+	private final TransferLedger transferLedger;
+
+	private final BalanceVersions balanceVersions;
+
+	public LockingTransferEngine(AccountsRepository accountsRepository, AccountLocks accountLocks) {
+		this(accountsRepository, accountLocks, new TransferMetrics(), new TransferLedger(), new BalanceVersions());
+	}
+
+	@Autowired
+	public LockingTransferEngine(AccountsRepository accountsRepository, AccountLocks accountLocks,
+			TransferMetrics transferMetrics, TransferLedger transferLedger, BalanceVersions balanceVersions) {
+		this.accountsRepository = accountsRepository;
+		this.accountLocks = accountLocks;
+		this.transferMetrics = transferMetrics;
+		this.transferLedger = transferLedger;
+		this.balanceVersions = balanceVersions;
+	}
+
+	@Override
+	public TransferStatus tryTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+		// Striped accounts are only locked on the stripe of this thread
+		Account debited = StripedAccount.select(fromAccount);
+		Account credited = StripedAccount.select(toAccount);
+		long requestedAt = System.nanoTime();
+		accountLocks.lock(debited.getAccountId(), credited.getAccountId());
+		long acquiredAt = System.nanoTime();
+		boolean completed;
+		try {
+			completed = accountsRepository.tryTransfer(debited, credited, amount);
+			if (completed) {
+				transferLedger.recordTransfer(fromAccount.getAccountId(), toAccount.getAccountId(),
+						MinorUnits.toMinorUnits(amount));
+				balanceVersions.commit(debited, credited);
+			}
+		} finally {
+			accountLocks.unlock(debited.getAccountId(), credited.getAccountId());
+			transferMetrics.lockTimed(acquiredAt - requestedAt, System.nanoTime() - acquiredAt);
+		}
+		if (!completed) {
+			if (debited == fromAccount) {
+				return TransferStatus.INSUFFICIENT_BALANCE;
+			}
+			return transferAcrossStripes((StripedAccount) fromAccount, toAccount, amount);
+		}
+		// Wait for durability once the locks are released so other transfers can share the same sync
+		accountsRepository.sync();
+		return TransferStatus.COMPLETED;
+	}
+
+	@Override
+	public void transferBatch(TransferBatch batch) {
+		executeExclusively(batch.getAccountIds(), () -> {
+			batch.execute(accountsRepository);
+			batch.record(transferLedger);
+			batch.commit(balanceVersions);
+			return batch;
+		});
+		accountsRepository.sync();
+	}
+
+	@Override
+	public <T> T executeExclusively(Collection<String> accountIds, Supplier<T> change) {
+		long requestedAt = System.nanoTime();
+		int[] stripes = accountLocks.lockAll(accountIds);
+		long acquiredAt = System.nanoTime();
+		try {
+			return change.get();
+		} finally {
+			accountLocks.unlockAll(stripes);
+			transferMetrics.lockTimed(acquiredAt - requestedAt, System.nanoTime() - acquiredAt);
+		}
+	}
+}
@@ -1,8 +1,39 @@
 package com.db.awmd.challenge.service;
 
+import java.math.BigDecimal;
+
 import com.db.awmd.challenge.domain.Account;
 
 public interface NotificationService {
 
   void notifyAboutTransfer(Account account, String transferDescription);
+
+  /**
+   * This method notifies the owner of the account that a transfer debited or credited it. The description is built
+   * by {@link #describeTransfer(String, boolean, BigDecimal, BigDecimal)} when the notification is delivered, so an
+   * implementation delivering later doesn't build it on the request thread.
+   *
+   * @param account
+   * @param debited true if the account was debited, false if it was credited
+   * @param amount
+   * @param balance balance of the account after the transfer, or null if it isn't reported
+   */
+  default void notifyAboutTransfer(Account account, boolean debited, BigDecimal amount, BigDecimal balance) {
+    notifyAboutTransfer(account, describeTransfer(account.getAccountId(), debited, amount, balance));
+  }
+
+  /**
+   * This method returns the description of a transfer sent to the owner of the account.
+   *
+   * @param accountId
+   * @param debited
+   * @param amount
+   * @param balance balance after the transfer, or null if it isn't reported
+   * @return
+   */
+  static String describeTransfer(String accountId, boolean debited, BigDecimal amount, BigDecimal balance) {
+    String description = "Your account: " + accountId + " has been " + (debited ? "debited" : "credited") + " by "
+        + amount + ".";
+    return balance == null ? description : description + " Your account balance is:" + balance;
+  }
 }
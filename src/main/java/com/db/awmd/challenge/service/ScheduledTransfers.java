@@ -0,0 +1,223 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.NoSuchAccountException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Transfers booked to execute at a future time, one-off or standing orders. The pending transfers are held in a
+ * {@link TimingWheel} with a resolution of {@code accounts.scheduling.tick-millis}, so booking and cancelling a transfer
+ * costs the same with millions of them pending. A ticker thread advances the wheel every tick and feeds the transfers
+ * which came due to {@link AccountsService#transferBatch(List)} in batches of {@code accounts.scheduling.batch-size}.
+ * A standing order is booked again for its next execution once executed, whatever the outcome.
+ *
+ * Pending transfers are only held in memory, they don't survive a restart.
+ *
+ */
+@Component
+@Slf4j
+public class ScheduledTransfers {
+
+	private final AccountsService accountsService;
+
+	private final long tickMillis;
+
+	private final int batchSize;
+
+	/**
+	 * Guarded by itself.
+	 */
+	private final TimingWheel<ScheduledTransfer> wheel;
+
+	private final ConcurrentSkipListMap<Long, TimingWheel.Timer<ScheduledTransfer>> pending = new ConcurrentSkipListMap<>();
+
+	private final AtomicLong lastId = new AtomicLong();
+
+	private Thread ticker;
+
+	private volatile boolean running;
+
+	@Autowired
+	public ScheduledTransfers(AccountsService accountsService,
+			@Value("${accounts.scheduling.tick-millis:10}") long tickMillis,
+			@Value("${accounts.scheduling.batch-size:1000}") int batchSize) {
+		if (tickMillis <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException("Tick and batch size must be positive!");
+		}
+		this.accountsService = accountsService;
+		this.tickMillis = tickMillis;
+		this.batchSize = batchSize;
+		this.wheel = new TimingWheel<>(System.currentTimeMillis() / tickMillis);
+	}
+
+	/**
+	 * This method starts the ticker thread which executes the transfers as they come due.
+	 */
+	@PostConstruct
+	public void start() {
+		running = true;
+		ticker = new Thread(() -> {
+			while (running) {
+				try {
+					Thread.sleep(tickMillis - System.currentTimeMillis() % tickMillis);
+					executeDue(System.currentTimeMillis());
+				} catch (InterruptedException e) {
+					break;
+				} catch (RuntimeException e) {
+					log.error("Scheduled transfers failed", e);
+				}
+			}
+		}, "transfer-scheduler");
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		if (ticker != null) {
+			ticker.interrupt();
+			ticker.join();
+		}
+	}
+
+	/**
+	 * This method books a transfer.
+	 *
+	 * @param transfer
+	 * @return the transfer booked, with its id
+	 * @throws IllegalArgumentException if the amount or the interval is invalid
+	 * @throws NoSuchAccountException if one of the accounts doesn't exist
+	 */
+	public ScheduledTransfer schedule(ScheduledTransfer transfer) throws NoSuchAccountException {
+		BigDecimal amount = transfer.getAmount();
+		if (amount == null || amount.signum() <= 0 || !MinorUnits.isRepresentable(amount)) {
+			throw new IllegalArgumentException(
+					"Amount must be positive with at most " + MinorUnits.SCALE + " decimal places!");
+		}
+		if (transfer.getIntervalMillis() != 0 && transfer.getIntervalMillis() < tickMillis) {
+			throw new IllegalArgumentException("Interval must be 0 or at least " + tickMillis + " ms!");
+		}
+		accountsService.accountExists(transfer.getAccountFromId());
+		accountsService.accountExists(transfer.getAccountToId());
+
+		ScheduledTransfer booked = new ScheduledTransfer(lastId.incrementAndGet(), transfer.getAccountFromId(),
+				transfer.getAccountToId(), amount, transfer.getExecuteAt(), transfer.getIntervalMillis(), null);
+		book(booked);
+		return booked;
+	}
+
+	/**
+	 * This method cancels a pending transfer. A transfer being executed can't be cancelled anymore, but a standing
+	 * order can be cancelled once booked again.
+	 *
+	 * @param id
+	 * @return true if the transfer was cancelled
+	 */
+	public boolean cancel(long id) {
+		synchronized (wheel) {
+			TimingWheel.Timer<ScheduledTransfer> timer = pending.remove(id);
+			return timer != null && wheel.cancel(timer);
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return the pending transfer, or null if there's none with this id
+	 */
+	public ScheduledTransfer get(long id) {
+		TimingWheel.Timer<ScheduledTransfer> timer = pending.get(id);
+		return timer == null ? null : timer.getPayload();
+	}
+
+	/**
+	 * This method lists the pending transfers by id.
+	 *
+	 * @param accountId only lists the transfers from or to this account if not null
+	 * @param afterId only lists the transfers with a greater id
+	 * @param limit maximum number of transfers listed
+	 * @return
+	 */
+	public List<ScheduledTransfer> list(String accountId, long afterId, int limit) {
+		List<ScheduledTransfer> transfers = new ArrayList<>();
+		for (TimingWheel.Timer<ScheduledTransfer> timer : pending.tailMap(afterId, false).values()) {
+			if (transfers.size() == limit) {
+				break;
+			}
+			ScheduledTransfer transfer = timer.getPayload();
+			if (accountId == null || accountId.equals(transfer.getAccountFromId())
+					|| accountId.equals(transfer.getAccountToId())) {
+				transfers.add(transfer);
+			}
+		}
+		return transfers;
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * This method executes the transfers due at the given time, which the ticker thread does every tick.
+	 *
+	 * @param nowMillis
+	 */
+	public void executeDue(long nowMillis) {
+		List<ScheduledTransfer> due = new ArrayList<>();
+		synchronized (wheel) {
+			wheel.advance(nowMillis / tickMillis, transfer -> {
+				pending.remove(transfer.getId());
+				due.add(transfer);
+			});
+		}
+		for (int from = 0; from < due.size(); from += batchSize) {
+			execute(due.subList(from, Math.min(due.size(), from + batchSize)), nowMillis);
+		}
+	}
+
+	private void execute(List<ScheduledTransfer> due, long nowMillis) {
+		List<TransferRequest> requests = new ArrayList<>(due.size());
+		for (ScheduledTransfer transfer : due) {
+			requests.add(new TransferRequest(transfer.getAccountFromId(), transfer.getAccountToId(), transfer.getAmount()));
+		}
+		List<TransferResult> results = accountsService.transferBatch(requests);
+		for (int i = 0; i < due.size(); i++) {
+			ScheduledTransfer transfer = due.get(i);
+			TransferResult result = results.get(i);
+			log.debug("Executed scheduled transfer {}: {}", transfer.getId(), result.getStatus());
+			long interval = transfer.getIntervalMillis();
+			if (interval > 0) {
+				// Skip the executions missed while the service was held up, the next one is in the future
+				long missed = Math.max(0, (nowMillis - transfer.getExecuteAt()) / interval);
+				book(new ScheduledTransfer(transfer.getId(), transfer.getAccountFromId(), transfer.getAccountToId(),
+						transfer.getAmount(), transfer.getExecuteAt() + (missed + 1) * interval, interval,
+						result.getStatus()));
+			}
+		}
+	}
+
+	private void book(ScheduledTransfer transfer) {
+		// Round up so a transfer never executes before its time
+		long dueTick = (transfer.getExecuteAt() + tickMillis - 1) / tickMillis;
+		synchronized (wheel) {
+			pending.put(transfer.getId(), wheel.add(dueTick, transfer));
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single-writer transfer engine. Accounts are hash-partitioned across a fixed number of shard threads and every
+ * debit and credit of an account is executed by the thread owning it, so no locks are taken on the hot path.
+ * 
+ * Each shard drains a bounded queue of commands submitted by the request threads. A transfer is first executed by the
+ * shard owning the source account. When the destination account belongs to another shard, the credit is handed off
+ * to that shard once the debit succeeded, and the caller is only answered after the credit has been applied. If the
+ * credit fails the debit is given back, so the transfer stays all or none for the client. Each shard appends the
+ * {@link TransferLedger} entry of the account it moved, so every history follows the order of its balance changes,
+ * and commits its balance to the {@link BalanceVersions}, with the amount in transit in between.
+ * 
+ * With a journaled repository, a transfer within a shard is journaled as a single record, but the debit and the credit
+ * of a transfer between two shards are journaled as two records by their own shards. A crash in between restores the
+ * debit without the credit: the amount in transit is lost, although the transfer was never answered as completed. Use
+ * {@link LockingTransferEngine} where every transfer must be journaled at once.
+ * 
+ * Every transfer costs at least one handoff to a shard thread, and a transfer between two shards a second one, while
+ * the request thread waits for the answer. On a small amount of work per transfer these handoffs cost more than the
+ * locks they avoid, so this engine is slower than {@link LockingTransferEngine}: compare both with the
+ * {@code TransferBenchmark} before enabling it. A change of the accounts of a single shard, such as a standalone
+ * debit or credit, is executed by that shard like a transfer. Only a change spanning several shards parks them and
+ * waits for the other changes spanning several shards.
+ * 
+ * Enabled with {@code accounts.transfer.mode=sharded}. The JVM doesn't allow pinning threads to cores, so the shard
+ * count defaults to the number of available processors and the operating system scheduler places the threads.
+ *
+ */
+@Service
+@ConditionalOnProperty(prefix = "accounts.transfer", name = "mode", havingValue = "sharded")
+@Slf4j
+public class ShardedTransferEngine implements TransferEngine {
+
+	private static final Runnable WAKEUP = () -> {
+	};
+
+	private final AccountsRepository accountsRepository;
+
+	private final Shard[] shards;
+
+	private final Object exclusiveLock = new Object();
+
+	private final TransferMetrics transferMetrics;
+
+	private final TransferLedger transferLedger;
+
+	private final BalanceVersions balanceVersions;
+
+	public ShardedTransferEngine(AccountsRepository accountsRepository, int shardCount, int queueCapacity) {
+		this(accountsRepository, shardCount, queueCapacity, new TransferMetrics(), new TransferLedger(),
+				new BalanceVersions());
+	}
+
+	@Autowired
+	public ShardedTransferEngine(AccountsRepository accountsRepository,
+			@Value("${accounts.transfer.shards:0}") int shardCount,
+			@Value("${accounts.transfer.shard-queue-capacity:4096}") int queueCapacity,
+			TransferMetrics transferMetrics, TransferLedger transferLedger, BalanceVersions balanceVersions) {
+		this.accountsRepository = accountsRepository;
+		this.transferMetrics = transferMetrics;
+		this.transferLedger = transferLedger;
+		this.balanceVersions = balanceVersions;
+		int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+		this.shards = new Shard[count];
+		for (int i = 0; i < count; i++) {
+			shards[i] = new Shard(i, queueCapacity);
+		}
+		for (Shard shard : shards) {
+			shard.thread.start();
+		}
+	}
+
+	/**
+	 * This method returns the index of the shard owning the given account.
+	 * 
+	 * @param accountId
+	 * @return
+	 */
+	public int shardFor(String accountId) {
+		int h = accountId.hashCode();
+		return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % shards.length;
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	@Override
+	public TransferStatus tryTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+		// Striped accounts are only moved on the stripe of this thread, on the shard owning the stripe
+		Account debited = StripedAccount.select(fromAccount);
+		Account credited = StripedAccount.select(toAccount);
+		Shard source = shards[shardFor(debited.getAccountId())];
+		Shard destination = shards[shardFor(credited.getAccountId())];
+		String fromId = fromAccount.getAccountId();
+		String toId = toAccount.getAccountId();
+		CompletableFuture<TransferStatus> result = new CompletableFuture<>();
+		long submittedAt = System.nanoTime();
+
+		source.submit(() -> {
+			long startedAt = System.nanoTime();
+			if (destination == source) {
+				try {
+					if (accountsRepository.tryTransfer(debited, credited, amount)) {
+						transferLedger.recordTransfer(fromId, toId, MinorUnits.toMinorUnits(amount));
+						balanceVersions.commit(debited, credited);
+						result.complete(TransferStatus.COMPLETED);
+					} else {
+						result.complete(TransferStatus.INSUFFICIENT_BALANCE);
+					}
+				} catch (RuntimeException e) {
+					result.completeExceptionally(e);
+				} finally {
+					transferMetrics.lockTimed(startedAt - submittedAt, System.nanoTime() - startedAt);
+				}
+				return;
+			}
+			long minorUnits;
+			long transferId;
+			try {
+				if (!accountsRepository.tryDebit(debited, amount)) {
+					result.complete(TransferStatus.INSUFFICIENT_BALANCE);
+					return;
+				}
+				minorUnits = MinorUnits.toMinorUnits(amount);
+				transferId = transferLedger.nextTransferId();
+				transferLedger.record(fromId, transferId, toId, -minorUnits);
+				balanceVersions.commit(minorUnits, debited);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				return;
+			} finally {
+				transferMetrics.lockTimed(startedAt - submittedAt, System.nanoTime() - startedAt);
+			}
+			Runnable credit = () -> {
+				try {
+					accountsRepository.creditAccount(credited, amount);
+					transferLedger.record(toId, transferId, fromId, minorUnits);
+					balanceVersions.commit(-minorUnits, credited);
+					result.complete(TransferStatus.COMPLETED);
+				} catch (RuntimeException e) {
+					// Give the debited amount back to the source account on its own shard
+					source.handoff(() -> {
+						accountsRepository.creditAccount(debited, amount);
+						transferLedger.record(fromId, transferId, toId, minorUnits);
+						balanceVersions.commit(-minorUnits, debited);
+					});
+					result.completeExceptionally(e);
+				}
+			};
+			destination.handoff(credit);
+		});
+
+		TransferStatus status = join(result);
+		if (status == TransferStatus.INSUFFICIENT_BALANCE) {
+			if (debited != fromAccount) {
+				return transferAcrossStripes((StripedAccount) fromAccount, toAccount, amount);
+			}
+			return status;
+		}
+		accountsRepository.sync();
+		return status;
+	}
+
+	/**
+	 * The batch is executed by the shard owning all its accounts, or else by the calling thread while all the shards
+	 * owning its accounts are parked, which gives it exclusive access to them. Batches spanning several shards are
+	 * executed one at a time so two of them can't park the shards in a different order.
+	 */
+	@Override
+	public void transferBatch(TransferBatch batch) {
+		executeExclusively(batch.getAccountIds(), () -> {
+			batch.execute(accountsRepository);
+			batch.record(transferLedger);
+			batch.commit(balanceVersions);
+			return batch;
+		});
+		accountsRepository.sync();
+	}
+
+	/**
+	 * The change is executed by the shard owning all the accounts, or else by the calling thread while the shards
+	 * owning the accounts are parked, as for a batch.
+	 */
+	@Override
+	public <T> T executeExclusively(Collection<String> accountIds, Supplier<T> change) {
+		int[] involved = accountIds.stream().mapToInt(this::shardFor).distinct().sorted().toArray();
+		if (involved.length == 1) {
+			CompletableFuture<T> result = new CompletableFuture<>();
+			long submittedAt = System.nanoTime();
+			shards[involved[0]].submit(() -> {
+				long startedAt = System.nanoTime();
+				try {
+					result.complete(change.get());
+				} catch (RuntimeException e) {
+					result.completeExceptionally(e);
+				} finally {
+					transferMetrics.lockTimed(startedAt - submittedAt, System.nanoTime() - startedAt);
+				}
+			});
+			return join(result);
+		}
+		synchronized (exclusiveLock) {
+			CountDownLatch parked = new CountDownLatch(involved.length);
+			CountDownLatch release = new CountDownLatch(1);
+			long requestedAt = System.nanoTime();
+			long parkedAt = requestedAt;
+			try {
+				for (int index : involved) {
+					shards[index].submit(() -> {
+						parked.countDown();
+						awaitUninterruptibly(release);
+					});
+				}
+				awaitUninterruptibly(parked);
+				parkedAt = System.nanoTime();
+				return change.get();
+			} finally {
+				release.countDown();
+				transferMetrics.lockTimed(parkedAt - requestedAt, System.nanoTime() - parkedAt);
+			}
+		}
+	}
+
+	private static <T> T join(CompletableFuture<T> result) {
+		try {
+			return result.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw e;
+		}
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		for (Shard shard : shards) {
+			shard.running = false;
+			shard.thread.interrupt();
+		}
+		for (Shard shard : shards) {
+			shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		// Apply whatever was accepted before the shutdown so no debited amount is lost in a handoff
+		boolean drained;
+		do {
+			drained = true;
+			for (Shard shard : shards) {
+				drained &= !shard.drain();
+			}
+		} while (!drained);
+	}
+
+	private static final class Shard implements Runnable {
+
+		private final BlockingQueue<Runnable> commands;
+
+		/**
+		 * Credits handed off by other shards. This queue isn't bounded so two shards handing off to each other can't
+		 * block on each other's full command queue; it can only hold as many credits as there are commands in flight.
+		 */
+		private final Queue<Runnable> handoffs = new ConcurrentLinkedQueue<>();
+
+		private final Thread thread;
+
+		private volatile boolean running = true;
+
+		Shard(int index, int queueCapacity) {
+			this.commands = new ArrayBlockingQueue<>(queueCapacity);
+			this.thread = new Thread(this, "transfer-shard-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		void submit(Runnable command) {
+			try {
+				commands.put(command);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while submitting the transfer!", e);
+			}
+		}
+
+		void handoff(Runnable command) {
+			handoffs.add(command);
+			// Wake the shard up if it waits for commands. When the queue is full the shard is busy anyway.
+			commands.offer(WAKEUP);
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				Runnable handoff;
+				while ((handoff = handoffs.poll()) != null) {
+					execute(handoff);
+				}
+				Runnable command;
+				try {
+					command = commands.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				execute(command);
+			}
+		}
+
+		boolean drain() {
+			boolean executed = false;
+			Runnable command;
+			while ((command = handoffs.poll()) != null || (command = commands.poll()) != null) {
+				execute(command);
+				executed = true;
+			}
+			return executed;
+		}
+
+		private void execute(Runnable command) {
+			try {
+				command.run();
+			} catch (RuntimeException e) {
+				log.error("Transfer command failed on " + thread.getName(), e);
+			}
+		}
+	}
+}
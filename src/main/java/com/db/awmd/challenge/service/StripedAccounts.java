@@ -0,0 +1,119 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Accounts configured with {@code accounts.striping.accounts} as hot, e.g. fee collectors, whose credits are spread
+ * over {@code accounts.striping.stripes} stripe accounts. A stripe is stored as an ordinary account with the id of the
+ * striped account followed by {@value #SEPARATOR} and its index, so the transfer engines lock, journal and version it
+ * like any other account. The stripes are aggregated back into their account wherever accounts are exposed.
+ *
+ */
+@Component
+public class StripedAccounts {
+
+	public static final String SEPARATOR = "#";
+
+	private final Set<String> accountIds;
+
+	private final int stripeCount;
+
+	public StripedAccounts() {
+		this(Collections.emptySet(), 1);
+	}
+
+	public StripedAccounts(Set<String> accountIds, int stripeCount) {
+		if (stripeCount <= 0) {
+			throw new IllegalArgumentException("Number of stripes must be positive!");
+		}
+		this.accountIds = accountIds;
+		this.stripeCount = stripeCount;
+	}
+
+	@Autowired
+	public StripedAccounts(@Value("${accounts.striping.accounts:}") String[] accountIds,
+			@Value("${accounts.striping.stripes:8}") int stripeCount) {
+		this(new HashSet<>(Arrays.asList(accountIds)), stripeCount);
+	}
+
+	public boolean isStriped(String accountId) {
+		return accountIds.contains(accountId);
+	}
+
+	public int getStripeCount() {
+		return stripeCount;
+	}
+
+	/**
+	 * This method returns the id of the account a stripe belongs to.
+	 *
+	 * @param accountId id of a stripe or of an ordinary account
+	 * @return the id of the striped account, or the given id if it isn't a stripe
+	 */
+	public String ownerOf(String accountId) {
+		int separator = accountId.lastIndexOf(SEPARATOR);
+		if (separator > 0 && !accountIds.isEmpty()) {
+			String owner = accountId.substring(0, separator);
+			if (accountIds.contains(owner)) {
+				return owner;
+			}
+		}
+		return accountId;
+	}
+
+	/**
+	 * This method creates the stripes of a striped account, the first one holding the whole initial balance. Every stripe
+	 * is validated before any is created.
+	 *
+	 * @param account
+	 * @param accountsRepository
+	 * @return the stripes created
+	 * @throws InvalidAccountException if the data store can't hold one of the stripes
+	 */
+	Account[] create(Account account, AccountsRepository accountsRepository) throws InvalidAccountException {
+		Account[] stripes = new Account[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Account(stripeId(account.getAccountId(), i), i == 0 ? account.getBalance() : BigDecimal.ZERO);
+			accountsRepository.validate(stripes[i]);
+		}
+		for (Account stripe : stripes) {
+			accountsRepository.createAccount(stripe);
+		}
+		return stripes;
+	}
+
+	/**
+	 * This method looks up a striped account in the data store.
+	 *
+	 * @param accountId
+	 * @param accountsRepository
+	 * @return a view summing the stripes, or null if the account doesn't exist
+	 */
+	StripedAccount get(String accountId, AccountsRepository accountsRepository) {
+		Account[] stripes = new Account[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = accountsRepository.getAccount(stripeId(accountId, i));
+			if (stripes[i] == null) {
+				return null;
+			}
+		}
+		return new StripedAccount(accountId, stripes);
+	}
+
+	private static String stripeId(String accountId, int stripe) {
+		return accountId + SEPARATOR + stripe;
+	}
+}
@@ -0,0 +1,187 @@
+package com.db.awmd.challenge.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel holding timers due at a future tick. Each of the {@value #LEVELS} levels is a ring of
+ * {@value #SLOTS} slots, a slot of level n covering {@value #SLOTS} to the power of n ticks. A timer is linked into the
+ * slot of its due tick on the lowest level which reaches it, so adding and cancelling a timer is O(1) whatever the
+ * number of timers. When the lowest level wraps around, the slot of the level above which comes due is cascaded down.
+ *
+ * Timers due further than the wheel reaches are parked in its last slot and re-linked once they're cascaded down. The
+ * wheel isn't thread-safe: the caller serializes the access to it.
+ *
+ * @param <T> payload of the timers
+ */
+public class TimingWheel<T> {
+
+	private static final int BITS = 8;
+
+	private static final int SLOTS = 1 << BITS;
+
+	private static final int MASK = SLOTS - 1;
+
+	private static final int LEVELS = 4;
+
+	private static final long REACH = 1L << (BITS * LEVELS);
+
+	/**
+	 * Sentinels of the circular lists of timers, by level and slot.
+	 */
+	private final Timer<T>[][] slots;
+
+	private long currentTick;
+
+	private int size;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public TimingWheel(long currentTick) {
+		this.currentTick = currentTick;
+		this.slots = new Timer[LEVELS][SLOTS];
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				Timer<T> sentinel = new Timer<>(-1, null);
+				sentinel.previous = sentinel;
+				sentinel.next = sentinel;
+				slots[level][slot] = sentinel;
+			}
+		}
+	}
+
+	/**
+	 * This method adds a timer. A timer due at or before the current tick expires on the next advance.
+	 *
+	 * @param dueTick
+	 * @param payload
+	 * @return the timer, to cancel it
+	 */
+	public Timer<T> add(long dueTick, T payload) {
+		Timer<T> timer = new Timer<>(dueTick, payload);
+		link(timer, currentTick + 1);
+		size++;
+		return timer;
+	}
+
+	/**
+	 * This method removes a timer which hasn't expired yet.
+	 *
+	 * @param timer
+	 * @return true if the timer was removed, false if it expired or was cancelled before
+	 */
+	public boolean cancel(Timer<T> timer) {
+		if (timer.next == null) {
+			return false;
+		}
+		unlink(timer);
+		size--;
+		return true;
+	}
+
+	/**
+	 * This method advances the wheel up to the given tick and passes the payload of every timer which came due to the
+	 * action, in due order as far as the resolution of the wheel allows.
+	 *
+	 * @param tick
+	 * @param expired
+	 */
+	public void advance(long tick, Consumer<T> expired) {
+		while (currentTick < tick) {
+			currentTick++;
+			// Cascade the levels above whose slot comes due, the highest first
+			int level = 0;
+			while (level < LEVELS - 1 && (currentTick & ((1L << (BITS * (level + 1))) - 1)) == 0) {
+				level++;
+			}
+			for (; level > 0; level--) {
+				cascade(level, (int) ((currentTick >>> (BITS * level)) & MASK));
+			}
+			Timer<T> sentinel = slots[0][(int) (currentTick & MASK)];
+			while (sentinel.next != sentinel) {
+				Timer<T> timer = sentinel.next;
+				unlink(timer);
+				if (timer.dueTick > currentTick) {
+					// Parked beyond the reach of the wheel
+					link(timer, currentTick + 1);
+				} else {
+					size--;
+					expired.accept(timer.payload);
+				}
+			}
+		}
+	}
+
+	public long getCurrentTick() {
+		return currentTick;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void cascade(int level, int slot) {
+		Timer<T> sentinel = slots[level][slot];
+		Timer<T> timer = sentinel.next;
+		sentinel.next = sentinel;
+		sentinel.previous = sentinel;
+		while (timer != sentinel) {
+			Timer<T> next = timer.next;
+			// The slot of the current tick on the lowest level is expired right after the cascade
+			link(timer, currentTick);
+			timer = next;
+		}
+	}
+
+	private void link(Timer<T> timer, long earliestTick) {
+		long due = Math.max(timer.dueTick, earliestTick);
+		long delta = due - currentTick;
+		Timer<T> sentinel;
+		if (delta >= REACH) {
+			// The last slot the top level reaches from the current tick
+			sentinel = slots[LEVELS - 1][(int) (((currentTick >>> (BITS * (LEVELS - 1))) + MASK) & MASK)];
+		} else {
+			int level = 0;
+			while (delta >= 1L << (BITS * (level + 1))) {
+				level++;
+			}
+			sentinel = slots[level][(int) ((due >>> (BITS * level)) & MASK)];
+		}
+		timer.previous = sentinel.previous;
+		timer.next = sentinel;
+		sentinel.previous.next = timer;
+		sentinel.previous = timer;
+	}
+
+	private static <T> void unlink(Timer<T> timer) {
+		timer.previous.next = timer.next;
+		timer.next.previous = timer.previous;
+		timer.previous = null;
+		timer.next = null;
+	}
+
+	/**
+	 * Timer of the wheel, linked into the slot it's due in.
+	 */
+	public static final class Timer<T> {
+
+		private final long dueTick;
+
+		private final T payload;
+
+		private Timer<T> previous;
+
+		private Timer<T> next;
+
+		Timer(long dueTick, T payload) {
+			this.dueTick = dueTick;
+			this.payload = payload;
+		}
+
+		public long getDueTick() {
+			return dueTick;
+		}
+
+		public T getPayload() {
+			return payload;
+		}
+	}
+}
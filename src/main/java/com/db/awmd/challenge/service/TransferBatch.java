@@ -0,0 +1,267 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * A batch of transfers which is netted per account. The transfers are evaluated one after another in submission order
+ * against working balances, so each of them is accepted or rejected exactly as if it was executed on its own. Only the
+ * resulting net movement of every account is then written, with a single debit or credit per account.
+ * 
+ * An atomic batch is executed all or none: if any of its transfers is rejected, the others are {@link TransferStatus#ABORTED}
+ * and no account is changed.
+ * 
+ * A transfer may have an account of another node of the cluster on one side, which the batch neither looks up nor
+ * changes: only the debit or the credit of the local account is executed, the other side being up to the other node.
+ * 
+ * The {@link TransferEngine} must give the batch exclusive access to all of {@link #getAccountIds()} while
+ * {@link #execute(AccountsRepository)} runs. For a {@link StripedAccount} these are all its stripes, so a net debit can
+ * gather them first.
+ *
+ */
+public class TransferBatch {
+
+	private final List<TransferRequest> transfers;
+
+	private final Map<String, Account> accounts = new HashMap<>();
+
+	private final TransferResult[] results;
+
+	private final List<Account> changedAccounts = new ArrayList<>();
+
+	private final boolean atomic;
+
+	private final Predicate<String> remote;
+
+	public TransferBatch(List<TransferRequest> transfers, AccountsRepository accountsRepository) {
+		this(transfers, accountsRepository::getAccount);
+	}
+
+	/**
+	 * @param transfers
+	 * @param accountLookup returns the account with the given id, or null if it doesn't exist
+	 */
+	public TransferBatch(List<TransferRequest> transfers, Function<String, Account> accountLookup) {
+		this(transfers, accountLookup, false);
+	}
+
+	/**
+	 * @param transfers
+	 * @param accountLookup returns the account with the given id, or null if it doesn't exist
+	 * @param atomic true to execute all the transfers or none
+	 */
+	public TransferBatch(List<TransferRequest> transfers, Function<String, Account> accountLookup, boolean atomic) {
+		this(transfers, accountLookup, atomic, accountId -> false);
+	}
+
+	/**
+	 * @param transfers
+	 * @param accountLookup returns the account with the given id, or null if it doesn't exist
+	 * @param atomic true to execute all the transfers or none
+	 * @param remote tells the ids of the accounts owned by another node of the cluster
+	 */
+	public TransferBatch(List<TransferRequest> transfers, Function<String, Account> accountLookup, boolean atomic,
+			Predicate<String> remote) {
+		this.transfers = transfers;
+		this.atomic = atomic;
+		this.remote = remote;
+		this.results = new TransferResult[transfers.size()];
+		for (TransferRequest transfer : transfers) {
+			resolve(transfer.getAccountFromId(), accountLookup);
+			resolve(transfer.getAccountToId(), accountLookup);
+		}
+	}
+
+	/**
+	 * This method returns the ids of all the existing accounts touched by the batch, the stripes of a striped account
+	 * in place of the account.
+	 * 
+	 * @return
+	 */
+	public Set<String> getAccountIds() {
+		Set<String> accountIds = new HashSet<>();
+		for (Account account : accounts.values()) {
+			if (account instanceof StripedAccount) {
+				for (Account stripe : ((StripedAccount) account).getStripes()) {
+					accountIds.add(stripe.getAccountId());
+				}
+			} else {
+				accountIds.add(account.getAccountId());
+			}
+		}
+		return accountIds;
+	}
+
+	public List<TransferResult> getResults() {
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * This method evaluates every transfer of the batch and writes the net movement of each account.
+	 * 
+	 * @param accountsRepository
+	 */
+	public void execute(AccountsRepository accountsRepository) {
+		Map<String, BigDecimal> balances = new HashMap<>();
+		boolean rejected = false;
+		for (int i = 0; i < results.length; i++) {
+			results[i] = evaluate(i, transfers.get(i), balances);
+			rejected |= results[i].getStatus() != TransferStatus.COMPLETED;
+		}
+		if (atomic && rejected) {
+			abort();
+			return;
+		}
+
+		Map<String, BigDecimal> changes = new HashMap<>();
+		for (Map.Entry<String, BigDecimal> entry : balances.entrySet()) {
+			Account account = accounts.get(entry.getKey());
+			BigDecimal change = entry.getValue().subtract(account.getBalance());
+			if (change.signum() == 0) {
+				continue;
+			}
+			if (account instanceof StripedAccount) {
+				// The net change goes to the first stripe, into which the others are gathered if it's a debit
+				List<Account> stripes = Arrays.asList(((StripedAccount) account).getStripes());
+				if (change.signum() < 0) {
+					accountsRepository.gather(stripes.get(0), stripes.subList(1, stripes.size()));
+				}
+				changes.put(stripes.get(0).getAccountId(), change);
+				changedAccounts.addAll(stripes);
+			} else {
+				changes.put(entry.getKey(), change);
+				changedAccounts.add(account);
+			}
+		}
+		try {
+			accountsRepository.applyChanges(changes);
+		} catch (InSufficientBalanceException e) {
+			// Every accepted transfer kept the working balance positive, so the net debits always fit
+			throw new IllegalStateException("Net debit of the batch failed", e);
+		}
+	}
+
+	/**
+	 * This method appends every completed transfer to the ledger, in submission order. It must be called after
+	 * {@link #execute(AccountsRepository)} while the batch still has exclusive access to its accounts.
+	 * 
+	 * @param transferLedger
+	 */
+	public void record(TransferLedger transferLedger) {
+		for (int i = 0; i < results.length; i++) {
+			if (results[i].getStatus() == TransferStatus.COMPLETED) {
+				TransferRequest transfer = transfers.get(i);
+				String fromId = transfer.getAccountFromId();
+				String toId = transfer.getAccountToId();
+				long minorUnits = MinorUnits.toMinorUnits(transfer.getAmount());
+				if (remote.test(toId)) {
+					transferLedger.record(fromId, transferLedger.nextTransferId(), toId, -minorUnits);
+				} else if (remote.test(fromId)) {
+					transferLedger.record(toId, transferLedger.nextTransferId(), fromId, minorUnits);
+				} else {
+					transferLedger.recordTransfer(fromId, toId, minorUnits);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method commits the new balances of the accounts changed by the batch as a single version, with what the
+	 * transfers with the accounts of other nodes moved in or out. It must be called after
+	 * {@link #execute(AccountsRepository)} while the batch still has exclusive access to its accounts.
+	 * 
+	 * @param balanceVersions
+	 */
+	public void commit(BalanceVersions balanceVersions) {
+		if (changedAccounts.isEmpty()) {
+			return;
+		}
+		BigDecimal external = BigDecimal.ZERO;
+		for (int i = 0; i < results.length; i++) {
+			if (results[i].getStatus() == TransferStatus.COMPLETED) {
+				TransferRequest transfer = transfers.get(i);
+				if (remote.test(transfer.getAccountToId())) {
+					external = external.subtract(transfer.getAmount());
+				} else if (remote.test(transfer.getAccountFromId())) {
+					external = external.add(transfer.getAmount());
+				}
+			}
+		}
+		balanceVersions.commitExternal(external, changedAccounts.toArray(new Account[changedAccounts.size()]));
+	}
+
+	private TransferResult evaluate(int index, TransferRequest transfer, Map<String, BigDecimal> balances) {
+		BigDecimal amount = transfer.getAmount();
+		if (amount == null || amount.signum() <= 0) {
+			return new TransferResult(index, TransferStatus.INVALID_AMOUNT, "Amount can't be in negative!");
+		}
+		if (!MinorUnits.isRepresentable(amount)) {
+			return new TransferResult(index, TransferStatus.INVALID_AMOUNT,
+					"Amount can't have more than " + MinorUnits.SCALE + " decimal places!");
+		}
+		boolean remoteFrom = remote.test(transfer.getAccountFromId());
+		boolean remoteTo = remote.test(transfer.getAccountToId());
+		Account fromAccount = accounts.get(transfer.getAccountFromId());
+		if (fromAccount == null && !remoteFrom) {
+			return noSuchAccount(index, transfer.getAccountFromId());
+		}
+		Account toAccount = accounts.get(transfer.getAccountToId());
+		if (toAccount == null && !remoteTo) {
+			return noSuchAccount(index, transfer.getAccountToId());
+		}
+
+		if (!remoteFrom) {
+			BigDecimal fromBalance = balances.computeIfAbsent(fromAccount.getAccountId(), id -> fromAccount.getBalance());
+			// Same sufficiency rule as AccountsRepository.debitAccount
+			if (fromBalance.compareTo(amount) <= 0) {
+				return new TransferResult(index, TransferStatus.INSUFFICIENT_BALANCE, "Account: "
+						+ fromAccount.getAccountId() + " does not have sufficient balance to perform this transaction!");
+			}
+			balances.put(fromAccount.getAccountId(), fromBalance.subtract(amount));
+		}
+		if (!remoteTo) {
+			BigDecimal toBalance = balances.computeIfAbsent(toAccount.getAccountId(), id -> toAccount.getBalance());
+			balances.put(toAccount.getAccountId(), toBalance.add(amount));
+		}
+		return new TransferResult(index, TransferStatus.COMPLETED, null);
+	}
+
+	private void abort() {
+		for (int i = 0; i < results.length; i++) {
+			if (results[i].getStatus() == TransferStatus.COMPLETED) {
+				results[i] = new TransferResult(i, TransferStatus.ABORTED,
+						"Transfer was aborted as another transfer executed with it failed!");
+			}
+		}
+	}
+
+	private TransferResult noSuchAccount(int index, String accountId) {
+		return new TransferResult(index, TransferStatus.NO_SUCH_ACCOUNT, "Account " + accountId + " couldn't be found!");
+	}
+
+	private void resolve(String accountId, Function<String, Account> accountLookup) {
+		if (accountId != null && !accounts.containsKey(accountId) && !remote.test(accountId)) {
+			Account account = accountLookup.apply(accountId);
+			if (account != null) {
+				accounts.put(accountId, account);
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+
+/**
+ * Executes the debit and the credit of a transfer all at once or none. The implementation is selected with
+ * {@code accounts.transfer.mode}.
+ *
+ */
+public interface TransferEngine {
+
+	/**
+	 * This method debits the amount from the source account and credits it to the destination account. A
+	 * {@link StripedAccount} is debited or credited on the stripe of the calling thread.
+	 * 
+	 * @param fromAccount Account which is to be debited
+	 * @param toAccount Account which is to be credited
+	 * @param amount Amount to be transferred
+	 * @throws InSufficientBalanceException
+	 */
+	default void transfer(Account fromAccount, Account toAccount, BigDecimal amount) throws InSufficientBalanceException {
+		if (tryTransfer(fromAccount, toAccount, amount) == TransferStatus.INSUFFICIENT_BALANCE) {
+			throw new InSufficientBalanceException("Account: " + fromAccount.getAccountId()
+					+ " does not have sufficient balance to perform this transaction!");
+		}
+	}
+
+	/**
+	 * This method transfers like {@link #transfer(Account, Account, BigDecimal)}, reporting an insufficient balance with
+	 * its status instead of an exception, so a rejected transfer doesn't allocate.
+	 * 
+	 * @param fromAccount Account which is to be debited
+	 * @param toAccount Account which is to be credited
+	 * @param amount Amount to be transferred
+	 * @return {@link TransferStatus#COMPLETED} or {@link TransferStatus#INSUFFICIENT_BALANCE}
+	 */
+	TransferStatus tryTransfer(Account fromAccount, Account toAccount, BigDecimal amount);
+
+	/**
+	 * This method executes the batch with exclusive access to all the accounts it touches, taken once per account for
+	 * the whole batch.
+	 * 
+	 * @param batch
+	 */
+	void transferBatch(TransferBatch batch);
+
+	/**
+	 * This method runs a change of the given accounts made outside of any transfer, e.g. a debit or a credit, with
+	 * exclusive access to them as for a batch, so it can't race with the transfers of the same accounts.
+	 * 
+	 * @param accountIds
+	 * @param change
+	 * @return the result of the change
+	 */
+	<T> T executeExclusively(Collection<String> accountIds, Supplier<T> change);
+
+	/**
+	 * This method transfers from a striped account whose stripe for the calling thread didn't cover the amount. The
+	 * transfer is executed as a batch, which gathers all the stripes of the account under exclusive access.
+	 * 
+	 * @param fromAccount
+	 * @param toAccount
+	 * @param amount
+	 * @return {@link TransferStatus#INSUFFICIENT_BALANCE} if the stripes together don't cover the amount either
+	 */
+	default TransferStatus transferAcrossStripes(StripedAccount fromAccount, Account toAccount, BigDecimal amount) {
+		TransferRequest transfer = new TransferRequest(fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+		TransferBatch batch = new TransferBatch(Collections.singletonList(transfer),
+				accountId -> accountId.equals(fromAccount.getAccountId()) ? fromAccount : toAccount);
+		transferBatch(batch);
+		return batch.getResults().get(0).getStatus();
+	}
+}
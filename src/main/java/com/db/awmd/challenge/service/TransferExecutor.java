@@ -0,0 +1,106 @@
+package com.db.awmd.challenge.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dedicated pool of threads executing the transfers, so the HTTP threads are released as soon as a transfer is handed
+ * over and reads aren't queued behind a burst of transfers. At most {@code accounts.transfer.executor.max-pending}
+ * transfers wait for a thread; beyond that a transfer is rejected at once instead of being queued.
+ *
+ */
+@Component
+public class TransferExecutor {
+
+	private final ThreadPoolExecutor executor;
+
+	private final int maxPending;
+
+	private final LongAdder rejected = new LongAdder();
+
+	public TransferExecutor() {
+		this(0, 10000);
+	}
+
+	/**
+	 * @param threads number of threads, 0 uses the number of available processors
+	 * @param maxPending number of transfers which can wait for a thread
+	 */
+	@Autowired
+	public TransferExecutor(@Value("${accounts.transfer.executor.threads:0}") int threads,
+			@Value("${accounts.transfer.executor.max-pending:10000}") int maxPending) {
+		this("transfer-executor", threads, maxPending);
+	}
+
+	/**
+	 * @param name prefix of the names of the threads
+	 * @param threads number of threads, 0 uses the number of available processors
+	 * @param maxPending number of transfers which can wait for a thread
+	 */
+	public TransferExecutor(String name, int threads, int maxPending) {
+		int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		AtomicInteger index = new AtomicInteger();
+		this.maxPending = maxPending;
+		this.executor = new ThreadPoolExecutor(count, count, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(maxPending), runnable -> {
+					Thread thread = new Thread(runnable, name + "-" + index.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	 * This method hands the transfer over to the transfer threads.
+	 *
+	 * @param transfer
+	 * @return the outcome of the transfer, completed on a transfer thread
+	 * @throws RejectedExecutionException if {@code max-pending} transfers are already waiting
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> transfer) {
+		try {
+			return CompletableFuture.supplyAsync(transfer, executor);
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw e;
+		}
+	}
+
+	public int getPending() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * This method returns the number of pending transfers, the bound and the number of transfers rejected so far.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("threads", executor.getCorePoolSize());
+		map.put("active", executor.getActiveCount());
+		map.put("pending", getPending());
+		map.put("maxPending", maxPending);
+		map.put("rejected", rejected.sum());
+		return map;
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+}
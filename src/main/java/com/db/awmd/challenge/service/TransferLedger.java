@@ -0,0 +1,251 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.MinorUnits;
+
+/**
+ * Append-only history of the transfers of every account. A transfer adds a debit entry to the history of its source
+ * account and a credit entry to the history of its destination account, both carrying the same transfer id.
+ *
+ * The entries aren't kept as objects: every account has a directory of {@code long[]} chunks holding {@value #FIELDS}
+ * longs, 32 bytes, per entry, and the counterparty ids are interned into a shared table. The first chunk holds
+ * {@value #FIRST_ENTRIES} entries and every following one twice as many as the one before, up to {@value #CHUNK_ENTRIES}
+ * entries, so a short history only takes a few hundred bytes and a long one wastes at most one partly filled chunk.
+ * The entry at any position is found by arithmetic alone.
+ *
+ * The {@link TransferEngine} appends the entries of an account while it has exclusive access to the account, so a
+ * history is in the order its balance changed. Readers never lock: an entry is written before the count of entries of
+ * its account is published through a volatile write, so a reader only ever sees complete entries.
+ *
+ * The ledger lives on the heap only: it isn't journaled, so it starts empty after a restart even when the balances are
+ * restored from the journal, and nothing bounds it, every history growing with its transfers until the accounts are
+ * cleared.
+ *
+ */
+@Component
+public class TransferLedger {
+
+	private static final int CHUNK_BITS = 10;
+
+	private static final int CHUNK_ENTRIES = 1 << CHUNK_BITS;
+
+	private static final int FIRST_BITS = 2;
+
+	private static final int FIRST_ENTRIES = 1 << FIRST_BITS;
+
+	/**
+	 * Chunks after the first one smaller than {@link #CHUNK_ENTRIES}.
+	 */
+	private static final int GROWING_CHUNKS = CHUNK_BITS - FIRST_BITS;
+
+	private static final int FIELDS = 4;
+
+	private static final int TRANSFER_ID = 0;
+
+	private static final int TIMESTAMP = 1;
+
+	private static final int COUNTERPARTY = 2;
+
+	private static final int AMOUNT = 3;
+
+	private final Map<String, History> histories = new ConcurrentHashMap<>();
+
+	private final Map<String, Integer> counterpartyIndexes = new ConcurrentHashMap<>();
+
+	private volatile String[] counterparties = new String[1024];
+
+	private int counterpartyCount;
+
+	private final AtomicLong transferIds = new AtomicLong();
+
+	/**
+	 * This method returns the id shared by the debit and the credit entries of a new transfer.
+	 *
+	 * @return
+	 */
+	public long nextTransferId() {
+		return transferIds.incrementAndGet();
+	}
+
+	/**
+	 * This method appends an entry to the history of an account. The caller must have exclusive access to the account.
+	 *
+	 * @param accountId
+	 * @param transferId
+	 * @param counterpartyId the other account of the transfer
+	 * @param minorUnits amount in minor units, negative for a debit
+	 */
+	public void record(String accountId, long transferId, String counterpartyId, long minorUnits) {
+		int counterparty = indexOf(counterpartyId);
+		History history = histories.get(accountId);
+		if (history == null) {
+			history = histories.computeIfAbsent(accountId, id -> new History());
+		}
+		history.append(transferId, System.currentTimeMillis(), counterparty, minorUnits);
+	}
+
+	/**
+	 * This method records both sides of a transfer. The caller must have exclusive access to both accounts.
+	 *
+	 * @param accountFromId
+	 * @param accountToId
+	 * @param minorUnits
+	 */
+	public void recordTransfer(String accountFromId, String accountToId, long minorUnits) {
+		long transferId = nextTransferId();
+		record(accountFromId, transferId, accountToId, -minorUnits);
+		record(accountToId, transferId, accountFromId, minorUnits);
+	}
+
+	/**
+	 * This method returns the number of entries of an account.
+	 *
+	 * @param accountId
+	 * @return
+	 */
+	public long size(String accountId) {
+		History history = histories.get(accountId);
+		return history == null ? 0 : history.size;
+	}
+
+	/**
+	 * This method returns a page of the history of an account, oldest first.
+	 *
+	 * @param accountId
+	 * @param offset position of the first entry, 0 being the oldest
+	 * @param limit maximum number of entries
+	 * @return
+	 */
+	public List<LedgerEntry> read(String accountId, long offset, int limit) {
+		List<LedgerEntry> page = new ArrayList<>(Math.max(0, (int) Math.min(limit, size(accountId) - offset)));
+		forEach(accountId, offset, limit, page::add);
+		return page;
+	}
+
+	/**
+	 * This method passes the entries of an account to the consumer, oldest first. Only the entries appended before the
+	 * call are passed, so the consumer can take its time without holding up the transfers.
+	 *
+	 * @param accountId
+	 * @param offset position of the first entry, 0 being the oldest
+	 * @param limit maximum number of entries
+	 * @param consumer
+	 * @return number of entries passed
+	 */
+	public long forEach(String accountId, long offset, long limit, Consumer<LedgerEntry> consumer) {
+		History history = histories.get(accountId);
+		if (history == null || offset < 0) {
+			return 0;
+		}
+		// Read the count before the chunks, the chunks it covers are then visible
+		long end = Math.min(history.size, offset + Math.min(limit, Long.MAX_VALUE - offset));
+		long[][] chunks = history.chunks;
+		String[] names = counterparties;
+		for (long index = offset; index < end; index++) {
+			int chunkIndex = chunkOf(index);
+			long[] chunk = chunks[chunkIndex];
+			int base = offsetOf(index, chunkIndex) * FIELDS;
+			consumer.accept(new LedgerEntry(index, chunk[base + TRANSFER_ID], chunk[base + TIMESTAMP],
+					names[(int) chunk[base + COUNTERPARTY]], MinorUnits.toBigDecimal(chunk[base + AMOUNT])));
+		}
+		return Math.max(0, end - offset);
+	}
+
+	/**
+	 * This method forgets every history, e.g. when the accounts are cleared.
+	 */
+	public void clear() {
+		histories.clear();
+	}
+
+	/**
+	 * Chunk holding the entry at the given position.
+	 */
+	private static int chunkOf(long index) {
+		if (index >= CHUNK_ENTRIES) {
+			return (int) (index >>> CHUNK_BITS) + GROWING_CHUNKS;
+		}
+		// Chunk k > 0 holds the entries from FIRST_ENTRIES << (k - 1) on
+		return 64 - Long.numberOfLeadingZeros(index >>> FIRST_BITS);
+	}
+
+	/**
+	 * Position of the entry within its chunk.
+	 */
+	private static int offsetOf(long index, int chunk) {
+		if (index >= CHUNK_ENTRIES) {
+			return (int) (index & (CHUNK_ENTRIES - 1));
+		}
+		return chunk == 0 ? (int) index : (int) index - (FIRST_ENTRIES << (chunk - 1));
+	}
+
+	/**
+	 * Number of entries the chunk holds.
+	 */
+	private static int entriesOf(int chunk) {
+		return chunk == 0 ? FIRST_ENTRIES : FIRST_ENTRIES << Math.min(chunk - 1, GROWING_CHUNKS);
+	}
+
+	private int indexOf(String counterpartyId) {
+		Integer index = counterpartyIndexes.get(counterpartyId);
+		if (index != null) {
+			return index;
+		}
+		synchronized (counterpartyIndexes) {
+			index = counterpartyIndexes.get(counterpartyId);
+			if (index == null) {
+				String[] names = counterparties;
+				if (counterpartyCount == names.length) {
+					names = Arrays.copyOf(names, names.length * 2);
+				}
+				names[counterpartyCount] = counterpartyId;
+				counterparties = names;
+				index = counterpartyCount++;
+				counterpartyIndexes.put(counterpartyId, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Entries of one account. Appends are serialized by the monitor, though the engines already give every account a
+	 * single writer at a time.
+	 */
+	private static final class History {
+
+		private volatile long[][] chunks = new long[1][];
+
+		private volatile long size;
+
+		synchronized void append(long transferId, long timestamp, int counterparty, long amount) {
+			long index = size;
+			int chunkIndex = chunkOf(index);
+			long[][] directory = chunks;
+			if (chunkIndex == directory.length) {
+				directory = Arrays.copyOf(directory, directory.length * 2);
+			}
+			if (directory[chunkIndex] == null) {
+				directory[chunkIndex] = new long[entriesOf(chunkIndex) * FIELDS];
+			}
+			long[] chunk = directory[chunkIndex];
+			int base = offsetOf(index, chunkIndex) * FIELDS;
+			chunk[base + TRANSFER_ID] = transferId;
+			chunk[base + TIMESTAMP] = timestamp;
+			chunk[base + COUNTERPARTY] = counterparty;
+			chunk[base + AMOUNT] = amount;
+			chunks = directory;
+			// Publishes the entry
+			size = index + 1;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.db.awmd.challenge.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.TransferStatus;
+
+/**
+ * Latency histograms and counters of the account operations. Recording only takes timestamps and increments
+ * preallocated counters, so it can be called on the hot path without allocating or logging.
+ *
+ * All durations are in nanoseconds. For the locking engine the lock wait is the time spent acquiring the account locks
+ * and the hold time the time they were held. For the sharded engine they are the time a transfer waited in the queue of
+ * its shard and the time the shard spent executing it.
+ *
+ */
+@Component
+public class TransferMetrics {
+
+	private static final TransferStatus[] STATUSES = TransferStatus.values();
+
+	private final LatencyHistogram transferLatency = new LatencyHistogram();
+
+	private final LatencyHistogram batchLatency = new LatencyHistogram();
+
+	private final LatencyHistogram createLatency = new LatencyHistogram();
+
+	private final LatencyHistogram getLatency = new LatencyHistogram();
+
+	private final LatencyHistogram lockWait = new LatencyHistogram();
+
+	private final LatencyHistogram lockHold = new LatencyHistogram();
+
+	private final LongAdder[] transfersByStatus = new LongAdder[STATUSES.length];
+
+	private final LongAdder transfersInFlight = new LongAdder();
+
+	private final LongAdder batchesInFlight = new LongAdder();
+
+	public TransferMetrics() {
+		for (int i = 0; i < transfersByStatus.length; i++) {
+			transfersByStatus[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * This method marks the start of a transfer.
+	 *
+	 * @return the start time, to be passed to {@link #transferEnded(long, TransferStatus)}
+	 */
+	public long transferStarted() {
+		transfersInFlight.increment();
+		return System.nanoTime();
+	}
+
+	/**
+	 * This method marks the end of a transfer started by {@link #transferStarted()}.
+	 *
+	 * @param startedAt
+	 * @param status outcome of the transfer, or null if it failed unexpectedly
+	 */
+	public void transferEnded(long startedAt, TransferStatus status) {
+		transferLatency.record(System.nanoTime() - startedAt);
+		transfersInFlight.decrement();
+		if (status != null) {
+			transfersByStatus[status.ordinal()].increment();
+		}
+	}
+
+	/**
+	 * This method counts a transfer which wasn't timed, e.g. one rejected by the validation or part of a batch.
+	 *
+	 * @param status
+	 */
+	public void transferCounted(TransferStatus status) {
+		transfersByStatus[status.ordinal()].increment();
+	}
+
+	public long batchStarted() {
+		batchesInFlight.increment();
+		return System.nanoTime();
+	}
+
+	public void batchEnded(long startedAt) {
+		batchLatency.record(System.nanoTime() - startedAt);
+		batchesInFlight.decrement();
+	}
+
+	public void createTimed(long startedAt) {
+		createLatency.record(System.nanoTime() - startedAt);
+	}
+
+	public void getTimed(long startedAt) {
+		getLatency.record(System.nanoTime() - startedAt);
+	}
+
+	/**
+	 * This method records how long the accounts of a transfer were waited for and then held.
+	 *
+	 * @param waitNanos
+	 * @param holdNanos
+	 */
+	public void lockTimed(long waitNanos, long holdNanos) {
+		lockWait.record(waitNanos);
+		lockHold.record(holdNanos);
+	}
+
+	public long getTransferCount(TransferStatus status) {
+		return transfersByStatus[status.ordinal()].sum();
+	}
+
+	public long getTransfersInFlight() {
+		return transfersInFlight.sum();
+	}
+
+	public LatencyHistogram getTransferLatency() {
+		return transferLatency;
+	}
+
+	public LatencyHistogram getLockWait() {
+		return lockWait;
+	}
+
+	public LatencyHistogram getLockHold() {
+		return lockHold;
+	}
+
+	/**
+	 * This method summarizes every metric for reporting.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> byStatus = new LinkedHashMap<>();
+		for (TransferStatus status : STATUSES) {
+			byStatus.put(status.name(), getTransferCount(status));
+		}
+		Map<String, Object> transfers = new LinkedHashMap<>();
+		transfers.put("inFlight", transfersInFlight.sum());
+		transfers.put("byStatus", byStatus);
+		transfers.put("latency", transferLatency.toMap());
+		Map<String, Object> batches = new LinkedHashMap<>();
+		batches.put("inFlight", batchesInFlight.sum());
+		batches.put("latency", batchLatency.toMap());
+		Map<String, Object> locks = new LinkedHashMap<>();
+		locks.put("wait", lockWait.toMap());
+		locks.put("hold", lockHold.toMap());
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("transfers", transfers);
+		map.put("batches", batches);
+		map.put("locks", locks);
+		map.put("createAccount", createLatency.toMap());
+		map.put("getAccount", getLatency.toMap());
+		return map;
+	}
+}
@@ -0,0 +1,169 @@
+package com.db.awmd.challenge.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Serialized bodies of {@code GET /v1/accounts/{accountId}}, so reading an unchanged account neither serializes it
+ * again nor, with its ETag, sends it again.
+ *
+ * Every body is kept with the version the account was last created, debited or credited at, see
+ * {@link AccountsService#getVersion(String)}. A body is only served while the account is still at its version, so
+ * the body of an account is invalid from its next change on, without the transfers having to do anything. The ETag is
+ * the version, prefixed by the start of this instance as the versions start again on restart.
+ *
+ * The bodies are evicted in insertion order beyond {@code accounts.cache.max-entries}. Striped accounts aren't
+ * cached, their stripes changing with nearly every transfer.
+ *
+ */
+@Component
+public class AccountResponseCache {
+
+	private final AccountsService accountsService;
+
+	private final ObjectWriter accountWriter;
+
+	private final int maxEntries;
+
+	private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+	private final Map<String, Body> entries = new ConcurrentHashMap<>();
+
+	private final Queue<Body> insertionOrder = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	@Autowired
+	public AccountResponseCache(AccountsService accountsService, ObjectMapper objectMapper,
+			@Value("${accounts.cache.max-entries:100000}") int maxEntries) {
+		this.accountsService = accountsService;
+		this.accountWriter = objectMapper.writerFor(Account.class);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * This method returns the body of the account at its current version, serializing it only if it changed since it
+	 * was last cached.
+	 *
+	 * @param accountId
+	 * @return the body, or null if the account doesn't exist, isn't committed yet or is striped
+	 */
+	public Body get(String accountId) {
+		long version = accountsService.getVersion(accountId);
+		if (version < 0) {
+			return null;
+		}
+		Body body = entries.get(accountId);
+		if (body != null && body.version == version) {
+			hits.increment();
+			return body;
+		}
+		misses.increment();
+
+		// The version is read before the balance, so a body is never older than its version
+		Account account = accountsService.getAccount(accountId);
+		if (account == null) {
+			return null;
+		}
+		try {
+			body = new Body(accountId, version, "\"" + epoch + "-" + version + "\"", accountWriter.writeValueAsBytes(account));
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Account " + accountId + " couldn't be serialized!", e);
+		}
+		// Not kept if the account changed meanwhile, the body may then already be of the next version
+		if (maxEntries > 0 && accountsService.getVersion(accountId) == version) {
+			entries.put(accountId, body);
+			insertionOrder.add(body);
+			queued.incrementAndGet();
+			evict();
+		}
+		return body;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * This method summarizes the cache for reporting.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		long hitCount = hits.sum();
+		long lookups = hitCount + misses.sum();
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("size", entries.size());
+		map.put("maxEntries", maxEntries);
+		map.put("hits", hitCount);
+		map.put("misses", misses.sum());
+		map.put("hitRate", lookups == 0 ? 0 : (double) hitCount / lookups);
+		map.put("evictions", evictions.sum());
+		return map;
+	}
+
+	/**
+	 * Bodies replaced by a newer version stay queued until they reach the head, like evicted ones.
+	 */
+	private void evict() {
+		Body head;
+		while (queued.get() > maxEntries && (head = insertionOrder.peek()) != null) {
+			if (insertionOrder.remove(head)) {
+				queued.decrementAndGet();
+				if (entries.remove(head.accountId, head)) {
+					evictions.increment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serialized account at one version.
+	 */
+	public static final class Body {
+
+		private final String accountId;
+
+		private final long version;
+
+		private final String eTag;
+
+		private final byte[] json;
+
+		Body(String accountId, long version, String eTag, byte[] json) {
+			this.accountId = accountId;
+			this.version = version;
+			this.eTag = eTag;
+			this.json = json;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public byte[] getJson() {
+			return json;
+		}
+	}
+}
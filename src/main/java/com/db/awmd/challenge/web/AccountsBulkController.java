@@ -0,0 +1,234 @@
+package com.db.awmd.challenge.web;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportResult;
+import com.db.awmd.challenge.service.AccountImport;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulk import and export of accounts as newline delimited JSON or CSV. Both are streamed one line at a time, so they
+ * use the same memory for a thousand accounts as for millions.
+ *
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@Slf4j
+public class AccountsBulkController {
+
+	/**
+	 * Media type of comma-separated values.
+	 */
+	public static final String CSV_VALUE = "text/csv";
+
+	private static final String CSV_HEADER = "accountId,balance";
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private final AccountsService accountsService;
+
+	private final JsonFactory jsonFactory;
+
+	private final int chunkSize;
+
+	private final int maxRejects;
+
+	@Autowired
+	public AccountsBulkController(AccountsService accountsService, ObjectMapper objectMapper,
+			@Value("${accounts.import.chunk-size:10000}") int chunkSize,
+			@Value("${accounts.import.max-rejects:1000}") int maxRejects) {
+		this.accountsService = accountsService;
+		this.jsonFactory = objectMapper.getFactory();
+		this.chunkSize = chunkSize;
+		this.maxRejects = maxRejects;
+	}
+
+	/**
+	 * This service creates the accounts sent as newline delimited JSON, one account object per line. Each line is
+	 * accepted or rejected on its own and the rejected lines are reported with their reason, e.g. a duplicate id.
+	 *
+	 * @param request
+	 * @return
+	 */
+	@PostMapping(path = "/import", consumes = AccountsController.NDJSON_VALUE)
+	public ResponseEntity<Object> importJson(HttpServletRequest request) {
+		return importAccounts(request, false);
+	}
+
+	/**
+	 * This service creates the accounts sent as CSV, one account id and balance per line, with an optional
+	 * {@value #CSV_HEADER} header. Each line is accepted or rejected on its own as for the JSON import.
+	 *
+	 * @param request
+	 * @return
+	 */
+	@PostMapping(path = "/import", consumes = CSV_VALUE)
+	public ResponseEntity<Object> importCsv(HttpServletRequest request) {
+		return importAccounts(request, true);
+	}
+
+	/**
+	 * This service streams every account with its balance as newline delimited JSON, as of a single committed version.
+	 *
+	 * @return
+	 */
+	@GetMapping(path = "/export", produces = AccountsController.NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> exportJson() {
+		StreamingResponseBody body = outputStream -> {
+			JsonGenerator generator = jsonFactory.createGenerator(outputStream)
+					.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.setRootValueSeparator(null);
+			export((accountId, balance) -> {
+				generator.writeStartObject();
+				generator.writeStringField("accountId", accountId);
+				generator.writeNumberField("balance", balance);
+				generator.writeEndObject();
+				generator.writeRaw('\n');
+			});
+			generator.close();
+		};
+		return new ResponseEntity<>(body, HttpStatus.OK);
+	}
+
+	/**
+	 * This service streams every account with its balance as CSV, as of a single committed version.
+	 *
+	 * @return
+	 */
+	@GetMapping(path = "/export", produces = CSV_VALUE)
+	public ResponseEntity<StreamingResponseBody> exportCsv() {
+		StreamingResponseBody body = outputStream -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+			writer.write(CSV_HEADER);
+			writer.write('\n');
+			export((accountId, balance) -> {
+				writer.write(accountId);
+				writer.write(',');
+				writer.write(balance.toPlainString());
+				writer.write('\n');
+			});
+			writer.flush();
+		};
+		return new ResponseEntity<>(body, HttpStatus.OK);
+	}
+
+	private ResponseEntity<Object> importAccounts(HttpServletRequest request, boolean csv) {
+		AccountImport accountImport = new AccountImport(accountsService, chunkSize, maxRejects);
+		long line = 0;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+			String text;
+			while ((text = reader.readLine()) != null) {
+				line++;
+				if (text.trim().isEmpty() || (csv && line == 1 && text.trim().equalsIgnoreCase(CSV_HEADER))) {
+					continue;
+				}
+				if (csv) {
+					importCsvLine(accountImport, line, text);
+				} else {
+					importJsonLine(accountImport, line, text);
+				}
+			}
+		} catch (IOException e) {
+			log.debug(e.getMessage());
+			// Keep what was imported so far, the result tells the client where to resume
+			accountImport.reject(line + 1, null, "Import couldn't be read past this line!");
+		}
+
+		ImportResult result = accountImport.finish();
+		log.info("Imported {} accounts, rejected {} lines", result.getImported(), result.getRejected());
+		return new ResponseEntity<>(result, HttpStatus.OK);
+	}
+
+	private void importJsonLine(AccountImport accountImport, long line, String text) throws IOException {
+		String accountId = null;
+		BigDecimal balance = null;
+		try (JsonParser parser = jsonFactory.createParser(text)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				accountImport.reject(line, null, "Line isn't an account object!");
+				return;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if ("accountId".equals(field)) {
+					accountId = value.isScalarValue() && value != JsonToken.VALUE_NULL ? parser.getText() : null;
+				} else if ("balance".equals(field)) {
+					balance = value == JsonToken.VALUE_NULL ? null
+							: value == JsonToken.VALUE_STRING ? new BigDecimal(parser.getText()) : parser.getDecimalValue();
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (JsonProcessingException | NumberFormatException e) {
+			accountImport.reject(line, accountId, "Line isn't a valid account!");
+			return;
+		}
+		accountImport.add(line, new Account(accountId, balance));
+	}
+
+	private static void importCsvLine(AccountImport accountImport, long line, String text) {
+		int comma = text.lastIndexOf(',');
+		if (comma < 0) {
+			accountImport.reject(line, null, "Line must have an account id and a balance!");
+			return;
+		}
+		String accountId = text.substring(0, comma).trim();
+		String balance = text.substring(comma + 1).trim();
+		try {
+			accountImport.add(line, new Account(accountId, balance.isEmpty() ? null : new BigDecimal(balance)));
+		} catch (NumberFormatException e) {
+			accountImport.reject(line, accountId, "Balance " + balance + " isn't a number!");
+		}
+	}
+
+	private void export(BalanceWriter writer) throws IOException {
+		try (BalanceVersions.Snapshot snapshot = accountsService.openSnapshot(-1)) {
+			accountsService.forEachAccount(snapshot, (accountId, balance) -> {
+				try {
+					writer.write(accountId, balance);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	@FunctionalInterface
+	private interface BalanceWriter {
+
+		void write(String accountId, BigDecimal balance) throws IOException;
+	}
+}
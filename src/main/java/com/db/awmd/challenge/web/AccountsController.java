@@ -1,11 +1,27 @@
 package com.db.awmd.challenge.web;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.util.concurrent.Semaphore;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,15 +29,39 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.ClusterUnavailableException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
 import com.db.awmd.challenge.exception.InSufficientBalanceException;
 import com.db.awmd.challenge.exception.NoSuchAccountException;
+import com.db.awmd.challenge.exception.VersionUnavailableException;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AdmissionController;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.ClusterTransfers;
+import com.db.awmd.challenge.service.IdempotencyCache;
 import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferExecutor;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -30,20 +70,64 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class AccountsController {
 
+	/**
+	 * Media type of newline delimited JSON.
+	 */
+	public static final String NDJSON_VALUE = "application/x-ndjson";
+
+	/**
+	 * Header carrying the key which identifies a transfer across retries.
+	 */
+	public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+	/**
+	 * Header set on the response of a retried transfer which wasn't executed again.
+	 */
+	public static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+	private static final int MAX_PAGE_SIZE = 1000;
+
 	private final AccountsService accountsService;	
 	
 	private final NotificationService notificationService;
 	
-	/**
-	 * Semaphore instance at class level which ensures only one request executes transfer at a time even if each request is handled independently by the controller class. 
-	 * 
-	 */
-	private static Semaphore lock = new Semaphore(1);
+	private final IdempotencyCache idempotencyCache;
+	
+	private final TransferLedger transferLedger;
+	
+	private final TransferExecutor transferExecutor;
+	
+	private final AdmissionController admissionController;
+	
+	private final ClusterTransfers clusterTransfers;
+	
+	private final AccountResponseCache accountResponseCache;
+	
+	private final ObjectReader transferReader;
+	
+	private final ObjectWriter entryWriter;
+	
+	private final int maxBatchSize;
 
 	@Autowired
-	public AccountsController(AccountsService accountsService, NotificationService notificationService) {
+	public AccountsController(AccountsService accountsService, NotificationService notificationService,
+			IdempotencyCache idempotencyCache, TransferLedger transferLedger, TransferExecutor transferExecutor,
+			AdmissionController admissionController, ClusterTransfers clusterTransfers,
+			AccountResponseCache accountResponseCache, ObjectMapper objectMapper,
+			@Value("${accounts.transfer.batch-max-size:100000}") int maxBatchSize) {
 		this.accountsService = accountsService;
 		this.notificationService = notificationService;
+		this.idempotencyCache = idempotencyCache;
+		this.transferLedger = transferLedger;
+		this.transferExecutor = transferExecutor;
+		this.admissionController = admissionController;
+		this.clusterTransfers = clusterTransfers;
+		this.accountResponseCache = accountResponseCache;
+		this.transferReader = objectMapper.readerFor(TransferRequest.class);
+		this.entryWriter = objectMapper.writerFor(LedgerEntry.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		this.maxBatchSize = maxBatchSize;
 	}
 
 	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -52,71 +136,375 @@ public class AccountsController {
 
 		try {
 			this.accountsService.createAccount(account);
-		} catch (DuplicateAccountIdException daie) {
-			return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (DuplicateAccountIdException | InvalidAccountException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
 		}
 
 		return new ResponseEntity<>(HttpStatus.CREATED);
 	}
 
+	/**
+	 * This service lists every account with its balance as of a single committed version, by default the newest one.
+	 * The listing is read without holding up the transfers, and the version it was read at is returned so that other
+	 * reads can be made at the same version while it is retained.
+	 * 
+	 * @param version a committed version, or -1 for the newest one
+	 * @return
+	 */
+	@GetMapping
+	public ResponseEntity<Object> getAccounts(@RequestParam(defaultValue = "-1") long version) {
+		if(version > accountsService.getBalanceVersions().getCommittedVersion()){
+			return new ResponseEntity<>("Version " + version + " isn't committed yet!", HttpStatus.BAD_REQUEST);
+		}
+		
+		try (BalanceVersions.Snapshot snapshot = accountsService.openSnapshot(version)) {
+			List<Account> accounts = new ArrayList<>();
+			accountsService.forEachAccount(snapshot, (accountId, balance) -> accounts.add(new Account(accountId, balance)));
+			Map<String, Object> listing = new LinkedHashMap<>();
+			listing.put("version", snapshot.getVersion());
+			listing.put("accounts", accounts);
+			return new ResponseEntity<>(listing, HttpStatus.OK);
+		} catch (VersionUnavailableException e) {
+			log.debug(e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.GONE);
+		}
+	}
+
+	/**
+	 * This service returns the account with its balance, and its version as ETag. The body is serialized once per
+	 * change of the account by the {@link AccountResponseCache}, and a request whose If-None-Match header holds the
+	 * current ETag is answered with 304 without a body.
+	 * 
+	 * @param accountId
+	 * @return
+	 */
 	@GetMapping(path = "/{accountId}")
-	public Account getAccount(@PathVariable String accountId) {
-		log.info("Retrieving account for id {}", accountId);
-		return this.accountsService.getAccount(accountId);
+	public ResponseEntity<Object> getAccount(@PathVariable String accountId) {
+		log.debug("Retrieving account for id {}", accountId);
+		AccountResponseCache.Body body = accountResponseCache.get(accountId);
+		if (body == null) {
+			// Missing, striped, or created but not committed yet
+			return new ResponseEntity<>(this.accountsService.getAccount(accountId), HttpStatus.OK);
+		}
+		return ResponseEntity.ok().eTag(body.getETag()).contentType(MediaType.APPLICATION_JSON_UTF8).body(body.getJson());
+	}
+
+	/**
+	 * This service returns a page of the transfer history of the account, oldest first. The page tells the offset of the
+	 * next one, which is null once the end of the history is reached. Reading the history never holds up the transfers.
+	 * 
+	 * @param accountId
+	 * @param offset position of the first entry, 0 being the oldest
+	 * @param limit maximum number of entries, up to {@value #MAX_PAGE_SIZE}
+	 * @return
+	 */
+	@GetMapping(path = "/{accountId}/transfers")
+	public ResponseEntity<Object> getTransfers(@PathVariable String accountId,
+			@RequestParam(defaultValue = "0") long offset, @RequestParam(defaultValue = "100") int limit) {
+		if(offset < 0 || limit <= 0 || limit > MAX_PAGE_SIZE){
+			return new ResponseEntity<>("Offset can't be negative and limit must be between 1 and " + MAX_PAGE_SIZE + "!", HttpStatus.BAD_REQUEST);
+		}
+		if(accountsService.getAccount(accountId) == null){
+			return new ResponseEntity<>("Account " + accountId + " couldn't be found!", HttpStatus.NOT_FOUND);
+		}
+		
+		long total = transferLedger.size(accountId);
+		List<LedgerEntry> entries = transferLedger.read(accountId, offset, limit);
+		long next = offset + entries.size();
+		Map<String, Object> page = new LinkedHashMap<>();
+		page.put("accountId", accountId);
+		page.put("total", total);
+		page.put("offset", offset);
+		page.put("nextOffset", next < total ? next : null);
+		page.put("entries", entries);
+		return new ResponseEntity<>(page, HttpStatus.OK);
+	}
+
+	/**
+	 * This service streams the transfer history of the account as newline delimited JSON, oldest first. The entries
+	 * appended while the history is streamed aren't included.
+	 * 
+	 * @param accountId
+	 * @param offset position of the first entry, 0 being the oldest
+	 * @param limit maximum number of entries, the whole history by default
+	 * @return
+	 */
+	@GetMapping(path = "/{accountId}/transfers", produces = NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> streamTransfers(@PathVariable String accountId,
+			@RequestParam(defaultValue = "0") long offset, @RequestParam(defaultValue = "" + Long.MAX_VALUE) long limit) {
+		if(offset < 0 || limit <= 0 || accountsService.getAccount(accountId) == null){
+			HttpStatus status = offset < 0 || limit <= 0 ? HttpStatus.BAD_REQUEST : HttpStatus.NOT_FOUND;
+			return new ResponseEntity<>(status);
+		}
+		
+		long end = Math.min(transferLedger.size(accountId), offset + Math.min(limit, Long.MAX_VALUE - offset));
+		StreamingResponseBody body = outputStream -> {
+			OutputStream out = new BufferedOutputStream(outputStream);
+			try {
+				transferLedger.forEach(accountId, offset, end - offset, entry -> {
+					try {
+						entryWriter.writeValue(out, entry);
+						out.write('\n');
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			out.flush();
+		};
+		return new ResponseEntity<>(body, HttpStatus.OK);
 	}
 
 	/**
 	 * This service transfer the amount from the given source account to destination account. This is atomic operation which should happen either all or none.
-	 * Also, to make the transfer thread-safe, a locking mechanism is used which ensures only one request executes the transfer at a time for parallel executing requests. 
+	 * The transfer is delegated to the service layer which locks only the two accounts involved, so transfers between unrelated accounts run in parallel.
+	 * It runs on the {@link TransferExecutor}, which releases the HTTP thread at once, once admitted by the {@link AdmissionController}. Transfers the
+	 * transfer path can't take are answered at once with 429 or 503 and a Retry-After header.
+	 * 
+	 * The amount must be positive and have at most {@value MinorUnits#SCALE} decimal places, trailing zeros aside, or
+	 * the transfer is answered with 400. The whole amount is read from the path: its decimals aren't taken for a file
+	 * extension. This holds for every repository, the in-memory one included, because the
+	 * {@link TransferLedger} and the {@link BalanceVersions} keep amounts in minor units.
+	 * 
+	 * A client retrying the transfer sends the same {@value #IDEMPOTENCY_KEY_HEADER} header with every attempt. The transfer is then executed once and
+	 * the retries get the original response, flagged with the {@value #IDEMPOTENT_REPLAYED_HEADER} header.
+	 * 
+	 * In a cluster the transfer runs on the node owning the source account, and a destination account owned by another node is credited through
+	 * the two-phase {@link ClusterTransfers}. If that node can't be reached the transfer is aborted and answered with 503.
+	 * 
+	 * The same transfers can be sent over the compact binary protocol of the {@link BinaryTransferServer}.
 	 * 
 	 * @param accountFromId
 	 * @param accountToId
 	 * @param amount
+	 * @param idempotencyKey optional key identifying the transfer across retries
 	 * @return
 	 */
-	@PostMapping(path = "/transfer/{accountFromId}/{accountToId}/{amount}")
-	public ResponseEntity<Object> transferAmount(@PathVariable String accountFromId, @PathVariable String accountToId,
-			@PathVariable BigDecimal amount) {		
+	@PostMapping(path = "/transfer/{accountFromId}/{accountToId}/{amount:.+}")
+	public CompletableFuture<ResponseEntity<Object>> transferAmount(@PathVariable String accountFromId, @PathVariable String accountToId,
+			@PathVariable BigDecimal amount, @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {		
 		
-		if(amount.compareTo(new BigDecimal("0")) <= 0){
-			return new ResponseEntity<>("Amount can't be in negative!", HttpStatus.BAD_REQUEST);
+		if(amount.compareTo(BigDecimal.ZERO) <= 0){
+			accountsService.getTransferMetrics().transferCounted(TransferStatus.INVALID_AMOUNT);
+			return CompletableFuture.completedFuture(new ResponseEntity<>("Amount can't be in negative!", HttpStatus.BAD_REQUEST));
+		}
+		if(!MinorUnits.isRepresentable(amount)){
+			accountsService.getTransferMetrics().transferCounted(TransferStatus.INVALID_AMOUNT);
+			return CompletableFuture.completedFuture(new ResponseEntity<>("Amount can't have more than " + MinorUnits.SCALE + " decimal places!", HttpStatus.BAD_REQUEST));
+		}
+		TransferExecutor executor = executorFor(accountToId);
+		if(idempotencyKey == null){
+			return submit(executor, () -> toResponse(transfer(accountFromId, accountToId, amount), false));
+		}
+		if(idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH){
+			return CompletableFuture.completedFuture(new ResponseEntity<>("Idempotency key must have between 1 and " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters!", HttpStatus.BAD_REQUEST));
 		}
 		
-		/* This block of code should be executed all at once (either all or none) hence we need to synchronize this. */
+		String fingerprint = accountFromId + " " + accountToId + " " + amount.stripTrailingZeros().toPlainString();
+		return submit(executor, () -> {
+			try {
+				IdempotencyCache.Outcome outcome = idempotencyCache.execute(idempotencyKey, fingerprint,
+						() -> transfer(accountFromId, accountToId, amount));
+				return toResponse(outcome.getResult(), outcome.isReplayed());
+			} catch (IdempotencyKeyReusedException e) {
+				log.debug(e.getMessage());
+				return new ResponseEntity<>(e.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+			}
+		});
+	}
+
+	/**
+	 * This method executes a transfer the way {@link #transferAmount} does, for the {@link BinaryTransferServer}. The
+	 * amount must already be valid and the source account owned by this node.
+	 * 
+	 * @param accountFromId
+	 * @param accountToId
+	 * @param amount
+	 * @param completed maps the status of an executed transfer to the response
+	 * @param overloaded maps the message and HTTP status of a transfer which wasn't executed to the response
+	 * @return
+	 */
+	<T> CompletableFuture<T> submitTransfer(String accountFromId, String accountToId, BigDecimal amount,
+			Function<TransferStatus, T> completed, BiFunction<String, HttpStatus, T> overloaded) {
+		return submit(executorFor(accountToId), () -> completed.apply(transfer(accountFromId, accountToId, amount).getStatus()), overloaded);
+	}
+
+	private CompletableFuture<ResponseEntity<Object>> submit(Supplier<ResponseEntity<Object>> transfer) {
+		return submit(transferExecutor, transfer);
+	}
+
+	private CompletableFuture<ResponseEntity<Object>> submit(TransferExecutor executor,
+			Supplier<ResponseEntity<Object>> transfer) {
+		return submit(executor, transfer, AccountsController::overloaded);
+	}
+
+	/**
+	 * Returns the executor of a transfer to the account: the one of {@link ClusterTransfers} if another node owns it,
+	 * whose calls to that node mustn't hold up the threads of the local transfers.
+	 */
+	private TransferExecutor executorFor(String accountToId) {
+		return clusterTransfers.isRemote(accountToId) ? clusterTransfers.getExecutor() : transferExecutor;
+	}
+
+	/**
+	 * Admits the transfer and hands it over to the executor. A transfer beyond the admission limit is answered with
+	 * 429, and one which can't be queued or is still queued at its deadline with 503, both without being executed.
+	 */
+	private <T> CompletableFuture<T> submit(TransferExecutor executor, Supplier<T> transfer,
+			BiFunction<String, HttpStatus, T> overloaded) {
+		AdmissionController.Permit permit = admissionController.tryAcquire();
+		if (permit == null) {
+			log.debug("Rejected transfer, {} transfers are in flight", admissionController.getInFlight());
+			return CompletableFuture.completedFuture(overloaded.apply("Too many transfers in flight, please retry later!", HttpStatus.TOO_MANY_REQUESTS));
+		}
 		try {
-			lock.acquire();
-		} catch (InterruptedException e1) {
-			log.debug(e1.getMessage());
-			lock.release();
-			return new ResponseEntity<>("Request to transfer amount couldn't be completed!", HttpStatus.BAD_REQUEST);
+			return executor.submit(() -> {
+				if (permit.isExpired()) {
+					permit.drop();
+					return overloaded.apply("Transfer waited past its deadline, please retry later!", HttpStatus.SERVICE_UNAVAILABLE);
+				}
+				try {
+					return transfer.get();
+				} catch (ClusterUnavailableException e) {
+					log.warn(e.getMessage());
+					return overloaded.apply("Node owning the destination account couldn't be reached, please retry later!", HttpStatus.SERVICE_UNAVAILABLE);
+				} finally {
+					permit.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permit.drop();
+			log.debug("Rejected transfer, {} transfers are pending", executor.getPending());
+			return CompletableFuture.completedFuture(overloaded.apply("Too many transfers are pending, please retry later!", HttpStatus.SERVICE_UNAVAILABLE));
+		}
+	}
+
+	private static ResponseEntity<Object> overloaded(String message, HttpStatus status) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, "1");
+		return new ResponseEntity<>(message, headers, status);
+	}
+
+	private TransferResult transfer(String accountFromId, String accountToId, BigDecimal amount) {
+		if (log.isDebugEnabled()) {
+			log.debug("Transferring amount from : {} to {} :{}", accountFromId, accountToId, amount);
+		}
+		
+		// The source account is local, the routing forwarded the transfer to its node
+		boolean remote = clusterTransfers.isRemote(accountToId);
+		TransferStatus status = remote ? clusterTransfers.transfer(accountFromId, accountToId, amount)
+				: accountsService.tryTransferAmount(accountFromId, accountToId, amount);
+		if (status != TransferStatus.COMPLETED) {
+			log.debug("Transfer from {} rejected: {}", accountFromId, status);
+			return TransferResponses.result(status);
 		}
 		
-		log.info("Transferring amount from : "+accountFromId + " to "+accountToId + " :"+amount);
+		//Notify accounts on successful transfer, a remote account isn't notified
+		Account fromAccount = accountsService.getAccount(accountFromId);
+		notificationService.notifyAboutTransfer(fromAccount, true, amount, fromAccount.getBalance());
+		if (!remote) {
+			Account toAccount = accountsService.getAccount(accountToId);
+			notificationService.notifyAboutTransfer(toAccount, false, amount, toAccount.getBalance());
+		}
 		
+		log.debug("Completed transfer.");
 		
-		try {
-			Account fromAccount = accountsService.accountExists(accountFromId);
-			Account toAccount = accountsService.accountExists(accountToId);
-			
-			// debit from source account
-			accountsService.debitAccount(fromAccount, amount);
-			// credit to destination account
-			accountsService.creditAccount(toAccount, amount);
+		return TransferResponses.result(status);
+	}
+
+	private static ResponseEntity<Object> toResponse(TransferResult result, boolean replayed) {
+		ResponseEntity<Object> response = TransferResponses.response(result.getStatus(), replayed);
+		if (response != null && Objects.equals(response.getBody(), result.getMessage())) {
+			return response;
+		}
+		// Outcome recorded with another message, e.g. by an earlier version
+		HttpHeaders headers = new HttpHeaders();
+		if (replayed) {
+			headers.set(IDEMPOTENT_REPLAYED_HEADER, "true");
+		}
+		if (result.getStatus() == TransferStatus.COMPLETED) {
+			return new ResponseEntity<>(headers, HttpStatus.OK);
+		}
+		return new ResponseEntity<>(result.getMessage(), headers, HttpStatus.BAD_REQUEST);
+	}
+
+	/**
+	 * This service executes a multi-leg transfer, e.g. from a payer to a payee and a fee account, all at once or not at
+	 * all. Each leg debits its account if its amount is negative and credits it otherwise, and the legs must add up to
+	 * zero. Every account involved is locked once, in the same order as for any other transfer, and every debit is
+	 * checked before any account is changed. The transfers between the accounts the legs were executed as are returned.
+	 * 
+	 * @param legs
+	 * @return
+	 */
+	@PostMapping(path = "/transfer/legs", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> transferLegs(@RequestBody List<TransferLeg> legs) {
+		if (legs.size() > maxBatchSize) {
+			return CompletableFuture.completedFuture(new ResponseEntity<>("Transfer can't have more than " + maxBatchSize + " legs!", HttpStatus.BAD_REQUEST));
+		}
+		return submit(() -> {
+			log.debug("Transferring {} legs", legs.size());
+			List<TransferRequest> transfers;
+			try {
+				transfers = accountsService.transferLegs(legs);
+			} catch (IllegalArgumentException | NoSuchAccountException | InSufficientBalanceException e) {
+				log.debug(e.getMessage());
+				return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+			}
 			
-			//Notify accounts on successful transfer
-			notificationService.notifyAboutTransfer(fromAccount, "Your account: "+accountFromId + " has been debited by " + amount +". Your account balance is:"+fromAccount.getBalance());
-			notificationService.notifyAboutTransfer(toAccount, "Your account: "+accountToId + " has been credited by " + amount +". Your account balance is:"+toAccount.getBalance());
+			//Notify accounts of every leg
+			for (TransferRequest transfer : transfers) {
+				notificationService.notifyAboutTransfer(accountsService.getAccount(transfer.getAccountFromId()), true, transfer.getAmount(), null);
+				notificationService.notifyAboutTransfer(accountsService.getAccount(transfer.getAccountToId()), false, transfer.getAmount(), null);
+			}
+			log.debug("Completed multi-leg transfer.");
 			
-		} catch (NoSuchAccountException | InSufficientBalanceException e) {
+			return new ResponseEntity<>(transfers, HttpStatus.OK);
+		});
+	}
+
+	/**
+	 * This service executes a batch of transfers sent either as a JSON array or as newline delimited JSON. The movements
+	 * are netted per account and applied in one pass, locking every account once for the whole batch. Each transfer is
+	 * accepted or rejected on its own and the result of every transfer is returned in submission order. The batch is read
+	 * on the HTTP thread and executed on the {@link TransferExecutor}, like a single transfer.
+	 * 
+	 * @param request
+	 * @return
+	 */
+	@PostMapping(path = "/transfer/batch", consumes = { MediaType.APPLICATION_JSON_VALUE, NDJSON_VALUE })
+	public CompletableFuture<ResponseEntity<Object>> transferBatch(HttpServletRequest request) {
+		List<TransferRequest> transfers = new ArrayList<>();
+		try (MappingIterator<TransferRequest> iterator = transferReader.readValues(request.getInputStream())) {
+			while (iterator.hasNextValue()) {
+				if (transfers.size() == maxBatchSize) {
+					return CompletableFuture.completedFuture(new ResponseEntity<>("Batch can't have more than " + maxBatchSize + " transfers!", HttpStatus.BAD_REQUEST));
+				}
+				transfers.add(iterator.nextValue());
+			}
+		} catch (IOException | RuntimeException e) {
 			log.debug(e.getMessage());
-			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+			return CompletableFuture.completedFuture(new ResponseEntity<>("Batch of transfers couldn't be read!", HttpStatus.BAD_REQUEST));
 		}
-		finally{
-			lock.release();
-		}
-		log.info("Completed transfer.");
 		
-		return new ResponseEntity<>(HttpStatus.OK);
+		return submit(() -> {
+			log.debug("Transferring batch of {} transfers", transfers.size());
+			List<TransferResult> results = accountsService.transferBatch(transfers);
+			
+			//Notify accounts on every successful transfer
+			for (TransferResult result : results) {
+				if (result.getStatus() == TransferStatus.COMPLETED) {
+					TransferRequest transfer = transfers.get(result.getIndex());
+					notificationService.notifyAboutTransfer(accountsService.getAccount(transfer.getAccountFromId()), true, transfer.getAmount(), null);
+					notificationService.notifyAboutTransfer(accountsService.getAccount(transfer.getAccountToId()), false, transfer.getAmount(), null);
+				}
+			}
+			log.debug("Completed batch transfer.");
+			
+			return new ResponseEntity<>(results, HttpStatus.OK);
+		});
 	}
 
 }
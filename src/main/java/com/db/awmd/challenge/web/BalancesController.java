@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.web;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.domain.LedgerCheck;
+import com.db.awmd.challenge.exception.VersionUnavailableException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LedgerInvariantChecker;
+
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequestMapping("/v1/balances")
+@Slf4j
+public class BalancesController {
+
+	private final AccountsService accountsService;
+
+	private final LedgerInvariantChecker ledgerInvariantChecker;
+
+	@Autowired
+	public BalancesController(AccountsService accountsService, LedgerInvariantChecker ledgerInvariantChecker) {
+		this.accountsService = accountsService;
+		this.ledgerInvariantChecker = ledgerInvariantChecker;
+	}
+
+	/**
+	 * This service returns the total balance of all the accounts as of a single committed version, by default the
+	 * newest one. The amount debited but not yet credited by cross-shard transfers is reported apart, so the total and
+	 * the amount in transit together only change when accounts are created, debited or credited on their own.
+	 * 
+	 * @param version a committed version, or -1 for the newest one
+	 * @return
+	 */
+	@GetMapping(path = "/total")
+	public ResponseEntity<Object> getTotal(@RequestParam(defaultValue = "-1") long version) {
+		if (version > accountsService.getBalanceVersions().getCommittedVersion()) {
+			return new ResponseEntity<>("Version " + version + " isn't committed yet!", HttpStatus.BAD_REQUEST);
+		}
+
+		try (BalanceVersions.Snapshot snapshot = accountsService.openSnapshot(version)) {
+			BigDecimal[] total = { BigDecimal.ZERO };
+			long[] accounts = { 0 };
+			accountsService.forEachAccount(snapshot, (accountId, balance) -> {
+				total[0] = total[0].add(balance);
+				accounts[0]++;
+			});
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("version", snapshot.getVersion());
+			map.put("accounts", accounts[0]);
+			map.put("total", total[0]);
+			map.put("inTransit", snapshot.getInTransit());
+			return new ResponseEntity<>(map, HttpStatus.OK);
+		} catch (VersionUnavailableException e) {
+			log.debug(e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.GONE);
+		}
+	}
+
+	/**
+	 * This service returns the statistics of the background ledger checks, with the last check and the last
+	 * discrepancy found.
+	 * 
+	 * @return
+	 */
+	@GetMapping(path = "/invariant")
+	public Map<String, Object> getInvariant() {
+		return ledgerInvariantChecker.toMap();
+	}
+
+	/**
+	 * This service checks at once that the balances of all the accounts plus the amount in transit add up to the
+	 * expected total, at the newest committed version.
+	 * 
+	 * @return the check, with status 200 if balanced and 409 if money was created or lost, or 501 if the balance
+	 *         versions aren't enabled
+	 */
+	@PostMapping(path = "/invariant")
+	public ResponseEntity<Object> checkInvariant() {
+		LedgerCheck check;
+		try {
+			check = ledgerInvariantChecker.check();
+		} catch (VersionUnavailableException e) {
+			log.debug(e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_IMPLEMENTED);
+		}
+		return new ResponseEntity<>(check, check.isBalanced() ? HttpStatus.OK : HttpStatus.CONFLICT);
+	}
+}
@@ -0,0 +1,116 @@
+package com.db.awmd.challenge.web;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client of the {@link BinaryTransferServer} over a single connection, which any number of threads can share. The
+ * requests are buffered until {@link #flush()}, so that many pipelined transfers go out in a few writes, and the
+ * responses are read by a dedicated thread which completes the future of each request.
+ *
+ */
+public class BinaryTransferClient implements Closeable {
+
+	private final Socket socket;
+
+	private final DataOutputStream out;
+
+	private final Map<Long, CompletableFuture<Byte>> pending = new ConcurrentHashMap<>();
+
+	private final AtomicLong lastId = new AtomicLong();
+
+	private final Thread reader;
+
+	public BinaryTransferClient(String host, int port) throws IOException {
+		this.socket = new Socket(host, port);
+		this.socket.setTcpNoDelay(true);
+		this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+		this.reader = new Thread(this::readResponses, "binary-transfer-client");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * This method buffers a transfer request, sent on the next {@link #flush()}.
+	 *
+	 * @param accountFromId
+	 * @param accountToId
+	 * @param amount amount in minor units
+	 * @return the status code of the response, see {@link BinaryTransferProtocol}, or completed exceptionally if the
+	 *         connection is lost first
+	 * @throws IOException if the request can't be written
+	 * @throws IllegalArgumentException if an account id is longer than {@value BinaryTransferProtocol#MAX_ID_LENGTH}
+	 *         bytes
+	 */
+	public CompletableFuture<Byte> transfer(String accountFromId, String accountToId, long amount) throws IOException {
+		byte[] fromId = accountFromId.getBytes(StandardCharsets.UTF_8);
+		byte[] toId = accountToId.getBytes(StandardCharsets.UTF_8);
+		if (fromId.length > BinaryTransferProtocol.MAX_ID_LENGTH || toId.length > BinaryTransferProtocol.MAX_ID_LENGTH) {
+			throw new IllegalArgumentException(
+					"Account ids can't be longer than " + BinaryTransferProtocol.MAX_ID_LENGTH + " bytes!");
+		}
+		long correlationId = lastId.incrementAndGet();
+		CompletableFuture<Byte> response = new CompletableFuture<>();
+		pending.put(correlationId, response);
+		synchronized (out) {
+			out.writeLong(correlationId);
+			out.writeLong(amount);
+			out.writeByte(fromId.length);
+			out.writeByte(toId.length);
+			out.write(fromId);
+			out.write(toId);
+		}
+		return response;
+	}
+
+	/**
+	 * This method sends the buffered requests.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		synchronized (out) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void readResponses() {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536))) {
+			while (true) {
+				long correlationId = in.readLong();
+				byte status = in.readByte();
+				CompletableFuture<Byte> response = pending.remove(correlationId);
+				if (response != null) {
+					response.complete(status);
+				}
+			}
+		} catch (IOException e) {
+			for (Long correlationId : pending.keySet()) {
+				CompletableFuture<Byte> response = pending.remove(correlationId);
+				if (response != null) {
+					response.completeExceptionally(e);
+				}
+			}
+		}
+	}
+}
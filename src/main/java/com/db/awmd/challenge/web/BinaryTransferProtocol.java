@@ -0,0 +1,87 @@
+package com.db.awmd.challenge.web;
+
+import org.springframework.http.HttpStatus;
+
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.TransferStatus;
+
+/**
+ * Frames of the binary transfer protocol served by the {@link BinaryTransferServer}, every number being big-endian.
+ *
+ * A request is a fixed header followed by the ids of the two accounts in UTF-8:
+ * <pre>
+ * offset size
+ *      0    8 correlation id, chosen by the client and returned with the response
+ *      8    8 amount in minor units, see {@link MinorUnits}
+ *     16    1 length of the id of the source account, 1 to 255 bytes
+ *     17    1 length of the id of the destination account, 1 to 255 bytes
+ *     18      id of the source account, then id of the destination account
+ * </pre>
+ * A response is always {@value #RESPONSE_SIZE} bytes: the correlation id of the request and a status code. A client
+ * sends as many requests as it likes without waiting for their responses, which come back in the order the transfers
+ * complete rather than the order they were sent.
+ *
+ */
+public final class BinaryTransferProtocol {
+
+	public static final int REQUEST_HEADER_SIZE = 18;
+
+	public static final int RESPONSE_SIZE = 9;
+
+	public static final int MAX_ID_LENGTH = 255;
+
+	public static final byte COMPLETED = 0;
+
+	public static final byte INVALID_AMOUNT = 1;
+
+	public static final byte NO_SUCH_ACCOUNT = 2;
+
+	public static final byte INSUFFICIENT_BALANCE = 3;
+
+	/**
+	 * Not executed as too many transfers are in flight, like 429 on the REST API.
+	 */
+	public static final byte TOO_MANY_REQUESTS = 4;
+
+	/**
+	 * Not executed, or aborted, as the transfers are overloaded or a node couldn't be reached, like 503 on the REST API.
+	 */
+	public static final byte UNAVAILABLE = 5;
+
+	/**
+	 * The source account is owned by another node of the cluster, which the request must be sent to.
+	 */
+	public static final byte WRONG_NODE = 6;
+
+	/**
+	 * An account id is empty.
+	 */
+	public static final byte MALFORMED = 7;
+
+	/**
+	 * The transfer failed unexpectedly, like 500 on the REST API.
+	 */
+	public static final byte FAILED = 8;
+
+	private BinaryTransferProtocol() {
+	}
+
+	static byte statusCode(TransferStatus status) {
+		switch (status) {
+		case COMPLETED:
+			return COMPLETED;
+		case INVALID_AMOUNT:
+			return INVALID_AMOUNT;
+		case NO_SUCH_ACCOUNT:
+			return NO_SUCH_ACCOUNT;
+		case INSUFFICIENT_BALANCE:
+			return INSUFFICIENT_BALANCE;
+		default:
+			return FAILED;
+		}
+	}
+
+	static byte statusCode(HttpStatus status) {
+		return status == HttpStatus.TOO_MANY_REQUESTS ? TOO_MANY_REQUESTS : UNAVAILABLE;
+	}
+}
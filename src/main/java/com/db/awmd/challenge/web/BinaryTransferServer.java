@@ -0,0 +1,375 @@
+package com.db.awmd.challenge.web;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ClusterTransfers;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Transfers over persistent connections speaking the {@link BinaryTransferProtocol}, for internal callers sending
+ * many transfers, on its own port next to the REST API. The requests carry the amount in minor units and are
+ * pipelined, so a client doesn't wait for a response before sending the next request.
+ *
+ * A single thread accepts the connections, reads the requests and writes the responses without blocking. Each transfer
+ * is executed like {@code POST /v1/accounts/transfer}, admitted by the admission control and run on the transfer
+ * executor, but without idempotency keys. Once {@code accounts.binary.max-in-flight} transfers of a connection are
+ * waiting for their response, its requests are no longer read until some responses are written.
+ *
+ * In a cluster the requests aren't forwarded: a transfer whose source account is owned by another node is answered
+ * with {@link BinaryTransferProtocol#WRONG_NODE}.
+ *
+ */
+@Component
+@Slf4j
+public class BinaryTransferServer {
+
+	/**
+	 * Requests read from a connection at once, enough for about a hundred requests of short ids.
+	 */
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private final AccountsController accountsController;
+
+	private final AccountsService accountsService;
+
+	private final ClusterTransfers clusterTransfers;
+
+	private final boolean enabled;
+
+	private final int configuredPort;
+
+	private final int maxInFlight;
+
+	/**
+	 * Connections with responses to write, handed over by the transfer threads to the server thread.
+	 */
+	private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger connections = new AtomicInteger();
+
+	private final LongAdder requests = new LongAdder();
+
+	private Selector selector;
+
+	private ServerSocketChannel serverChannel;
+
+	private Thread server;
+
+	private volatile boolean running;
+
+	@Autowired
+	public BinaryTransferServer(AccountsController accountsController, AccountsService accountsService,
+			ClusterTransfers clusterTransfers, @Value("${accounts.binary.enabled:false}") boolean enabled,
+			@Value("${accounts.binary.port:18081}") int port,
+			@Value("${accounts.binary.max-in-flight:1024}") int maxInFlight) {
+		this.accountsController = accountsController;
+		this.accountsService = accountsService;
+		this.clusterTransfers = clusterTransfers;
+		this.enabled = enabled;
+		this.configuredPort = port;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * This method opens the port and starts the server thread if the binary protocol is enabled.
+	 *
+	 * @throws IOException if the port can't be opened
+	 */
+	@PostConstruct
+	public void start() throws IOException {
+		if (!enabled) {
+			return;
+		}
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(configuredPort));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		running = true;
+		server = new Thread(this::serve, "binary-transfers");
+		server.setDaemon(true);
+		server.start();
+		log.info("Serving the binary transfer protocol on port {}", getPort());
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException, IOException {
+		if (server == null) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		server.join();
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() instanceof Connection) {
+				close((Connection) key.attachment());
+			}
+		}
+		serverChannel.close();
+		selector.close();
+	}
+
+	/**
+	 * @return the port the binary protocol is served on, or -1 if it isn't enabled
+	 */
+	public int getPort() {
+		return serverChannel == null ? -1 : serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * This method returns the number of open connections and of requests read so far.
+	 *
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("enabled", enabled);
+		map.put("connections", connections.get());
+		map.put("requests", requests.sum());
+		return map;
+	}
+
+	private void serve() {
+		while (running) {
+			try {
+				selector.select();
+				Connection connection;
+				while ((connection = flushes.poll()) != null) {
+					flush(connection);
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						connection = (Connection) key.attachment();
+						if (key.isWritable()) {
+							flush(connection);
+						}
+						if (key.isValid() && key.isReadable()) {
+							read(connection);
+						}
+					}
+				}
+				// Responses to the requests rejected while reading
+				while ((connection = flushes.poll()) != null) {
+					flush(connection);
+				}
+			} catch (IOException | RuntimeException e) {
+				log.error("Binary transfer server failed", e);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Connection connection = new Connection(channel);
+		connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+		connections.incrementAndGet();
+	}
+
+	private void read(Connection connection) {
+		try {
+			if (connection.channel.read(connection.in) < 0) {
+				close(connection);
+				return;
+			}
+		} catch (IOException e) {
+			log.debug("Binary connection failed: {}", e.getMessage());
+			close(connection);
+			return;
+		}
+		readRequests(connection);
+	}
+
+	/**
+	 * Executes every complete request read, until too many transfers of the connection are waiting for their response.
+	 */
+	private void readRequests(Connection connection) {
+		ByteBuffer in = connection.in;
+		in.flip();
+		while (connection.pending < maxInFlight && in.remaining() >= BinaryTransferProtocol.REQUEST_HEADER_SIZE) {
+			int position = in.position();
+			int fromLength = in.get(position + 16) & 0xff;
+			int toLength = in.get(position + 17) & 0xff;
+			if (in.remaining() < BinaryTransferProtocol.REQUEST_HEADER_SIZE + fromLength + toLength) {
+				break;
+			}
+			long correlationId = in.getLong(position);
+			long amount = in.getLong(position + 8);
+			int ids = position + BinaryTransferProtocol.REQUEST_HEADER_SIZE;
+			String accountFromId = new String(in.array(), ids, fromLength, StandardCharsets.UTF_8);
+			String accountToId = new String(in.array(), ids + fromLength, toLength, StandardCharsets.UTF_8);
+			in.position(ids + fromLength + toLength);
+			connection.pending++;
+			requests.increment();
+			execute(connection, correlationId, accountFromId, accountToId, amount);
+		}
+		in.compact();
+		int read = connection.pending < maxInFlight ? SelectionKey.OP_READ : 0;
+		connection.key.interestOps(read | (connection.key.interestOps() & SelectionKey.OP_WRITE));
+	}
+
+	private void execute(Connection connection, long correlationId, String accountFromId, String accountToId,
+			long amount) {
+		if (accountFromId.isEmpty() || accountToId.isEmpty()) {
+			respond(connection, correlationId, BinaryTransferProtocol.MALFORMED);
+		} else if (amount <= 0) {
+			accountsService.getTransferMetrics().transferCounted(TransferStatus.INVALID_AMOUNT);
+			respond(connection, correlationId, BinaryTransferProtocol.INVALID_AMOUNT);
+		} else if (clusterTransfers.isRemote(accountFromId)) {
+			respond(connection, correlationId, BinaryTransferProtocol.WRONG_NODE);
+		} else {
+			BigDecimal decimalAmount = MinorUnits.toBigDecimal(amount);
+			accountsController
+					.submitTransfer(accountFromId, accountToId, decimalAmount, BinaryTransferProtocol::statusCode,
+							(message, status) -> BinaryTransferProtocol.statusCode(status))
+					.whenComplete((status, e) -> {
+						if (e != null) {
+							log.error("Binary transfer from {} failed", accountFromId, e);
+						}
+						respond(connection, correlationId, e == null ? status : BinaryTransferProtocol.FAILED);
+					});
+		}
+	}
+
+	/**
+	 * Queues the response of a request, on whichever thread completed the transfer, and has the server thread write it.
+	 */
+	private void respond(Connection connection, long correlationId, byte status) {
+		synchronized (connection) {
+			if (connection.closed) {
+				return;
+			}
+			connection.out.putLong(correlationId).put(status);
+		}
+		if (connection.flushScheduled.compareAndSet(false, true)) {
+			flushes.add(connection);
+			if (Thread.currentThread() != server) {
+				selector.wakeup();
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued responses, then reads the requests held back if enough transfers of the connection completed.
+	 */
+	private void flush(Connection connection) {
+		connection.flushScheduled.set(false);
+		int written;
+		boolean remaining;
+		synchronized (connection) {
+			if (connection.closed) {
+				return;
+			}
+			ByteBuffer out = connection.out;
+			out.flip();
+			try {
+				written = connection.channel.write(out);
+			} catch (IOException e) {
+				log.debug("Binary connection failed: {}", e.getMessage());
+				written = -1;
+			}
+			out.compact();
+			remaining = out.position() > 0;
+		}
+		if (written < 0) {
+			close(connection);
+			return;
+		}
+		connection.writtenBytes += written;
+		connection.pending -= connection.writtenBytes / BinaryTransferProtocol.RESPONSE_SIZE;
+		connection.writtenBytes %= BinaryTransferProtocol.RESPONSE_SIZE;
+
+		boolean paused = (connection.key.interestOps() & SelectionKey.OP_READ) == 0;
+		connection.key.interestOps((paused ? 0 : SelectionKey.OP_READ) | (remaining ? SelectionKey.OP_WRITE : 0));
+		if (paused && connection.pending < maxInFlight) {
+			readRequests(connection);
+		}
+	}
+
+	private void close(Connection connection) {
+		synchronized (connection) {
+			if (connection.closed) {
+				return;
+			}
+			connection.closed = true;
+		}
+		connection.key.cancel();
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			log.debug("Binary connection not closed cleanly: {}", e.getMessage());
+		}
+		connections.decrementAndGet();
+	}
+
+	private final class Connection {
+
+		private final SocketChannel channel;
+
+		private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+		/**
+		 * Responses not written yet, guarded by the connection. Holds one response per transfer in flight at most.
+		 */
+		private final ByteBuffer out = ByteBuffer.allocate(maxInFlight * BinaryTransferProtocol.RESPONSE_SIZE);
+
+		private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+		private SelectionKey key;
+
+		/**
+		 * Requests read whose response isn't written yet, only used by the server thread.
+		 */
+		private int pending;
+
+		/**
+		 * Bytes of a response only partly written, only used by the server thread.
+		 */
+		private int writtenBytes;
+
+		private boolean closed;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+}
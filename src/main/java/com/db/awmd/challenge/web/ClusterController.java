@@ -0,0 +1,153 @@
+package com.db.awmd.challenge.web;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.domain.ClusterTransfer;
+import com.db.awmd.challenge.service.ClusterClient;
+import com.db.awmd.challenge.service.ClusterTopology;
+import com.db.awmd.challenge.service.ClusterTransfers;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Calls between the nodes of the cluster for the transfers between accounts of two nodes, see
+ * {@link ClusterTransfers}. These are never forwarded by the {@link ClusterRoutingFilter}. The calls of the transfers
+ * are refused with 403 unless the cluster is enabled and they come from another node, which sends the shared secret
+ * and its index.
+ *
+ */
+@RestController
+@RequestMapping("/v1/cluster")
+@Slf4j
+public class ClusterController {
+
+	private final ClusterTopology clusterTopology;
+
+	private final ClusterTransfers clusterTransfers;
+
+	@Autowired
+	public ClusterController(ClusterTopology clusterTopology, ClusterTransfers clusterTransfers) {
+		this.clusterTopology = clusterTopology;
+		this.clusterTransfers = clusterTransfers;
+	}
+
+	/**
+	 * This service returns the nodes of the cluster, the index of this one and the number of transfers between nodes in
+	 * progress.
+	 *
+	 * @return
+	 */
+	@GetMapping
+	public Map<String, Object> getCluster() {
+		Map<String, Object> cluster = clusterTopology.toMap();
+		cluster.put("transfers", clusterTransfers.toMap());
+		return cluster;
+	}
+
+	@PostMapping(path = "/transfers/{id}/prepare", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> prepareTransfer(@PathVariable String id, @RequestBody ClusterTransfer transfer,
+			@RequestHeader(name = ClusterClient.SECRET_HEADER, required = false) String secret,
+			@RequestHeader(name = ClusterClient.FORWARDED_HEADER, required = false) String node) {
+		int caller = caller(secret, node);
+		if (caller < 0) {
+			return forbidden();
+		}
+		if (!id.equals(transfer.getId())) {
+			return new ResponseEntity<>("Transfer id doesn't match!", HttpStatus.BAD_REQUEST);
+		}
+		try {
+			if (!clusterTransfers.prepare(caller, transfer)) {
+				return new ResponseEntity<>("Account " + transfer.getAccountToId() + " couldn't be found!",
+						HttpStatus.NOT_FOUND);
+			}
+		} catch (IllegalArgumentException e) {
+			log.warn(e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	@PostMapping(path = "/transfers/{id}/commit")
+	public ResponseEntity<Object> commitTransfer(@PathVariable String id,
+			@RequestHeader(name = ClusterClient.SECRET_HEADER, required = false) String secret,
+			@RequestHeader(name = ClusterClient.FORWARDED_HEADER, required = false) String node) {
+		if (!isCoordinator(caller(secret, node), id)) {
+			return forbidden();
+		}
+		try {
+			if (!clusterTransfers.commit(id)) {
+				return new ResponseEntity<>("Transfer " + id + " couldn't be found!", HttpStatus.NOT_FOUND);
+			}
+		} catch (IllegalStateException e) {
+			log.error(e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	@PostMapping(path = "/transfers/{id}/abort")
+	public ResponseEntity<Object> abortTransfer(@PathVariable String id,
+			@RequestHeader(name = ClusterClient.SECRET_HEADER, required = false) String secret,
+			@RequestHeader(name = ClusterClient.FORWARDED_HEADER, required = false) String node) {
+		if (!isCoordinator(caller(secret, node), id)) {
+			return forbidden();
+		}
+		try {
+			clusterTransfers.abort(id);
+		} catch (IllegalStateException e) {
+			log.error(e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	/**
+	 * This service returns the outcome of a transfer coordinated by this node, aborted if it isn't known.
+	 *
+	 * @param id
+	 * @return
+	 */
+	@GetMapping(path = "/transfers/{id}")
+	public ResponseEntity<Object> getTransfer(@PathVariable String id,
+			@RequestHeader(name = ClusterClient.SECRET_HEADER, required = false) String secret,
+			@RequestHeader(name = ClusterClient.FORWARDED_HEADER, required = false) String node) {
+		if (caller(secret, node) < 0) {
+			return forbidden();
+		}
+		return new ResponseEntity<>(new ClusterTransfer(id, null, null, null, clusterTransfers.getState(id)),
+				HttpStatus.OK);
+	}
+
+	/**
+	 * Returns the index of the calling node, or -1 if the call doesn't come from another node of the cluster.
+	 */
+	private int caller(String secret, String node) {
+		int caller;
+		try {
+			caller = node == null ? -1 : Integer.parseInt(node);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+		return clusterTopology.isPeer(secret, caller) ? caller : -1;
+	}
+
+	private static boolean isCoordinator(int caller, String id) {
+		return caller >= 0 && ClusterTransfers.coordinatorOf(id) == caller;
+	}
+
+	private static ResponseEntity<Object> forbidden() {
+		return new ResponseEntity<>("Only the other nodes of the cluster can call this!", HttpStatus.FORBIDDEN);
+	}
+}
@@ -0,0 +1,207 @@
+package com.db.awmd.challenge.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.db.awmd.challenge.exception.ClusterUnavailableException;
+import com.db.awmd.challenge.service.ClusterClient;
+import com.db.awmd.challenge.service.ClusterTopology;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Routing in front of the {@link AccountsController} when the accounts are spread over several nodes. The requests on
+ * a single account are forwarded to the node owning it, and a transfer to the node owning its source account, which
+ * coordinates it with the node of the destination account if needed. The response of the owning node is returned as
+ * is, or 503 if it can't be reached.
+ *
+ * The other requests, e.g. listings, batches and imports, only cover the accounts of the node they're sent to.
+ *
+ */
+@Component
+@Slf4j
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+
+	private static final String CREATE_PATH = "/v1/accounts";
+
+	private static final String TRANSFER_PATTERN = "/v1/accounts/transfer/{accountFromId}/{accountToId}/{amount}";
+
+	private static final String ACCOUNT_PATTERN = "/v1/accounts/{accountId}";
+
+	private static final String TRANSFERS_PATTERN = "/v1/accounts/{accountId}/transfers";
+
+	/**
+	 * Paths matching {@link #ACCOUNT_PATTERN} which aren't accounts.
+	 */
+	private static final Set<String> RESERVED_IDS = new HashSet<>(Arrays.asList("export", "import", "scheduled-transfers"));
+
+	private static final String[] FORWARDED_REQUEST_HEADERS = { HttpHeaders.CONTENT_TYPE, HttpHeaders.ACCEPT,
+			HttpHeaders.IF_NONE_MATCH, AccountsController.IDEMPOTENCY_KEY_HEADER };
+
+	private static final String[] FORWARDED_RESPONSE_HEADERS = { HttpHeaders.CONTENT_TYPE, HttpHeaders.RETRY_AFTER,
+			HttpHeaders.ETAG, AccountsController.IDEMPOTENT_REPLAYED_HEADER };
+
+	private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+	private final ClusterTopology clusterTopology;
+
+	private final ClusterClient clusterClient;
+
+	private final ObjectMapper objectMapper;
+
+	@Autowired
+	public ClusterRoutingFilter(ClusterTopology clusterTopology, ClusterClient clusterClient, ObjectMapper objectMapper) {
+		this.clusterTopology = clusterTopology;
+		this.clusterClient = clusterClient;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !clusterTopology.isEnabled() || request.getHeader(ClusterClient.FORWARDED_HEADER) != null;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		String method = request.getMethod();
+		String accountId = null;
+		byte[] body = null;
+		if ("POST".equals(method) && CREATE_PATH.equals(path)) {
+			// The account id is in the body, which is kept to be read again by whichever node creates the account
+			body = StreamUtils.copyToByteArray(request.getInputStream());
+			request = new BufferedRequest(request, body);
+			accountId = readAccountId(body);
+		} else if ("POST".equals(method) && pathMatcher.match(TRANSFER_PATTERN, path)) {
+			accountId = pathMatcher.extractUriTemplateVariables(TRANSFER_PATTERN, path).get("accountFromId");
+		} else if ("GET".equals(method) && pathMatcher.match(TRANSFERS_PATTERN, path)) {
+			accountId = pathMatcher.extractUriTemplateVariables(TRANSFERS_PATTERN, path).get("accountId");
+		} else if ("GET".equals(method) && pathMatcher.match(ACCOUNT_PATTERN, path)) {
+			Map<String, String> variables = pathMatcher.extractUriTemplateVariables(ACCOUNT_PATTERN, path);
+			accountId = RESERVED_IDS.contains(variables.get("accountId")) ? null : variables.get("accountId");
+		}
+
+		if (accountId == null || clusterTopology.isLocal(accountId)) {
+			chain.doFilter(request, response);
+			return;
+		}
+		forward(clusterTopology.ownerOf(accountId), request, body, response);
+	}
+
+	private void forward(int node, HttpServletRequest request, byte[] body, HttpServletResponse response)
+			throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		for (String name : FORWARDED_REQUEST_HEADERS) {
+			String value = request.getHeader(name);
+			if (value != null) {
+				headers.set(name, value);
+			}
+		}
+		if (body == null && request.getContentLength() > 0) {
+			body = StreamUtils.copyToByteArray(request.getInputStream());
+		}
+		String pathAndQuery = request.getRequestURI()
+				+ (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+
+		ResponseEntity<byte[]> forwarded;
+		try {
+			forwarded = clusterClient.forward(node, HttpMethod.valueOf(request.getMethod()), pathAndQuery, headers, body);
+		} catch (ClusterUnavailableException e) {
+			log.warn(e.getMessage());
+			response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+			response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+			response.getWriter().write("Node " + node + " owning the account couldn't be reached, please retry later!");
+			return;
+		}
+		response.setStatus(forwarded.getStatusCodeValue());
+		for (String name : FORWARDED_RESPONSE_HEADERS) {
+			String value = forwarded.getHeaders().getFirst(name);
+			if (value != null) {
+				response.setHeader(name, value);
+			}
+		}
+		if (forwarded.getBody() != null) {
+			response.getOutputStream().write(forwarded.getBody());
+		}
+	}
+
+	private String readAccountId(byte[] body) {
+		try {
+			JsonNode accountId = objectMapper.readTree(body).get("accountId");
+			return accountId == null || !accountId.isTextual() ? null : accountId.asText();
+		} catch (IOException | RuntimeException e) {
+			// Left to the controller to reject
+			return null;
+		}
+	}
+
+	/**
+	 * Request whose body was already read, served again from memory.
+	 */
+	private static final class BufferedRequest extends HttpServletRequestWrapper {
+
+		private final byte[] body;
+
+		BufferedRequest(HttpServletRequest request, byte[] body) {
+			super(request);
+			this.body = body;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			ByteArrayInputStream in = new ByteArrayInputStream(body);
+			return new ServletInputStream() {
+
+				@Override
+				public int read() {
+					return in.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					return in.read(b, off, len);
+				}
+
+				@Override
+				public boolean isFinished() {
+					return in.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setReadListener(ReadListener readListener) {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.db.awmd.challenge.web;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.repository.AuditLog;
+import com.db.awmd.challenge.service.AdmissionController;
+import com.db.awmd.challenge.service.AsyncNotificationService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.LedgerInvariantChecker;
+import com.db.awmd.challenge.service.TransferExecutor;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+	private final TransferMetrics transferMetrics;
+
+	private final IdempotencyCache idempotencyCache;
+
+	private final TransferExecutor transferExecutor;
+
+	private final AdmissionController admissionController;
+
+	private final BinaryTransferServer binaryTransferServer;
+
+	private final AccountResponseCache accountResponseCache;
+
+	private final AuditLog auditLog;
+
+	private final LedgerInvariantChecker ledgerInvariantChecker;
+
+	private final AsyncNotificationService notificationService;
+
+	@Autowired
+	public MetricsController(TransferMetrics transferMetrics, IdempotencyCache idempotencyCache,
+			TransferExecutor transferExecutor, AdmissionController admissionController,
+			BinaryTransferServer binaryTransferServer, AccountResponseCache accountResponseCache,
+			Optional<AuditLog> auditLog, LedgerInvariantChecker ledgerInvariantChecker,
+			Optional<AsyncNotificationService> notificationService) {
+		this.transferMetrics = transferMetrics;
+		this.idempotencyCache = idempotencyCache;
+		this.transferExecutor = transferExecutor;
+		this.admissionController = admissionController;
+		this.binaryTransferServer = binaryTransferServer;
+		this.accountResponseCache = accountResponseCache;
+		this.auditLog = auditLog.orElse(null);
+		this.ledgerInvariantChecker = ledgerInvariantChecker;
+		this.notificationService = notificationService.orElse(null);
+	}
+
+	/**
+	 * This service returns the counters and latency histograms of the account operations, and the statistics of the
+	 * idempotency keys, of the account response cache, of the transfer executor, of the admission control, of the
+	 * binary protocol, of the ledger checks, and of the audit log and the asynchronous notifications if enabled.
+	 * Latencies are in nanoseconds.
+	 * 
+	 * @return
+	 */
+	@GetMapping
+	public Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = transferMetrics.toMap();
+		metrics.put("idempotency", idempotencyCache.toMap());
+		metrics.put("accountCache", accountResponseCache.toMap());
+		metrics.put("executor", transferExecutor.toMap());
+		metrics.put("admission", admissionController.toMap());
+		metrics.put("binary", binaryTransferServer.toMap());
+		metrics.put("invariant", ledgerInvariantChecker.toMap());
+		if (auditLog != null) {
+			metrics.put("audit", auditLog.toMap());
+		}
+		if (notificationService != null) {
+			metrics.put("notifications", notificationService.toMap());
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.web;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.exception.NoSuchAccountException;
+import com.db.awmd.challenge.service.ScheduledTransfers;
+
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequestMapping("/v1/accounts/scheduled-transfers")
+@Slf4j
+public class ScheduledTransfersController {
+
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	private final ScheduledTransfers scheduledTransfers;
+
+	@Autowired
+	public ScheduledTransfersController(ScheduledTransfers scheduledTransfers) {
+		this.scheduledTransfers = scheduledTransfers;
+	}
+
+	/**
+	 * This service books a transfer to execute at the given time, in milliseconds since the epoch. With a non zero
+	 * interval the transfer is a standing order executed again every interval until cancelled.
+	 *
+	 * @param transfer
+	 * @return the transfer booked, with the id to cancel it
+	 */
+	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> scheduleTransfer(@RequestBody ScheduledTransfer transfer) {
+		try {
+			return new ResponseEntity<>(scheduledTransfers.schedule(transfer), HttpStatus.CREATED);
+		} catch (IllegalArgumentException | NoSuchAccountException e) {
+			log.debug(e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	/**
+	 * This service lists the pending transfers by id, a page at a time. The page tells the id to list the next one
+	 * after, which is null once the end is reached.
+	 *
+	 * @param accountId only lists the transfers from or to this account if given
+	 * @param after only lists the transfers with a greater id
+	 * @param limit maximum number of transfers, up to {@value #MAX_PAGE_SIZE}
+	 * @return
+	 */
+	@GetMapping
+	public ResponseEntity<Object> getScheduledTransfers(@RequestParam(required = false) String accountId,
+			@RequestParam(defaultValue = "0") long after, @RequestParam(defaultValue = "100") int limit) {
+		if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+			return new ResponseEntity<>("Limit must be between 1 and " + MAX_PAGE_SIZE + "!", HttpStatus.BAD_REQUEST);
+		}
+
+		List<ScheduledTransfer> transfers = scheduledTransfers.list(accountId, after, limit);
+		Map<String, Object> page = new LinkedHashMap<>();
+		page.put("pending", scheduledTransfers.getPendingCount());
+		page.put("next", transfers.size() == limit ? transfers.get(limit - 1).getId() : null);
+		page.put("transfers", transfers);
+		return new ResponseEntity<>(page, HttpStatus.OK);
+	}
+
+	@GetMapping(path = "/{id}")
+	public ResponseEntity<Object> getScheduledTransfer(@PathVariable long id) {
+		ScheduledTransfer transfer = scheduledTransfers.get(id);
+		if (transfer == null) {
+			return new ResponseEntity<>("Scheduled transfer " + id + " couldn't be found!", HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(transfer, HttpStatus.OK);
+	}
+
+	@DeleteMapping(path = "/{id}")
+	public ResponseEntity<Object> cancelScheduledTransfer(@PathVariable long id) {
+		if (!scheduledTransfers.cancel(id)) {
+			return new ResponseEntity<>("Scheduled transfer " + id + " couldn't be found!", HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+}
@@ -0,0 +1,62 @@
+package com.db.awmd.challenge.web;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.service.AccountsService;
+
+/**
+ * Responses to a single transfer, built once per outcome of {@link AccountsService#tryTransferAmount} and shared by
+ * every request, so answering a transfer allocates nothing whatever its outcome. The messages don't name the account at
+ * fault, which the client knows from its request.
+ *
+ */
+public final class TransferResponses {
+
+	private static final Map<TransferStatus, TransferResult> RESULTS = new EnumMap<>(TransferStatus.class);
+
+	private static final Map<TransferStatus, ResponseEntity<Object>> RESPONSES = new EnumMap<>(TransferStatus.class);
+
+	private static final Map<TransferStatus, ResponseEntity<Object>> REPLAYED_RESPONSES = new EnumMap<>(TransferStatus.class);
+
+	static {
+		put(TransferStatus.COMPLETED, null);
+		put(TransferStatus.NO_SUCH_ACCOUNT, "Source or destination account couldn't be found!");
+		put(TransferStatus.INSUFFICIENT_BALANCE, "Source account does not have sufficient balance to perform this transaction!");
+	}
+
+	private TransferResponses() {
+	}
+
+	private static void put(TransferStatus status, String message) {
+		HttpStatus httpStatus = status == TransferStatus.COMPLETED ? HttpStatus.OK : HttpStatus.BAD_REQUEST;
+		HttpHeaders replayed = new HttpHeaders();
+		replayed.set(AccountsController.IDEMPOTENT_REPLAYED_HEADER, "true");
+		RESULTS.put(status, new TransferResult(0, status, message));
+		RESPONSES.put(status, new ResponseEntity<>(message, httpStatus));
+		REPLAYED_RESPONSES.put(status, new ResponseEntity<>(message, replayed, httpStatus));
+	}
+
+	/**
+	 * @param status
+	 * @return the result of a single transfer with this outcome, e.g. to be kept by the idempotency cache
+	 */
+	public static TransferResult result(TransferStatus status) {
+		return RESULTS.get(status);
+	}
+
+	/**
+	 * @param status
+	 * @param replayed true if the response is replayed to a retry rather than given by executing the transfer
+	 * @return the response to a single transfer with this outcome
+	 */
+	public static ResponseEntity<Object> response(TransferStatus status, boolean replayed) {
+		return (replayed ? REPLAYED_RESPONSES : RESPONSES).get(status);
+	}
+}
@@ -0,0 +1,106 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportReject;
+import com.db.awmd.challenge.domain.ImportResult;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.service.AccountImport;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+
+public class AccountImportTest {
+
+	private final AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+
+	private final AccountsService accountsService = new AccountsService(accountsRepository,
+			new LockingTransferEngine(accountsRepository, new AccountLocks(16)));
+
+	@Test
+	public void rejectsAreReportedWithTheirLine() {
+		accountsService.createAccount(new Account("A001"));
+		AccountImport accountImport = new AccountImport(accountsService, 2, 2);
+		accountImport.add(1, new Account("A002", BigDecimal.ONE));
+		accountImport.add(2, new Account("A001", BigDecimal.ONE));
+		accountImport.add(3, new Account("A003", null));
+		accountImport.add(4, new Account("A002", BigDecimal.ONE));
+		accountImport.add(5, new Account("", BigDecimal.ONE));
+
+		ImportResult result = accountImport.finish();
+
+		assertThat(result.getImported()).isEqualTo(1);
+		assertThat(result.getRejected()).isEqualTo(4);
+		assertThat(result.getRejects()).hasSize(2);
+		assertThat(result.getRejects().get(0).getLine()).isEqualTo(2);
+		assertThat(result.getRejects().get(0).getMessage()).isEqualTo("Account id A001 already exists!");
+		assertThat(result.getRejects().get(1).getLine()).isEqualTo(3);
+		assertThat(result.getRejects().get(1).getMessage()).isEqualTo("Initial balance is required!");
+	}
+
+	@Test
+	public void accountsTheRepositoryCantHoldAreRejected() {
+		AccountsRepositoryOffHeap offHeapRepository = new AccountsRepositoryOffHeap(4, 16);
+		AccountsService offHeapService = new AccountsService(offHeapRepository,
+				new LockingTransferEngine(offHeapRepository, new AccountLocks(16)));
+		AccountImport accountImport = new AccountImport(offHeapService, 10, 10);
+		accountImport.add(1, new Account("A001", new BigDecimal("1.001")));
+		accountImport.add(2, new Account("A0123456789012345678901234567890123", BigDecimal.ONE));
+		accountImport.add(3, new Account("A002", new BigDecimal("1.50")));
+
+		ImportResult result = accountImport.finish();
+
+		assertThat(result.getImported()).isEqualTo(1);
+		assertThat(result.getRejects()).extracting(ImportReject::getLine).containsExactly(1L, 2L);
+		assertThat(result.getRejects().get(0).getMessage())
+				.isEqualTo("Balance 1.001 of account A001 can't be stored in minor units!");
+		assertThat(offHeapRepository.getAccount("A002").getBalance()).isEqualByComparingTo("1.50");
+	}
+
+	@Test
+	public void repositoryFailuresRejectTheirAccountOnly() {
+		AccountsRepositoryInMemory failingRepository = new AccountsRepositoryInMemory() {
+			@Override
+			public void createAccount(Account account) {
+				if (account.getAccountId().equals("A002")) {
+					throw new IllegalStateException("Account A002 couldn't be stored!");
+				}
+				super.createAccount(account);
+			}
+		};
+		AccountsService failingService = new AccountsService(failingRepository,
+				new LockingTransferEngine(failingRepository, new AccountLocks(16)));
+		AccountImport accountImport = new AccountImport(failingService, 10, 10);
+		accountImport.add(1, new Account("A001", BigDecimal.ONE));
+		accountImport.add(2, new Account("A002", BigDecimal.ONE));
+		accountImport.add(3, new Account("A003", BigDecimal.ONE));
+
+		ImportResult result = accountImport.finish();
+
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getRejects()).extracting(ImportReject::getMessage)
+				.containsExactly("Account A002 couldn't be stored!");
+		assertThat(failingRepository.getAccount("A003")).isNotNull();
+	}
+
+	@Test
+	public void importsAccountsInChunks() {
+		// Large imports are timed by the AccountImportBenchmark
+		int count = 25000;
+		AccountImport accountImport = new AccountImport(accountsService, 10000, 1000);
+		for (int i = 1; i <= count; i++) {
+			accountImport.add(i, new Account("A" + i, BigDecimal.TEN));
+		}
+		ImportResult result = accountImport.finish();
+
+		assertThat(result.getImported()).isEqualTo(count);
+		assertThat(result.getRejected()).isZero();
+		assertThat(accountsRepository.getAccount("A" + count).getBalance()).isEqualByComparingTo("10");
+	}
+}
@@ -0,0 +1,79 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.StripedAccounts;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.db.awmd.challenge.web.AccountResponseCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AccountResponseCacheTest {
+
+	private AccountsService accountsService;
+
+	@Before
+	public void createAccounts() {
+		AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+		TransferMetrics transferMetrics = new TransferMetrics();
+		BalanceVersions balanceVersions = new BalanceVersions();
+		accountsService = new AccountsService(accountsRepository, new LockingTransferEngine(accountsRepository,
+				new AccountLocks(16), transferMetrics, new TransferLedger(), balanceVersions), transferMetrics,
+				balanceVersions, new StripedAccounts());
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal("50")));
+	}
+
+	@Test
+	public void bodyIsServedUntilTheAccountChanges() throws Exception {
+		AccountResponseCache cache = new AccountResponseCache(accountsService, new ObjectMapper(), 100);
+
+		AccountResponseCache.Body first = cache.get("Id-1");
+		assertThat(json(first)).isEqualTo("{\"accountId\":\"Id-1\",\"balance\":100}");
+		assertThat(cache.get("Id-1")).isSameAs(first);
+
+		// Only the accounts of the transfer change
+		AccountResponseCache.Body unrelated = cache.get("Id-2");
+		accountsService.createAccount(new Account("Id-3", BigDecimal.ZERO));
+		accountsService.transferAmount("Id-1", "Id-3", new BigDecimal("30"));
+		assertThat(cache.get("Id-2")).isSameAs(unrelated);
+
+		AccountResponseCache.Body changed = cache.get("Id-1");
+		assertThat(json(changed)).isEqualTo("{\"accountId\":\"Id-1\",\"balance\":70}");
+		assertThat(changed.getETag()).isNotEqualTo(first.getETag());
+
+		accountsService.creditAccount(accountsService.getAccount("Id-1"), BigDecimal.ONE);
+		assertThat(json(cache.get("Id-1"))).isEqualTo("{\"accountId\":\"Id-1\",\"balance\":71}");
+		assertThat(cache.get("Missing")).isNull();
+		assertThat(cache.toMap()).containsEntry("hits", 2L).containsEntry("misses", 4L);
+	}
+
+	@Test
+	public void oldestBodiesAreEvicted() {
+		AccountResponseCache cache = new AccountResponseCache(accountsService, new ObjectMapper(), 2);
+		accountsService.createAccount(new Account("Id-3", BigDecimal.ZERO));
+
+		cache.get("Id-1");
+		cache.get("Id-2");
+		cache.get("Id-3");
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.toMap()).containsEntry("evictions", 1L);
+	}
+
+	private static String json(AccountResponseCache.Body body) {
+		return new String(body.getJson(), StandardCharsets.UTF_8);
+	}
+}
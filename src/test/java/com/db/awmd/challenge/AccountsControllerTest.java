@@ -1,14 +1,26 @@
 package com.db.awmd.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -19,14 +31,27 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.context.WebApplicationContext;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.service.AccountsService;
 import com.db.awmd.challenge.service.EmailNotificationService;
-
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.db.awmd.challenge.web.AccountsBulkController;
+import com.db.awmd.challenge.web.AccountsController;
+
+/**
+ * Admission control is opened wide, as some tests burst thousands of transfers which must all be executed.
+ */
 @RunWith(SpringRunner.class)
-@SpringBootTest
+@SpringBootTest(properties = { "accounts.admission.initial-limit=100000", "accounts.admission.min-limit=100000",
+		"accounts.admission.max-limit=100000", "accounts.admission.deadline-millis=60000",
+		"accounts.transfer.executor.max-pending=100000", "accounts.versions.enabled=true" })
 @WebAppConfiguration
 public class AccountsControllerTest {
 
@@ -38,6 +63,9 @@ public class AccountsControllerTest {
 	@Autowired
 	private EmailNotificationService notificationService;
 
+	@Autowired
+	private TransferLedger transferLedger;
+
 	@Autowired
 	private WebApplicationContext webApplicationContext;
 
@@ -47,6 +75,17 @@ public class AccountsControllerTest {
 
 		// Reset the existing accounts before each test.
 		accountsService.getAccountsRepository().clearAccounts();
+		transferLedger.clear();
+		accountsService.getBalanceVersions().clear();
+	}
+
+	/**
+	 * Transfers complete asynchronously on the transfer executor, the response is only known once dispatched again.
+	 */
+	private ResultActions performTransfer(MockHttpServletRequestBuilder transfer) throws Exception {
+		MvcResult result = mockMvc.perform(transfer).andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult();
+		return mockMvc.perform(asyncDispatch(result));
 	}
 
 	@Test
@@ -113,6 +152,23 @@ public class AccountsControllerTest {
 				.andExpect(content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
 	}
 
+	@Test
+	public void getUnchangedAccount() throws Exception {
+		this.accountsService.createAccount(new Account("A001", new BigDecimal("100")));
+		this.accountsService.createAccount(new Account("A002", new BigDecimal("100")));
+		String eTag = this.mockMvc.perform(get("/v1/accounts/A001")).andExpect(status().isOk())
+				.andExpect(header().string("ETag", notNullValue())).andReturn().getResponse().getHeader("ETag");
+
+		this.mockMvc.perform(get("/v1/accounts/A001").header("If-None-Match", eTag))
+				.andExpect(status().isNotModified()).andExpect(content().string(""));
+
+		performTransfer(post("/v1/accounts/transfer/A001/A002/40")).andExpect(status().isOk());
+		MvcResult changed = this.mockMvc.perform(get("/v1/accounts/A001").header("If-None-Match", eTag))
+				.andExpect(status().isOk()).andExpect(content().string("{\"accountId\":\"A001\",\"balance\":60}"))
+				.andReturn();
+		assertThat(changed.getResponse().getHeader("ETag")).isNotEqualTo(eTag);
+	}
+
 	@Test
 	public void transferAmount() throws Exception {
 		String accountFromId = "A001";
@@ -123,7 +179,7 @@ public class AccountsControllerTest {
 		Account toAccount = new Account(accountToId, new BigDecimal(250));
 		accountsService.createAccount(toAccount);
 
-		mockMvc.perform(post("/v1/accounts/transfer/A001/A002/300")).andExpect(status().isOk());
+		performTransfer(post("/v1/accounts/transfer/A001/A002/300")).andExpect(status().isOk());
 		assertThat(fromAccount.getBalance()).isEqualByComparingTo("700");
 		assertThat(toAccount.getBalance()).isEqualByComparingTo("550");
 
@@ -139,7 +195,7 @@ public class AccountsControllerTest {
 		Account toAccount = new Account(accountToId, new BigDecimal(250));
 		accountsService.createAccount(toAccount);
 
-		mockMvc.perform(post("/v1/accounts/transfer/A001/A002/1300")).andExpect(status().isBadRequest());
+		performTransfer(post("/v1/accounts/transfer/A001/A002/1300")).andExpect(status().isBadRequest());
 		
 		assertThat(fromAccount.getBalance()).isEqualByComparingTo("1000");
 		assertThat(toAccount.getBalance()).isEqualByComparingTo("250");
@@ -156,10 +212,338 @@ public class AccountsControllerTest {
 		Account toAccount = new Account(accountToId, new BigDecimal(250));
 		accountsService.createAccount(toAccount);
 
-		mockMvc.perform(post("/v1/accounts/transfer/A001/A002/-300")).andExpect(status().isBadRequest());
+		performTransfer(post("/v1/accounts/transfer/A001/A002/-300")).andExpect(status().isBadRequest());
+		assertThat(fromAccount.getBalance()).isEqualByComparingTo("1000");
+		assertThat(toAccount.getBalance()).isEqualByComparingTo("250");
+
+	}
+
+	@Test
+	public void transferAmountTooPrecise() throws Exception {
+		Account fromAccount = new Account("A001", new BigDecimal(1000));
+		accountsService.createAccount(fromAccount);
+		Account toAccount = new Account("A002", new BigDecimal(250));
+		accountsService.createAccount(toAccount);
+
+		// Rejected by the in-memory repository too, whose balances could take the amount
+		performTransfer(post("/v1/accounts/transfer/A001/A002/0.001")).andExpect(status().isBadRequest())
+				.andExpect(content().string("Amount can't have more than 2 decimal places!"));
 		assertThat(fromAccount.getBalance()).isEqualByComparingTo("1000");
 		assertThat(toAccount.getBalance()).isEqualByComparingTo("250");
 
+		// Trailing zeros beyond the minor units are accepted
+		performTransfer(post("/v1/accounts/transfer/A001/A002/0.010")).andExpect(status().isOk());
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("999.99");
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("250.01");
+	}
+
+	@Test
+	public void transferAmountRetriedWithIdempotencyKey() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal(250)));
+		String key = "transfer-" + System.nanoTime();
+
+		performTransfer(post("/v1/accounts/transfer/A001/A002/300").header("Idempotency-Key", key))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist("Idempotent-Replayed"));
+		performTransfer(post("/v1/accounts/transfer/A001/A002/300.00").header("Idempotency-Key", key))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Idempotent-Replayed", "true"));
+		performTransfer(post("/v1/accounts/transfer/A001/A002/200").header("Idempotency-Key", key))
+				.andExpect(status().isUnprocessableEntity());
+
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("700");
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("550");
+	}
+
+	@Test
+	public void transferAmountInsufficientBalanceRetriedWithIdempotencyKey() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal(250)));
+		String key = "transfer-" + System.nanoTime();
+
+		performTransfer(post("/v1/accounts/transfer/A001/A002/1300").header("Idempotency-Key", key))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Source account does not have sufficient balance to perform this transaction!"));
+		// The outcome is kept even though the balance would now be sufficient
+		accountsService.creditAccount(accountsService.getAccount("A001"), new BigDecimal(1000));
+		performTransfer(post("/v1/accounts/transfer/A001/A002/1300").header("Idempotency-Key", key))
+				.andExpect(status().isBadRequest())
+				.andExpect(header().string("Idempotent-Replayed", "true"));
+
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("2000");
+	}
+
+	@Test
+	public void getMetrics() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal(250)));
+		TransferMetrics transferMetrics = accountsService.getTransferMetrics();
+		long completed = transferMetrics.getTransferCount(TransferStatus.COMPLETED);
+		long insufficient = transferMetrics.getTransferCount(TransferStatus.INSUFFICIENT_BALANCE);
+		long invalid = transferMetrics.getTransferCount(TransferStatus.INVALID_AMOUNT);
+
+		performTransfer(post("/v1/accounts/transfer/A001/A002/300")).andExpect(status().isOk());
+		performTransfer(post("/v1/accounts/transfer/A001/A002/1300")).andExpect(status().isBadRequest());
+		performTransfer(post("/v1/accounts/transfer/A001/A002/-300")).andExpect(status().isBadRequest());
+
+		assertThat(transferMetrics.getTransferCount(TransferStatus.COMPLETED)).isEqualTo(completed + 1);
+		assertThat(transferMetrics.getTransferCount(TransferStatus.INSUFFICIENT_BALANCE)).isEqualTo(insufficient + 1);
+		assertThat(transferMetrics.getTransferCount(TransferStatus.INVALID_AMOUNT)).isEqualTo(invalid + 1);
+		assertThat(transferMetrics.getTransfersInFlight()).isZero();
+		this.mockMvc.perform(get("/v1/metrics"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.transfers.byStatus.COMPLETED").value((int) completed + 1))
+				.andExpect(jsonPath("$.transfers.latency.p99").isNumber())
+				.andExpect(jsonPath("$.locks.wait.count").isNumber())
+				.andExpect(jsonPath("$.createAccount.count").isNumber())
+				.andExpect(jsonPath("$.idempotency.hitRate").isNumber())
+				.andExpect(jsonPath("$.notifications.overflowPolicy").value("DROP_NEWEST"))
+				.andExpect(jsonPath("$.notifications.queueDepth").isNumber())
+				.andExpect(jsonPath("$.notifications.dropped").isNumber());
+	}
+
+	@Test
+	public void getAccounts() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal(250)));
+		long version = accountsService.getBalanceVersions().getCommittedVersion();
+		performTransfer(post("/v1/accounts/transfer/A001/A002/300")).andExpect(status().isOk());
+
+		this.mockMvc.perform(get("/v1/accounts"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.version").value((int) version + 1))
+				.andExpect(jsonPath("$.accounts.length()").value(2))
+				.andExpect(jsonPath("$.accounts[?(@.accountId == 'A001')].balance").value(700))
+				.andExpect(jsonPath("$.accounts[?(@.accountId == 'A002')].balance").value(550));
+		this.mockMvc.perform(get("/v1/accounts?version=" + version))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.version").value((int) version))
+				.andExpect(jsonPath("$.accounts[?(@.accountId == 'A001')].balance").value(1000));
+		this.mockMvc.perform(get("/v1/accounts?version=" + (version + 10))).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void getTotal() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal("250.25")));
+		performTransfer(post("/v1/accounts/transfer/A001/A002/300")).andExpect(status().isOk());
+
+		this.mockMvc.perform(get("/v1/balances/total"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.version").value((int) accountsService.getBalanceVersions().getCommittedVersion()))
+				.andExpect(jsonPath("$.accounts").value(2))
+				.andExpect(jsonPath("$.total").value(1250.25))
+				.andExpect(jsonPath("$.inTransit").value(0.0));
+	}
+
+	@Test
+	public void checkInvariant() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal("250.25")));
+		performTransfer(post("/v1/accounts/transfer/A001/A002/300")).andExpect(status().isOk());
+
+		this.mockMvc.perform(post("/v1/balances/invariant"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.accounts").value(2))
+				.andExpect(jsonPath("$.expected").value(1250.25))
+				.andExpect(jsonPath("$.difference").value(0))
+				.andExpect(jsonPath("$.balanced").value(true));
+		this.mockMvc.perform(get("/v1/balances/invariant"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.checks").isNumber())
+				.andExpect(jsonPath("$.lastCheck.balanced").value(true));
+	}
+
+	@Test
+	public void getTransfers() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal(250)));
+		performTransfer(post("/v1/accounts/transfer/A001/A002/300")).andExpect(status().isOk());
+		performTransfer(post("/v1/accounts/transfer/A001/A002/5000")).andExpect(status().isBadRequest());
+		performTransfer(post("/v1/accounts/transfer/A002/A001/20")).andExpect(status().isOk());
+		performTransfer(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"accountFromId\":\"A001\",\"accountToId\":\"A002\",\"amount\":1}]"))
+				.andExpect(status().isOk());
+
+		this.mockMvc.perform(get("/v1/accounts/A001/transfers?limit=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(3))
+				.andExpect(jsonPath("$.nextOffset").value(2))
+				.andExpect(jsonPath("$.entries.length()").value(2))
+				.andExpect(jsonPath("$.entries[0].position").value(0))
+				.andExpect(jsonPath("$.entries[0].counterpartyId").value("A002"))
+				.andExpect(jsonPath("$.entries[0].amount").value(-300.0))
+				.andExpect(jsonPath("$.entries[1].amount").value(20.0));
+		this.mockMvc.perform(get("/v1/accounts/A002/transfers?offset=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.nextOffset").doesNotExist())
+				.andExpect(jsonPath("$.entries.length()").value(1))
+				.andExpect(jsonPath("$.entries[0].counterpartyId").value("A001"))
+				.andExpect(jsonPath("$.entries[0].amount").value(1.0));
+	}
+
+	@Test
+	public void getTransfersInvalidRequest() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+
+		this.mockMvc.perform(get("/v1/accounts/A002/transfers")).andExpect(status().isNotFound());
+		this.mockMvc.perform(get("/v1/accounts/A001/transfers?limit=0")).andExpect(status().isBadRequest());
+		this.mockMvc.perform(get("/v1/accounts/A001/transfers?offset=-1")).andExpect(status().isBadRequest());
+		this.mockMvc.perform(get("/v1/accounts/A001/transfers"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(0))
+				.andExpect(jsonPath("$.entries").isEmpty());
+	}
+
+	@Test
+	public void streamTransfers() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal(250)));
+		for (int i = 1; i <= 3; i++) {
+			performTransfer(post("/v1/accounts/transfer/A001/A002/" + i)).andExpect(status().isOk());
+		}
+
+		MvcResult result = this.mockMvc.perform(get("/v1/accounts/A002/transfers?offset=1")
+				.accept(AccountsController.NDJSON_VALUE)).andExpect(request().asyncStarted()).andReturn();
+		// The body is written to the response while the request is processed asynchronously
+		result.getAsyncResult();
+		this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+		String body = result.getResponse().getContentAsString();
+
+		String[] lines = body.split("\n");
+		assertThat(lines).hasSize(2);
+		assertThat(lines[0]).contains("\"position\":1", "\"counterpartyId\":\"A001\"", "\"amount\":2.00");
+		assertThat(lines[1]).contains("\"position\":2", "\"amount\":3.00");
+	}
+
+	@Test
+	public void transferLegs() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", new BigDecimal(10)));
+		accountsService.createAccount(new Account("FEE", BigDecimal.ZERO));
+
+		performTransfer(post("/v1/accounts/transfer/legs").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"accountId\":\"A001\",\"amount\":-100},{\"accountId\":\"A002\",\"amount\":98},"
+						+ "{\"accountId\":\"FEE\",\"amount\":2.00}]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(jsonPath("$[0].accountToId").value("A002"))
+				.andExpect(jsonPath("$[1].accountToId").value("FEE"))
+				.andExpect(jsonPath("$[1].amount").value(2.0));
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("900");
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("108");
+		assertThat(accountsService.getAccount("FEE").getBalance()).isEqualByComparingTo("2");
+		assertThat(transferLedger.read("A001", 0, 10)).hasSize(2);
+
+		// The second debit can't be covered, so the first one isn't applied either
+		performTransfer(post("/v1/accounts/transfer/legs").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"accountId\":\"A001\",\"amount\":-100},{\"accountId\":\"A002\",\"amount\":-500},"
+						+ "{\"accountId\":\"FEE\",\"amount\":600}]"))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Account: A002 does not have sufficient balance to perform this transaction!"));
+		performTransfer(post("/v1/accounts/transfer/legs").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"accountId\":\"A001\",\"amount\":-100},{\"accountId\":\"A003\",\"amount\":100}]"))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Account A003 couldn't be found!"));
+		performTransfer(post("/v1/accounts/transfer/legs").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"accountId\":\"A001\",\"amount\":-100},{\"accountId\":\"A002\",\"amount\":99}]"))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Legs must add up to zero!"));
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("900");
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("108");
+		assertThat(accountsService.getAccount("FEE").getBalance()).isEqualByComparingTo("2");
+	}
+
+	@Test
+	public void scheduleTransfers() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", BigDecimal.ZERO));
+		long now = System.currentTimeMillis();
+
+		String soon = this.mockMvc.perform(post("/v1/accounts/scheduled-transfers").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountFromId\":\"A001\",\"accountToId\":\"A002\",\"amount\":25,\"executeAt\":" + (now + 50) + "}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getContentAsString();
+		String later = this.mockMvc.perform(post("/v1/accounts/scheduled-transfers").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountFromId\":\"A002\",\"accountToId\":\"A001\",\"amount\":5,\"executeAt\":" + (now + 3600000)
+						+ ",\"intervalMillis\":86400000}"))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.intervalMillis").value(86400000))
+				.andReturn().getResponse().getContentAsString();
+		this.mockMvc.perform(post("/v1/accounts/scheduled-transfers").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountFromId\":\"A001\",\"accountToId\":\"A003\",\"amount\":5,\"executeAt\":" + now + "}"))
+				.andExpect(status().isBadRequest());
+		long laterId = Long.parseLong(later.replaceAll(".*\"id\":(\\d+).*", "$1"));
+
+		this.mockMvc.perform(get("/v1/accounts/scheduled-transfers?accountId=A002"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.transfers[?(@.id == " + laterId + ")].accountToId").value("A001"));
+		long end = System.currentTimeMillis() + 5000;
+		while (accountsService.getAccount("A002").getBalance().signum() == 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("25");
+		assertThat(soon).contains("\"executeAt\":" + (now + 50));
+
+		this.mockMvc.perform(delete("/v1/accounts/scheduled-transfers/" + laterId)).andExpect(status().isOk());
+		this.mockMvc.perform(delete("/v1/accounts/scheduled-transfers/" + laterId)).andExpect(status().isNotFound());
+		this.mockMvc.perform(get("/v1/accounts/scheduled-transfers/" + laterId)).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void importAccounts() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(10)));
+
+		this.mockMvc.perform(post("/v1/accounts/import").contentType(AccountsController.NDJSON_VALUE)
+				.content("{\"accountId\":\"A002\",\"balance\":250.50}\n"
+						+ "{\"accountId\":\"A001\",\"balance\":1}\n"
+						+ "\n"
+						+ "{\"accountId\":\"A003\",\"balance\":-1}\n"
+						+ "{\"accountId\":\"A004\",\"balance\":\n"
+						+ "{\"accountId\":\"A005\",\"balance\":\"7\",\"currency\":\"EUR\"}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.imported").value(2))
+				.andExpect(jsonPath("$.rejected").value(3))
+				.andExpect(jsonPath("$.rejects[0].line").value(4))
+				.andExpect(jsonPath("$.rejects[0].message").value("Initial balance must be positive."))
+				.andExpect(jsonPath("$.rejects[1].line").value(5))
+				.andExpect(jsonPath("$.rejects[2].line").value(2))
+				.andExpect(jsonPath("$.rejects[2].message").value("Account id A001 already exists!"));
+
+		this.mockMvc.perform(post("/v1/accounts/import").contentType(AccountsBulkController.CSV_VALUE)
+				.content("accountId,balance\nA006,12.25\nA007\nA008,ten\nA002,1\n"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.imported").value(1))
+				.andExpect(jsonPath("$.rejected").value(3))
+				.andExpect(jsonPath("$.rejects[0].message").value("Line must have an account id and a balance!"))
+				.andExpect(jsonPath("$.rejects[1].message").value("Balance ten isn't a number!"));
+
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("10");
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("250.50");
+		assertThat(accountsService.getAccount("A005").getBalance()).isEqualByComparingTo("7");
+		assertThat(accountsService.getAccount("A006").getBalance()).isEqualByComparingTo("12.25");
+		assertThat(accountsService.getAccount("A003")).isNull();
+	}
+
+	@Test
+	public void exportAccounts() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal("1000.25")));
+		accountsService.createAccount(new Account("A002", new BigDecimal(250)));
+
+		MvcResult result = this.mockMvc.perform(get("/v1/accounts/export").accept(AccountsController.NDJSON_VALUE))
+				.andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult();
+		this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+		assertThat(result.getResponse().getContentAsString().split("\n")).containsOnly(
+				"{\"accountId\":\"A001\",\"balance\":1000.25}", "{\"accountId\":\"A002\",\"balance\":250}");
+
+		result = this.mockMvc.perform(get("/v1/accounts/export").accept(AccountsBulkController.CSV_VALUE))
+				.andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult();
+		this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+		String[] lines = result.getResponse().getContentAsString().split("\n");
+		assertThat(lines[0]).isEqualTo("accountId,balance");
+		assertThat(lines).hasSize(3).contains("A001,1000.25", "A002,250");
 	}
 
 	@Test
@@ -173,7 +557,7 @@ public class AccountsControllerTest {
 		Account toAccount = new Account(accountToId, new BigDecimal(250));
 		accountsService.createAccount(toAccount);
 
-		this.mockMvc.perform(post("/v1/accounts/transfer/A00111/A002/300")).andExpect(status().isBadRequest());
+		performTransfer(post("/v1/accounts/transfer/A00111/A002/300")).andExpect(status().isBadRequest());
 		assertThat(fromAccount.getBalance()).isEqualByComparingTo("1000");
 		assertThat(toAccount.getBalance()).isEqualByComparingTo("250");
 
@@ -190,12 +574,68 @@ public class AccountsControllerTest {
 		Account toAccount = new Account(accountToId, new BigDecimal(250));
 		accountsService.createAccount(toAccount);
 
-		this.mockMvc.perform(post("/v1/accounts/transfer/A001/A00222/300")).andExpect(status().isBadRequest());
+		performTransfer(post("/v1/accounts/transfer/A001/A00222/300")).andExpect(status().isBadRequest());
 		assertThat(fromAccount.getBalance()).isEqualByComparingTo("1000");
 		assertThat(toAccount.getBalance()).isEqualByComparingTo("250");
 
 	}
 
+	@Test
+	public void transferBatch() throws Exception {
+		Account a = new Account("A001", new BigDecimal(1000));
+		accountsService.createAccount(a);
+		Account b = new Account("A002", new BigDecimal(250));
+		accountsService.createAccount(b);
+		Account c = new Account("A003", new BigDecimal(0));
+		accountsService.createAccount(c);
+
+		performTransfer(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"accountFromId\":\"A001\",\"accountToId\":\"A002\",\"amount\":300},"
+						+ "{\"accountFromId\":\"A002\",\"accountToId\":\"A003\",\"amount\":500},"
+						+ "{\"accountFromId\":\"A003\",\"accountToId\":\"A001\",\"amount\":600},"
+						+ "{\"accountFromId\":\"A003\",\"accountToId\":\"A001\",\"amount\":100},"
+						+ "{\"accountFromId\":\"A001\",\"accountToId\":\"A009\",\"amount\":100},"
+						+ "{\"accountFromId\":\"A001\",\"accountToId\":\"A002\",\"amount\":-5}]"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[{\"index\":0,\"status\":\"COMPLETED\"},"
+						+ "{\"index\":1,\"status\":\"COMPLETED\"},"
+						+ "{\"index\":2,\"status\":\"INSUFFICIENT_BALANCE\"},"
+						+ "{\"index\":3,\"status\":\"COMPLETED\"},"
+						+ "{\"index\":4,\"status\":\"NO_SUCH_ACCOUNT\",\"message\":\"Account A009 couldn't be found!\"},"
+						+ "{\"index\":5,\"status\":\"INVALID_AMOUNT\"}]"));
+
+		assertThat(a.getBalance()).isEqualByComparingTo("800");
+		assertThat(b.getBalance()).isEqualByComparingTo("50");
+		assertThat(c.getBalance()).isEqualByComparingTo("400");
+	}
+
+	@Test
+	public void transferBatchNdjson() throws Exception {
+		Account a = new Account("A001", new BigDecimal(1000));
+		accountsService.createAccount(a);
+		Account b = new Account("A002", new BigDecimal(250));
+		accountsService.createAccount(b);
+
+		performTransfer(post("/v1/accounts/transfer/batch").contentType("application/x-ndjson")
+				.content("{\"accountFromId\":\"A001\",\"accountToId\":\"A002\",\"amount\":300}\n"
+						+ "{\"accountFromId\":\"A002\",\"accountToId\":\"A001\",\"amount\":100}\n"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[{\"index\":0,\"status\":\"COMPLETED\"},{\"index\":1,\"status\":\"COMPLETED\"}]"));
+
+		assertThat(a.getBalance()).isEqualByComparingTo("800");
+		assertThat(b.getBalance()).isEqualByComparingTo("450");
+	}
+
+	@Test
+	public void transferBatchMalformed() throws Exception {
+		Account a = new Account("A001", new BigDecimal(1000));
+		accountsService.createAccount(a);
+
+		performTransfer(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"accountFromId\":\"A001\",")).andExpect(status().isBadRequest());
+		assertThat(a.getBalance()).isEqualByComparingTo("1000");
+	}
+
 	@Test
 	public void transferAmountMultipleRequests() throws Exception {
 		
@@ -207,48 +647,38 @@ public class AccountsControllerTest {
 		Account toAccount = new Account(accountToId, new BigDecimal(150000));
 		accountsService.createAccount(toAccount);
 
-		Runnable r1 = () -> {
-			try {
-				mockMvc.perform(post("/v1/accounts/transfer/A001/A002/100")).andExpect(status().isOk());
-				
-				
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+		Callable<Void> r1 = () -> {
+			performTransfer(post("/v1/accounts/transfer/A001/A002/100")).andExpect(status().isOk());
+			return null;
 		};
 
-		Runnable r2 = () -> {
-			try {
-				mockMvc.perform(post("/v1/accounts/transfer/A001/A002/200")).andExpect(status().isOk());
-				
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+		Callable<Void> r2 = () -> {
+			performTransfer(post("/v1/accounts/transfer/A001/A002/200")).andExpect(status().isOk());
+			return null;
 		};
 
-		Runnable r3 = () -> {
-			try {
-				mockMvc.perform(post("/v1/accounts/transfer/A002/A001/100")).andExpect(status().isOk());
-				
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+		Callable<Void> r3 = () -> {
+			performTransfer(post("/v1/accounts/transfer/A002/A001/100")).andExpect(status().isOk());
+			return null;
 		};
 
-		new Thread(r1).start();
-		new Thread(r2).start();
-		new Thread(r3).start();
-
+		List<Callable<Void>> transfers = new ArrayList<>();
+		transfers.add(r1);
+		transfers.add(r2);
+		transfers.add(r3);
 		for (int i = 0; i < 10000; i++) {
-			if(i%2 == 0){
-				new Thread(r1).start();
-			}else{
-				new Thread(r3).start();
+			transfers.add(i % 2 == 0 ? r1 : r3);
+		}
+
+		// Every transfer must have succeeded once they are all done
+		ExecutorService executor = Executors.newFixedThreadPool(64);
+		try {
+			for (Future<Void> transfer : executor.invokeAll(transfers)) {
+				transfer.get();
 			}
+		} finally {
+			executor.shutdown();
 		}
-		
-		//Wait until all threads finish processing
-		Thread.sleep(15000);
 		/*Only 2nd transaction will get reflected to the balance as for the other transactions 
 		 * the one will transfer from source to destination and the second will transfer the same
 		 * amount from destination to source undoing the earlier transfer.*/
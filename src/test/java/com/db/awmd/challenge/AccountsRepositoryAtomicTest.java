@@ -0,0 +1,88 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AtomicAccount;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryAtomic;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AccountsRepositoryAtomicTest {
+
+	private final AccountsRepositoryAtomic accountsRepository = new AccountsRepositoryAtomic();
+
+	@Test
+	public void debitAndCreditAccount() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal("1000.50")));
+		Account account = accountsRepository.getAccount("A001");
+		assertThat(account).isInstanceOf(AtomicAccount.class);
+
+		accountsRepository.debitAccount(account, new BigDecimal("300.25"));
+		accountsRepository.creditAccount(account, new BigDecimal("0.75"));
+
+		assertThat(account.getBalance()).isEqualByComparingTo("701");
+		assertThat(((AtomicAccount) account).getBalanceUnits()).isEqualTo(70100L);
+	}
+
+	@Test
+	public void debitAccountInSufficientBalance() {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal(100)));
+		Account account = accountsRepository.getAccount("A001");
+
+		try {
+			accountsRepository.debitAccount(account, new BigDecimal(100));
+			fail("Should have failed when debiting the whole balance");
+		} catch (InSufficientBalanceException e) {
+			assertThat(e.getMessage()).isEqualTo("Account: A001 does not have sufficient balance to perform this transaction!");
+		}
+		assertThat(account.getBalance()).isEqualByComparingTo("100");
+	}
+
+	@Test
+	public void balanceIsSerializedAsDecimal() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal("123.45")));
+
+		String json = new ObjectMapper().writeValueAsString(accountsRepository.getAccount("A001"));
+
+		assertThat(json).isEqualTo("{\"accountId\":\"A001\",\"balance\":123.45}");
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void createAccountRejectsSubMinorUnits() {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal("1.001")));
+	}
+
+	@Test
+	public void concurrentDebitsNeverOverdraw() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal("1000.01")));
+		Account account = accountsRepository.getAccount("A001");
+		AtomicInteger debited = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int i = 0; i < 2000; i++) {
+			executor.execute(() -> {
+				try {
+					accountsRepository.debitAccount(account, BigDecimal.ONE);
+					debited.incrementAndGet();
+				} catch (InSufficientBalanceException e) {
+					// expected once the balance runs out
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(debited.get()).isEqualTo(1000);
+		assertThat(account.getBalance()).isEqualByComparingTo("0.01");
+	}
+}
@@ -0,0 +1,162 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.StripedAccounts;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AccountsRepositoryOffHeapTest {
+
+	private final AccountsRepositoryOffHeap accountsRepository = new AccountsRepositoryOffHeap(4, 16);
+
+	@Test
+	public void debitAndCreditAccount() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal("1000.50")));
+		Account account = accountsRepository.getAccount("A001");
+
+		accountsRepository.debitAccount(account, new BigDecimal("300.25"));
+		accountsRepository.creditAccount(account, new BigDecimal("0.75"));
+
+		assertThat(account.getBalance()).isEqualByComparingTo("701");
+		assertThat(accountsRepository.getAccount("A001").getBalance()).isEqualByComparingTo("701");
+		assertThat(accountsRepository.getAccount("A002")).isNull();
+	}
+
+	@Test
+	public void debitAccountInSufficientBalance() {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal(100)));
+		Account account = accountsRepository.getAccount("A001");
+
+		try {
+			accountsRepository.debitAccount(account, new BigDecimal(100));
+			fail("Should have failed when debiting the whole balance");
+		} catch (InSufficientBalanceException e) {
+			assertThat(e.getMessage()).isEqualTo("Account: A001 does not have sufficient balance to perform this transaction!");
+		}
+		assertThat(account.getBalance()).isEqualByComparingTo("100");
+	}
+
+	@Test
+	public void createDuplicateAccount() {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal(100)));
+
+		try {
+			accountsRepository.createAccount(new Account("A001", new BigDecimal(200)));
+			fail("Should have failed when adding duplicate account");
+		} catch (DuplicateAccountIdException e) {
+			assertThat(e.getMessage()).isEqualTo("Account id A001 already exists!");
+		}
+		assertThat(accountsRepository.getAccount("A001").getBalance()).isEqualByComparingTo("100");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void createAccountRejectsLongId() {
+		accountsRepository.createAccount(new Account("A0123456789012345678901234567890123", BigDecimal.ONE));
+	}
+
+	@Test
+	public void accountsWhichCantBeStoredAreRejectedBeforeCreation() {
+		String stripedId = "S0123456789012345678901234567890";
+		AccountsService accountsService = new AccountsService(accountsRepository, new LockingTransferEngine(
+				accountsRepository, new AccountLocks(16), new TransferMetrics(), new TransferLedger(), new BalanceVersions()),
+				new TransferMetrics(), new BalanceVersions(), new StripedAccounts(Collections.singleton(stripedId), 4));
+
+		try {
+			accountsService.createAccount(new Account("A0123456789012345678901234567890123", BigDecimal.ONE));
+			fail("Should have failed when creating an account with a too long id");
+		} catch (InvalidAccountException e) {
+			assertThat(e.getMessage()).isEqualTo("Account id A0123456789012345678901234567890123 must have between 1 and "
+					+ AccountsRepositoryOffHeap.MAX_KEY_LENGTH + " bytes!");
+		}
+		try {
+			accountsService.createAccount(new Account("A001", new BigDecimal("1.001")));
+			fail("Should have failed when creating an account with a balance below the minor unit");
+		} catch (InvalidAccountException e) {
+			assertThat(e.getMessage()).isEqualTo("Balance 1.001 of account A001 can't be stored in minor units!");
+		}
+		// The id fits, but not the ids of its stripes: none of them is created
+		try {
+			accountsService.createAccount(new Account(stripedId, BigDecimal.ONE));
+			fail("Should have failed when creating a striped account whose stripes have too long ids");
+		} catch (InvalidAccountException e) {
+			assertThat(e.getMessage()).startsWith("Account id " + stripedId + "#0 ");
+		}
+		assertThat(accountsRepository.getAccount("A001")).isNull();
+		assertThat(accountsService.getAccount(stripedId)).isNull();
+	}
+
+	@Test
+	public void tablesGrowBeyondExpectedAccounts() {
+		for (int i = 0; i < 10000; i++) {
+			accountsRepository.createAccount(new Account("Id-" + i + "-é", new BigDecimal(i)));
+		}
+
+		assertThat(accountsRepository.size()).isEqualTo(10000);
+		for (int i = 0; i < 10000; i++) {
+			assertThat(accountsRepository.getAccount("Id-" + i + "-é").getBalance()).isEqualByComparingTo(new BigDecimal(i));
+		}
+		List<String> accountIds = new ArrayList<>();
+		accountsRepository.forEachAccount(account -> accountIds.add(account.getAccountId()));
+		assertThat(accountIds).hasSize(10000).doesNotHaveDuplicates();
+
+		accountsRepository.clearAccounts();
+		assertThat(accountsRepository.size()).isZero();
+		assertThat(accountsRepository.getAccount("Id-1-é")).isNull();
+	}
+
+	@Test
+	public void balanceIsSerializedAsDecimal() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal("123.45")));
+
+		String json = new ObjectMapper().writeValueAsString(accountsRepository.getAccount("A001"));
+
+		assertThat(json).isEqualTo("{\"accountId\":\"A001\",\"balance\":123.45}");
+	}
+
+	@Test
+	public void concurrentDebitsNeverOverdraw() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal("1000.01")));
+		Account account = accountsRepository.getAccount("A001");
+		AtomicInteger debited = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int i = 0; i < 2000; i++) {
+			executor.execute(() -> {
+				try {
+					accountsRepository.debitAccount(account, BigDecimal.ONE);
+					debited.incrementAndGet();
+				} catch (InSufficientBalanceException e) {
+					// expected once the balance runs out
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(debited.get()).isEqualTo(1000);
+		assertThat(account.getBalance()).isEqualByComparingTo("0.01");
+	}
+}
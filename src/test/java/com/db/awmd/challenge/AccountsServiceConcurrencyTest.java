@@ -0,0 +1,155 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+
+/**
+ * Contention tests for the per-account transfer locking. The speedup of disjoint transfers with the thread count is
+ * measured by the {@code DisjointTransferBenchmark}.
+ *
+ */
+public class AccountsServiceConcurrencyTest {
+
+	private static final int TRANSFERS_PER_PAIR = 200000;
+
+	private AccountLocks accountLocks;
+
+	private AccountsService accountsService;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		accountLocks = new AccountLocks(1024);
+		AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+		accountsService = new AccountsService(accountsRepository, new LockingTransferEngine(accountsRepository, accountLocks));
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void transferIsNotBlockedByUnrelatedAccounts() throws Exception {
+		createAccount("A001", 1000);
+		createAccount("A002", 1000);
+		createAccount("B001", 1000);
+		createAccount("B002", 1000);
+		assertThat(accountLocks.stripeFor("A001")).isNotIn(accountLocks.stripeFor("B001"), accountLocks.stripeFor("B002"));
+		assertThat(accountLocks.stripeFor("A002")).isNotIn(accountLocks.stripeFor("B001"), accountLocks.stripeFor("B002"));
+
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> holder = executor.submit(() -> {
+			accountLocks.lock("A001", "A002");
+			try {
+				locked.countDown();
+				release.await();
+			} finally {
+				accountLocks.unlock("A001", "A002");
+			}
+			return null;
+		});
+		locked.await();
+
+		// A transfer between other accounts completes while A001 and A002 are held
+		Future<?> unrelated = executor.submit(() -> {
+			accountsService.transferAmount("B001", "B002", new BigDecimal(100));
+			return null;
+		});
+		unrelated.get(5, TimeUnit.SECONDS);
+		assertThat(accountsService.getAccount("B001").getBalance()).isEqualByComparingTo("900");
+
+		// A transfer touching a held account waits for it
+		Future<?> related = executor.submit(() -> {
+			accountsService.transferAmount("B001", "A001", new BigDecimal(100));
+			return null;
+		});
+		Thread.sleep(200);
+		assertThat(related.isDone()).isFalse();
+
+		release.countDown();
+		holder.get(5, TimeUnit.SECONDS);
+		related.get(5, TimeUnit.SECONDS);
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("1100");
+		assertThat(accountsService.getAccount("B001").getBalance()).isEqualByComparingTo("800");
+	}
+
+	@Test
+	public void opposingTransfersDoNotDeadlock() throws Exception {
+		createAccount("A001", 1000000);
+		createAccount("A002", 1000000);
+
+		Future<?> forward = executor.submit(() -> transfer("A001", "A002", TRANSFERS_PER_PAIR / 4));
+		Future<?> backward = executor.submit(() -> transfer("A002", "A001", TRANSFERS_PER_PAIR / 4));
+		forward.get(30, TimeUnit.SECONDS);
+		backward.get(30, TimeUnit.SECONDS);
+
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("1000000");
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("1000000");
+	}
+
+	@Test
+	public void disjointTransfersRunInParallel() throws Exception {
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		for (int i = 0; i < threads; i++) {
+			createAccount("S" + i, TRANSFERS_PER_PAIR);
+			createAccount("D" + i, 0);
+		}
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			String from = "S" + i;
+			String to = "D" + i;
+			futures.add(executor.submit(() -> {
+				start.await();
+				return transfer(from, to, TRANSFERS_PER_PAIR / 20);
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+
+		for (int i = 0; i < threads; i++) {
+			assertThat(accountsService.getAccount("S" + i).getBalance())
+					.isEqualByComparingTo(new BigDecimal(TRANSFERS_PER_PAIR - TRANSFERS_PER_PAIR / 20));
+			assertThat(accountsService.getAccount("D" + i).getBalance())
+					.isEqualByComparingTo(new BigDecimal(TRANSFERS_PER_PAIR / 20));
+		}
+	}
+
+	private Void transfer(String from, String to, int count) throws Exception {
+		BigDecimal one = BigDecimal.ONE;
+		for (int i = 0; i < count; i++) {
+			accountsService.transferAmount(from, to, one);
+		}
+		return null;
+	}
+
+	private void createAccount(String accountId, long balance) {
+		accountsService.createAccount(new Account(accountId, new BigDecimal(balance)));
+	}
+}
@@ -12,6 +12,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InSufficientBalanceException;
 import com.db.awmd.challenge.exception.NoSuchAccountException;
@@ -131,4 +132,23 @@ public class AccountsServiceTest {
 
 	}
 
+	@Test
+	public void tryTransferAmountReportsRejections() {
+		String suffix = "-" + System.nanoTime();
+		Account from = new Account("T1" + suffix, new BigDecimal(1000));
+		Account to = new Account("T2" + suffix, BigDecimal.ZERO);
+		accountsService.createAccount(from);
+		accountsService.createAccount(to);
+
+		assertThat(accountsService.tryTransferAmount(from.getAccountId(), to.getAccountId(), new BigDecimal(1000)))
+				.isEqualTo(TransferStatus.INSUFFICIENT_BALANCE);
+		assertThat(accountsService.tryTransferAmount(from.getAccountId(), "T3" + suffix, BigDecimal.TEN))
+				.isEqualTo(TransferStatus.NO_SUCH_ACCOUNT);
+		assertThat(accountsService.tryTransferAmount("T3" + suffix, to.getAccountId(), BigDecimal.TEN))
+				.isEqualTo(TransferStatus.NO_SUCH_ACCOUNT);
+		assertThat(from.getBalance()).isEqualByComparingTo("1000");
+		assertThat(accountsService.tryTransferAmount(from.getAccountId(), to.getAccountId(), new BigDecimal(999)))
+				.isEqualTo(TransferStatus.COMPLETED);
+		assertThat(accountsService.getAccount(to.getAccountId()).getBalance()).isEqualByComparingTo("999");
+	}
 }
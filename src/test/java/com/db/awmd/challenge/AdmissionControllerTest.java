@@ -0,0 +1,70 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.service.AdmissionController;
+
+public class AdmissionControllerTest {
+
+	@Test
+	public void transfersBeyondTheLimitAreRejected() {
+		AdmissionController admissionController = new AdmissionController(2, 1, 4, 1000, 1000, 0.5);
+		AdmissionController.Permit first = admissionController.tryAcquire();
+		AdmissionController.Permit second = admissionController.tryAcquire();
+
+		assertThat(first).isNotNull();
+		assertThat(second).isNotNull();
+		assertThat(admissionController.tryAcquire()).isNull();
+
+		// Releasing twice doesn't give a permit back twice
+		first.release();
+		first.release();
+		first.drop();
+		assertThat(admissionController.getInFlight()).isEqualTo(1);
+		assertThat(admissionController.toMap()).containsEntry("rejected", 1L).containsEntry("dropped", 0L);
+		second.release();
+		assertThat(admissionController.getInFlight()).isZero();
+	}
+
+	@Test
+	public void limitAdaptsToLatency() throws Exception {
+		AdmissionController admissionController = new AdmissionController(8, 2, 10, 20, 1000, 0.5);
+
+		// Transfers completed in time while the permits are in use grow the limit
+		for (int round = 0; round < 100; round++) {
+			List<AdmissionController.Permit> permits = new ArrayList<>();
+			AdmissionController.Permit permit;
+			while ((permit = admissionController.tryAcquire()) != null) {
+				permits.add(permit);
+			}
+			permits.forEach(AdmissionController.Permit::release);
+		}
+		assertThat(admissionController.getLimit()).isEqualTo(10);
+
+		// A slow transfer and a dropped one each cut the limit
+		AdmissionController.Permit slow = admissionController.tryAcquire();
+		Thread.sleep(30);
+		slow.release();
+		assertThat(admissionController.getLimit()).isEqualTo(5);
+		admissionController.tryAcquire().drop();
+		assertThat(admissionController.getLimit()).isEqualTo(2);
+		admissionController.tryAcquire().drop();
+		assertThat(admissionController.getLimit()).isEqualTo(2);
+		assertThat(admissionController.toMap()).containsEntry("dropped", 2L);
+	}
+
+	@Test
+	public void permitsExpireAtTheirDeadline() throws Exception {
+		AdmissionController admissionController = new AdmissionController(8, 2, 10, 20, 10, 0.5);
+		AdmissionController.Permit permit = admissionController.tryAcquire();
+
+		assertThat(permit.isExpired()).isFalse();
+		Thread.sleep(20);
+		assertThat(permit.isExpired()).isTrue();
+	}
+}
@@ -0,0 +1,99 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AsyncNotificationService;
+import com.db.awmd.challenge.service.AsyncNotificationService.OverflowPolicy;
+import com.db.awmd.challenge.service.NotificationService;
+
+public class AsyncNotificationServiceTest {
+
+	private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+	private AsyncNotificationService notificationService;
+
+	@After
+	public void tearDown() throws Exception {
+		notificationService.shutdown();
+	}
+
+	@Test
+	public void notificationsForSameAccountAreCoalesced() throws Exception {
+		notificationService = new AsyncNotificationService(recorder(), 100, OverflowPolicy.DROP_NEWEST, 200, 100);
+		Account first = new Account("A001");
+		Account second = new Account("A002");
+
+		notificationService.notifyAboutTransfer(first, "debited by 1");
+		notificationService.notifyAboutTransfer(second, "credited by 1");
+		notificationService.notifyAboutTransfer(first, "debited by 2");
+
+		waitForDelivery(3);
+		assertThat(delivered).containsExactly("A001:debited by 1\ndebited by 2", "A002:credited by 1");
+		assertThat(notificationService.getCoalescedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void transferDescriptionsAreBuiltWhenDelivered() throws Exception {
+		notificationService = new AsyncNotificationService(recorder(), 100, OverflowPolicy.DROP_NEWEST, 0, 100);
+
+		notificationService.notifyAboutTransfer(new Account("A001"), true, new BigDecimal("300"), new BigDecimal("700"));
+		notificationService.notifyAboutTransfer(new Account("A002"), false, new BigDecimal("1.5"), null);
+
+		waitForDelivery(2);
+		assertThat(delivered).containsExactlyInAnyOrder(
+				"A001:Your account: A001 has been debited by 300. Your account balance is:700",
+				"A002:Your account: A002 has been credited by 1.5.");
+		assertThat(notificationService.toMap()).containsEntry("delivered", 2L).containsEntry("dropped", 0L)
+				.containsEntry("queueDepth", 0).containsEntry("overflowPolicy", OverflowPolicy.DROP_NEWEST);
+	}
+
+	@Test
+	public void fullQueueDropsNewestNotifications() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		notificationService = new AsyncNotificationService((account, description) -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			delivered.add(description);
+		}, 2, OverflowPolicy.DROP_NEWEST, 0, 1);
+
+		// The first one is taken by the dispatcher which then blocks in the delegate
+		notificationService.notifyAboutTransfer(new Account("A000"), "0");
+		while (notificationService.getQueueDepth() > 0) {
+			Thread.sleep(10);
+		}
+		for (int i = 1; i <= 4; i++) {
+			notificationService.notifyAboutTransfer(new Account("A00" + i), String.valueOf(i));
+		}
+		assertThat(notificationService.getQueueDepth()).isEqualTo(2);
+		assertThat(notificationService.getDroppedCount()).isEqualTo(2);
+
+		release.countDown();
+		waitForDelivery(3);
+		assertThat(delivered).containsExactly("0", "1", "2");
+	}
+
+	private void waitForDelivery(long count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (notificationService.getDeliveredCount() < count && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(notificationService.getDeliveredCount()).isEqualTo(count);
+	}
+
+	private NotificationService recorder() {
+		return (account, description) -> delivered.add(account.getAccountId() + ":" + description);
+	}
+}
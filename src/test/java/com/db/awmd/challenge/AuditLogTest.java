@@ -0,0 +1,139 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AuditEvent;
+import com.db.awmd.challenge.domain.AuditEventType;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AuditLog;
+import com.db.awmd.challenge.repository.AuditLogReader;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.StripedAccounts;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+public class AuditLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+
+	@Before
+	public void setUp() {
+		directory = folder.getRoot().toPath();
+	}
+
+	@Test
+	public void changesOfTheAccountsAreRecorded() throws Exception {
+		AuditLog auditLog = new AuditLog(directory, 1024, 1 << 20);
+		AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+		TransferMetrics transferMetrics = new TransferMetrics();
+		BalanceVersions balanceVersions = new BalanceVersions();
+		AccountsService accountsService = new AccountsService(accountsRepository, new LockingTransferEngine(
+				accountsRepository, new AccountLocks(16), transferMetrics, new TransferLedger(), balanceVersions),
+				transferMetrics, balanceVersions, new StripedAccounts(), Optional.of(auditLog));
+
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+		accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+		accountsService.tryTransferAmount("Id-1", "Id-2", new BigDecimal("30.50"));
+		accountsService.tryTransferAmount("Id-2", "Id-1", new BigDecimal("1000"));
+		accountsService.tryTransferAmount("Id-1", "Id-3", BigDecimal.ONE);
+		accountsService.creditAccount(accountsService.getAccount("Id-2"), BigDecimal.TEN);
+		try {
+			accountsService.debitAccount(accountsService.getAccount("Id-2"), new BigDecimal("1000"));
+		} catch (InSufficientBalanceException e) {
+			// Recorded as rejected
+		}
+		auditLog.close();
+
+		List<AuditEvent> events = new ArrayList<>();
+		AuditLogReader.read(directory, events::add);
+		assertThat(events).extracting(AuditEvent::getType).containsExactly(AuditEventType.ACCOUNT_CREATED,
+				AuditEventType.ACCOUNT_CREATED, AuditEventType.TRANSFER, AuditEventType.TRANSFER,
+				AuditEventType.TRANSFER, AuditEventType.CREDIT, AuditEventType.DEBIT);
+		assertThat(events).extracting(AuditEvent::getStatus).containsExactly(null, null, TransferStatus.COMPLETED,
+				TransferStatus.INSUFFICIENT_BALANCE, TransferStatus.NO_SUCH_ACCOUNT, TransferStatus.COMPLETED,
+				TransferStatus.INSUFFICIENT_BALANCE);
+
+		AuditEvent transfer = events.get(2);
+		assertThat(transfer.getSequence()).isEqualTo(2);
+		assertThat(transfer.getAccountId()).isEqualTo("Id-1");
+		assertThat(transfer.getCounterpartyId()).isEqualTo("Id-2");
+		assertThat(transfer.getAmount()).isEqualTo(new BigDecimal("30.50"));
+		assertThat(events.get(0).getCounterpartyId()).isNull();
+		assertThat(events.get(0).getAmount()).isEqualTo(new BigDecimal("100"));
+		assertThat(AuditLogReader.format(transfer)).endsWith("\tTRANSFER\tCOMPLETED\tId-1\tId-2\t30.50");
+	}
+
+	@Test
+	public void everyEventIsWrittenThroughAFullRing() throws Exception {
+		int threads = 4;
+		int eventsPerThread = 20000;
+		// A ring of 16 events fills up all the time, and files of 64 KB roll over
+		AuditLog auditLog = new AuditLog(directory, 16, 1 << 16);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> producers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			String accountId = "Id-" + t;
+			producers.add(executor.submit(() -> {
+				for (int i = 0; i < eventsPerThread; i++) {
+					auditLog.record(AuditEventType.TRANSFER, accountId, "Id-x", BigDecimal.valueOf(i, 2),
+							TransferStatus.COMPLETED);
+				}
+			}));
+		}
+		for (Future<?> producer : producers) {
+			producer.get();
+		}
+		executor.shutdown();
+		assertThat(auditLog.getRecorded()).isEqualTo(threads * eventsPerThread);
+		assertThat((Long) auditLog.toMap().get("fullWaits")).isPositive();
+		auditLog.close();
+		assertThat(auditLog.getWritten()).isEqualTo(threads * eventsPerThread);
+
+		// Reopening starts a new file after the existing ones
+		AuditLog reopened = new AuditLog(directory, 16, 1 << 16);
+		reopened.record(AuditEventType.CREDIT, "Id-0", null, BigDecimal.ONE, TransferStatus.COMPLETED);
+		reopened.close();
+		assertThat(folder.getRoot().list()).hasSize((int) (long) (Long) reopened.toMap().get("file"));
+
+		long[] next = new long[threads];
+		List<AuditEvent> events = new ArrayList<>();
+		long read = AuditLogReader.read(directory, event -> {
+			events.add(event);
+			if (event.getType() == AuditEventType.TRANSFER) {
+				// The events of each thread come in the order it recorded them
+				int thread = Integer.parseInt(event.getAccountId().substring(3));
+				assertThat(event.getAmount()).isEqualTo(BigDecimal.valueOf(next[thread]++, 2));
+			}
+		});
+		assertThat(read).isEqualTo(threads * eventsPerThread + 1);
+		assertThat(next).containsOnly(eventsPerThread);
+		assertThat(folder.getRoot().list().length).isGreaterThan(2);
+		for (int i = 0; i < threads * eventsPerThread; i++) {
+			assertThat(events.get(i).getSequence()).isEqualTo(i);
+		}
+		assertThat(events.get(threads * eventsPerThread).getSequence()).isEqualTo(0);
+	}
+}
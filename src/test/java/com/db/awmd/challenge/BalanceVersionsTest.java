@@ -0,0 +1,204 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.exception.VersionUnavailableException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.TransferEngine;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+public class BalanceVersionsTest {
+
+	@Test
+	public void snapshotsReadTheirOwnVersion() {
+		BalanceVersions balanceVersions = new BalanceVersions(10);
+		Account a = new Account("A001", new BigDecimal(100));
+		Account b = new Account("A002", new BigDecimal(50));
+		balanceVersions.created(a);
+		long before = balanceVersions.created(b);
+
+		try (BalanceVersions.Snapshot snapshot = balanceVersions.open()) {
+			a.setBalance(new BigDecimal(70));
+			b.setBalance(new BigDecimal(80));
+			long after = balanceVersions.commit(a, b);
+
+			assertThat(snapshot.getVersion()).isEqualTo(before);
+			assertThat(snapshot.getBalance("A001")).isEqualByComparingTo("100");
+			assertThat(snapshot.getBalance("A002")).isEqualByComparingTo("50");
+			try (BalanceVersions.Snapshot latest = balanceVersions.open()) {
+				assertThat(latest.getVersion()).isEqualTo(after);
+				assertThat(latest.getBalance("A001")).isEqualByComparingTo("70");
+				assertThat(latest.getBalance("A002")).isEqualByComparingTo("80");
+			}
+		}
+		try (BalanceVersions.Snapshot first = balanceVersions.open(1)) {
+			assertThat(first.getBalance("A001")).isEqualByComparingTo("100");
+			assertThat(first.getBalance("A002")).isNull();
+		}
+	}
+
+	@Test
+	public void balancesAreReadAsTheyWereCommitted() {
+		BalanceVersions balanceVersions = new BalanceVersions(10);
+		Account minorUnits = new Account("A001", new BigDecimal("-12.30"));
+		Account decimal = new Account("A002", new BigDecimal("7.125"));
+		Account large = new Account("A003", new BigDecimal("123456789012345678901.00"));
+		balanceVersions.created(minorUnits);
+		balanceVersions.created(decimal);
+		balanceVersions.created(large);
+		minorUnits.setBalance(new BigDecimal("100"));
+		balanceVersions.commit(minorUnits);
+
+		try (BalanceVersions.Snapshot snapshot = balanceVersions.open()) {
+			assertThat(snapshot.getBalance("A001")).isEqualTo(new BigDecimal("100"));
+			assertThat(snapshot.getBalance("A002")).isEqualTo(new BigDecimal("7.125"));
+			assertThat(snapshot.getBalance("A003")).isEqualTo(new BigDecimal("123456789012345678901.00"));
+		}
+		try (BalanceVersions.Snapshot snapshot = balanceVersions.open(1)) {
+			assertThat(snapshot.getBalance("A001")).isEqualTo(new BigDecimal("-12.30"));
+		}
+	}
+
+	@Test
+	public void oldVersionsAreReclaimed() {
+		BalanceVersions balanceVersions = new BalanceVersions(0);
+		Account account = new Account("A001", new BigDecimal(100));
+		balanceVersions.created(account);
+		BalanceVersions.Snapshot pinned = balanceVersions.open();
+		for (int i = 0; i < 2048; i++) {
+			account.setBalance(new BigDecimal(i));
+			balanceVersions.commit(account);
+		}
+
+		assertThat(balanceVersions.getOldestVersion()).isEqualTo(1);
+		assertThat(pinned.getBalance("A001")).isEqualByComparingTo("100");
+		pinned.close();
+		assertThat(balanceVersions.getOldestVersion()).isEqualTo(balanceVersions.getCommittedVersion());
+		try {
+			balanceVersions.open(1);
+			fail("Should have failed when opening a reclaimed version");
+		} catch (VersionUnavailableException e) {
+			assertThat(e.getMessage()).isEqualTo("Version 1 was reclaimed!");
+		}
+		try {
+			balanceVersions.open(5000);
+			fail("Should have failed when opening a future version");
+		} catch (VersionUnavailableException e) {
+			assertThat(e.getMessage()).isEqualTo("Version 5000 isn't committed yet!");
+		}
+	}
+
+	@Test
+	public void liveBalancesAreReadWhenVersioningIsOff() {
+		AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+		BalanceVersions balanceVersions = new BalanceVersions(accountsRepository, false, 1000);
+		Account account = new Account("A001", new BigDecimal(100));
+		accountsRepository.createAccount(account);
+		assertThat(balanceVersions.created(account)).isEqualTo(-1);
+		account.setBalance(new BigDecimal(70));
+		assertThat(balanceVersions.commit(3000, account)).isEqualTo(-1);
+
+		assertThat(balanceVersions.getLatestVersion("A001")).isEqualTo(-1);
+		try (BalanceVersions.Snapshot snapshot = balanceVersions.open()) {
+			assertThat(snapshot.getVersion()).isEqualTo(-1);
+			assertThat(snapshot.getBalance("A001")).isEqualByComparingTo("70");
+			assertThat(snapshot.getInTransit()).isEqualByComparingTo("30");
+			assertThat(snapshot.getExpectedTotal()).isNull();
+		}
+		try {
+			balanceVersions.open(0);
+			fail("Should have failed when opening a version without versioning");
+		} catch (VersionUnavailableException e) {
+			assertThat(e.getMessage()).isEqualTo("Balance versions aren't enabled!");
+		}
+	}
+
+	@Test
+	public void totalIsConsistentWhileLockingTransfersRun() throws Exception {
+		AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+		BalanceVersions balanceVersions = new BalanceVersions(accountsRepository, 1000);
+		assertConsistentTotal(accountsRepository, balanceVersions, new LockingTransferEngine(accountsRepository,
+				new AccountLocks(64), new TransferMetrics(), new TransferLedger(), balanceVersions));
+	}
+
+	@Test
+	public void totalIsConsistentWhileShardedTransfersRun() throws Exception {
+		AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+		BalanceVersions balanceVersions = new BalanceVersions(accountsRepository, 1000);
+		ShardedTransferEngine engine = new ShardedTransferEngine(accountsRepository, 4, 1024, new TransferMetrics(),
+				new TransferLedger(), balanceVersions);
+		try {
+			assertConsistentTotal(accountsRepository, balanceVersions, engine);
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	/**
+	 * Runs random transfers between 20 accounts on 4 threads while snapshots are read: the balances of every snapshot
+	 * and the amount in transit always add up to the initial total.
+	 */
+	private static void assertConsistentTotal(AccountsRepositoryInMemory accountsRepository,
+			BalanceVersions balanceVersions, TransferEngine engine) throws Exception {
+		for (int i = 0; i < 20; i++) {
+			Account account = new Account("A" + i, new BigDecimal(1000));
+			accountsRepository.createAccount(account);
+			balanceVersions.created(account);
+		}
+		AtomicBoolean running = new AtomicBoolean(true);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (running.get()) {
+					int from = random.nextInt(20);
+					int to = (from + 1 + random.nextInt(19)) % 20;
+					try {
+						engine.transfer(accountsRepository.getAccount("A" + from), accountsRepository.getAccount("A" + to),
+								new BigDecimal(random.nextInt(1, 100)));
+					} catch (InSufficientBalanceException e) {
+						// expected once an account runs low
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+
+		long reads = 0;
+		long end = System.currentTimeMillis() + 1000;
+		try {
+			while (System.currentTimeMillis() < end) {
+				try (BalanceVersions.Snapshot snapshot = balanceVersions.open()) {
+					BigDecimal[] total = { snapshot.getInTransit() };
+					snapshot.forEach((accountId, balance) -> total[0] = total[0].add(balance));
+					assertThat(total[0]).isEqualByComparingTo("20000");
+					reads++;
+				}
+			}
+		} finally {
+			running.set(false);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+		assertThat(reads).isPositive();
+		assertThat(balanceVersions.getCommittedVersion()).isGreaterThan(20);
+	}
+}
@@ -0,0 +1,84 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.BinaryTransferClient;
+import com.db.awmd.challenge.web.BinaryTransferProtocol;
+import com.db.awmd.challenge.web.BinaryTransferServer;
+
+/**
+ * The binary protocol on an ephemeral port, with few transfers in flight per connection so that reading the requests
+ * of a long pipeline is held back.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "accounts.binary.enabled=true", "accounts.binary.port=0",
+		"accounts.binary.max-in-flight=4", "accounts.admission.initial-limit=100000",
+		"accounts.admission.min-limit=100000", "accounts.admission.max-limit=100000",
+		"accounts.transfer.executor.max-pending=100000" })
+public class BinaryTransferServerTest {
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Autowired
+	private BinaryTransferServer binaryTransferServer;
+
+	@Before
+	public void prepareAccounts() {
+		accountsService.getAccountsRepository().clearAccounts();
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("1000")));
+		accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+	}
+
+	@Test
+	public void statusOfEveryRequest() throws Exception {
+		try (BinaryTransferClient client = new BinaryTransferClient("localhost", binaryTransferServer.getPort())) {
+			CompletableFuture<Byte> completed = client.transfer("Id-1", "Id-2", 12345);
+			CompletableFuture<Byte> noSuchAccount = client.transfer("Id-1", "Id-3", 100);
+			CompletableFuture<Byte> insufficientBalance = client.transfer("Id-2", "Id-1", 1000000);
+			CompletableFuture<Byte> invalidAmount = client.transfer("Id-1", "Id-2", 0);
+			CompletableFuture<Byte> malformed = client.transfer("", "Id-2", 100);
+			client.flush();
+
+			assertThat(completed.get(10, TimeUnit.SECONDS)).isEqualTo(BinaryTransferProtocol.COMPLETED);
+			assertThat(noSuchAccount.get(10, TimeUnit.SECONDS)).isEqualTo(BinaryTransferProtocol.NO_SUCH_ACCOUNT);
+			assertThat(insufficientBalance.get(10, TimeUnit.SECONDS))
+					.isEqualTo(BinaryTransferProtocol.INSUFFICIENT_BALANCE);
+			assertThat(invalidAmount.get(10, TimeUnit.SECONDS)).isEqualTo(BinaryTransferProtocol.INVALID_AMOUNT);
+			assertThat(malformed.get(10, TimeUnit.SECONDS)).isEqualTo(BinaryTransferProtocol.MALFORMED);
+		}
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("876.55");
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("123.45");
+	}
+
+	@Test
+	public void pipelinedTransfers() throws Exception {
+		List<CompletableFuture<Byte>> responses = new ArrayList<>();
+		try (BinaryTransferClient client = new BinaryTransferClient("localhost", binaryTransferServer.getPort())) {
+			for (int i = 0; i < 5000; i++) {
+				responses.add(client.transfer("Id-1", "Id-2", 1));
+			}
+			client.flush();
+			for (CompletableFuture<Byte> response : responses) {
+				assertThat(response.get(10, TimeUnit.SECONDS)).isEqualTo(BinaryTransferProtocol.COMPLETED);
+			}
+		}
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("950");
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("50");
+	}
+}
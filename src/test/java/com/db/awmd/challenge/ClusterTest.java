@@ -0,0 +1,203 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ClusterClient;
+import com.db.awmd.challenge.service.ClusterTopology;
+
+/**
+ * Two nodes running on localhost, each owning half of the accounts.
+ */
+public class ClusterTest {
+
+	private static final int NODES = 2;
+
+	private static final String SECRET = "cluster-test-secret";
+
+	private static final ConfigurableApplicationContext[] contexts = new ConfigurableApplicationContext[NODES];
+
+	private static final String[] urls = new String[NODES];
+
+	private static ClusterTopology topology;
+
+	private final TestRestTemplate restTemplate = new TestRestTemplate();
+
+	@BeforeClass
+	public static void startNodes() throws IOException {
+		for (int i = 0; i < NODES; i++) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				urls[i] = "http://localhost:" + socket.getLocalPort();
+			}
+		}
+		String nodes = String.join(",", urls);
+		topology = new ClusterTopology(nodes, 0, SECRET);
+		for (int i = 0; i < NODES; i++) {
+			contexts[i] = new SpringApplicationBuilder(DevChallengeApplication.class).run(
+					"--server.port=" + urls[i].substring(urls[i].lastIndexOf(':') + 1),
+					"--spring.jmx.enabled=false",
+					"--accounts.cluster.nodes=" + nodes,
+					"--accounts.cluster.node-index=" + i,
+					"--accounts.cluster.secret=" + SECRET,
+					"--accounts.cluster.prepare-timeout-millis=200",
+					"--accounts.cluster.recovery-interval-millis=50");
+		}
+	}
+
+	@AfterClass
+	public static void stopNodes() {
+		for (ConfigurableApplicationContext context : contexts) {
+			if (context != null) {
+				context.close();
+			}
+		}
+	}
+
+	@Test
+	public void accountsAreRoutedToTheirNode() {
+		String accountId = accountOwnedBy(0, "R");
+
+		ResponseEntity<String> created = restTemplate.exchange(urls[1] + "/v1/accounts", HttpMethod.POST,
+				json("{\"accountId\":\"" + accountId + "\",\"balance\":1000}"), String.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(service(0).getAccount(accountId).getBalance()).isEqualByComparingTo("1000");
+		assertThat(service(1).getAccount(accountId)).isNull();
+
+		ResponseEntity<String> read = restTemplate.getForEntity(urls[1] + "/v1/accounts/" + accountId, String.class);
+		assertThat(read.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(read.getBody()).contains("\"accountId\":\"" + accountId + "\"");
+	}
+
+	@Test
+	public void transfersAcrossNodes() {
+		String from = accountOwnedBy(0, "F");
+		String to = accountOwnedBy(1, "T");
+		service(0).createAccount(new Account(from, new BigDecimal(1000)));
+		service(1).createAccount(new Account(to, BigDecimal.ZERO));
+
+		// Sent to the node of the destination account, forwarded to the node of the source account
+		assertThat(transfer(urls[1], from, to, "300")).isEqualTo(HttpStatus.OK);
+		assertThat(service(0).getAccount(from).getBalance()).isEqualByComparingTo("700");
+		assertThat(service(1).getAccount(to).getBalance()).isEqualByComparingTo("300");
+
+		assertThat(transfer(urls[0], from, to, "5000")).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(transfer(urls[0], from, accountOwnedBy(1, "M"), "100")).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(transfer(urls[1], to, from, "100")).isEqualTo(HttpStatus.OK);
+		assertThat(service(0).getAccount(from).getBalance()).isEqualByComparingTo("800");
+		assertThat(service(1).getAccount(to).getBalance()).isEqualByComparingTo("200");
+
+		// The reservation given back for the missing account shows in the history of the source account
+		ResponseEntity<String> history = restTemplate.getForEntity(urls[1] + "/v1/accounts/" + from + "/transfers",
+				String.class);
+		assertThat(history.getBody()).contains("\"total\":4");
+		// The transfers to another node have their own threads, apart from those of the local transfers
+		assertThat(restTemplate.getForObject(urls[0] + "/v1/cluster", String.class)).contains("\"coordinated\":0")
+				.contains("\"executor\":{\"threads\":32,");
+	}
+
+	@Test
+	public void preparedTransferWithoutOutcomeIsAborted() throws Exception {
+		String from = accountOwnedBy(0, "X");
+		String to = accountOwnedBy(1, "P");
+		service(1).createAccount(new Account(to, BigDecimal.TEN));
+
+		// Prepared for a transfer node 0 never coordinated, as if its commit or abort was lost
+		ResponseEntity<String> prepared = restTemplate.exchange(urls[1] + "/v1/cluster/transfers/0-999999/prepare",
+				HttpMethod.POST, peer(0, SECRET, "{\"id\":\"0-999999\",\"accountFromId\":\"" + from
+						+ "\",\"accountToId\":\"" + to + "\",\"amount\":5}"), String.class);
+		assertThat(prepared.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(restTemplate.getForObject(urls[1] + "/v1/cluster", String.class)).contains("\"prepared\":1");
+
+		long end = System.currentTimeMillis() + 10000;
+		while (restTemplate.getForObject(urls[1] + "/v1/cluster", String.class).contains("\"prepared\":1")
+				&& System.currentTimeMillis() < end) {
+			Thread.sleep(50);
+		}
+		assertThat(restTemplate.getForObject(urls[1] + "/v1/cluster", String.class)).contains("\"prepared\":0");
+		assertThat(restTemplate.exchange(urls[1] + "/v1/cluster/transfers/0-999999/commit", HttpMethod.POST,
+				peer(0, SECRET, null), String.class).getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+		assertThat(service(1).getAccount(to).getBalance()).isEqualByComparingTo("10");
+	}
+
+	@Test
+	public void onlyOtherNodesCanPrepareAndCommit() {
+		String from = accountOwnedBy(0, "X");
+		String to = accountOwnedBy(1, "C");
+		service(1).createAccount(new Account(to, BigDecimal.TEN));
+		String transfer = "{\"id\":\"0-888888\",\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to
+				+ "\",\"amount\":%s}";
+
+		assertThat(prepare(json(String.format(transfer, "5")))).isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(prepare(peer(0, "wrong-secret", String.format(transfer, "5")))).isEqualTo(HttpStatus.FORBIDDEN);
+		// A node can't call itself
+		assertThat(prepare(peer(1, SECRET, String.format(transfer, "5")))).isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(prepare(peer(0, SECRET, String.format(transfer, "-5")))).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(prepare(peer(0, SECRET, String.format(transfer, "0.001")))).isEqualTo(HttpStatus.BAD_REQUEST);
+		// The source account must be owned by the calling node
+		assertThat(prepare(peer(0, SECRET, String.format(transfer, "5").replace(from, accountOwnedBy(1, "Y")))))
+				.isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(restTemplate.postForEntity(urls[1] + "/v1/cluster/transfers/0-888888/commit", null, String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(restTemplate.getForEntity(urls[0] + "/v1/cluster/transfers/0-888888", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(service(1).getAccount(to).getBalance()).isEqualByComparingTo("10");
+	}
+
+	private HttpStatus prepare(HttpEntity<String> request) {
+		return restTemplate.exchange(urls[1] + "/v1/cluster/transfers/0-888888/prepare", HttpMethod.POST, request,
+				String.class).getStatusCode();
+	}
+
+	private HttpStatus transfer(String url, String from, String to, String amount) {
+		return restTemplate.postForEntity(url + "/v1/accounts/transfer/" + from + "/" + to + "/" + amount, null,
+				String.class).getStatusCode();
+	}
+
+	private static HttpEntity<String> json(String body) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return new HttpEntity<>(body, headers);
+	}
+
+	/**
+	 * Returns a call as sent by the given node.
+	 */
+	private static HttpEntity<String> peer(int node, String secret, String body) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.set(ClusterClient.FORWARDED_HEADER, Integer.toString(node));
+		headers.set(ClusterClient.SECRET_HEADER, secret);
+		return new HttpEntity<>(body, headers);
+	}
+
+	private static AccountsService service(int node) {
+		return contexts[node].getBean(AccountsService.class);
+	}
+
+	private static String accountOwnedBy(int node, String prefix) {
+		for (int i = 0;; i++) {
+			String accountId = prefix + System.nanoTime() % 100000 + "-" + i;
+			if (topology.ownerOf(accountId) == node) {
+				return accountId;
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.repository.IdempotencyJournal;
+import com.db.awmd.challenge.service.IdempotencyCache;
+
+public class IdempotencyCacheTest {
+
+	private static final TransferResult COMPLETED = new TransferResult(0, TransferStatus.COMPLETED, null);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void retriesGetTheOriginalOutcome() throws Exception {
+		IdempotencyCache cache = new IdempotencyCache(60000, 100);
+		AtomicInteger executed = new AtomicInteger();
+
+		IdempotencyCache.Outcome first = cache.execute("K1", "A001 A002 10", () -> {
+			executed.incrementAndGet();
+			return new TransferResult(0, TransferStatus.INSUFFICIENT_BALANCE, "Not enough");
+		});
+		IdempotencyCache.Outcome retry = cache.execute("K1", "A001 A002 10", () -> {
+			executed.incrementAndGet();
+			return COMPLETED;
+		});
+
+		assertThat(executed.get()).isEqualTo(1);
+		assertThat(first.isReplayed()).isFalse();
+		assertThat(retry.isReplayed()).isTrue();
+		assertThat(retry.getResult()).isEqualTo(first.getResult());
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void keyCantBeReusedForAnotherTransfer() throws Exception {
+		IdempotencyCache cache = new IdempotencyCache(60000, 100);
+		cache.execute("K1", "A001 A002 10", () -> COMPLETED);
+
+		try {
+			cache.execute("K1", "A001 A002 20", () -> COMPLETED);
+			fail("Should have failed when reusing the key");
+		} catch (IdempotencyKeyReusedException e) {
+			assertThat(e.getMessage()).isEqualTo("Idempotency key K1 was already used for another transfer!");
+		}
+	}
+
+	@Test
+	public void concurrentRetriesExecuteOnce() throws Exception {
+		IdempotencyCache cache = new IdempotencyCache(60000, 100);
+		AtomicInteger executed = new AtomicInteger();
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<IdempotencyCache.Outcome>> outcomes = new ArrayList<>();
+			outcomes.add(executor.submit(() -> cache.execute("K1", "F", () -> {
+				executed.incrementAndGet();
+				running.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return COMPLETED;
+			})));
+			running.await();
+			for (int i = 0; i < 3; i++) {
+				outcomes.add(executor.submit(() -> cache.execute("K1", "F", () -> {
+					executed.incrementAndGet();
+					return COMPLETED;
+				})));
+			}
+			Thread.sleep(100);
+			release.countDown();
+
+			int replayed = 0;
+			for (Future<IdempotencyCache.Outcome> outcome : outcomes) {
+				assertThat(outcome.get(5, TimeUnit.SECONDS).getResult()).isEqualTo(COMPLETED);
+				replayed += outcome.get().isReplayed() ? 1 : 0;
+			}
+			assertThat(executed.get()).isEqualTo(1);
+			assertThat(replayed).isEqualTo(3);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failedTransferReleasesTheKey() throws Exception {
+		IdempotencyCache cache = new IdempotencyCache(60000, 100);
+
+		try {
+			cache.execute("K1", "F", () -> {
+				throw new IllegalStateException("Journal failure");
+			});
+			fail("Should have failed");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertThat(cache.execute("K1", "F", () -> COMPLETED).isReplayed()).isFalse();
+	}
+
+	@Test
+	public void keysExpireAndAreBounded() throws Exception {
+		IdempotencyCache bounded = new IdempotencyCache(60000, 10);
+		for (int i = 0; i < 100; i++) {
+			bounded.execute("K" + i, "F", () -> COMPLETED);
+		}
+		assertThat(bounded.size()).isEqualTo(10);
+		assertThat(bounded.getEvictionCount()).isEqualTo(90);
+		assertThat(bounded.execute("K99", "F", () -> COMPLETED).isReplayed()).isTrue();
+		assertThat(bounded.execute("K0", "F", () -> COMPLETED).isReplayed()).isFalse();
+
+		IdempotencyCache expiring = new IdempotencyCache(50, 100);
+		expiring.execute("K1", "F", () -> COMPLETED);
+		Thread.sleep(100);
+		assertThat(expiring.execute("K1", "F", () -> COMPLETED).isReplayed()).isFalse();
+	}
+
+	@Test
+	public void outcomesSurviveRestart() throws Exception {
+		IdempotencyJournal journal = new IdempotencyJournal(folder.getRoot().toPath(), 4096, 60000);
+		IdempotencyCache cache = new IdempotencyCache(60000, 100, Optional.of(journal));
+		cache.execute("K1", "A001 A002 10", () -> COMPLETED);
+		cache.execute("K2", "A001 A002 20", () -> new TransferResult(0, TransferStatus.NO_SUCH_ACCOUNT, "Account A002 couldn't be found!"));
+		journal.close();
+
+		journal = new IdempotencyJournal(folder.getRoot().toPath(), 4096, 60000);
+		try {
+			IdempotencyCache restored = new IdempotencyCache(60000, 100, Optional.of(journal));
+			IdempotencyCache.Outcome first = restored.execute("K1", "A001 A002 10", () -> {
+				throw new AssertionError("Transfer executed again");
+			});
+			IdempotencyCache.Outcome second = restored.execute("K2", "A001 A002 20", () -> {
+				throw new AssertionError("Transfer executed again");
+			});
+
+			assertThat(first.isReplayed()).isTrue();
+			assertThat(first.getResult().getStatus()).isEqualTo(TransferStatus.COMPLETED);
+			assertThat(second.getResult()).isEqualTo(new TransferResult(0, TransferStatus.NO_SUCH_ACCOUNT, "Account A002 couldn't be found!"));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void expiredSegmentsAreDeleted() throws Exception {
+		IdempotencyJournal journal = new IdempotencyJournal(folder.getRoot().toPath(), 4096, 60000);
+		try {
+			journal.append("K1", "F", TransferStatus.COMPLETED, null, System.currentTimeMillis());
+			journal.sync();
+			journal.expire();
+			journal.append("K2", "F", TransferStatus.COMPLETED, null, System.currentTimeMillis());
+			journal.sync();
+			assertThat(folder.getRoot().list()).hasSize(2);
+
+			journal.expire();
+			assertThat(folder.getRoot().list()).containsOnly(String.format("journal-%016d.log", 2),
+					String.format("journal-%016d.log", 3));
+		} finally {
+			journal.close();
+		}
+	}
+}
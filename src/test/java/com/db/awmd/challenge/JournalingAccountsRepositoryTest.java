@@ -0,0 +1,380 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.JournalingAccountsRepository;
+import com.db.awmd.challenge.repository.TransferJournal;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+
+public class JournalingAccountsRepositoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+
+	private TransferJournal journal;
+
+	private JournalingAccountsRepository accountsRepository;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = folder.getRoot().toPath();
+		open();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		accountsRepository.close();
+		journal.close();
+	}
+
+	@Test
+	public void accountsAreRestoredAfterRestart() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal("1000.50")));
+		accountsRepository.createAccount(new Account("A002", new BigDecimal(250)));
+		accountsRepository.createAccount(new Account("A003", new BigDecimal(10)));
+		accountsRepository.transfer(account("A001"), account("A002"), new BigDecimal("300.25"));
+		accountsRepository.debitAccount(account("A003"), new BigDecimal(5));
+		accountsRepository.creditAccount(account("A003"), new BigDecimal(1));
+		Map<String, BigDecimal> changes = new LinkedHashMap<>();
+		changes.put("A001", new BigDecimal(-100));
+		changes.put("A003", new BigDecimal(100));
+		accountsRepository.applyChanges(changes);
+		accountsRepository.sync();
+
+		restart();
+
+		assertThat(account("A001").getBalance()).isEqualByComparingTo("600.25");
+		assertThat(account("A002").getBalance()).isEqualByComparingTo("550.25");
+		assertThat(account("A003").getBalance()).isEqualByComparingTo("106");
+
+		// Clearing is journaled too, and the journal keeps working across several restarts
+		accountsRepository.clearAccounts();
+		accountsRepository.createAccount(new Account("A001", new BigDecimal(1)));
+		accountsRepository.sync();
+
+		restart();
+
+		assertThat(account("A001").getBalance()).isEqualByComparingTo("1");
+		assertThat(account("A002")).isNull();
+	}
+
+	@Test
+	public void concurrentTransfersShareSyncs() throws Exception {
+		int threads = 8;
+		int transfers = 200;
+		for (int i = 0; i < threads; i++) {
+			accountsRepository.createAccount(new Account("S" + i, new BigDecimal(1000)));
+			accountsRepository.createAccount(new Account("D" + i, new BigDecimal(0)));
+		}
+		accountsRepository.sync();
+		long syncsBefore = journal.getSyncCount();
+
+		LockingTransferEngine engine = new LockingTransferEngine(accountsRepository, new AccountLocks(64));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			Account from = account("S" + i);
+			Account to = account("D" + i);
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < transfers; j++) {
+					engine.transfer(from, to, BigDecimal.ONE);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		long syncs = journal.getSyncCount() - syncsBefore;
+		assertThat(syncs).isLessThan(threads * transfers);
+
+		restart();
+
+		for (int i = 0; i < threads; i++) {
+			assertThat(account("S" + i).getBalance()).isEqualByComparingTo("800");
+			assertThat(account("D" + i).getBalance()).isEqualByComparingTo("200");
+		}
+	}
+
+	@Test
+	public void changesOfSharedAccountsAreReplayedInOrder() throws Exception {
+		int accounts = 10;
+		for (int i = 0; i < accounts; i++) {
+			accountsRepository.createAccount(new Account("A" + i, new BigDecimal(1000)));
+		}
+
+		// The transfers of distinct accounts are journaled in parallel, those of the same account in order
+		LockingTransferEngine engine = new LockingTransferEngine(accountsRepository, new AccountLocks(64));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			futures.add(executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int j = 0; j < 2000; j++) {
+					int from = random.nextInt(accounts);
+					int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+					engine.tryTransfer(account("A" + from), account("A" + to), new BigDecimal(random.nextInt(1, 50)));
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		accountsRepository.sync();
+		BigDecimal[] balances = new BigDecimal[accounts];
+		for (int i = 0; i < accounts; i++) {
+			balances[i] = account("A" + i).getBalance();
+		}
+
+		restart();
+
+		for (int i = 0; i < accounts; i++) {
+			assertThat(account("A" + i).getBalance()).isEqualByComparingTo(balances[i]);
+		}
+	}
+
+	@Test
+	public void batchesWiderThanAShortAreRestored() throws Exception {
+		int accounts = 40000;
+		Map<String, BigDecimal> changes = new HashMap<>();
+		for (int i = 0; i < accounts; i++) {
+			accountsRepository.createAccount(new Account("A" + i, new BigDecimal(10)));
+			changes.put("A" + i, BigDecimal.ONE);
+		}
+		accountsRepository.applyChanges(changes);
+		accountsRepository.sync();
+
+		restart();
+
+		assertThat(account("A0").getBalance()).isEqualByComparingTo("11");
+		assertThat(account("A" + (accounts - 1)).getBalance()).isEqualByComparingTo("11");
+	}
+
+	@Test
+	public void longAccountIdsAreRestoredOrRejected() throws Exception {
+		String longId = String.join("", Collections.nCopies(40000, "x"));
+		Account account = new Account(longId, new BigDecimal(100));
+		accountsRepository.validate(account);
+		accountsRepository.createAccount(account);
+		accountsRepository.sync();
+		restart();
+		assertThat(account(longId).getBalance()).isEqualByComparingTo("100");
+
+		// A snapshot stores the long id as well
+		accountsRepository.snapshot();
+		restart();
+		assertThat(account(longId).getBalance()).isEqualByComparingTo("100");
+
+		try {
+			accountsRepository.validate(new Account(String.join("", Collections.nCopies(70000, "x")), BigDecimal.ONE));
+			fail("Should have rejected an id longer than a journal record allows");
+		} catch (InvalidAccountException e) {
+			assertThat(e.getMessage()).endsWith("must have at most 65535 bytes!");
+		}
+	}
+
+	@Test
+	public void tornRecordAtTheEndIsIgnored() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsRepository.createAccount(new Account("A002", new BigDecimal(0)));
+		accountsRepository.transfer(account("A001"), account("A002"), new BigDecimal(100));
+		accountsRepository.sync();
+		journal.close();
+
+		// Simulate a crash in the middle of writing the next record
+		try (Stream<Path> segments = Files.list(directory)) {
+			Path segment = segments.sorted().reduce((first, second) -> second).get();
+			Files.write(segment, new byte[] { 0, 0, 0, 40, 2, 0, 1 }, StandardOpenOption.APPEND);
+		}
+
+		open();
+
+		assertThat(account("A001").getBalance()).isEqualByComparingTo("900");
+		assertThat(account("A002").getBalance()).isEqualByComparingTo("100");
+	}
+
+	@Test
+	public void oversizedLengthAtTheEndIsIgnored() throws Exception {
+		accountsRepository.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsRepository.sync();
+		journal.close();
+
+		// A corrupted length must not be allocated
+		try (Stream<Path> segments = Files.list(directory)) {
+			Path segment = segments.sorted().reduce((first, second) -> second).get();
+			Files.write(segment, new byte[] { 0x7f, -1, -1, -1, 2, 0, 1 }, StandardOpenOption.APPEND);
+		}
+
+		open();
+
+		assertThat(account("A001").getBalance()).isEqualByComparingTo("1000");
+	}
+
+	@Test
+	public void snapshotWaitsForTheChangesItRead() throws Exception {
+		accountsRepository.close();
+		journal.close();
+		CountDownLatch applied = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		journal = new TransferJournal(directory, 4096);
+		accountsRepository = new JournalingAccountsRepository(new AccountsRepositoryInMemory() {
+			@Override
+			public void creditAccount(Account account, BigDecimal amount) {
+				super.creditAccount(account, amount);
+				// The credit is applied, its record not appended yet
+				applied.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, journal);
+		accountsRepository.createAccount(new Account("A001", new BigDecimal(100)));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> credit = executor.submit(() -> accountsRepository.creditAccount(account("A001"), BigDecimal.TEN));
+			applied.await();
+			Future<Path> snapshot = executor.submit(accountsRepository::snapshot);
+
+			Thread.sleep(200);
+			assertThat(snapshot.isDone()).isFalse();
+			release.countDown();
+			credit.get(10, TimeUnit.SECONDS);
+			Path file = snapshot.get(10, TimeUnit.SECONDS);
+
+			// The record of the credit the snapshot holds was made durable before the snapshot was published
+			assertThat(file).exists();
+			assertThat(journal.getDurableSequence()).isEqualTo(journal.getAppendedSequence());
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void snapshotWhileTransfersRun() throws Exception {
+		int accounts = 100;
+		for (int i = 0; i < accounts; i++) {
+			accountsRepository.createAccount(new Account("A" + i, new BigDecimal(1000)));
+		}
+		LockingTransferEngine engine = new LockingTransferEngine(accountsRepository, new AccountLocks(64));
+		AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Random random = new Random(t);
+			futures.add(executor.submit(() -> {
+				while (running.get()) {
+					Account from = account("A" + random.nextInt(accounts));
+					Account to = account("A" + random.nextInt(accounts));
+					try {
+						engine.transfer(from, to, new BigDecimal(1 + random.nextInt(50)));
+					} catch (InSufficientBalanceException e) {
+						// expected once in a while
+					}
+				}
+				return null;
+			}));
+		}
+		Path snapshot = null;
+		for (int i = 0; i < 3; i++) {
+			Thread.sleep(50);
+			snapshot = accountsRepository.snapshot();
+		}
+		Thread.sleep(50);
+		running.set(false);
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		accountsRepository.sync();
+		Map<String, BigDecimal> expected = new HashMap<>();
+		accountsRepository.forEachAccount(account -> expected.put(account.getAccountId(), account.getBalance()));
+
+		restart();
+
+		for (int i = 0; i < accounts; i++) {
+			assertThat(account("A" + i).getBalance()).isEqualByComparingTo(expected.get("A" + i));
+		}
+		// Only the latest snapshot and the journal written after it are kept
+		try (Stream<Path> files = Files.list(directory)) {
+			assertThat(files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).toArray())
+					.containsExactly(snapshot);
+		}
+	}
+
+	@Test
+	public void startupFromSnapshotReplaysNoRecords() throws Exception {
+		int accounts = 1000;
+		for (int i = 0; i < accounts; i++) {
+			accountsRepository.createAccount(new Account("A" + i, new BigDecimal(1000)));
+		}
+		for (int i = 0; i < accounts; i++) {
+			accountsRepository.transfer(account("A" + i), account("A" + (i + 1) % accounts), BigDecimal.ONE);
+		}
+		accountsRepository.sync();
+
+		restart();
+		assertThat(journal.replay(new AccountsRepositoryInMemory(), 0)).isEqualTo(accounts * 2);
+
+		// The time both startups take is compared by the JournalStartupBenchmark
+		accountsRepository.snapshot();
+		restart();
+		assertThat(journal.replay(new AccountsRepositoryInMemory(), 0)).isZero();
+		assertThat(account("A0").getBalance()).isEqualByComparingTo("1000");
+		assertThat(account("A" + (accounts - 1)).getBalance()).isEqualByComparingTo("1000");
+	}
+
+	private Account account(String accountId) {
+		return accountsRepository.getAccount(accountId);
+	}
+
+	private void restart() throws Exception {
+		accountsRepository.close();
+		journal.close();
+		open();
+	}
+
+	private void open() throws Exception {
+		journal = new TransferJournal(directory, 4096);
+		accountsRepository = new JournalingAccountsRepository(new AccountsRepositoryInMemory(), journal);
+	}
+}
@@ -0,0 +1,66 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.service.LatencyHistogram;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentilesWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		assertThat(histogram.getCount()).isEqualTo(100000);
+		assertThat(histogram.getMax()).isEqualTo(100000000);
+		assertThat(histogram.getMean()).isCloseTo(50000500, within(1.0));
+		assertThat(histogram.getValueAtPercentile(50)).isCloseTo(50000000L, within(50000000L / 64));
+		assertThat(histogram.getValueAtPercentile(99)).isCloseTo(99000000L, within(99000000L / 64));
+		assertThat(histogram.getValueAtPercentile(100)).isLessThanOrEqualTo(100000000L);
+	}
+
+	@Test
+	public void smallAndExtremeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(7);
+		histogram.record(Long.MAX_VALUE);
+
+		assertThat(histogram.getValueAtPercentile(10)).isZero();
+		assertThat(histogram.getValueAtPercentile(50)).isEqualTo(7);
+		assertThat(histogram.getValueAtPercentile(100)).isGreaterThan(Long.MAX_VALUE / 2);
+		assertThat(new LatencyHistogram().getValueAtPercentile(99)).isZero();
+	}
+
+	@Test
+	public void recordingDoesNotAllocate() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		TransferMetrics transferMetrics = new TransferMetrics();
+		// Warm up so the counters are initialized and the code is compiled
+		record(transferMetrics, 100000);
+
+		long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		record(transferMetrics, 100000);
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+		assertThat(allocated).isLessThan(1024);
+		assertThat(transferMetrics.getTransferCount(TransferStatus.COMPLETED)).isEqualTo(200000);
+	}
+
+	private static void record(TransferMetrics transferMetrics, int count) {
+		for (int i = 0; i < count; i++) {
+			long startedAt = transferMetrics.transferStarted();
+			transferMetrics.lockTimed(i, i * 2);
+			transferMetrics.transferEnded(startedAt, TransferStatus.COMPLETED);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.LedgerCheck;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LedgerInvariantChecker;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.StripedAccounts;
+import com.db.awmd.challenge.service.TransferEngine;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+public class LedgerInvariantCheckerTest {
+
+	private final AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+
+	private final TransferMetrics transferMetrics = new TransferMetrics();
+
+	private final BalanceVersions balanceVersions = new BalanceVersions(1000);
+
+	@Test
+	public void everyChangeKeepsTheLedgerBalanced() throws Exception {
+		AccountsService accountsService = service(new LockingTransferEngine(accountsRepository, new AccountLocks(16),
+				transferMetrics, new TransferLedger(), balanceVersions), new StripedAccounts(Collections.singleton("FEE"), 4));
+		LedgerInvariantChecker checker = new LedgerInvariantChecker(accountsService, 0, 1);
+
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("100.50")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal("20")));
+		accountsService.createAccount(new Account("FEE", new BigDecimal("5")));
+		accountsService.transferAmount("Id-1", "Id-2", new BigDecimal("30"));
+		accountsService.tryTransferAmount("Id-2", "Id-1", new BigDecimal("1000"));
+		accountsService.transferBatch(Arrays.asList(new TransferRequest("Id-2", "FEE", BigDecimal.ONE),
+				new TransferRequest("Id-1", "Id-2", BigDecimal.TEN)));
+		accountsService.transferLegs(Arrays.asList(new TransferLeg("Id-1", new BigDecimal("-2")),
+				new TransferLeg("Id-2", BigDecimal.ONE), new TransferLeg("FEE", BigDecimal.ONE)));
+		accountsService.creditAccount(accountsService.getAccount("Id-2"), new BigDecimal("7.25"));
+		accountsService.debitAccount(accountsService.getAccount("FEE"), new BigDecimal("6"));
+		// A transfer with an account of another node moves money out of this node
+		assertThat(accountsService.transferRemote("Id-1", "Id-9", new BigDecimal("3"), "Id-9"))
+				.isEqualTo(TransferStatus.COMPLETED);
+
+		LedgerCheck check = checker.check();
+		assertThat(check.isBalanced()).isTrue();
+		assertThat(check.getAccounts()).isEqualTo(3);
+		assertThat(check.getTotal()).isEqualByComparingTo("123.75");
+		assertThat(check.getExpected()).isEqualByComparingTo("123.75");
+		assertThat(check.getVersion()).isEqualTo(balanceVersions.getCommittedVersion());
+		assertThat(checker.toMap()).containsEntry("checks", 1L).containsEntry("discrepancies", 0L);
+	}
+
+	@Test
+	public void moneyCreatedOutsideTheLedgerIsReported() throws Exception {
+		AccountsService accountsService = service(new LockingTransferEngine(accountsRepository, new AccountLocks(16),
+				transferMetrics, new TransferLedger(), balanceVersions), new StripedAccounts());
+		LedgerInvariantChecker checker = new LedgerInvariantChecker(accountsService, 0, 1);
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal("100")));
+
+		// A lost update: the debit of a transfer is overwritten while its credit stays
+		accountsService.transferAmount("Id-1", "Id-2", new BigDecimal("40"));
+		Account account = accountsRepository.getAccount("Id-1");
+		account.setBalance(new BigDecimal("100"));
+		balanceVersions.commit(account);
+
+		LedgerCheck check = checker.check();
+		assertThat(check.isBalanced()).isFalse();
+		assertThat(check.getDifference()).isEqualByComparingTo("40");
+		assertThat(checker.toMap()).containsEntry("discrepancies", 1L).containsEntry("lastDiscrepancy", check);
+	}
+
+	@Test
+	public void checksStayBalancedWhileShardedTransfersRun() throws Exception {
+		ShardedTransferEngine engine = new ShardedTransferEngine(accountsRepository, 4, 1024, transferMetrics,
+				new TransferLedger(), balanceVersions);
+		try {
+			AccountsService accountsService = service(engine, new StripedAccounts());
+			// Pauses after every chunk of accounts scanned, with transfers from this node and others racing with the scan
+			LedgerInvariantChecker checker = new LedgerInvariantChecker(accountsService, 0, 0.5);
+			for (int i = 0; i < 10000; i++) {
+				accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+			}
+			AtomicBoolean running = new AtomicBoolean(true);
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				Thread thread = new Thread(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					while (running.get()) {
+						int from = random.nextInt(10000);
+						int to = (from + 1 + random.nextInt(9999)) % 10000;
+						accountsService.tryTransferAmount("Id-" + from, "Id-" + to, new BigDecimal(random.nextInt(1, 100)));
+						if (random.nextInt(100) == 0) {
+							accountsService.transferRemote("Remote", "Id-" + to, BigDecimal.ONE, "Remote");
+						}
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			try {
+				for (int i = 0; i < 20; i++) {
+					LedgerCheck check = checker.check();
+					assertThat(check.isBalanced()).as("Difference at version " + check.getVersion()).isTrue();
+					assertThat(check.getAccounts()).isEqualTo(10000);
+				}
+			} finally {
+				running.set(false);
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			}
+			assertThat(checker.check().getInTransit()).isEqualByComparingTo("0");
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	@Test
+	public void creditsAndDebitsRacingWithTransfersKeepTheLedgerBalanced() throws Exception {
+		ShardedTransferEngine shardedEngine = new ShardedTransferEngine(accountsRepository, 4, 1024, transferMetrics,
+				new TransferLedger(), balanceVersions);
+		try {
+			for (TransferEngine engine : Arrays.asList(new LockingTransferEngine(accountsRepository, new AccountLocks(16),
+					transferMetrics, new TransferLedger(), balanceVersions), shardedEngine)) {
+				accountsRepository.clearAccounts();
+				balanceVersions.clear();
+				AccountsService accountsService = service(engine, new StripedAccounts(Collections.singleton("FEE"), 4));
+				for (int i = 0; i < 10; i++) {
+					accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+				}
+				accountsService.createAccount(new Account("FEE", new BigDecimal(1000)));
+				List<Thread> threads = new ArrayList<>();
+				for (int t = 0; t < 4; t++) {
+					Thread thread = new Thread(() -> {
+						ThreadLocalRandom random = ThreadLocalRandom.current();
+						for (int j = 0; j < 2000; j++) {
+							String accountId = "Id-" + random.nextInt(10);
+							if (j % 2 == 0) {
+								accountsService.tryTransferAmount(accountId, "Id-" + random.nextInt(10), BigDecimal.ONE);
+							} else if (j % 4 == 1) {
+								accountsService.creditAccount(accountsService.getAccount(accountId), BigDecimal.ONE);
+							} else {
+								accountsService.creditAccount(accountsService.getAccount("FEE"), BigDecimal.ONE);
+								try {
+									accountsService.debitAccount(accountsService.getAccount("FEE"), BigDecimal.ONE);
+								} catch (InSufficientBalanceException e) {
+									throw new IllegalStateException(e);
+								}
+							}
+						}
+					});
+					thread.start();
+					threads.add(thread);
+				}
+				for (Thread thread : threads) {
+					thread.join();
+				}
+
+				LedgerCheck check = new LedgerInvariantChecker(accountsService, 0, 1).check();
+				assertThat(check.isBalanced()).isTrue();
+				// No credit was lost to a transfer racing with it
+				assertThat(check.getTotal()).isEqualByComparingTo("13000");
+			}
+		} finally {
+			shardedEngine.shutdown();
+		}
+	}
+
+	private AccountsService service(TransferEngine transferEngine, StripedAccounts stripedAccounts) {
+		return new AccountsService(accountsRepository, transferEngine, transferMetrics, balanceVersions, stripedAccounts);
+	}
+}
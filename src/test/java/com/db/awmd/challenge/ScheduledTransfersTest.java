@@ -0,0 +1,79 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.NoSuchAccountException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ScheduledTransfers;
+
+public class ScheduledTransfersTest {
+
+	private final AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+
+	private final AccountsService accountsService = new AccountsService(accountsRepository,
+			new LockingTransferEngine(accountsRepository, new AccountLocks(16)));
+
+	/**
+	 * The ticker thread isn't started, the test executes the transfers due at the times it chooses.
+	 */
+	private final ScheduledTransfers scheduledTransfers = new ScheduledTransfers(accountsService, 10, 2);
+
+	@Test
+	public void transfersExecuteWhenDue() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("A002", BigDecimal.ZERO));
+		long now = System.currentTimeMillis();
+		ScheduledTransfer once = scheduledTransfers.schedule(new ScheduledTransfer("A001", "A002", BigDecimal.TEN, now + 1000, 0));
+		ScheduledTransfer standing = scheduledTransfers.schedule(new ScheduledTransfer("A001", "A002", BigDecimal.ONE, now + 500, 1000));
+		ScheduledTransfer cancelled = scheduledTransfers.schedule(new ScheduledTransfer("A001", "A002", new BigDecimal(100), now + 500, 0));
+		assertThat(scheduledTransfers.list(null, 0, 10)).extracting(ScheduledTransfer::getId)
+				.containsExactly(once.getId(), standing.getId(), cancelled.getId());
+		assertThat(scheduledTransfers.cancel(cancelled.getId())).isTrue();
+		assertThat(scheduledTransfers.cancel(cancelled.getId())).isFalse();
+
+		scheduledTransfers.executeDue(now + 490);
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("0");
+		scheduledTransfers.executeDue(now + 1010);
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("11");
+		assertThat(scheduledTransfers.get(once.getId())).isNull();
+		ScheduledTransfer next = scheduledTransfers.get(standing.getId());
+		assertThat(next.getExecuteAt()).isEqualTo(now + 1500);
+		assertThat(next.getLastStatus()).isEqualTo(TransferStatus.COMPLETED);
+
+		// Executions missed while held up are skipped
+		scheduledTransfers.executeDue(now + 3600);
+		assertThat(accountsService.getAccount("A002").getBalance()).isEqualByComparingTo("12");
+		assertThat(scheduledTransfers.get(standing.getId()).getExecuteAt()).isEqualTo(now + 4500);
+		assertThat(scheduledTransfers.getPendingCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void invalidTransfersAreRejected() throws Exception {
+		accountsService.createAccount(new Account("A001", new BigDecimal(1000)));
+		long now = System.currentTimeMillis();
+		try {
+			scheduledTransfers.schedule(new ScheduledTransfer("A001", "A002", BigDecimal.TEN, now, 0));
+			fail("Should have failed when scheduling a transfer to an unknown account");
+		} catch (NoSuchAccountException e) {
+			assertThat(e.getMessage()).isEqualTo("Account A002 couldn't be found!");
+		}
+		try {
+			scheduledTransfers.schedule(new ScheduledTransfer("A001", "A001", BigDecimal.TEN, now, 5));
+			fail("Should have failed when scheduling a standing order more often than the tick");
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage()).isEqualTo("Interval must be 0 or at least 10 ms!");
+		}
+		assertThat(scheduledTransfers.getPendingCount()).isZero();
+	}
+}
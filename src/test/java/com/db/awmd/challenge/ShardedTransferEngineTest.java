@@ -0,0 +1,133 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+
+/**
+ * Checks that the sharded engine keeps transfers all or none across shards and executes the changes of a single shard
+ * on that shard. Its throughput is compared with the other engines and the former global Semaphore design by the
+ * {@code TransferBenchmark}.
+ *
+ */
+public class ShardedTransferEngineTest {
+
+	private AccountsRepository accountsRepository;
+
+	private ShardedTransferEngine shardedEngine;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		accountsRepository = new AccountsRepositoryInMemory();
+		shardedEngine = new ShardedTransferEngine(accountsRepository, 4, 1024);
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		shardedEngine.shutdown();
+	}
+
+	@Test
+	public void shardedTransferAcrossShards() throws Exception {
+		Account from = createAccount("A001", 1000);
+		Account to = createAccount("A002", 250);
+		Account sameShard = findAccountOnShard(shardedEngine.shardFor("A001"), 0);
+		assertThat(shardedEngine.shardFor("A001")).isNotEqualTo(shardedEngine.shardFor("A002"));
+
+		shardedEngine.transfer(from, to, new BigDecimal(300));
+		shardedEngine.transfer(from, sameShard, new BigDecimal(100));
+
+		assertThat(from.getBalance()).isEqualByComparingTo("600");
+		assertThat(to.getBalance()).isEqualByComparingTo("550");
+		assertThat(sameShard.getBalance()).isEqualByComparingTo("100");
+	}
+
+	@Test
+	public void shardedTransferInSufficientBalance() throws Exception {
+		Account from = createAccount("A001", 1000);
+		Account to = createAccount("A002", 250);
+
+		try {
+			shardedEngine.transfer(from, to, new BigDecimal(1300));
+			fail("Should have failed on insufficient balance");
+		} catch (InSufficientBalanceException e) {
+			assertThat(e.getMessage()).isEqualTo("Account: A001 does not have sufficient balance to perform this transaction!");
+		}
+		assertThat(from.getBalance()).isEqualByComparingTo("1000");
+		assertThat(to.getBalance()).isEqualByComparingTo("250");
+	}
+
+	@Test
+	public void singleShardChangesDontWaitForChangesSpanningShards() throws Exception {
+		Account first = createAccount("A001", 1000);
+		Account second = createAccount("A002", 250);
+		int other = 0;
+		while (other == shardedEngine.shardFor("A001") || other == shardedEngine.shardFor("A002")) {
+			other++;
+		}
+		Account third = findAccountOnShard(other, 100);
+		CountDownLatch spanning = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> blocked = executor.submit(() -> shardedEngine.executeExclusively(
+				Arrays.asList(first.getAccountId(), second.getAccountId()), () -> {
+					spanning.countDown();
+					awaitQuietly(release);
+					return null;
+				}));
+		assertThat(spanning.await(5, TimeUnit.SECONDS)).isTrue();
+		try {
+			Future<String> single = executor.submit(() -> shardedEngine.executeExclusively(
+					Collections.singleton(third.getAccountId()), () -> Thread.currentThread().getName()));
+			// Executed by the shard owning the account while the other shards are parked
+			assertThat(single.get(5, TimeUnit.SECONDS)).isEqualTo("transfer-shard-" + other);
+		} finally {
+			release.countDown();
+		}
+		blocked.get(5, TimeUnit.SECONDS);
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Account findAccountOnShard(int shard, long balance) {
+		for (int i = 0;; i++) {
+			String accountId = "B" + i;
+			if (shardedEngine.shardFor(accountId) == shard) {
+				return createAccount(accountId, balance);
+			}
+		}
+	}
+
+	private Account createAccount(String accountId, long balance) {
+		Account account = new Account(accountId, new BigDecimal(balance));
+		accountsRepository.createAccount(account);
+		return account;
+	}
+}
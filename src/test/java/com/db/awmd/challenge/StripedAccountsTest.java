@@ -0,0 +1,160 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InSufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.StripedAccounts;
+import com.db.awmd.challenge.service.TransferEngine;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+public class StripedAccountsTest {
+
+	private final AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+
+	private final BalanceVersions balanceVersions = new BalanceVersions(1000);
+
+	@Test
+	public void stripedAccountIsStoredAsStripes() throws Exception {
+		AccountsService accountsService = service(new LockingTransferEngine(accountsRepository, new AccountLocks(64),
+				new TransferMetrics(), new TransferLedger(), balanceVersions));
+		accountsService.createAccount(new Account("FEE", new BigDecimal(100)));
+		accountsService.createAccount(new Account("A001", new BigDecimal(50)));
+
+		Account fee = accountsService.getAccount("FEE");
+		assertThat(fee).isInstanceOf(StripedAccount.class);
+		assertThat(fee.getBalance()).isEqualByComparingTo("100");
+		assertThat(accountsRepository.getAccount("FEE")).isNull();
+		assertThat(accountsRepository.getAccount("FEE#0").getBalance()).isEqualByComparingTo("100");
+		assertThat(accountsRepository.getAccount("FEE#3").getBalance()).isEqualByComparingTo("0");
+		try {
+			accountsService.createAccount(new Account("FEE#1"));
+			fail("Should have failed when creating an account with the id of a stripe");
+		} catch (DuplicateAccountIdException e) {
+			assertThat(e.getMessage()).isEqualTo("Account id FEE#1 is reserved for the stripes of FEE!");
+		}
+
+		Map<String, BigDecimal> balances = new HashMap<>();
+		try (BalanceVersions.Snapshot snapshot = accountsService.openSnapshot(-1)) {
+			accountsService.forEachAccount(snapshot, balances::put);
+		}
+		assertThat(balances).containsOnlyKeys("FEE", "A001");
+		assertThat(balances.get("FEE")).isEqualByComparingTo("100");
+	}
+
+	@Test
+	public void stripesAreGatheredForLargeDebits() throws Exception {
+		AccountsService accountsService = service(new LockingTransferEngine(accountsRepository, new AccountLocks(64),
+				new TransferMetrics(), new TransferLedger(), balanceVersions));
+		accountsService.createAccount(new Account("FEE", BigDecimal.ZERO));
+		for (int i = 0; i < 4; i++) {
+			accountsRepository.getAccount("FEE#" + i).setBalance(new BigDecimal(25));
+		}
+
+		accountsService.debitAccount(accountsService.getAccount("FEE"), new BigDecimal(90));
+		assertThat(accountsService.getAccount("FEE").getBalance()).isEqualByComparingTo("10");
+		try {
+			accountsService.debitAccount(accountsService.getAccount("FEE"), new BigDecimal(11));
+			fail("Should have failed when debiting more than all the stripes");
+		} catch (InSufficientBalanceException e) {
+			assertThat(accountsService.getAccount("FEE").getBalance()).isEqualByComparingTo("10");
+		}
+
+		accountsService.createAccount(new Account("A001", new BigDecimal(5)));
+		List<TransferResult> results = accountsService.transferBatch(new ArrayList<>(Collections.singletonList(
+				new TransferRequest("FEE", "A001", new BigDecimal(9)))));
+		assertThat(results.get(0).getStatus()).isEqualTo(TransferStatus.COMPLETED);
+		assertThat(accountsService.getAccount("FEE").getBalance()).isEqualByComparingTo("1");
+		assertThat(accountsService.getAccount("A001").getBalance()).isEqualByComparingTo("14");
+	}
+
+	@Test
+	public void concurrentLockingTransfersSpreadOverStripes() throws Exception {
+		assertTransfersThroughStripes(new LockingTransferEngine(accountsRepository, new AccountLocks(64),
+				new TransferMetrics(), new TransferLedger(), balanceVersions));
+	}
+
+	@Test
+	public void concurrentShardedTransfersSpreadOverStripes() throws Exception {
+		ShardedTransferEngine engine = new ShardedTransferEngine(accountsRepository, 4, 1024, new TransferMetrics(),
+				new TransferLedger(), balanceVersions);
+		try {
+			assertTransfersThroughStripes(engine);
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	/**
+	 * Credits the striped account from 8 threads, then debits all of it at once, which needs all the stripes gathered.
+	 */
+	private void assertTransfersThroughStripes(TransferEngine engine) throws Exception {
+		AccountsService accountsService = service(engine);
+		accountsService.createAccount(new Account("FEE", BigDecimal.ONE));
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			String accountId = "A" + t;
+			accountsService.createAccount(new Account(accountId, new BigDecimal(1001)));
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					try {
+						accountsService.transferAmount(accountId, "FEE", BigDecimal.ONE);
+					} catch (Exception e) {
+						throw new AssertionError(e);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(accountsService.getAccount("FEE").getBalance()).isEqualByComparingTo("8001");
+
+		accountsService.transferAmount("FEE", "A0", new BigDecimal(8000));
+		assertThat(accountsService.getAccount("FEE").getBalance()).isEqualByComparingTo("1");
+		assertThat(accountsService.getAccount("A0").getBalance()).isEqualByComparingTo("8001");
+		try {
+			accountsService.transferAmount("FEE", "A0", BigDecimal.ONE);
+			fail("Should have failed when transferring the whole balance of the striped account");
+		} catch (InSufficientBalanceException e) {
+			assertThat(accountsService.getAccount("A0").getBalance()).isEqualByComparingTo("8001");
+		}
+
+		BigDecimal[] total = { BigDecimal.ZERO };
+		try (BalanceVersions.Snapshot snapshot = accountsService.openSnapshot(-1)) {
+			accountsService.forEachAccount(snapshot, (accountId, balance) -> total[0] = total[0].add(balance));
+			assertThat(snapshot.getInTransit()).isEqualByComparingTo("0");
+		}
+		assertThat(total[0]).isEqualByComparingTo("8009");
+	}
+
+	private AccountsService service(TransferEngine engine) {
+		return new AccountsService(accountsRepository, engine, new TransferMetrics(), balanceVersions,
+				new StripedAccounts(Collections.singleton("FEE"), 4));
+	}
+}
@@ -0,0 +1,66 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.service.TimingWheel;
+
+public class TimingWheelTest {
+
+	@Test
+	public void timersExpireAtTheirTick() {
+		TimingWheel<Long> wheel = new TimingWheel<>(1000);
+		long[] dues = { 999, 1001, 1255, 1256, 1300, 66535, 66536, 1000 + (1L << 24) + 7, 1000 + (1L << 40) };
+		for (long due : dues) {
+			wheel.add(due, due);
+		}
+		TimingWheel.Timer<Long> cancelled = wheel.add(5000, 5000L);
+		assertThat(wheel.cancel(cancelled)).isTrue();
+		assertThat(wheel.cancel(cancelled)).isFalse();
+
+		List<Long> expired = new ArrayList<>();
+		wheel.advance(1001, expired::add);
+		assertThat(expired).containsExactly(999L, 1001L);
+		for (int i = 2; i < dues.length - 1; i++) {
+			long due = dues[i];
+			wheel.advance(due - 1, expired::add);
+			assertThat(expired).hasSize(i);
+			wheel.advance(due, expired::add);
+			assertThat(expired).hasSize(i + 1).endsWith(due);
+		}
+		assertThat(wheel.size()).isEqualTo(1);
+	}
+
+	/**
+	 * The time adding and cancelling timers takes is measured by the TimingWheelBenchmark.
+	 */
+	@Test
+	public void manyTimersExpireInOrder() {
+		int count = 100000;
+		TimingWheel<Long> wheel = new TimingWheel<>(0);
+		List<TimingWheel.Timer<Long>> timers = new ArrayList<>(count);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < count; i++) {
+			long due = 1 + random.nextLong(100000);
+			timers.add(wheel.add(due, due));
+		}
+		for (int i = 0; i < count; i += 2) {
+			assertThat(wheel.cancel(timers.get(i))).isTrue();
+		}
+
+		long[] last = { 0 };
+		int[] expired = { 0 };
+		wheel.advance(100000, due -> {
+			assertThat(due).isGreaterThanOrEqualTo(last[0]);
+			last[0] = due;
+			expired[0]++;
+		});
+		assertThat(expired[0]).isEqualTo(count / 2);
+		assertThat(wheel.size()).isZero();
+	}
+}
@@ -0,0 +1,52 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.service.TransferExecutor;
+
+public class TransferExecutorTest {
+
+	@Test
+	public void transfersBeyondTheBoundAreRejected() throws Exception {
+		TransferExecutor transferExecutor = new TransferExecutor(1, 2);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			CompletableFuture<String> running = transferExecutor.submit(() -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return Thread.currentThread().getName();
+			});
+			while (transferExecutor.toMap().get("active").equals(0)) {
+				Thread.yield();
+			}
+			CompletableFuture<String> first = transferExecutor.submit(() -> "first");
+			CompletableFuture<String> second = transferExecutor.submit(() -> "second");
+			assertThat(transferExecutor.getPending()).isEqualTo(2);
+			try {
+				transferExecutor.submit(() -> "third");
+				fail("Should have rejected the transfer beyond the bound");
+			} catch (RejectedExecutionException e) {
+				assertThat(transferExecutor.toMap().get("rejected")).isEqualTo(1L);
+			}
+
+			release.countDown();
+			assertThat(running.get()).isEqualTo("transfer-executor-0");
+			assertThat(first.get()).isEqualTo("first");
+			assertThat(second.get()).isEqualTo("second");
+			assertThat(transferExecutor.getPending()).isZero();
+		} finally {
+			release.countDown();
+			transferExecutor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.BalanceVersions;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.TransferBatch;
+import com.db.awmd.challenge.service.TransferLedger;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+public class TransferLedgerTest {
+
+	private final TransferLedger transferLedger = new TransferLedger();
+
+	@Test
+	public void recordsBothSidesOfTransfers() {
+		transferLedger.recordTransfer("A001", "A002", 30050);
+		transferLedger.recordTransfer("A002", "A003", 125);
+
+		List<LedgerEntry> entries = transferLedger.read("A002", 0, 10);
+
+		assertThat(entries).hasSize(2);
+		assertThat(entries.get(0).getCounterpartyId()).isEqualTo("A001");
+		assertThat(entries.get(0).getAmount()).isEqualByComparingTo("300.50");
+		assertThat(entries.get(1).getPosition()).isEqualTo(1);
+		assertThat(entries.get(1).getCounterpartyId()).isEqualTo("A003");
+		assertThat(entries.get(1).getAmount()).isEqualByComparingTo("-1.25");
+		assertThat(transferLedger.read("A001", 0, 10).get(0).getTransferId()).isEqualTo(entries.get(0).getTransferId());
+		assertThat(transferLedger.size("A004")).isZero();
+		assertThat(transferLedger.read("A004", 0, 10)).isEmpty();
+	}
+
+	@Test
+	public void pagesAcrossChunks() {
+		for (int i = 1; i <= 5000; i++) {
+			transferLedger.recordTransfer("A001", "C" + (i % 7), i);
+		}
+
+		assertThat(transferLedger.size("A001")).isEqualTo(5000);
+		List<LedgerEntry> page = transferLedger.read("A001", 1020, 10);
+		assertThat(page).hasSize(10);
+		for (int i = 0; i < page.size(); i++) {
+			LedgerEntry entry = page.get(i);
+			assertThat(entry.getPosition()).isEqualTo(1020 + i);
+			assertThat(entry.getAmount()).isEqualByComparingTo(BigDecimal.valueOf(-(1021 + i), 2));
+			assertThat(entry.getCounterpartyId()).isEqualTo("C" + ((1021 + i) % 7));
+		}
+		assertThat(transferLedger.read("A001", 4995, 10)).hasSize(5);
+		// Every entry is found, whether in the small first chunks or in the full-size ones
+		List<LedgerEntry> all = transferLedger.read("A001", 0, 5000);
+		for (int i = 0; i < all.size(); i++) {
+			assertThat(all.get(i).getPosition()).isEqualTo(i);
+			assertThat(all.get(i).getAmount()).isEqualByComparingTo(BigDecimal.valueOf(-(i + 1), 2));
+		}
+		assertThat(transferLedger.read("A001", 6000, 10)).isEmpty();
+	}
+
+	@Test
+	public void enginesRecordCompletedTransfers() throws Exception {
+		AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+		accountsRepository.createAccount(new Account("A001", new BigDecimal(100)));
+		accountsRepository.createAccount(new Account("A002", new BigDecimal(100)));
+		LockingTransferEngine lockingEngine = new LockingTransferEngine(accountsRepository, new AccountLocks(16),
+				new TransferMetrics(), transferLedger, new BalanceVersions());
+		ShardedTransferEngine shardedEngine = new ShardedTransferEngine(accountsRepository, 2, 16, new TransferMetrics(),
+				transferLedger, new BalanceVersions());
+		try {
+			lockingEngine.transfer(accountsRepository.getAccount("A001"), accountsRepository.getAccount("A002"),
+					BigDecimal.TEN);
+			shardedEngine.transfer(accountsRepository.getAccount("A002"), accountsRepository.getAccount("A001"),
+					BigDecimal.ONE);
+			TransferBatch batch = new TransferBatch(Arrays.asList(
+					new TransferRequest("A001", "A002", new BigDecimal(5)),
+					new TransferRequest("A001", "A002", new BigDecimal(500))), accountsRepository);
+			lockingEngine.transferBatch(batch);
+		} finally {
+			shardedEngine.shutdown();
+		}
+
+		List<LedgerEntry> entries = transferLedger.read("A001", 0, 10);
+		assertThat(entries).extracting(LedgerEntry::getAmount).extracting(BigDecimal::toPlainString)
+				.containsExactly("-10.00", "1.00", "-5.00");
+		assertThat(transferLedger.size("A002")).isEqualTo(3);
+	}
+
+	/**
+	 * Appends entries over several chunks of one account while pages are read from it: the readers only ever see
+	 * complete entries. The time a page takes to read is measured by the TransferLedgerBenchmark.
+	 */
+	@Test
+	public void readsLongHistoryWhileAppending() throws Exception {
+		int count = 200000;
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread writer = new Thread(() -> {
+			for (int i = 1; i <= count; i++) {
+				transferLedger.record("A001", i, "A002", i);
+			}
+		});
+		writer.start();
+		while (writer.isAlive()) {
+			long size = transferLedger.size("A001");
+			for (LedgerEntry entry : transferLedger.read("A001", Math.max(0, size - 100), 100)) {
+				if (entry.getTransferId() != entry.getPosition() + 1
+						|| entry.getAmount().compareTo(BigDecimal.valueOf(entry.getTransferId(), 2)) != 0) {
+					failure.set(new AssertionError("Incomplete entry " + entry));
+				}
+			}
+		}
+		writer.join();
+		assertThat(failure.get()).isNull();
+
+		List<LedgerEntry> last = transferLedger.read("A001", count - 1000, 1000);
+		assertThat(last).hasSize(1000);
+		assertThat(last.get(999).getTransferId()).isEqualTo(count);
+	}
+}